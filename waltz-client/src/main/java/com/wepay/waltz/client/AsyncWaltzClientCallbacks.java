@@ -0,0 +1,30 @@
+package com.wepay.waltz.client;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Waltz client callbacks that prepare committed transactions asynchronously ahead of their application.
+ *
+ * <p>For each transaction, {@link #prepareTransaction(Transaction)} is called before {@link #applyTransaction(Transaction)}
+ * with the same {@link Transaction} instance. When transactions are fed in batches, up to
+ * {@link WaltzClientConfig#MAX_PREPARED_TRANSACTIONS} transactions of a partition are prepared ahead of the transaction
+ * being applied, and their preparations may complete in any order. {@link #applyTransaction(Transaction)} is still called
+ * one transaction at a time in the transaction id order after the preparation of the transaction completes,
+ * and the client high-water mark advances only when it returns.</p>
+ *
+ * <p>A transaction may be prepared more than once, for example when the application of an earlier transaction fails
+ * and the feed is retried.</p>
+ */
+public interface AsyncWaltzClientCallbacks extends WaltzClientCallbacks {
+
+    /**
+     * Prepares a committed transaction for application, for example by fetching and deserializing the transaction data.
+     * This method should not block.
+     *
+     * @param transaction a committed transaction.
+     * @return a stage which completes when the transaction is ready to be applied. If the stage completes exceptionally,
+     *         the transaction is not applied and {@link #uncaughtException(int, long, Throwable)} is called.
+     */
+    CompletionStage<Void> prepareTransaction(Transaction transaction);
+
+}
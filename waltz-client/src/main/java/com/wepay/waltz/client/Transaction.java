@@ -25,6 +25,7 @@ public class Transaction {
 
     private final RpcClient rpcClient;
     private final int header;
+    private final byte[] data;
 
     /**
      * Class Constructor.
@@ -35,9 +36,23 @@ public class Transaction {
      * @param rpcClient a {@code RpcClient} instance which will be used to get transaction data from a Waltz server over the network.
      */
     public Transaction(long transactionId, int header, ReqId reqId, RpcClient rpcClient) {
+        this(transactionId, header, reqId, null, rpcClient);
+    }
+
+    /**
+     * Class Constructor.
+     *
+     * @param transactionId the id of the transaction.
+     * @param header the header of the transaction.
+     * @param reqId the req Id of the transaction.
+     * @param data the transaction data pushed inline with the feed, or null if it should be fetched on demand.
+     * @param rpcClient a {@code RpcClient} instance which will be used to get transaction data from a Waltz server over the network.
+     */
+    public Transaction(long transactionId, int header, ReqId reqId, byte[] data, RpcClient rpcClient) {
         this.reqId = reqId;
         this.transactionId = transactionId;
         this.header = header;
+        this.data = data;
         this.rpcClient = rpcClient;
     }
 
@@ -49,7 +64,8 @@ public class Transaction {
     }
 
     /**
-     * Returns the transaction data. This call retrieves the transaction data from a Waltz server over the network.
+     * Returns the transaction data. This call retrieves the transaction data from a Waltz server over the network
+     * unless the data was pushed inline with the feed.
      *
      * @param serializer the serializer for decoding the transaction data.
      * @param <T> the type of the object to de-serialize to.
@@ -75,7 +91,7 @@ public class Transaction {
     public <T> T getTransactionData(Serializer<T> serializer, final long initialRetryInterval, final long maxRetryInterval) {
         long retryInterval = initialRetryInterval;
         BackoffTimer backoffTimer = null;
-        byte[] data = null;
+        byte[] data = this.data;
 
         while (data == null) {
             try {
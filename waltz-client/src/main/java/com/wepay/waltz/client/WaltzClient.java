@@ -13,6 +13,8 @@ import com.wepay.zktools.clustermgr.ClusterManager;
 import com.wepay.zktools.clustermgr.ManagedClient;
 import org.slf4j.Logger;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
@@ -227,6 +229,31 @@ public class WaltzClient {
         }
     }
 
+    /**
+     * Gets the data of consecutive transactions of a partition. The data is fetched in batches, which is faster than
+     * calling {@link Transaction#getTransactionData(Serializer)} for each transaction.
+     * @param partitionId the partition id.
+     * @param transactionId the id of the first transaction.
+     * @param numTransactions the number of transactions.
+     * @param serializer the serializer for decoding the transaction data.
+     * @param <T> the type of the object to de-serialize to.
+     * @return the transaction data in the order of transaction ids.
+     */
+    public <T> List<T> getTransactionData(int partitionId, long transactionId, int numTransactions, Serializer<T> serializer) {
+        try {
+            List<byte[]> dataList = rpcClient.getTransactionDataList(partitionId, transactionId, numTransactions).get();
+
+            ArrayList<T> list = new ArrayList<>(dataList.size());
+            for (byte[] data : dataList) {
+                list.add(serializer.deserialize(data));
+            }
+            return list;
+
+        } catch (ExecutionException | InterruptedException e) {
+            throw new WaltzClientRuntimeException("failed to get transaction data", e.getCause());
+        }
+    }
+
     // Executes the transaction asynchronously. This is used in retrying a failed transaction.
     private void executeAsync(TransactionContext context) {
         if (transactionRetryQueue != null) {
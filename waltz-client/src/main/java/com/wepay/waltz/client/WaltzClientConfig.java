@@ -48,6 +48,36 @@ public class WaltzClientConfig extends AbstractConfig {
     /** Default value for {@link #MAX_CONCURRENT_TRANSACTIONS} config. */
     public static final int DEFAULT_MAX_CONCURRENT_TRANSACTIONS = 5;
 
+    /**
+     * Maximum size of transaction data the server is asked to push inline with the feed, <code>client.feedMaxInlineDataSize</code>.
+     * Zero disables inlining, and the data is fetched when {@link Transaction#getTransactionData(Serializer)} is called.
+     */
+    public static final String FEED_MAX_INLINE_DATA_SIZE = "client.feedMaxInlineDataSize";
+    /** Default value for {@link #FEED_MAX_INLINE_DATA_SIZE} config. */
+    public static final int DEFAULT_FEED_MAX_INLINE_DATA_SIZE = 0;
+
+    /** Maximum total size in bytes of transaction data cached by the client, <code>client.transactionDataCacheSize</code>. Zero disables the cache. */
+    public static final String TRANSACTION_DATA_CACHE_SIZE = "client.transactionDataCacheSize";
+    /** Default value for {@link #TRANSACTION_DATA_CACHE_SIZE} config. */
+    public static final long DEFAULT_TRANSACTION_DATA_CACHE_SIZE = 0L;
+
+    /**
+     * Number of feed entries ahead of the application whose transaction data is prefetched into the client cache,
+     * <code>client.transactionDataPrefetchSize</code>. Zero disables prefetching. This requires the client cache.
+     */
+    public static final String TRANSACTION_DATA_PREFETCH_SIZE = "client.transactionDataPrefetchSize";
+    /** Default value for {@link #TRANSACTION_DATA_PREFETCH_SIZE} config. */
+    public static final int DEFAULT_TRANSACTION_DATA_PREFETCH_SIZE = 0;
+
+    /**
+     * Maximum number of transactions of a partition prepared ahead of the transaction being applied,
+     * <code>client.maxPreparedTransactions</code>. This is used only with {@link AsyncWaltzClientCallbacks}.
+     * Zero prepares each transaction right before it is applied.
+     */
+    public static final String MAX_PREPARED_TRANSACTIONS = "client.maxPreparedTransactions";
+    /** Default value for {@link #MAX_PREPARED_TRANSACTIONS} config. */
+    public static final int DEFAULT_MAX_PREPARED_TRANSACTIONS = 16;
+
     /** Mock driver for test only, <code>client.mockDriver</code>. */
     public static final String MOCK_DRIVER = "client.mockDriver";
 
@@ -66,6 +96,10 @@ public class WaltzClientConfig extends AbstractConfig {
         parsers.put(NUM_CONSUMER_THREADS, intParser.withDefault(DEFAULT_NUM_CONSUMER_THREADS));
         parsers.put(LONG_WAIT_THRESHOLD, longParser.withDefault(DEFAULT_LONG_WAIT_THRESHOLD));
         parsers.put(MAX_CONCURRENT_TRANSACTIONS, intParser.withDefault(DEFAULT_MAX_CONCURRENT_TRANSACTIONS));
+        parsers.put(FEED_MAX_INLINE_DATA_SIZE, intParser.withDefault(DEFAULT_FEED_MAX_INLINE_DATA_SIZE));
+        parsers.put(TRANSACTION_DATA_CACHE_SIZE, longParser.withDefault(DEFAULT_TRANSACTION_DATA_CACHE_SIZE));
+        parsers.put(TRANSACTION_DATA_PREFETCH_SIZE, intParser.withDefault(DEFAULT_TRANSACTION_DATA_PREFETCH_SIZE));
+        parsers.put(MAX_PREPARED_TRANSACTIONS, intParser.withDefault(DEFAULT_MAX_PREPARED_TRANSACTIONS));
 
         // See SSLConfig for SSL config parameters
     }
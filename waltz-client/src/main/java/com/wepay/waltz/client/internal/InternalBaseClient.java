@@ -2,6 +2,7 @@ package com.wepay.waltz.client.internal;
 
 import com.wepay.riff.network.MessageProcessingThreadPool;
 import com.wepay.riff.util.Logging;
+import com.wepay.waltz.client.Transaction;
 import com.wepay.waltz.client.WaltzClientCallbacks;
 import com.wepay.waltz.client.internal.network.WaltzNetworkClient;
 import com.wepay.waltz.client.internal.network.WaltzNetworkClientCallbacks;
@@ -23,6 +24,7 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.Executors;
 import java.util.concurrent.RejectedExecutionException;
@@ -44,6 +46,9 @@ public abstract class InternalBaseClient implements WaltzNetworkClientCallbacks,
     private final boolean autoMount;
     private final SslContext sslCtx;
     private final int maxConcurrentTransactions;
+    private final int maxInlineDataSize;
+    private final int prefetchSize;
+    private final int maxPreparedTransactions;
     protected final WaltzClientCallbacks callbacks;
     private final MessageProcessingThreadPool messageProcessingThreadPool;
     private final HashMap<Endpoint, WaltzNetworkClient> networkClients = new HashMap<>();
@@ -69,10 +74,38 @@ public abstract class InternalBaseClient implements WaltzNetworkClientCallbacks,
         int maxConcurrentTransactions,
         WaltzClientCallbacks callbacks,
         MessageProcessingThreadPool messageProcessingThreadPool
+    ) {
+        this(autoMount, sslCtx, maxConcurrentTransactions, callbacks, messageProcessingThreadPool, 0, 0, 0);
+    }
+
+    /**
+     * Class Constructor.
+     *
+     * @param autoMount if {@code true}, automatically mount all partitions.
+     * @param sslCtx SSLContext for communication.
+     * @param maxConcurrentTransactions Max number of concurrent transactions allowed.
+     * @param callbacks a {@code WaltzClientCallbacks} instance.
+     * @param messageProcessingThreadPool a {@code MessageProcessingThreadPool} for message processing.
+     * @param maxInlineDataSize the maximum size of transaction data to be pushed inline with the feed. Zero disables inlining.
+     * @param prefetchSize the number of feed entries ahead of the application whose data is prefetched. Zero disables prefetching.
+     * @param maxPreparedTransactions the maximum number of transactions prepared ahead of the application.
+     */
+    protected InternalBaseClient(
+        boolean autoMount,
+        SslContext sslCtx,
+        int maxConcurrentTransactions,
+        WaltzClientCallbacks callbacks,
+        MessageProcessingThreadPool messageProcessingThreadPool,
+        int maxInlineDataSize,
+        int prefetchSize,
+        int maxPreparedTransactions
     ) {
         this.autoMount = autoMount;
         this.sslCtx = sslCtx;
         this.maxConcurrentTransactions = maxConcurrentTransactions;
+        this.maxInlineDataSize = maxInlineDataSize;
+        this.prefetchSize = prefetchSize;
+        this.maxPreparedTransactions = maxPreparedTransactions;
         this.callbacks = callbacks;
         this.messageProcessingThreadPool = messageProcessingThreadPool;
         this.endpoints = Collections.emptyMap();
@@ -211,7 +244,37 @@ public abstract class InternalBaseClient implements WaltzNetworkClientCallbacks,
      * @throws UnsupportedOperationException if invoked.
      */
     @Override
-    public void onTransactionReceived(long transactionId, int header, ReqId reqId) {
+    public void onTransactionReceived(long transactionId, int header, ReqId reqId, byte[] data) {
+        throw new UnsupportedOperationException("not supported by " + this.getClass().getSimpleName());
+    }
+
+    /**
+     * Not supported on {@code InternalBaseClient}.
+     *
+     * @throws UnsupportedOperationException if invoked.
+     */
+    @Override
+    public void onPrefetchTransactionData(int partitionId, long transactionId, int numTransactions) {
+        throw new UnsupportedOperationException("not supported by " + this.getClass().getSimpleName());
+    }
+
+    /**
+     * Not supported on {@code InternalBaseClient}.
+     *
+     * @throws UnsupportedOperationException if invoked.
+     */
+    @Override
+    public CompletableFuture<Transaction> onPrepareTransaction(long transactionId, int header, ReqId reqId, byte[] data) {
+        throw new UnsupportedOperationException("not supported by " + this.getClass().getSimpleName());
+    }
+
+    /**
+     * Not supported on {@code InternalBaseClient}.
+     *
+     * @throws UnsupportedOperationException if invoked.
+     */
+    @Override
+    public void onPreparedTransactionReceived(long transactionId, ReqId reqId, CompletableFuture<Transaction> prepared) {
         throw new UnsupportedOperationException("not supported by " + this.getClass().getSimpleName());
     }
 
@@ -260,7 +323,14 @@ public abstract class InternalBaseClient implements WaltzNetworkClientCallbacks,
         this.numPartitions = numPartitions;
 
         for (int partitionId = 0; partitionId < numPartitions; partitionId++) {
-            Partition partition = new Partition(partitionId, clientId, maxConcurrentTransactions);
+            Partition partition = new Partition(
+                partitionId,
+                clientId,
+                maxConcurrentTransactions,
+                maxInlineDataSize,
+                prefetchSize,
+                maxPreparedTransactions
+            );
             partitions.put(partitionId, partition);
         }
 
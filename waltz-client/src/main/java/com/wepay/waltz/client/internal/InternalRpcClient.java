@@ -1,9 +1,11 @@
 package com.wepay.waltz.client.internal;
 
+import com.wepay.riff.util.Logging;
 import com.wepay.waltz.client.WaltzClientCallbacks;
 import com.wepay.waltz.client.internal.network.WaltzNetworkClient;
 import com.wepay.zktools.clustermgr.Endpoint;
 import io.netty.handler.ssl.SslContext;
+import org.slf4j.Logger;
 
 import java.util.HashMap;
 import java.util.List;
@@ -17,6 +19,10 @@ import java.util.concurrent.Future;
  */
 public class InternalRpcClient extends InternalBaseClient implements RpcClient {
 
+    private static final Logger logger = Logging.getLogger(InternalRpcClient.class);
+
+    private final TransactionDataCache dataCache;
+
     /**
      * Class Constructor, automatically mounts all partitions.
      *
@@ -25,8 +31,21 @@ public class InternalRpcClient extends InternalBaseClient implements RpcClient {
      * @param callbacks a {@link WaltzClientCallbacks} instance.
      */
     public InternalRpcClient(SslContext sslCtx, int maxConcurrentTransactions, WaltzClientCallbacks callbacks) {
+        this(sslCtx, maxConcurrentTransactions, callbacks, 0L);
+    }
+
+    /**
+     * Class Constructor, automatically mounts all partitions.
+     *
+     * @param sslCtx the {@link SslContext}
+     * @param maxConcurrentTransactions the maximum number of concurrent transactions.
+     * @param callbacks a {@link WaltzClientCallbacks} instance.
+     * @param dataCacheSize the maximum total size in bytes of prefetched transaction data. Zero disables the cache.
+     */
+    public InternalRpcClient(SslContext sslCtx, int maxConcurrentTransactions, WaltzClientCallbacks callbacks, long dataCacheSize) {
         // InternalRpcClient always mounts all partition
         super(true, sslCtx, maxConcurrentTransactions, callbacks, null);
+        this.dataCache = dataCacheSize > 0 ? new TransactionDataCache(dataCacheSize) : null;
     }
 
     /**
@@ -45,6 +64,7 @@ public class InternalRpcClient extends InternalBaseClient implements RpcClient {
 
     /**
      * Gets transaction data of a given transaction id from a given partition id.
+     * The data is returned from the cache if it has been prefetched.
      *
      * @param partitionId the id of the partition to read from.
      * @param transactionId the id of the transaction to read.
@@ -52,9 +72,74 @@ public class InternalRpcClient extends InternalBaseClient implements RpcClient {
      */
     @Override
     public Future<byte[]> getTransactionData(int partitionId, long transactionId) {
+        if (dataCache != null) {
+            byte[] data = dataCache.get(partitionId, transactionId);
+            if (data != null) {
+                return CompletableFuture.completedFuture(data);
+            }
+        }
         return getPartition(partitionId).getTransactionData(transactionId);
     }
 
+    /**
+     * Prefetches transaction data of consecutive transactions from a given partition id into the cache.
+     * Transactions already cached at the start of the range are skipped. Requests for transactions being fetched
+     * share the pending results. This does nothing if the cache is disabled.
+     *
+     * @param partitionId the id of the partition to read from.
+     * @param transactionId the id of the first transaction to read.
+     * @param numTransactions the number of transactions to read.
+     */
+    public void prefetchTransactionData(int partitionId, long transactionId, int numTransactions) {
+        if (dataCache == null) {
+            return;
+        }
+
+        while (numTransactions > 0 && dataCache.get(partitionId, transactionId) != null) {
+            transactionId++;
+            numTransactions--;
+        }
+
+        if (numTransactions > 0) {
+            final long firstTransactionId = transactionId;
+            try {
+                getPartition(partitionId).getTransactionDataList(firstTransactionId, numTransactions).thenAccept(list -> {
+                    for (int i = 0; i < list.size(); i++) {
+                        dataCache.put(partitionId, firstTransactionId + i, list.get(i));
+                    }
+                });
+            } catch (RuntimeException ex) {
+                // Prefetching is best effort. The data is fetched again when it is needed.
+                logger.debug("failed to prefetch transaction data: partitionId=" + partitionId + " transactionId=" + firstTransactionId, ex);
+            }
+        }
+    }
+
+    /**
+     * Returns true if the data of the given transaction is in the cache.
+     *
+     * @param partitionId the id of the partition.
+     * @param transactionId the id of the transaction.
+     * @return {@code true} if the data is cached. {@code false}, otherwise.
+     */
+    boolean isCached(int partitionId, long transactionId) {
+        return dataCache != null && dataCache.get(partitionId, transactionId) != null;
+    }
+
+    /**
+     * Gets transaction data of consecutive transactions from a given partition id.
+     * The data is requested from the server in batches instead of one request per transaction.
+     *
+     * @param partitionId the id of the partition to read from.
+     * @param transactionId the id of the first transaction to read.
+     * @param numTransactions the number of transactions to read.
+     * @return a {@link Future} which contains the serialized transaction data in the order of transaction ids when complete.
+     */
+    @Override
+    public Future<List<byte[]>> getTransactionDataList(int partitionId, long transactionId, int numTransactions) {
+        return getPartition(partitionId).getTransactionDataList(transactionId, numTransactions);
+    }
+
     /**
      * Gets high watermark from a given partition id.
      *
@@ -2,6 +2,7 @@ package com.wepay.waltz.client.internal;
 
 import com.wepay.riff.network.MessageProcessingThreadPool;
 import com.wepay.riff.util.Logging;
+import com.wepay.waltz.client.AsyncWaltzClientCallbacks;
 import com.wepay.waltz.client.Transaction;
 import com.wepay.waltz.client.TransactionContext;
 import com.wepay.waltz.client.WaltzClientCallbacks;
@@ -12,6 +13,9 @@ import com.wepay.waltz.common.message.ReqId;
 import io.netty.handler.ssl.SslContext;
 import org.slf4j.Logger;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
 /**
  * An internal implementation of {@link StreamClient}, extending {@link InternalBaseClient}.
  */
@@ -39,7 +43,35 @@ public class InternalStreamClient extends InternalBaseClient implements StreamCl
         InternalRpcClient rpcClient,
         MessageProcessingThreadPool threadPool
     ) {
-        super(autoMount, sslCtx, maxConcurrentTransactions, callbacks, threadPool);
+        this(autoMount, sslCtx, maxConcurrentTransactions, callbacks, rpcClient, threadPool, 0, 0, 0);
+    }
+
+    /**
+     * Class Constructor.
+     *
+     * @param autoMount if {@code true}, mounts all partitions.
+     * @param sslCtx {@link SslContext}
+     * @param maxConcurrentTransactions the maximum number of concurrent transactions
+     * @param callbacks {@link WaltzClientCallbacks}
+     * @param rpcClient {@link InternalRpcClient}
+     * @param threadPool {@link MessageProcessingThreadPool}
+     * @param maxInlineDataSize the maximum size of transaction data to be pushed inline with the feed. Zero disables inlining.
+     * @param prefetchSize the number of feed entries ahead of the application whose data is prefetched. Zero disables prefetching.
+     * @param maxPreparedTransactions the maximum number of transactions prepared ahead of the application
+     *                                when {@code callbacks} is {@link AsyncWaltzClientCallbacks}.
+     */
+    public InternalStreamClient(
+        boolean autoMount,
+        SslContext sslCtx,
+        int maxConcurrentTransactions,
+        WaltzClientCallbacks callbacks,
+        InternalRpcClient rpcClient,
+        MessageProcessingThreadPool threadPool,
+        int maxInlineDataSize,
+        int prefetchSize,
+        int maxPreparedTransactions
+    ) {
+        super(autoMount, sslCtx, maxConcurrentTransactions, callbacks, threadPool, maxInlineDataSize, prefetchSize, maxPreparedTransactions);
         this.rpcClient = rpcClient;
     }
 
@@ -52,33 +84,104 @@ public class InternalStreamClient extends InternalBaseClient implements StreamCl
     @Override
     public void onMountingPartition(WaltzNetworkClient networkClient, Partition partition) {
         logger.info("sending MountRequest: {} to={}", partition, networkClient.endpoint);
-        networkClient.sendMessage(new MountRequest(partition.nextReqId(), partition.clientHighWaterMark(), networkClient.seqNum));
+        networkClient.sendMessage(new MountRequest(partition.nextReqId(), partition.clientHighWaterMark(), networkClient.seqNum, true, partition.maxInlineDataSize()));
     }
 
     /**
      * Invoked when a transaction committed response is received from a waltz server.
      * Internally, invokes {@link WaltzClientCallbacks#applyTransaction(Transaction)}.
+     * If the callbacks are {@link AsyncWaltzClientCallbacks}, the transaction is prepared first.
      *
      * @param transactionId the id of the received transaction.
      * @param header the header of the received transaction.
      * @param reqId the reqId of the received transaction.
+     * @param data the data of the received transaction if it is pushed inline with the feed, otherwise null.
      */
     @Override
-    public void onTransactionReceived(long transactionId, int header, ReqId reqId) {
+    public void onTransactionReceived(long transactionId, int header, ReqId reqId, byte[] data) {
+        CompletableFuture<Transaction> prepared = onPrepareTransaction(transactionId, header, reqId, data);
+        if (prepared != null) {
+            onPreparedTransactionReceived(transactionId, reqId, prepared);
+            return;
+        }
+
         try {
-            callbacks.applyTransaction(new Transaction(transactionId, header, reqId, rpcClient));
+            callbacks.applyTransaction(new Transaction(transactionId, header, reqId, data, rpcClient));
 
         } catch (Throwable ex) {
-            logger.error("failed to apply transaction: partitionId=" + reqId.partitionId() + " transactionId=" + transactionId, ex);
-            try {
-                callbacks.uncaughtException(reqId.partitionId(), transactionId, ex);
-            } catch (Exception e) {
-                logger.error("callback error [uncaughtException]", e);
-            }
+            applyFailed(transactionId, reqId, ex);
             throw ex;
         }
     }
 
+    /**
+     * Invoked to start preparing a received transaction ahead of its application.
+     * Internally, invokes {@link AsyncWaltzClientCallbacks#prepareTransaction(Transaction)}.
+     *
+     * @param transactionId the id of the received transaction.
+     * @param header the header of the received transaction.
+     * @param reqId the reqId of the received transaction.
+     * @param data the data of the received transaction if it is pushed inline with the feed, otherwise null.
+     * @return a future which completes with the prepared transaction, or null if the callbacks are not {@code AsyncWaltzClientCallbacks}.
+     */
+    @Override
+    public CompletableFuture<Transaction> onPrepareTransaction(long transactionId, int header, ReqId reqId, byte[] data) {
+        if (!(callbacks instanceof AsyncWaltzClientCallbacks)) {
+            return null;
+        }
+
+        Transaction transaction = new Transaction(transactionId, header, reqId, data, rpcClient);
+        try {
+            return ((AsyncWaltzClientCallbacks) callbacks).prepareTransaction(transaction).toCompletableFuture().thenApply(v -> transaction);
+
+        } catch (Throwable ex) {
+            CompletableFuture<Transaction> future = new CompletableFuture<>();
+            future.completeExceptionally(ex);
+            return future;
+        }
+    }
+
+    /**
+     * Invoked to apply a prepared transaction. Waits for the preparation to complete,
+     * then invokes {@link WaltzClientCallbacks#applyTransaction(Transaction)}.
+     *
+     * @param transactionId the id of the received transaction.
+     * @param reqId the reqId of the received transaction.
+     * @param prepared the future returned by {@link #onPrepareTransaction(long, int, ReqId, byte[])}.
+     */
+    @Override
+    public void onPreparedTransactionReceived(long transactionId, ReqId reqId, CompletableFuture<Transaction> prepared) {
+        try {
+            callbacks.applyTransaction(prepared.join());
+
+        } catch (Throwable ex) {
+            applyFailed(transactionId, reqId, ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex);
+            throw ex;
+        }
+    }
+
+    private void applyFailed(long transactionId, ReqId reqId, Throwable ex) {
+        logger.error("failed to apply transaction: partitionId=" + reqId.partitionId() + " transactionId=" + transactionId, ex);
+        try {
+            callbacks.uncaughtException(reqId.partitionId(), transactionId, ex);
+        } catch (Exception e) {
+            logger.error("callback error [uncaughtException]", e);
+        }
+    }
+
+    /**
+     * Invoked when the data of received transactions should be prefetched before the transactions are applied.
+     * Internally, invokes {@link InternalRpcClient#prefetchTransactionData(int, long, int)}.
+     *
+     * @param partitionId the id of the partition.
+     * @param transactionId the id of the first transaction.
+     * @param numTransactions the number of transactions.
+     */
+    @Override
+    public void onPrefetchTransactionData(int partitionId, long transactionId, int numTransactions) {
+        rpcClient.prefetchTransactionData(partitionId, transactionId, numTransactions);
+    }
+
     /**
      * Returns a {@link TransactionBuilderImpl} for a given {@link TransactionContext}.
      *
@@ -1,13 +1,17 @@
 package com.wepay.waltz.client.internal;
 
 import com.wepay.riff.util.Logging;
+import com.wepay.waltz.client.Transaction;
 import com.wepay.waltz.client.TransactionContext;
 import com.wepay.waltz.client.internal.network.WaltzNetworkClient;
 import com.wepay.waltz.client.internal.network.WaltzNetworkClientCallbacks;
 import com.wepay.waltz.common.message.AppendRequest;
+import com.wepay.waltz.common.message.FeedDataBatch;
 import com.wepay.waltz.common.message.FlushRequest;
 import com.wepay.waltz.common.message.LockFailure;
+import com.wepay.waltz.common.message.MessageCodecV3;
 import com.wepay.waltz.common.message.ReqId;
+import com.wepay.waltz.common.message.TransactionDataBatchResponse;
 import com.wepay.waltz.common.util.Utils;
 import com.wepay.waltz.exception.ClientClosedException;
 import com.wepay.waltz.exception.DataChecksumException;
@@ -15,8 +19,10 @@ import com.wepay.waltz.exception.PartitionInactiveException;
 import com.wepay.zktools.clustermgr.Endpoint;
 import org.slf4j.Logger;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.PriorityQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Future;
@@ -41,6 +47,10 @@ public class Partition {
     public final int partitionId;
     public final int clientId;
 
+    private final int maxInlineDataSize;
+    private final int prefetchSize;
+    private final int maxPreparedTransactions;
+
     private final Object lock = new Object();
     private final Object transactionApplicationLock = new Object();
     private final HashMap<ReqId, TransactionContext> transactionApplicationFailed = new HashMap<>();
@@ -48,6 +58,7 @@ public class Partition {
     private final PriorityQueue<LockFailure> lockFailureQueue;
     private final LinkedList<FlushPoint> flushPointQueue = new LinkedList<>();
     private final HashMap<Long, DataFuture> dataFutures;
+    private final HashMap<ReqId, DataBatch> dataBatches; // guarded by dataFutures
 
     private final AtomicInteger seqNumGenerator = new AtomicInteger(0);
 
@@ -66,14 +77,39 @@ public class Partition {
      * @param maxConcurrentTransactions the maximum concurrent transactions that can be submitted to this partition.
      */
     public Partition(int partitionId, int clientId, int maxConcurrentTransactions) {
+        this(partitionId, clientId, maxConcurrentTransactions, 0, 0, 0);
+    }
+
+    /**
+     * Class Constructor.
+     *
+     * @param partitionId the partition id.
+     * @param clientId the client id.
+     * @param maxConcurrentTransactions the maximum concurrent transactions that can be submitted to this partition.
+     * @param maxInlineDataSize the maximum size of transaction data to be pushed inline with the feed. Zero disables inlining.
+     * @param prefetchSize the number of feed entries ahead of the application whose data is prefetched. Zero disables prefetching.
+     * @param maxPreparedTransactions the maximum number of transactions prepared ahead of the application.
+     */
+    public Partition(
+        int partitionId,
+        int clientId,
+        int maxConcurrentTransactions,
+        int maxInlineDataSize,
+        int prefetchSize,
+        int maxPreparedTransactions
+    ) {
         this.partitionId = partitionId;
         this.clientId = clientId;
+        this.maxInlineDataSize = maxInlineDataSize;
+        this.prefetchSize = prefetchSize;
+        this.maxPreparedTransactions = maxPreparedTransactions;
         this.generation = -1;
         this.transactionMonitor = new TransactionMonitor(maxConcurrentTransactions);
         this.lockFailureQueue = new PriorityQueue<>(LockFailure.COMPARATOR);
         this.networkClient = null;
         this.clientHighWaterMark = new AtomicLong(-1);
         this.dataFutures = new HashMap<>();
+        this.dataBatches = new HashMap<>();
     }
 
     /**
@@ -94,6 +130,7 @@ public class Partition {
                         future.completeExceptionally(exception);
                     }
                 }
+                dataBatches.clear();
             }
             lock.notifyAll();
         }
@@ -119,6 +156,13 @@ public class Partition {
         return generation;
     }
 
+    /**
+     * @return the maximum size of transaction data to be pushed inline with the feed. Zero means inlining is disabled.
+     */
+    public int maxInlineDataSize() {
+        return maxInlineDataSize;
+    }
+
     /**
      * Activates the partition, sets {@link #state} to {@link PartitionState#ACTIVE},
      * with client high-water mark as {@code highWaterMark}.
@@ -291,7 +335,7 @@ public class Partition {
 
     /**
      * Invoked after a transaction is committed to the corresponding partition on a Waltz server.
-     * In turn invokes {@link WaltzNetworkClientCallbacks#onTransactionReceived(long, int, ReqId)} on {@code networkClientCallbacks}.
+     * In turn invokes {@link WaltzNetworkClientCallbacks#onTransactionReceived(long, int, ReqId, byte[])} on {@code networkClientCallbacks}.
      *
      * @param transactionId the id of the transaction.
      * @param header the header data of the transaction.
@@ -300,65 +344,144 @@ public class Partition {
      */
     public void applyTransaction(long transactionId, int header, ReqId reqId, WaltzNetworkClientCallbacks networkClientCallbacks) {
         try {
-            if (state != PartitionState.ACTIVE) {
-                return;
-            }
+            applyTransactionInternal(transactionId, header, reqId, null, null, networkClientCallbacks);
+        } finally {
+            processAuxilliaryQueues();
+        }
+    }
 
-            synchronized (transactionApplicationLock) {
-                long expectedTransactionId = clientHighWaterMark() + 1;
+    /**
+     * Invoked after a run of transactions is committed to the corresponding partition on a Waltz server.
+     * Applies the transactions in order as {@link #applyTransaction(long, int, ReqId, WaltzNetworkClientCallbacks)} does,
+     * and processes lock failures once after the run. Transaction data pushed inline with the feed is handed over to the callbacks.
+     * Otherwise, if prefetching is enabled, the data of up to {@code prefetchSize} transactions ahead of the application
+     * is prefetched by {@link WaltzNetworkClientCallbacks#onPrefetchTransactionData(int, long, int)}.
+     * Up to {@code maxPreparedTransactions} transactions are prepared ahead of the application by
+     * {@link WaltzNetworkClientCallbacks#onPrepareTransaction(long, int, ReqId, byte[])}, while the transactions are
+     * still applied and the client high-water mark is still advanced in order.
+     *
+     * @param feedDataBatch the {@code FeedDataBatch} containing the transactions.
+     * @param networkClientCallbacks the {@code WaltzNetworkClientCallbacks} instance to invoke callbacks on.
+     */
+    public void applyTransactions(FeedDataBatch feedDataBatch, WaltzNetworkClientCallbacks networkClientCallbacks) {
+        try {
+            int size = feedDataBatch.size();
+            boolean prefetch = prefetchSize > 0 && feedDataBatch.data == null;
+            // Transactions already applied are neither prefetched nor prepared
+            int start = (int) Math.max(0L, Math.min(size, clientHighWaterMark() + 1 - feedDataBatch.firstTransactionId));
+            int prefetched = start;
+
+            boolean pipelined = maxPreparedTransactions > 0;
+            int preparing = start;
+            @SuppressWarnings("unchecked")
+            CompletableFuture<Transaction>[] prepared = pipelined ? new CompletableFuture[size] : null;
+
+            for (int i = 0; i < size; i++) {
+                // Request the next window when half of the prefetched transactions are applied
+                if (prefetch && prefetched < size && prefetched - i <= prefetchSize / 2 && state == PartitionState.ACTIVE) {
+                    int end = Math.min(size, i + prefetchSize);
+                    networkClientCallbacks.onPrefetchTransactionData(partitionId, feedDataBatch.transactionId(prefetched), end - prefetched);
+                    prefetched = end;
+                }
 
-                // Process the transaction only when it has the expected transaction id
-                if (expectedTransactionId == transactionId) {
-                    TransactionContext context = transactionMonitor.committed(reqId);
+                // Keep up to maxPreparedTransactions transactions in preparation
+                while (pipelined && preparing < size && preparing - i < maxPreparedTransactions && state == PartitionState.ACTIVE) {
+                    CompletableFuture<Transaction> future = networkClientCallbacks.onPrepareTransaction(
+                        feedDataBatch.transactionId(preparing),
+                        feedDataBatch.headers[preparing],
+                        feedDataBatch.reqIds[preparing],
+                        feedDataBatch.data(preparing)
+                    );
+                    if (future == null) {
+                        // The callbacks do not prepare transactions ahead
+                        pipelined = false;
+                        break;
+                    }
+                    prepared[preparing++] = future;
+                }
 
-                    if (context != null) {
-                        // Notify the context that the transction was persisted successfully.
-                        context.onCompletion(true);
+                applyTransactionInternal(
+                    feedDataBatch.transactionId(i),
+                    feedDataBatch.headers[i],
+                    feedDataBatch.reqIds[i],
+                    feedDataBatch.data(i),
+                    prepared != null ? prepared[i] : null,
+                    networkClientCallbacks
+                );
+            }
+        } finally {
+            processAuxilliaryQueues();
+        }
+    }
 
-                    } else {
-                        // Recover the context in case that the transaction application previously failed
-                        context = transactionApplicationFailed.remove(reqId);
-
-                        if (!transactionApplicationFailed.isEmpty()) {
-                            // This should never happen.
-                            logger.error("Failed context map not cleared by retry. This should NEVER happen:"
-                                + " partitionId=" + partitionId
-                                + " transactionId=" + transactionId
-                                + " reqIds=" + transactionApplicationFailed.keySet()
-                            );
-                        }
-                    }
+    private void applyTransactionInternal(
+        long transactionId,
+        int header,
+        ReqId reqId,
+        byte[] data,
+        CompletableFuture<Transaction> prepared,
+        WaltzNetworkClientCallbacks networkClientCallbacks
+    ) {
+        if (state != PartitionState.ACTIVE) {
+            return;
+        }
 
-                    try {
-                        networkClientCallbacks.onTransactionReceived(transactionId, header, reqId);
-
-                    } catch (Throwable ex) {
-                        if (context != null) {
-                            // Transaction application failed. Save the context for retry.
-                            transactionApplicationFailed.put(reqId, context);
-                        }
-                        throw ex;
-                    }
+        synchronized (transactionApplicationLock) {
+            long expectedTransactionId = clientHighWaterMark() + 1;
 
-                    // The transaction is successfully applied to the application state
-                    // Increment the client high-water mark
-                    clientHighWaterMark.incrementAndGet();
+            // Process the transaction only when it has the expected transaction id
+            if (expectedTransactionId == transactionId) {
+                TransactionContext context = transactionMonitor.committed(reqId);
 
-                    if (context != null) {
-                        context.onApplication();
-                    }
+                if (context != null) {
+                    // Notify the context that the transction was persisted successfully.
+                    context.onCompletion(true);
 
                 } else {
-                    if (logger.isDebugEnabled()) {
-                        logger.debug("unexpected transaction received in applyTransaction, ignoring:"
+                    // Recover the context in case that the transaction application previously failed
+                    context = transactionApplicationFailed.remove(reqId);
+
+                    if (!transactionApplicationFailed.isEmpty()) {
+                        // This should never happen.
+                        logger.error("Failed context map not cleared by retry. This should NEVER happen:"
                             + " partitionId=" + partitionId
                             + " transactionId=" + transactionId
-                            + " expectedTransactionId=" + expectedTransactionId);
+                            + " reqIds=" + transactionApplicationFailed.keySet()
+                        );
                     }
                 }
+
+                try {
+                    if (prepared != null) {
+                        networkClientCallbacks.onPreparedTransactionReceived(transactionId, reqId, prepared);
+                    } else {
+                        networkClientCallbacks.onTransactionReceived(transactionId, header, reqId, data);
+                    }
+
+                } catch (Throwable ex) {
+                    if (context != null) {
+                        // Transaction application failed. Save the context for retry.
+                        transactionApplicationFailed.put(reqId, context);
+                    }
+                    throw ex;
+                }
+
+                // The transaction is successfully applied to the application state
+                // Increment the client high-water mark
+                clientHighWaterMark.incrementAndGet();
+
+                if (context != null) {
+                    context.onApplication();
+                }
+
+            } else {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("unexpected transaction received in applyTransaction, ignoring:"
+                        + " partitionId=" + partitionId
+                        + " transactionId=" + transactionId
+                        + " expectedTransactionId=" + expectedTransactionId);
+                }
             }
-        } finally {
-            processAuxilliaryQueues();
         }
     }
 
@@ -482,18 +605,76 @@ public class Partition {
         return future;
     }
 
+    /**
+     * Gets transaction data of consecutive transactions starting from {@code transactionId}.
+     * The data is requested in batches if the server supports them, otherwise one by one.
+     * Requests for the same transactions by {@link #getTransactionData(long)}
+     * share the pending results.
+     *
+     * @param transactionId the id of the first transaction.
+     * @param numTransactions the number of transactions.
+     * @return a {@link Future} which completes with serialized transaction data in the order of transaction ids.
+     */
+    public CompletableFuture<List<byte[]>> getTransactionDataList(long transactionId, int numTransactions) {
+        ArrayList<DataFuture> futures = new ArrayList<>(numTransactions);
+
+        synchronized (dataFutures) {
+            for (int i = 0; i < numTransactions; i++) {
+                DataFuture future = dataFutures.get(transactionId + i);
+                if (future == null) {
+                    future = new DataFuture(1);
+
+                    if (state == PartitionState.CLOSED) {
+                        future.completeExceptionally(new ClientClosedException());
+                    } else {
+                        dataFutures.put(transactionId + i, future);
+                    }
+                }
+                futures.add(future);
+            }
+        }
+
+        sendTransactionDataBatchRequest(transactionId, numTransactions);
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(v -> {
+            ArrayList<byte[]> list = new ArrayList<>(futures.size());
+            for (DataFuture future : futures) {
+                list.add(future.join());
+            }
+            return list;
+        });
+    }
+
     /**
      * Resubmits pending TransactionData requests.
      */
     public void resubmitTransactionDataRequests() {
         Long[] pendingRequests;
+        ArrayList<DataBatch> pendingBatches;
 
         synchronized (dataFutures) {
             pendingRequests = dataFutures.keySet().toArray(EMPTY_LONG_ARRAY);
+            pendingBatches = new ArrayList<>(dataBatches.values());
+            dataBatches.clear();
+        }
+
+        for (DataBatch batch : pendingBatches) {
+            sendTransactionDataBatchRequest(batch.transactionId, batch.numTransactions);
         }
 
         for (long transactionId : pendingRequests) {
-            sendTransactionDataRequest(transactionId);
+            // Transactions in a batch are requested by the batch request
+            boolean inBatch = false;
+            for (DataBatch batch : pendingBatches) {
+                if (batch.contains(transactionId)) {
+                    inBatch = true;
+                    break;
+                }
+            }
+
+            if (!inBatch) {
+                sendTransactionDataRequest(transactionId);
+            }
         }
     }
 
@@ -538,6 +719,35 @@ public class Partition {
         }
     }
 
+    /**
+     * Invoked when the data of a range of transactions is received from a Waltz server.
+     * If the server returned fewer transactions than requested, the rest is requested again.
+     *
+     * @param response the {@code TransactionDataBatchResponse} containing the transaction data.
+     */
+    public void transactionDataBatchReceived(TransactionDataBatchResponse response) {
+        DataBatch batch;
+
+        synchronized (dataFutures) {
+            batch = dataBatches.remove(response.reqId);
+        }
+
+        if (response.exception == null) {
+            for (int i = 0; i < response.size(); i++) {
+                transactionDataReceived(response.transactionId(i), response.data[i], response.checksums[i], null);
+            }
+
+            if (batch != null && response.size() > 0 && response.size() < batch.numTransactions) {
+                sendTransactionDataBatchRequest(batch.transactionId + response.size(), batch.numTransactions - response.size());
+            }
+
+        } else if (batch != null) {
+            for (int i = 0; i < batch.numTransactions; i++) {
+                transactionDataReceived(batch.transactionId + i, null, 0, response.exception);
+            }
+        }
+    }
+
     /**
      * Invoked when a flush response is received.
      *
@@ -598,6 +808,31 @@ public class Partition {
         }
     }
 
+    private void sendTransactionDataBatchRequest(long transactionId, int numTransactions) {
+        // TransactionDataBatchRequest is a RPC request. The partition doesn't need to be mounted.
+        if (state != PartitionState.CLOSED) {
+            // Cache the network client in the local variable for safety
+            WaltzNetworkClient networkClient = this.networkClient;
+
+            if (networkClient != null) {
+                if (networkClient.codecVersion() >= MessageCodecV3.VERSION) {
+                    ReqId reqId = nextReqId();
+                    synchronized (dataFutures) {
+                        dataBatches.put(reqId, new DataBatch(transactionId, numTransactions));
+                    }
+                    networkClient.requestTransactionDataBatch(reqId, transactionId, numTransactions);
+                } else {
+                    // The server doesn't support batches, or no message has been exchanged to tell. Request one by one.
+                    for (int i = 0; i < numTransactions; i++) {
+                        networkClient.requestTransactionData(nextReqId(), transactionId + i);
+                    }
+                }
+            } else {
+                logger.debug("failed to send data batch request: {}", this);
+            }
+        }
+    }
+
     /**
      * Resubmits pending HighWaterMark requests.
      */
@@ -683,4 +918,19 @@ public class Partition {
 
     }
 
+    private static class DataBatch {
+        final long transactionId;
+        final int numTransactions;
+
+        DataBatch(long transactionId, int numTransactions) {
+            this.transactionId = transactionId;
+            this.numTransactions = numTransactions;
+        }
+
+        boolean contains(long transactionId) {
+            return this.transactionId <= transactionId && transactionId < this.transactionId + numTransactions;
+        }
+
+    }
+
 }
@@ -16,6 +16,8 @@ public interface RpcClient {
 
     Future<byte[]> getTransactionData(int partitionId, long transactionId);
 
+    Future<List<byte[]>> getTransactionDataList(int partitionId, long transactionId, int numTransactions);
+
     Future<Long> getHighWaterMark(int partitionId);
 
     Future<Map<Endpoint, Map<String, Boolean>>> checkServerConnections(Set<Endpoint> serverEndpoints) throws InterruptedException;
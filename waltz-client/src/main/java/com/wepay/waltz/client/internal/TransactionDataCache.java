@@ -0,0 +1,113 @@
+package com.wepay.waltz.client.internal;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+/**
+ * A cache of transaction data on the client, keyed by the partition id and the transaction id.
+ * Transaction data is immutable once committed, so cached data never becomes stale.
+ * The total size of the cached data is bounded. The least recently used data is evicted first.
+ */
+public class TransactionDataCache {
+
+    private final long maxBytes;
+    private final LinkedHashMap<Key, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes = 0L;
+
+    /**
+     * Class Constructor.
+     *
+     * @param maxBytes the maximum total size of the cached data in bytes.
+     */
+    public TransactionDataCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("maxBytes must be positive");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Returns the cached data of the transaction.
+     *
+     * @param partitionId the id of the partition.
+     * @param transactionId the id of the transaction.
+     * @return the data, or null if it is not cached.
+     */
+    public byte[] get(int partitionId, long transactionId) {
+        synchronized (entries) {
+            return entries.get(new Key(partitionId, transactionId));
+        }
+    }
+
+    /**
+     * Caches the data of the transaction. Data larger than the cache is not cached.
+     *
+     * @param partitionId the id of the partition.
+     * @param transactionId the id of the transaction.
+     * @param data the data.
+     */
+    public void put(int partitionId, long transactionId, byte[] data) {
+        if (data.length > maxBytes) {
+            return;
+        }
+
+        synchronized (entries) {
+            byte[] old = entries.put(new Key(partitionId, transactionId), data);
+            if (old != null) {
+                bytes -= old.length;
+            }
+            bytes += data.length;
+
+            Iterator<byte[]> iter = entries.values().iterator();
+            while (bytes > maxBytes && iter.hasNext()) {
+                bytes -= iter.next().length;
+                iter.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the number of cached transactions.
+     */
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return the total size of the cached data in bytes.
+     */
+    public long bytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    private static final class Key {
+
+        final int partitionId;
+        final long transactionId;
+
+        Key(int partitionId, long transactionId) {
+            this.partitionId = partitionId;
+            this.transactionId = transactionId;
+        }
+
+        @Override
+        public int hashCode() {
+            return partitionId * 31 + Long.hashCode(transactionId);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o instanceof Key) {
+                Key other = (Key) o;
+                return partitionId == other.partitionId && transactionId == other.transactionId;
+            }
+            return false;
+        }
+
+    }
+
+}
@@ -43,14 +43,22 @@ public class WaltzClientDriverImpl implements WaltzClientDriver {
             (int) config.get(WaltzClientConfig.NUM_CONSUMER_THREADS)
         ).open();
 
-        this.rpcClient = new InternalRpcClient(sslCtx, maxConcurrentTransactions, callbacks);
+        this.rpcClient = new InternalRpcClient(
+            sslCtx,
+            maxConcurrentTransactions,
+            callbacks,
+            (long) config.get(WaltzClientConfig.TRANSACTION_DATA_CACHE_SIZE)
+        );
         this.streamClient = new InternalStreamClient(
             autoMount,
             sslCtx,
             maxConcurrentTransactions,
             callbacks,
             this.rpcClient,
-            this.messageProcessingThreadPool
+            this.messageProcessingThreadPool,
+            (int) config.get(WaltzClientConfig.FEED_MAX_INLINE_DATA_SIZE),
+            (int) config.get(WaltzClientConfig.TRANSACTION_DATA_PREFETCH_SIZE),
+            (int) config.get(WaltzClientConfig.MAX_PREPARED_TRANSACTIONS)
         );
 
         this.zooKeeperClient = new ZooKeeperClientImpl(
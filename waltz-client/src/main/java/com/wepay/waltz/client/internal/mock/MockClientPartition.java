@@ -1,6 +1,7 @@
 package com.wepay.waltz.client.internal.mock;
 
 import com.wepay.riff.util.RepeatingTask;
+import com.wepay.waltz.client.AsyncWaltzClientCallbacks;
 import com.wepay.waltz.client.Transaction;
 import com.wepay.waltz.client.TransactionContext;
 import com.wepay.waltz.client.WaltzClientCallbacks;
@@ -259,6 +260,9 @@ final class MockClientPartition {
                             );
 
                             try {
+                                if (callbacks instanceof AsyncWaltzClientCallbacks) {
+                                    ((AsyncWaltzClientCallbacks) callbacks).prepareTransaction(transaction).toCompletableFuture().join();
+                                }
                                 callbacks.applyTransaction(transaction);
                                 clientHighWaterMark.incrementAndGet();
 
@@ -36,6 +36,15 @@ class MockRpcClient implements RpcClient {
         return CompletableFuture.completedFuture(partitions.get(partitionId).getTransactionData(transactionId));
     }
 
+    @Override
+    public Future<List<byte[]>> getTransactionDataList(int partitionId, long transactionId, int numTransactions) {
+        List<byte[]> list = new ArrayList<>(numTransactions);
+        for (int i = 0; i < numTransactions; i++) {
+            list.add(partitions.get(partitionId).getTransactionData(transactionId + i));
+        }
+        return CompletableFuture.completedFuture(list);
+    }
+
     @Override
     public Future<Long> getHighWaterMark(int partitionId) {
         return CompletableFuture.completedFuture(partitions.get(partitionId).getHighWaterMark());
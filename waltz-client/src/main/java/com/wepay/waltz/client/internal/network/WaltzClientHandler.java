@@ -1,6 +1,8 @@
 package com.wepay.waltz.client.internal.network;
 
 import com.wepay.riff.network.Message;
+import com.wepay.riff.network.MessageAttributeReader;
+import com.wepay.riff.network.MessageAttributeWriter;
 import com.wepay.riff.network.MessageCodec;
 import com.wepay.riff.network.MessageHandler;
 import com.wepay.riff.network.MessageProcessingThreadPool;
@@ -9,17 +11,20 @@ import com.wepay.waltz.common.message.AbstractMessage;
 import com.wepay.waltz.common.message.AddPreferredPartitionResponse;
 import com.wepay.waltz.common.message.CheckStorageConnectivityResponse;
 import com.wepay.waltz.common.message.FeedData;
+import com.wepay.waltz.common.message.FeedDataBatch;
 import com.wepay.waltz.common.message.FlushResponse;
 import com.wepay.waltz.common.message.HighWaterMarkResponse;
 import com.wepay.waltz.common.message.LockFailure;
 import com.wepay.waltz.common.message.MessageCodecV0;
 import com.wepay.waltz.common.message.MessageCodecV1;
 import com.wepay.waltz.common.message.MessageCodecV2;
+import com.wepay.waltz.common.message.MessageCodecV3;
 import com.wepay.waltz.common.message.MessageType;
 import com.wepay.waltz.common.message.MountRequest;
 import com.wepay.waltz.common.message.MountResponse;
 import com.wepay.waltz.common.message.RemovePreferredPartitionResponse;
 import com.wepay.waltz.common.message.ReqId;
+import com.wepay.waltz.common.message.TransactionDataBatchResponse;
 import com.wepay.waltz.common.message.TransactionDataResponse;
 import com.wepay.waltz.common.message.ServerPartitionsAssignmentResponse;
 import org.slf4j.Logger;
@@ -40,6 +45,7 @@ public class WaltzClientHandler extends MessageHandler {
         CODECS.put(MessageCodecV0.VERSION, MessageCodecV0.INSTANCE);
         CODECS.put(MessageCodecV1.VERSION, MessageCodecV1.INSTANCE);
         CODECS.put(MessageCodecV2.VERSION, MessageCodecV2.INSTANCE);
+        CODECS.put(MessageCodecV3.VERSION, MessageCodecV3.INSTANCE);
     }
 
     private static final String HELLO_MESSAGE = "Waltz Client";
@@ -55,10 +61,18 @@ public class WaltzClientHandler extends MessageHandler {
      * @param messageProcessingThreadPool a {@code MessageProcessingThreadPool} instance, for the superclass {@link MessageHandler}, to process messages.
      */
     public WaltzClientHandler(WaltzClientHandlerCallbacks handlerCallbacks, MessageProcessingThreadPool messageProcessingThreadPool) {
-        super(CODECS, HELLO_MESSAGE, handlerCallbacks, 30, 60, messageProcessingThreadPool);
+        super(codecs(handlerCallbacks), HELLO_MESSAGE, handlerCallbacks, 30, 60, messageProcessingThreadPool);
         this.handlerCallbacks = handlerCallbacks;
     }
 
+    private static HashMap<Short, MessageCodec> codecs(WaltzClientHandlerCallbacks handlerCallbacks) {
+        HashMap<Short, MessageCodec> codecs = new HashMap<>();
+        for (MessageCodec codec : CODECS.values()) {
+            codecs.put(codec.version(), new VersionReportingCodec(codec, handlerCallbacks));
+        }
+        return codecs;
+    }
+
     @Override
     protected Integer extractProcessorId(Message msg) {
         return ((AbstractMessage) msg).reqId.partitionId();
@@ -93,6 +107,10 @@ public class WaltzClientHandler extends MessageHandler {
                 handlerCallbacks.onTransactionIdReceived(feedData.transactionId, feedData.header, feedData.reqId);
                 break;
 
+            case MessageType.FEED_DATA_BATCH:
+                handlerCallbacks.onFeedDataBatchReceived((FeedDataBatch) msg);
+                break;
+
             case MessageType.FEED_SUSPENDED:
                 if (reqId.eq(feedSessions.get(partitionId))) {
                     handlerCallbacks.onFeedSuspended(partitionId, reqId);
@@ -110,6 +128,10 @@ public class WaltzClientHandler extends MessageHandler {
                 );
                 break;
 
+            case MessageType.TRANSACTION_DATA_BATCH_RESPONSE:
+                handlerCallbacks.onTransactionDataBatchReceived((TransactionDataBatchResponse) msg);
+                break;
+
             case MessageType.FLUSH_RESPONSE:
                 FlushResponse flushResponse = (FlushResponse) msg;
                 handlerCallbacks.onFlushCompleted(flushResponse.reqId, flushResponse.transactionId);
@@ -170,4 +192,43 @@ public class WaltzClientHandler extends MessageHandler {
         return super.sendMessage(msg, flush);
     }
 
+    /**
+     * A {@link MessageCodec} which reports its version to the callbacks whenever it encodes or decodes a message.
+     * Only the codec negotiated with the server is used after the handshake, so the reported version is
+     * the negotiated version.
+     */
+    private static class VersionReportingCodec implements MessageCodec {
+
+        private final MessageCodec codec;
+        private final WaltzClientHandlerCallbacks handlerCallbacks;
+
+        VersionReportingCodec(MessageCodec codec, WaltzClientHandlerCallbacks handlerCallbacks) {
+            this.codec = codec;
+            this.handlerCallbacks = handlerCallbacks;
+        }
+
+        @Override
+        public byte magicByte() {
+            return codec.magicByte();
+        }
+
+        @Override
+        public short version() {
+            return codec.version();
+        }
+
+        @Override
+        public Message decode(MessageAttributeReader reader) {
+            handlerCallbacks.onMessageCodecUsed(codec.version());
+            return codec.decode(reader);
+        }
+
+        @Override
+        public void encode(Message msg, MessageAttributeWriter writer) {
+            handlerCallbacks.onMessageCodecUsed(codec.version());
+            codec.encode(msg, writer);
+        }
+
+    }
+
 }
@@ -1,8 +1,10 @@
 package com.wepay.waltz.client.internal.network;
 
 import com.wepay.riff.network.MessageHandlerCallbacks;
+import com.wepay.waltz.common.message.FeedDataBatch;
 import com.wepay.waltz.common.message.LockFailure;
 import com.wepay.waltz.common.message.ReqId;
+import com.wepay.waltz.common.message.TransactionDataBatchResponse;
 
 import java.util.List;
 import java.util.Map;
@@ -12,6 +14,14 @@ import java.util.Map;
  */
 public interface WaltzClientHandlerCallbacks extends MessageHandlerCallbacks {
 
+    /**
+     * Invoked when a message codec encodes or decodes a message, i.e., when the codec negotiated with
+     * the waltz server is in use.
+     *
+     * @param version the version of the message codec.
+     */
+    void onMessageCodecUsed(short version);
+
     /**
      * Invoked if a partition is not yet ready to be mounted.
      *
@@ -47,6 +57,13 @@ public interface WaltzClientHandlerCallbacks extends MessageHandlerCallbacks {
      */
     void onTransactionIdReceived(long transactionId, int header, ReqId reqId);
 
+    /**
+     * Invoked when a run of transaction committed/appended responses (a.k.a Feed data) is received in one message.
+     *
+     * @param feedDataBatch the {@code FeedDataBatch} containing the transactions.
+     */
+    void onFeedDataBatchReceived(FeedDataBatch feedDataBatch);
+
     /**
      * Invoked when the actual transaction data is received.
      *
@@ -58,6 +75,13 @@ public interface WaltzClientHandlerCallbacks extends MessageHandlerCallbacks {
      */
     void onTransactionDataReceived(int partitionId, long transactionId, byte[] data, int checksum, Throwable exception);
 
+    /**
+     * Invoked when the data of a range of transactions is received in one message.
+     *
+     * @param response the {@code TransactionDataBatchResponse} containing the transaction data.
+     */
+    void onTransactionDataBatchReceived(TransactionDataBatchResponse response);
+
     /**
      * Invoked when a flush is completed, i.e., when all pending transactions are processed.
      *
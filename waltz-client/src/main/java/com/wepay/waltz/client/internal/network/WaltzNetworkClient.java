@@ -9,12 +9,15 @@ import com.wepay.waltz.common.message.AbstractMessage;
 import com.wepay.waltz.common.message.AddPreferredPartitionRequest;
 import com.wepay.waltz.common.message.CheckStorageConnectivityRequest;
 import com.wepay.waltz.common.message.RemovePreferredPartitionRequest;
+import com.wepay.waltz.common.message.FeedDataBatch;
 import com.wepay.waltz.common.message.FeedRequest;
 import com.wepay.waltz.common.message.HighWaterMarkRequest;
 import com.wepay.waltz.common.message.LockFailure;
 import com.wepay.waltz.common.message.MessageType;
 import com.wepay.waltz.common.message.MountRequest;
 import com.wepay.waltz.common.message.ReqId;
+import com.wepay.waltz.common.message.TransactionDataBatchRequest;
+import com.wepay.waltz.common.message.TransactionDataBatchResponse;
 import com.wepay.waltz.common.message.TransactionDataRequest;
 import com.wepay.waltz.common.message.ServerPartitionsAssignmentRequest;
 import com.wepay.waltz.exception.NetworkClientClosedException;
@@ -51,6 +54,7 @@ public class WaltzNetworkClient extends NetworkClient {
 
     private boolean channelReady = false;
     private volatile boolean running = true;
+    private volatile short codecVersion = -1;
     private Map<Integer, CompletableFuture<Object>> outputFuturesPerMessageType;
 
     /**
@@ -183,6 +187,40 @@ public class WaltzNetworkClient extends NetworkClient {
         }
     }
 
+    /**
+     * Returns the version of the message codec negotiated with the server. The version is known once a message
+     * is sent or received after the handshake.
+     *
+     * @return the version of the negotiated message codec, or {@code -1} if it is not known yet.
+     */
+    public short codecVersion() {
+        return codecVersion;
+    }
+
+    /**
+     * Requests transaction data for a range of transactions.
+     * The server supports this request only if the negotiated message codec is
+     * {@link com.wepay.waltz.common.message.MessageCodecV3} or later.
+     *
+     * @param reqId reqId of the {@link TransactionDataBatchRequest}.
+     * @param transactionId id of the first transaction.
+     * @param numTransactions the number of transactions.
+     * @throws NetworkClientClosedException if this instance is already closed.
+     */
+    public void requestTransactionDataBatch(ReqId reqId, long transactionId, int numTransactions) {
+        synchronized (lock) {
+            if (!running) {
+                throw new NetworkClientClosedException();
+            }
+
+            if (channelReady) {
+                sendMessage(new TransactionDataBatchRequest(reqId, transactionId, numTransactions));
+            } else {
+                logger.info("failed to send transaction data batch request, channel not ready: partitionId=" + reqId.partitionId());
+            }
+        }
+    }
+
     /**
      * Requests high watermark for a given transactionId.
      *
@@ -318,6 +356,13 @@ public class WaltzNetworkClient extends NetworkClient {
     }
 
     private class WaltzClientHandlerCallbacksImpl implements WaltzClientHandlerCallbacks {
+        @Override
+        public void onMessageCodecUsed(short version) {
+            if (codecVersion != version) {
+                codecVersion = version;
+            }
+        }
+
         @Override
         public void onChannelActive() {
             synchronized (lock) {
@@ -363,7 +408,7 @@ public class WaltzNetworkClient extends NetworkClient {
                 logger.info("Partition was not ready, retrying: partitionId=" + partitionId + " server=" + endpoint);
                 // Backoff
                 Uninterruptibly.sleep(500);
-                sendMessage(new MountRequest(partition.nextReqId(), partition.clientHighWaterMark(), seqNum));
+                sendMessage(new MountRequest(partition.nextReqId(), partition.clientHighWaterMark(), seqNum, true, partition.maxInlineDataSize()));
             } else {
                 if (logger.isDebugEnabled()) {
                     logger.debug("partition not found: event=onPartitionNotReady partitionId=" + partitionId);
@@ -380,7 +425,7 @@ public class WaltzNetworkClient extends NetworkClient {
 
                     // Send a feed request
                     long clientHighWaterMark = partition.clientHighWaterMark();
-                    sendMessage(new FeedRequest(sessionId, clientHighWaterMark));
+                    sendMessage(new FeedRequest(sessionId, clientHighWaterMark, true, partition.maxInlineDataSize()));
                 } else {
                     if (logger.isDebugEnabled()) {
                         logger.debug("partition not found: event=onPartitionMounted partitionId=" + partitionId);
@@ -395,7 +440,7 @@ public class WaltzNetworkClient extends NetworkClient {
             Partition partition = getPartition(partitionId);
             if (partition != null) {
                 long clientHighWaterMark = partition.clientHighWaterMark();
-                sendMessage(new FeedRequest(sessionId, clientHighWaterMark));
+                sendMessage(new FeedRequest(sessionId, clientHighWaterMark, true, partition.maxInlineDataSize()));
             } else {
                 if (logger.isDebugEnabled()) {
                     logger.debug("partition not found: event=onFeedSuspended partitionId=" + partitionId);
@@ -418,6 +463,21 @@ public class WaltzNetworkClient extends NetworkClient {
             }
         }
 
+        @Override
+        public void onFeedDataBatchReceived(FeedDataBatch feedDataBatch) {
+            Partition partition = getPartition(feedDataBatch.reqId.partitionId());
+
+            // Ignore the transactions if they have an unexpected partition
+            if (partition != null) {
+                partition.applyTransactions(feedDataBatch, networkClientCallbacks);
+
+            } else {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("partition not found: event=onFeedDataBatchReceived partitionId=" + feedDataBatch.reqId.partitionId() + " firstTransactionId=" + feedDataBatch.firstTransactionId);
+                }
+            }
+        }
+
         @Override
         public void onTransactionDataReceived(int partitionId, long transactionId, byte[] data, int checksum, Throwable exception) {
             Partition partition = getPartition(partitionId);
@@ -431,6 +491,19 @@ public class WaltzNetworkClient extends NetworkClient {
             }
         }
 
+        @Override
+        public void onTransactionDataBatchReceived(TransactionDataBatchResponse response) {
+            Partition partition = getPartition(response.reqId.partitionId());
+
+            if (partition != null) {
+                partition.transactionDataBatchReceived(response);
+            } else {
+                if (logger.isDebugEnabled()) {
+                    logger.debug("partition not found: event=onTransactionDataBatchReceived partitionId=" + response.reqId.partitionId() + " firstTransactionId=" + response.firstTransactionId);
+                }
+            }
+        }
+
         @Override
         public void onFlushCompleted(ReqId reqId, long transactionId) {
             Partition partition = getPartition(reqId.partitionId());
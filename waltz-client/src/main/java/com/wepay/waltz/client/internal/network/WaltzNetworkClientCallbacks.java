@@ -1,8 +1,11 @@
 package com.wepay.waltz.client.internal.network;
 
+import com.wepay.waltz.client.Transaction;
 import com.wepay.waltz.client.internal.Partition;
 import com.wepay.waltz.common.message.ReqId;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * The interface for WaltzNetworkClient callback methods.
  */
@@ -29,7 +32,39 @@ public interface WaltzNetworkClientCallbacks {
      * @param transactionId the id of the received transaction.
      * @param header the header of the received transaction.
      * @param reqId the reqId of the received transaction.
+     * @param data the data of the received transaction if it is pushed inline with the feed, otherwise null.
+     */
+    void onTransactionReceived(long transactionId, int header, ReqId reqId, byte[] data);
+
+    /**
+     * Invoked when the data of received transactions should be prefetched before the transactions are applied.
+     *
+     * @param partitionId the id of the partition.
+     * @param transactionId the id of the first transaction.
+     * @param numTransactions the number of transactions.
+     */
+    void onPrefetchTransactionData(int partitionId, long transactionId, int numTransactions);
+
+    /**
+     * Invoked to start preparing a received transaction ahead of its application.
+     * Preparations of transactions may complete in any order.
+     *
+     * @param transactionId the id of the received transaction.
+     * @param header the header of the received transaction.
+     * @param reqId the reqId of the received transaction.
+     * @param data the data of the received transaction if it is pushed inline with the feed, otherwise null.
+     * @return a future which completes with the prepared transaction, or null if transactions are not prepared ahead.
+     */
+    CompletableFuture<Transaction> onPrepareTransaction(long transactionId, int header, ReqId reqId, byte[] data);
+
+    /**
+     * Invoked to apply a transaction prepared by {@link #onPrepareTransaction(long, int, ReqId, byte[])}.
+     * This is invoked in the transaction id order, and waits for the preparation to complete.
+     *
+     * @param transactionId the id of the received transaction.
+     * @param reqId the reqId of the received transaction.
+     * @param prepared the future returned by {@link #onPrepareTransaction(long, int, ReqId, byte[])}.
      */
-    void onTransactionReceived(long transactionId, int header, ReqId reqId);
+    void onPreparedTransactionReceived(long transactionId, ReqId reqId, CompletableFuture<Transaction> prepared);
 
 }
@@ -477,6 +477,15 @@ public class AbstractClientCallbacksForJDBCTest {
                 return CompletableFuture.completedFuture("dummy".getBytes(StandardCharsets.UTF_8));
             }
 
+            @Override
+            public Future<List<byte[]>> getTransactionDataList(int partitionId, long transactionId, int numTransactions) {
+                List<byte[]> list = new ArrayList<>();
+                for (int i = 0; i < numTransactions; i++) {
+                    list.add("dummy".getBytes(StandardCharsets.UTF_8));
+                }
+                return CompletableFuture.completedFuture(list);
+            }
+
             @Override
             public Future<Long> getHighWaterMark(int partitionId) {
                 return CompletableFuture.completedFuture(-1L);
@@ -1,10 +1,12 @@
 package com.wepay.waltz.client.internal;
 
 import com.wepay.riff.network.ClientSSL;
+import com.wepay.riff.network.MessageCodec;
 import com.wepay.riff.util.PortFinder;
 import com.wepay.waltz.client.WaltzClientCallbacks;
 import com.wepay.waltz.common.util.Utils;
 import com.wepay.waltz.server.WaltzServerConfig;
+import com.wepay.waltz.server.internal.WaltzServerHandler;
 import com.wepay.waltz.store.Store;
 import com.wepay.waltz.test.mock.MockClusterManager;
 import com.wepay.waltz.test.mock.MockStore;
@@ -57,7 +59,17 @@ public class InternalClientTestBase {
         store = new MockStore();
         partitionInfoList = Arrays.asList(partitionInfo0, partitionInfo1, partitionInfo2);
 
-        serverRunner = new WaltzServerRunner(portFinder.getPort(), null, config, true) {
+        serverRunner = startServerRunner(clusterManager, store, WaltzServerHandler.CODECS);
+
+        managedServer = clusterManager.managedServers().iterator().next();
+        managedServer.setPartitions(partitionInfoList);
+
+        endpoints = new HashMap<>();
+        endpoints.put(clusterManager.endPoint(managedServer), partitionInfoList);
+    }
+
+    protected WaltzServerRunner startServerRunner(ClusterManager clusterManager, Store store, Map<Short, MessageCodec> codecs) {
+        WaltzServerRunner serverRunner = new WaltzServerRunner(portFinder.getPort(), null, config, true) {
             @Override
             protected ZooKeeperClient getZkClient() {
                 return null;
@@ -72,15 +84,16 @@ public class InternalClientTestBase {
             protected ClusterManager getClusterManager() {
                 return clusterManager;
             }
+
+            @Override
+            protected Map<Short, MessageCodec> getMessageCodecs() {
+                return codecs;
+            }
         };
         serverRunner.startAsync();
         serverRunner.awaitStart();
 
-        managedServer = clusterManager.managedServers().iterator().next();
-        managedServer.setPartitions(partitionInfoList);
-
-        endpoints = new HashMap<>();
-        endpoints.put(clusterManager.endPoint(managedServer), partitionInfoList);
+        return serverRunner;
     }
 
     protected MockWaltzClientCallbacks getCallbacks() {
@@ -94,7 +107,11 @@ public class InternalClientTestBase {
     }
 
     protected InternalRpcClient getInternalRpcClient(int maxConcurrentTransactions) {
-        InternalRpcClient internalRpcClient = new InternalRpcClient(clientSslCtx, maxConcurrentTransactions, getCallbacks());
+        return getInternalRpcClient(maxConcurrentTransactions, 0L);
+    }
+
+    protected InternalRpcClient getInternalRpcClient(int maxConcurrentTransactions, long dataCacheSize) {
+        InternalRpcClient internalRpcClient = new InternalRpcClient(clientSslCtx, maxConcurrentTransactions, getCallbacks(), dataCacheSize);
         clients.add(internalRpcClient);
 
         internalRpcClient.setNumPartitions(partitionInfoList.size());
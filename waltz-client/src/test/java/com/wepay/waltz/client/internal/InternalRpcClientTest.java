@@ -1,16 +1,34 @@
 package com.wepay.waltz.client.internal;
 
+import com.wepay.riff.network.MessageCodec;
+import com.wepay.waltz.client.Transaction;
 import com.wepay.waltz.client.WaltzClientConfig;
+import com.wepay.waltz.client.internal.network.WaltzNetworkClient;
+import com.wepay.waltz.client.internal.network.WaltzNetworkClientCallbacks;
+import com.wepay.waltz.common.message.FeedDataBatch;
+import com.wepay.waltz.common.message.MessageCodecV0;
+import com.wepay.waltz.common.message.MessageCodecV1;
+import com.wepay.waltz.common.message.MessageCodecV2;
+import com.wepay.waltz.common.message.ReqId;
+import com.wepay.waltz.test.mock.MockClusterManager;
 import com.wepay.waltz.test.mock.MockContext;
+import com.wepay.waltz.test.mock.MockStore;
+import com.wepay.waltz.test.util.WaltzServerRunner;
+import com.wepay.zktools.clustermgr.ManagedServer;
 import com.wepay.zktools.util.Uninterruptibly;
 import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 
 public class InternalRpcClientTest extends InternalClientTestBase {
@@ -56,4 +74,208 @@ public class InternalRpcClientTest extends InternalClientTestBase {
         }
     }
 
+    @Test
+    public void testTransactionDataList() throws Exception {
+        final int numTransactions = 10;
+        List<String> expected = new ArrayList<>();
+
+        InternalRpcClient internalRpcClient = getInternalRpcClient(WaltzClientConfig.DEFAULT_MAX_CONCURRENT_TRANSACTIONS);
+        InternalStreamClient internalStreamClient = getInternalStreamClient(true, WaltzClientConfig.DEFAULT_MAX_CONCURRENT_TRANSACTIONS, internalRpcClient);
+
+        for (int i = 0; i < numTransactions; i++) {
+            String data = "transaction" + i;
+            expected.add(data);
+
+            MockContext context = MockContext.builder().header(0).data(data).build();
+            TransactionBuilderImpl transactionBuilder = internalStreamClient.getTransactionBuilder(context);
+            context.execute(transactionBuilder);
+
+            TransactionFuture future = internalStreamClient.append(transactionBuilder.buildRequest(), context);
+
+            assertTrue(future.get());
+        }
+
+        List<byte[]> dataList = Uninterruptibly.call(() -> internalRpcClient.getTransactionDataList(0, 0, numTransactions).get());
+        assertEquals(numTransactions, dataList.size());
+        for (int i = 0; i < numTransactions; i++) {
+            assertEquals(expected.get(i), new String(dataList.get(i), UTF_8));
+        }
+
+        dataList = Uninterruptibly.call(() -> internalRpcClient.getTransactionDataList(0, 3, 5).get());
+        assertEquals(5, dataList.size());
+        for (int i = 0; i < 5; i++) {
+            assertEquals(expected.get(3 + i), new String(dataList.get(i), UTF_8));
+        }
+    }
+
+    @Test
+    public void testTransactionDataListWithoutBatchSupport() throws Exception {
+        final int numTransactions = 10;
+        List<String> expected = new ArrayList<>();
+
+        // A server which doesn't support TransactionDataBatchRequest
+        HashMap<Short, MessageCodec> codecs = new HashMap<>();
+        codecs.put(MessageCodecV0.VERSION, MessageCodecV0.INSTANCE);
+        codecs.put(MessageCodecV1.VERSION, MessageCodecV1.INSTANCE);
+        codecs.put(MessageCodecV2.VERSION, MessageCodecV2.INSTANCE);
+
+        MockClusterManager v2ClusterManager = new MockClusterManager(1);
+        MockStore v2Store = new MockStore();
+        WaltzServerRunner v2ServerRunner = startServerRunner(v2ClusterManager, v2Store, codecs);
+
+        try {
+            ManagedServer v2ManagedServer = v2ClusterManager.managedServers().iterator().next();
+            v2ManagedServer.setPartitions(partitionInfoList);
+
+            endpoints = new HashMap<>();
+            endpoints.put(v2ClusterManager.endPoint(v2ManagedServer), partitionInfoList);
+
+            InternalRpcClient internalRpcClient = getInternalRpcClient(WaltzClientConfig.DEFAULT_MAX_CONCURRENT_TRANSACTIONS);
+            InternalStreamClient internalStreamClient = getInternalStreamClient(true, WaltzClientConfig.DEFAULT_MAX_CONCURRENT_TRANSACTIONS, internalRpcClient);
+
+            for (int i = 0; i < numTransactions; i++) {
+                String data = "transaction" + i;
+                expected.add(data);
+
+                MockContext context = MockContext.builder().header(0).data(data).build();
+                TransactionBuilderImpl transactionBuilder = internalStreamClient.getTransactionBuilder(context);
+                context.execute(transactionBuilder);
+
+                TransactionFuture future = internalStreamClient.append(transactionBuilder.buildRequest(), context);
+
+                assertTrue(future.get());
+            }
+
+            // The first request goes before the codec version is known, the second one after
+            List<byte[]> dataList = internalRpcClient.getTransactionDataList(0, 0, numTransactions).get(10, TimeUnit.SECONDS);
+            assertEquals(numTransactions, dataList.size());
+            for (int i = 0; i < numTransactions; i++) {
+                assertEquals(expected.get(i), new String(dataList.get(i), UTF_8));
+            }
+
+            dataList = internalRpcClient.getTransactionDataList(0, 3, 5).get(10, TimeUnit.SECONDS);
+            assertEquals(5, dataList.size());
+            for (int i = 0; i < 5; i++) {
+                assertEquals(expected.get(3 + i), new String(dataList.get(i), UTF_8));
+            }
+
+        } finally {
+            for (InternalBaseClient client : clients) {
+                client.close();
+            }
+            clients.clear();
+            v2ServerRunner.stop();
+            v2ClusterManager.close();
+            v2Store.close();
+        }
+    }
+
+    @Test
+    public void testPrefetchTransactionData() throws Exception {
+        final int numTransactions = 20;
+        final int prefetchSize = 8;
+        List<String> expected = new ArrayList<>();
+
+        InternalRpcClient internalRpcClient = getInternalRpcClient(WaltzClientConfig.DEFAULT_MAX_CONCURRENT_TRANSACTIONS, 1000000L);
+        InternalStreamClient internalStreamClient = getInternalStreamClient(true, WaltzClientConfig.DEFAULT_MAX_CONCURRENT_TRANSACTIONS, internalRpcClient);
+
+        for (int i = 0; i < numTransactions; i++) {
+            String data = "transaction" + i;
+            expected.add(data);
+
+            MockContext context = MockContext.builder().header(0).data(data).build();
+            TransactionBuilderImpl transactionBuilder = internalStreamClient.getTransactionBuilder(context);
+            context.execute(transactionBuilder);
+
+            TransactionFuture future = internalStreamClient.append(transactionBuilder.buildRequest(), context);
+
+            assertTrue(future.get());
+        }
+
+        for (int i = 0; i < numTransactions; i++) {
+            assertFalse(internalRpcClient.isCached(0, i));
+        }
+
+        // Apply a feed batch without inline data on a partition that prefetches through the rpc client
+        Partition partition = new Partition(0, Integer.MAX_VALUE, 10, 0, prefetchSize, 0);
+        partition.activate(-1L);
+
+        PrefetchCallbacks callbacks = new PrefetchCallbacks(internalRpcClient);
+        partition.applyTransactions(batch(0L, numTransactions), callbacks);
+        assertEquals(numTransactions, callbacks.received.size());
+
+        // The first window is prefetched up front, and the next one each time half of the window is applied
+        assertEquals(4, callbacks.prefetched.size());
+        assertEquals(0L, callbacks.prefetched.get(0)[0]);
+        assertEquals(8L, callbacks.prefetched.get(0)[1]);
+        for (int i = 1; i < 4; i++) {
+            assertEquals(4L + 4L * i, callbacks.prefetched.get(i)[0]);
+            assertEquals(4L, callbacks.prefetched.get(i)[1]);
+        }
+
+        // All prefetched transactions end up in the cache
+        for (int i = 0; i < numTransactions; i++) {
+            for (int retry = 0; retry < 100 && !internalRpcClient.isCached(0, i); retry++) {
+                Uninterruptibly.sleep(50);
+            }
+            assertTrue(internalRpcClient.isCached(0, i));
+        }
+
+        // Reads hit the cache and complete without a round trip
+        for (int i = 0; i < numTransactions; i++) {
+            Future<byte[]> future = internalRpcClient.getTransactionData(0, i);
+            assertTrue(future.isDone());
+            assertEquals(expected.get(i), new String(future.get(), UTF_8));
+        }
+    }
+
+    private static FeedDataBatch batch(long firstTransactionId, int size) {
+        ReqId[] reqIds = new ReqId[size];
+        int[] headers = new int[size];
+        for (int i = 0; i < size; i++) {
+            reqIds[i] = new ReqId(1, 0, 0, (int) firstTransactionId + i);
+        }
+        return new FeedDataBatch(new ReqId(Integer.MAX_VALUE, 0, 0, 0), firstTransactionId, reqIds, headers);
+    }
+
+    private static class PrefetchCallbacks implements WaltzNetworkClientCallbacks {
+
+        final InternalRpcClient rpcClient;
+        final List<long[]> prefetched = new ArrayList<>();
+        final List<Long> received = new ArrayList<>();
+
+        PrefetchCallbacks(InternalRpcClient rpcClient) {
+            this.rpcClient = rpcClient;
+        }
+
+        @Override
+        public void onMountingPartition(WaltzNetworkClient networkClient, Partition partition) {
+        }
+
+        @Override
+        public void onNetworkClientDisconnected(WaltzNetworkClient networkClient) {
+        }
+
+        @Override
+        public void onTransactionReceived(long transactionId, int header, ReqId reqId, byte[] data) {
+            received.add(transactionId);
+        }
+
+        @Override
+        public void onPrefetchTransactionData(int partitionId, long transactionId, int numTransactions) {
+            prefetched.add(new long[] {transactionId, numTransactions});
+            rpcClient.prefetchTransactionData(partitionId, transactionId, numTransactions);
+        }
+
+        @Override
+        public CompletableFuture<Transaction> onPrepareTransaction(long transactionId, int header, ReqId reqId, byte[] data) {
+            return null;
+        }
+
+        @Override
+        public void onPreparedTransactionReceived(long transactionId, ReqId reqId, CompletableFuture<Transaction> prepared) {
+        }
+
+    }
+
 }
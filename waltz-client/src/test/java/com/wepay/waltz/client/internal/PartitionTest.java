@@ -0,0 +1,161 @@
+package com.wepay.waltz.client.internal;
+
+import com.wepay.waltz.client.Transaction;
+import com.wepay.waltz.client.internal.network.WaltzNetworkClient;
+import com.wepay.waltz.client.internal.network.WaltzNetworkClientCallbacks;
+import com.wepay.waltz.common.message.FeedDataBatch;
+import com.wepay.waltz.common.message.ReqId;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PartitionTest {
+
+    private static final int PARTITION_ID = 0;
+    private static final int CLIENT_ID = 1;
+
+    @Test
+    public void testPipelinedApplication() {
+        int maxPreparedTransactions = 4;
+        Partition partition = new Partition(PARTITION_ID, CLIENT_ID, 10, 0, 0, maxPreparedTransactions);
+        partition.activate(-1L);
+
+        MockCallbacks callbacks = new MockCallbacks();
+        partition.applyTransactions(batch(0L, 10), callbacks);
+
+        // All transactions are prepared before they are applied, and at most maxPreparedTransactions ahead
+        assertEquals(10, callbacks.prepared.size());
+        assertEquals(10, callbacks.applied.size());
+        for (int i = 0; i < 10; i++) {
+            assertEquals(i, (long) callbacks.applied.get(i));
+            assertTrue(callbacks.preparedAhead.get(i) <= maxPreparedTransactions);
+        }
+        assertEquals(9L, partition.clientHighWaterMark());
+
+        // Transactions already applied are not prepared again
+        callbacks.clear();
+        partition.applyTransactions(batch(5L, 10), callbacks);
+        assertEquals(5, callbacks.prepared.size());
+        assertEquals(5, callbacks.applied.size());
+        assertEquals(10L, (long) callbacks.prepared.get(0));
+        assertEquals(14L, partition.clientHighWaterMark());
+    }
+
+    @Test
+    public void testPreparationFailure() {
+        Partition partition = new Partition(PARTITION_ID, CLIENT_ID, 10, 0, 0, 4);
+        partition.activate(-1L);
+
+        MockCallbacks callbacks = new MockCallbacks();
+        callbacks.failingTransactionId = 3L;
+        try {
+            partition.applyTransactions(batch(0L, 10), callbacks);
+            fail();
+        } catch (CompletionException ex) {
+            // OK
+        }
+
+        // The client high-water mark stops before the failed transaction
+        assertEquals(3, callbacks.applied.size());
+        assertEquals(2L, partition.clientHighWaterMark());
+
+        // Retry
+        callbacks.clear();
+        callbacks.failingTransactionId = -1L;
+        partition.applyTransactions(batch(0L, 10), callbacks);
+        assertEquals(7, callbacks.applied.size());
+        assertEquals(9L, partition.clientHighWaterMark());
+    }
+
+    @Test
+    public void testNoPipeline() {
+        Partition partition = new Partition(PARTITION_ID, CLIENT_ID, 10, 0, 0, 0);
+        partition.activate(-1L);
+
+        MockCallbacks callbacks = new MockCallbacks();
+        partition.applyTransactions(batch(0L, 10), callbacks);
+
+        assertEquals(0, callbacks.prepared.size());
+        assertEquals(10, callbacks.received.size());
+        assertEquals(9L, partition.clientHighWaterMark());
+    }
+
+    private static FeedDataBatch batch(long firstTransactionId, int size) {
+        ReqId[] reqIds = new ReqId[size];
+        int[] headers = new int[size];
+        for (int i = 0; i < size; i++) {
+            reqIds[i] = new ReqId(CLIENT_ID + 1, 0, PARTITION_ID, (int) firstTransactionId + i);
+        }
+        return new FeedDataBatch(new ReqId(CLIENT_ID, 0, PARTITION_ID, 0), firstTransactionId, reqIds, headers);
+    }
+
+    private static class MockCallbacks implements WaltzNetworkClientCallbacks {
+
+        final List<Long> prepared = new ArrayList<>();
+        final List<Long> preparedAhead = new ArrayList<>();
+        final List<Long> applied = new ArrayList<>();
+        final List<Long> received = new ArrayList<>();
+        final ArrayList<CompletableFuture<Transaction>> pending = new ArrayList<>();
+        long failingTransactionId = -1L;
+
+        @Override
+        public void onMountingPartition(WaltzNetworkClient networkClient, Partition partition) {
+        }
+
+        @Override
+        public void onNetworkClientDisconnected(WaltzNetworkClient networkClient) {
+        }
+
+        @Override
+        public void onTransactionReceived(long transactionId, int header, ReqId reqId, byte[] data) {
+            received.add(transactionId);
+        }
+
+        @Override
+        public void onPrefetchTransactionData(int partitionId, long transactionId, int numTransactions) {
+        }
+
+        @Override
+        public CompletableFuture<Transaction> onPrepareTransaction(long transactionId, int header, ReqId reqId, byte[] data) {
+            prepared.add(transactionId);
+
+            // Preparations complete in the reverse order when the transaction is applied
+            CompletableFuture<Transaction> future = new CompletableFuture<>();
+            pending.add(future);
+            if (transactionId == failingTransactionId) {
+                future.completeExceptionally(new IllegalStateException("failed to prepare"));
+            }
+            return future.thenApply(v -> new Transaction(transactionId, header, reqId, data, null));
+        }
+
+        @Override
+        public void onPreparedTransactionReceived(long transactionId, ReqId reqId, CompletableFuture<Transaction> prepared) {
+            preparedAhead.add(this.prepared.get(this.prepared.size() - 1) - transactionId + 1);
+
+            for (int i = pending.size() - 1; i >= 0; i--) {
+                pending.get(i).complete(null);
+            }
+            pending.clear();
+
+            assertEquals(transactionId, prepared.join().transactionId);
+            applied.add(transactionId);
+        }
+
+        void clear() {
+            prepared.clear();
+            preparedAhead.clear();
+            applied.clear();
+            received.clear();
+            pending.clear();
+        }
+
+    }
+
+}
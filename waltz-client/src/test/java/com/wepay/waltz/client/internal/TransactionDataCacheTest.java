@@ -0,0 +1,66 @@
+package com.wepay.waltz.client.internal;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class TransactionDataCacheTest {
+
+    @Test
+    public void testGetPut() {
+        TransactionDataCache cache = new TransactionDataCache(1000);
+
+        byte[] data0 = new byte[10];
+        byte[] data1 = new byte[20];
+        cache.put(0, 5L, data0);
+        cache.put(1, 5L, data1);
+
+        // Keyed by the partition id and the transaction id
+        assertSame(data0, cache.get(0, 5L));
+        assertSame(data1, cache.get(1, 5L));
+        assertNull(cache.get(0, 6L));
+        assertNull(cache.get(2, 5L));
+        assertEquals(2, cache.size());
+        assertEquals(30L, cache.bytes());
+
+        // Replace
+        byte[] data2 = new byte[15];
+        cache.put(0, 5L, data2);
+        assertSame(data2, cache.get(0, 5L));
+        assertEquals(2, cache.size());
+        assertEquals(35L, cache.bytes());
+    }
+
+    @Test
+    public void testEviction() {
+        TransactionDataCache cache = new TransactionDataCache(100);
+
+        for (long transactionId = 0; transactionId < 10; transactionId++) {
+            cache.put(0, transactionId, new byte[10]);
+        }
+        assertEquals(10, cache.size());
+        assertEquals(100L, cache.bytes());
+
+        // Touch the oldest entry, then add one more. The least recently used entry is evicted.
+        assertNotNull(cache.get(0, 0L));
+        cache.put(0, 10L, new byte[10]);
+        assertNotNull(cache.get(0, 0L));
+        assertNull(cache.get(0, 1L));
+        assertEquals(10, cache.size());
+        assertEquals(100L, cache.bytes());
+
+        // A large entry evicts as many entries as needed
+        cache.put(0, 11L, new byte[55]);
+        assertEquals(5, cache.size());
+        assertEquals(95L, cache.bytes());
+
+        // Data larger than the cache is not cached
+        cache.put(0, 12L, new byte[101]);
+        assertNull(cache.get(0, 12L));
+        assertEquals(95L, cache.bytes());
+    }
+
+}
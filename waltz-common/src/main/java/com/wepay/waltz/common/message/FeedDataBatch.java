@@ -0,0 +1,128 @@
+package com.wepay.waltz.common.message;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+import java.util.List;
+
+/**
+ * A run of feed entries with consecutive transaction ids sent in one message.
+ * The entries are kept in columns. The transaction id of the i-th entry is {@code firstTransactionId + i}.
+ * The data columns are present only when transaction data is pushed inline. An entry whose data is not
+ * inlined has null data, and the client fetches it on demand.
+ */
+public class FeedDataBatch extends AbstractMessage {
+
+    public final long firstTransactionId;
+    public final ReqId[] reqIds;
+    public final int[] headers;
+    public final byte[][] data;
+    public final int[] checksums;
+
+    /**
+     * Class constructor.
+     * @param reqId the request id of the feed request.
+     * @param firstTransactionId the transaction id of the first entry.
+     * @param reqIds the request ids of the append requests of the entries.
+     * @param headers the headers of the entries.
+     */
+    public FeedDataBatch(ReqId reqId, long firstTransactionId, ReqId[] reqIds, int[] headers) {
+        this(reqId, firstTransactionId, reqIds, headers, null, null);
+    }
+
+    /**
+     * Class constructor.
+     * @param reqId the request id of the feed request.
+     * @param firstTransactionId the transaction id of the first entry.
+     * @param reqIds the request ids of the append requests of the entries.
+     * @param headers the headers of the entries.
+     * @param data the inlined data of the entries, or null if no data is inlined.
+     * @param checksums the checksums of the inlined data, or null if no data is inlined.
+     */
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "internal class")
+    public FeedDataBatch(ReqId reqId, long firstTransactionId, ReqId[] reqIds, int[] headers, byte[][] data, int[] checksums) {
+        super(reqId);
+
+        if (reqIds.length != headers.length) {
+            throw new IllegalArgumentException("column size mismatch");
+        }
+        if ((data == null) != (checksums == null)) {
+            throw new IllegalArgumentException("data and checksums must be given together");
+        }
+        if (data != null && (data.length != headers.length || checksums.length != headers.length)) {
+            throw new IllegalArgumentException("column size mismatch");
+        }
+
+        this.firstTransactionId = firstTransactionId;
+        this.reqIds = reqIds;
+        this.headers = headers;
+        this.data = data;
+        this.checksums = checksums;
+    }
+
+    /**
+     * Class constructor.
+     * @param reqId the request id of the feed request.
+     * @param feedDataList the entries. Transaction ids must be consecutive.
+     */
+    public FeedDataBatch(ReqId reqId, List<FeedData> feedDataList) {
+        super(reqId);
+
+        int size = feedDataList.size();
+        if (size == 0) {
+            throw new IllegalArgumentException("empty batch");
+        }
+
+        this.firstTransactionId = feedDataList.get(0).transactionId;
+        this.reqIds = new ReqId[size];
+        this.headers = new int[size];
+
+        for (int i = 0; i < size; i++) {
+            FeedData feedData = feedDataList.get(i);
+            if (feedData.transactionId != firstTransactionId + i) {
+                throw new IllegalArgumentException("transaction ids not consecutive");
+            }
+            reqIds[i] = feedData.reqId;
+            headers[i] = feedData.header;
+        }
+
+        this.data = null;
+        this.checksums = null;
+    }
+
+    @Override
+    public byte type() {
+        return MessageType.FEED_DATA_BATCH;
+    }
+
+    /**
+     * Returns the number of entries.
+     * @return the number of entries.
+     */
+    public int size() {
+        return headers.length;
+    }
+
+    /**
+     * Returns the transaction id of the i-th entry.
+     * @param i the index of the entry.
+     * @return the transaction id.
+     */
+    public long transactionId(int i) {
+        return firstTransactionId + i;
+    }
+
+    /**
+     * Returns the inlined data of the i-th entry.
+     * @param i the index of the entry.
+     * @return the data, or null if the data is not inlined.
+     */
+    public byte[] data(int i) {
+        return data != null ? data[i] : null;
+    }
+
+    @Override
+    public String toString() {
+        return "FeedDataBatch(reqId=" + reqId.toString() + ", firstTransactionId=" + firstTransactionId + " size=" + size() + ")";
+    }
+
+}
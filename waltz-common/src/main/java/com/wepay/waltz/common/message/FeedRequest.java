@@ -3,10 +3,25 @@ package com.wepay.waltz.common.message;
 public class FeedRequest extends AbstractMessage {
 
     public final long clientHighWaterMark;
+    // True if the client accepts FeedDataBatch. This is sent only by MessageCodecV3 or later.
+    public final boolean feedDataBatchEnabled;
+    // The maximum size of transaction data the client wants pushed inline in FeedDataBatch. Zero disables inlining.
+    // This is sent only by MessageCodecV3 or later.
+    public final int maxInlineDataSize;
 
     public FeedRequest(ReqId reqId, long clientHighWaterMark) {
+        this(reqId, clientHighWaterMark, false);
+    }
+
+    public FeedRequest(ReqId reqId, long clientHighWaterMark, boolean feedDataBatchEnabled) {
+        this(reqId, clientHighWaterMark, feedDataBatchEnabled, 0);
+    }
+
+    public FeedRequest(ReqId reqId, long clientHighWaterMark, boolean feedDataBatchEnabled, int maxInlineDataSize) {
         super(reqId);
         this.clientHighWaterMark = clientHighWaterMark;
+        this.feedDataBatchEnabled = feedDataBatchEnabled;
+        this.maxInlineDataSize = maxInlineDataSize;
     }
 
     @Override
@@ -0,0 +1,471 @@
+package com.wepay.waltz.common.message;
+
+import com.wepay.riff.network.Message;
+import com.wepay.riff.network.MessageAttributeReader;
+import com.wepay.riff.network.MessageAttributeWriter;
+import com.wepay.riff.network.MessageCodec;
+import com.wepay.waltz.common.util.Utils;
+import com.wepay.waltz.exception.RpcException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class MessageCodecV3 implements MessageCodec {
+
+    public static final short VERSION = 3;
+    public static final MessageCodecV3 INSTANCE = new MessageCodecV3();
+
+    private static final byte MAGIC_BYTE = 'L';
+
+    @Override
+    public byte magicByte() {
+        return MAGIC_BYTE;
+    }
+
+    @Override
+    public short version() {
+        return VERSION;
+    }
+
+    @Override
+    public Message decode(MessageAttributeReader reader) {
+        // Decode common attributes
+        byte messageType = reader.readByte();
+        ReqId reqId = ReqId.readFrom(reader);
+        long transactionId;
+        int header;
+        byte[] data;
+        int checksum;
+        int partitionId;
+        boolean result;
+
+        switch (messageType) {
+            case MessageType.MOUNT_REQUEST:
+                long clientHighWaterMark = reader.readLong();
+                long seqNum = reader.readLong();
+                boolean feedDataBatchEnabled = reader.readBoolean();
+                int maxInlineDataSize = reader.readInt();
+                return new MountRequest(reqId, clientHighWaterMark, seqNum, feedDataBatchEnabled, maxInlineDataSize);
+
+            case MessageType.MOUNT_RESPONSE:
+                boolean partitionReady = reader.readBoolean();
+                return new MountResponse(reqId, partitionReady);
+
+            case MessageType.APPEND_REQUEST:
+                transactionId = reader.readLong(); // client High-water mark
+                int[] writeLockRequest = reader.readIntArray();
+                int[] readLockRequest = reader.readIntArray();
+                int[] appendLockRequest = reader.readIntArray();
+                header = reader.readInt();
+                data = reader.readByteArray();
+                checksum = reader.readInt();
+                Utils.verifyChecksum(messageType, data, checksum);
+                return new AppendRequest(
+                    reqId,
+                    transactionId,
+                    writeLockRequest,
+                    readLockRequest,
+                    appendLockRequest,
+                    header,
+                    data,
+                    checksum
+                );
+
+            case MessageType.FEED_REQUEST:
+                transactionId = reader.readLong(); // client High-water mark
+                feedDataBatchEnabled = reader.readBoolean();
+                maxInlineDataSize = reader.readInt();
+                return new FeedRequest(reqId, transactionId, feedDataBatchEnabled, maxInlineDataSize);
+
+            case MessageType.FEED_DATA:
+                transactionId = reader.readLong();
+                header = reader.readInt();
+                return new FeedData(reqId, transactionId, header);
+
+            case MessageType.FEED_DATA_BATCH:
+                transactionId = reader.readLong(); // the first transaction id
+                int[] headers = reader.readIntArray();
+                ReqId[] reqIds = readReqIds(reader.readByteArray(), headers.length);
+                if (reader.readBoolean()) {
+                    int[] checksums = reader.readIntArray();
+                    byte[][] dataList = new byte[checksums.length][];
+                    for (int i = 0; i < checksums.length; i++) {
+                        if (reader.readBoolean()) {
+                            dataList[i] = reader.readByteArray();
+                            Utils.verifyChecksum(messageType, dataList[i], checksums[i]);
+                        }
+                    }
+                    return new FeedDataBatch(reqId, transactionId, reqIds, headers, dataList, checksums);
+                } else {
+                    return new FeedDataBatch(reqId, transactionId, reqIds, headers);
+                }
+
+            case MessageType.FEED_SUSPENDED:
+                return new FeedSuspended(reqId);
+
+            case MessageType.TRANSACTION_DATA_REQUEST:
+                transactionId = reader.readLong();
+                return new TransactionDataRequest(reqId, transactionId);
+
+            case MessageType.TRANSACTION_DATA_RESPONSE:
+                transactionId = reader.readLong();
+                if (reader.readBoolean()) {
+                    data = reader.readByteArray();
+                    checksum = reader.readInt();
+                    Utils.verifyChecksum(messageType, data, checksum);
+                    return new TransactionDataResponse(reqId, transactionId, data, checksum);
+                } else {
+                    RpcException exception = new RpcException(reader.readString());
+                    return new TransactionDataResponse(reqId, transactionId, exception);
+                }
+
+            case MessageType.TRANSACTION_DATA_BATCH_REQUEST:
+                transactionId = reader.readLong(); // the first transaction id
+                return new TransactionDataBatchRequest(reqId, transactionId, reader.readInt());
+
+            case MessageType.TRANSACTION_DATA_BATCH_RESPONSE:
+                transactionId = reader.readLong(); // the first transaction id
+                if (reader.readBoolean()) {
+                    int[] checksums = reader.readIntArray();
+                    byte[][] dataList = new byte[checksums.length][];
+                    for (int i = 0; i < checksums.length; i++) {
+                        dataList[i] = reader.readByteArray();
+                        Utils.verifyChecksum(messageType, dataList[i], checksums[i]);
+                    }
+                    return new TransactionDataBatchResponse(reqId, transactionId, dataList, checksums);
+                } else {
+                    RpcException exception = new RpcException(reader.readString());
+                    return new TransactionDataBatchResponse(reqId, transactionId, exception);
+                }
+
+            case MessageType.FLUSH_REQUEST:
+                return new FlushRequest(reqId);
+
+            case MessageType.FLUSH_RESPONSE:
+                transactionId = reader.readLong();
+                return new FlushResponse(reqId, transactionId);
+
+            case MessageType.HIGH_WATER_MARK_REQUEST:
+                return new HighWaterMarkRequest(reqId);
+
+            case MessageType.HIGH_WATER_MARK_RESPONSE:
+                transactionId = reader.readLong();
+                return new HighWaterMarkResponse(reqId, transactionId);
+
+            case MessageType.LOCK_FAILURE:
+                transactionId = reader.readLong();
+                return new LockFailure(reqId, transactionId);
+
+            case MessageType.CHECK_STORAGE_CONNECTIVITY_REQUEST:
+                return new CheckStorageConnectivityRequest(reqId);
+
+            case MessageType.CHECK_STORAGE_CONNECTIVITY_RESPONSE:
+                int size = reader.readInt();
+                Map<String, Boolean> storageConnectivityMap = new HashMap<>();
+                for (int i = 0; i < size; i++) {
+                    storageConnectivityMap.put(reader.readString(), reader.readBoolean());
+                }
+                return new CheckStorageConnectivityResponse(reqId, storageConnectivityMap);
+
+            case MessageType.SERVER_PARTITIONS_ASSIGNMENT_REQUEST:
+                return new ServerPartitionsAssignmentRequest(reqId);
+
+            case MessageType.SERVER_PARTITIONS_ASSIGNMENT_RESPONSE:
+                int listSize = reader.readInt();
+                List<Integer> partitionsAssigned = new ArrayList<>(listSize);
+                for (int i = 0; i < listSize; i++) {
+                    partitionsAssigned.add(reader.readInt());
+                }
+                return new ServerPartitionsAssignmentResponse(reqId, partitionsAssigned);
+
+            case MessageType.ADD_PREFERRED_PARTITION_REQUEST:
+                partitionId = reader.readInt();
+                return new AddPreferredPartitionRequest(reqId, partitionId);
+
+            case MessageType.ADD_PREFERRED_PARTITION_RESPONSE:
+                result = reader.readBoolean();
+                return new AddPreferredPartitionResponse(reqId, result);
+
+            case MessageType.REMOVE_PREFERRED_PARTITION_REQUEST:
+                partitionId = reader.readInt();
+                return new RemovePreferredPartitionRequest(reqId, partitionId);
+
+            case MessageType.REMOVE_PREFERRED_PARTITION_RESPONSE:
+                result = reader.readBoolean();
+                return new RemovePreferredPartitionResponse(reqId, result);
+
+            default:
+                throw new IllegalStateException("unknown message type: " + messageType);
+        }
+    }
+
+    @Override
+    public void encode(Message msg, MessageAttributeWriter writer) {
+        // Encode common attributes
+        writer.writeByte(msg.type());
+        ((AbstractMessage) msg).reqId.writeTo(writer);
+
+        switch (msg.type()) {
+            case MessageType.MOUNT_REQUEST:
+                MountRequest mountRequest = (MountRequest) msg;
+                writer.writeLong(mountRequest.clientHighWaterMark);
+                writer.writeLong(mountRequest.seqNum);
+                writer.writeBoolean(mountRequest.feedDataBatchEnabled);
+                writer.writeInt(mountRequest.maxInlineDataSize);
+                break;
+
+            case MessageType.MOUNT_RESPONSE:
+                MountResponse mountResponse = (MountResponse) msg;
+                writer.writeBoolean(mountResponse.partitionReady);
+                break;
+
+            case MessageType.APPEND_REQUEST:
+                AppendRequest appendRequest = (AppendRequest) msg;
+                writer.writeLong(appendRequest.clientHighWaterMark);
+                writer.writeIntArray(appendRequest.writeLockRequest);
+                writer.writeIntArray(appendRequest.readLockRequest);
+                writer.writeIntArray(appendRequest.appendLockRequest);
+                writer.writeInt(appendRequest.header);
+                writer.writeByteArray(appendRequest.data);
+                writer.writeInt(appendRequest.checksum);
+                break;
+
+            case MessageType.FEED_REQUEST:
+                FeedRequest feedRequest = (FeedRequest) msg;
+                writer.writeLong(feedRequest.clientHighWaterMark);
+                writer.writeBoolean(feedRequest.feedDataBatchEnabled);
+                writer.writeInt(feedRequest.maxInlineDataSize);
+                break;
+
+            case MessageType.FEED_DATA:
+                FeedData feedData = (FeedData) msg;
+                writer.writeLong(feedData.transactionId);
+                writer.writeInt(feedData.header);
+                break;
+
+            case MessageType.FEED_DATA_BATCH:
+                FeedDataBatch feedDataBatch = (FeedDataBatch) msg;
+                writer.writeLong(feedDataBatch.firstTransactionId);
+                writer.writeIntArray(feedDataBatch.headers);
+                writer.writeByteArray(writeReqIds(feedDataBatch.reqIds));
+                if (feedDataBatch.data != null) {
+                    writer.writeBoolean(true);
+                    writer.writeIntArray(feedDataBatch.checksums);
+                    for (byte[] data : feedDataBatch.data) {
+                        if (data != null) {
+                            writer.writeBoolean(true);
+                            writer.writeByteArray(data);
+                        } else {
+                            writer.writeBoolean(false);
+                        }
+                    }
+                } else {
+                    writer.writeBoolean(false);
+                }
+                break;
+
+            case MessageType.FEED_SUSPENDED:
+                break;
+
+            case MessageType.TRANSACTION_DATA_REQUEST:
+                TransactionDataRequest dataRequest = (TransactionDataRequest) msg;
+                writer.writeLong(dataRequest.transactionId);
+                break;
+
+            case MessageType.TRANSACTION_DATA_RESPONSE:
+                TransactionDataResponse dataResponse = (TransactionDataResponse) msg;
+                writer.writeLong(dataResponse.transactionId);
+                if (dataResponse.data != null) {
+                    writer.writeBoolean(true);
+                    writer.writeByteArray(dataResponse.data);
+                    writer.writeInt(dataResponse.checksum);
+                } else if (dataResponse.exception != null) {
+                    writer.writeBoolean(false);
+                    writer.writeString(dataResponse.exception.getMessage());
+                } else {
+                    throw new IllegalStateException("corrupted message: " + msg.type());
+                }
+                break;
+
+            case MessageType.TRANSACTION_DATA_BATCH_REQUEST:
+                TransactionDataBatchRequest dataBatchRequest = (TransactionDataBatchRequest) msg;
+                writer.writeLong(dataBatchRequest.firstTransactionId);
+                writer.writeInt(dataBatchRequest.numTransactions);
+                break;
+
+            case MessageType.TRANSACTION_DATA_BATCH_RESPONSE:
+                TransactionDataBatchResponse dataBatchResponse = (TransactionDataBatchResponse) msg;
+                writer.writeLong(dataBatchResponse.firstTransactionId);
+                if (dataBatchResponse.data != null) {
+                    writer.writeBoolean(true);
+                    writer.writeIntArray(dataBatchResponse.checksums);
+                    for (byte[] data : dataBatchResponse.data) {
+                        writer.writeByteArray(data);
+                    }
+                } else if (dataBatchResponse.exception != null) {
+                    writer.writeBoolean(false);
+                    writer.writeString(dataBatchResponse.exception.getMessage());
+                } else {
+                    throw new IllegalStateException("corrupted message: " + msg.type());
+                }
+                break;
+
+            case MessageType.FLUSH_REQUEST:
+                break;
+
+            case MessageType.FLUSH_RESPONSE:
+                FlushResponse flushResponse = (FlushResponse) msg;
+                writer.writeLong(flushResponse.transactionId);
+                break;
+
+            case MessageType.HIGH_WATER_MARK_REQUEST:
+                break;
+
+            case MessageType.HIGH_WATER_MARK_RESPONSE:
+                HighWaterMarkResponse highWaterMarkResponse = (HighWaterMarkResponse) msg;
+                writer.writeLong(highWaterMarkResponse.transactionId);
+                break;
+
+            case MessageType.LOCK_FAILURE:
+                LockFailure lockFailure = (LockFailure) msg;
+                writer.writeLong(lockFailure.transactionId);
+                break;
+
+            case MessageType.CHECK_STORAGE_CONNECTIVITY_REQUEST:
+                break;
+
+            case MessageType.CHECK_STORAGE_CONNECTIVITY_RESPONSE:
+                CheckStorageConnectivityResponse checkStorageConnectivityResponse =
+                    (CheckStorageConnectivityResponse) msg;
+                int size = checkStorageConnectivityResponse.storageConnectivityMap.size();
+                writer.writeInt(size);
+                Map<String, Boolean> storageConnectivityMap = checkStorageConnectivityResponse.storageConnectivityMap;
+                for (Map.Entry<String, Boolean> storageConnectionEntry : storageConnectivityMap.entrySet()) {
+                    writer.writeString(storageConnectionEntry.getKey());
+                    writer.writeBoolean(storageConnectionEntry.getValue());
+                }
+                break;
+
+            case MessageType.SERVER_PARTITIONS_ASSIGNMENT_REQUEST:
+                break;
+
+            case MessageType.SERVER_PARTITIONS_ASSIGNMENT_RESPONSE:
+                ServerPartitionsAssignmentResponse serverPartitionsAssignmentResponse =
+                        (ServerPartitionsAssignmentResponse) msg;
+                List<Integer> partitionsAssigned = serverPartitionsAssignmentResponse.serverPartitionAssignments;
+                writer.writeInt(partitionsAssigned.size());
+                for (Integer partition : partitionsAssigned) {
+                    writer.writeInt(partition);
+                }
+                break;
+
+            case MessageType.ADD_PREFERRED_PARTITION_REQUEST:
+                AddPreferredPartitionRequest addPreferredPartitionRequest = (AddPreferredPartitionRequest) msg;
+                writer.writeInt(addPreferredPartitionRequest.partitionId);
+                break;
+
+            case MessageType.ADD_PREFERRED_PARTITION_RESPONSE:
+                AddPreferredPartitionResponse addPreferredPartitionResponse = (AddPreferredPartitionResponse) msg;
+                writer.writeBoolean(addPreferredPartitionResponse.result);
+                break;
+
+            case MessageType.REMOVE_PREFERRED_PARTITION_REQUEST:
+                RemovePreferredPartitionRequest removePreferredPartitionRequest = (RemovePreferredPartitionRequest) msg;
+                writer.writeInt(removePreferredPartitionRequest.partitionId);
+                break;
+
+            case MessageType.REMOVE_PREFERRED_PARTITION_RESPONSE:
+                RemovePreferredPartitionResponse removePreferredPartitionResponse =
+                    (RemovePreferredPartitionResponse) msg;
+                writer.writeBoolean(removePreferredPartitionResponse.result);
+                break;
+
+            default:
+                throw new IllegalStateException("unknown message type: " + msg.type());
+        }
+    }
+
+    /**
+     * Packs request ids into a byte array. The most significant bits and the least significant bits are stored
+     * in separate columns, and each value is stored as a zigzag varint of the difference from the previous value
+     * in the column. Entries from the same client differ only in the sequence number, so they take a few bytes each.
+     */
+    private static byte[] writeReqIds(ReqId[] reqIds) {
+        // A varint of a long takes at most 10 bytes
+        byte[] buf = new byte[reqIds.length * 20];
+        int offset = 0;
+
+        long prev = 0L;
+        for (ReqId reqId : reqIds) {
+            offset = writeVarLong(buf, offset, reqId.mostSigBits - prev);
+            prev = reqId.mostSigBits;
+        }
+
+        prev = 0L;
+        for (ReqId reqId : reqIds) {
+            offset = writeVarLong(buf, offset, reqId.leastSigBits - prev);
+            prev = reqId.leastSigBits;
+        }
+
+        return Arrays.copyOf(buf, offset);
+    }
+
+    /**
+     * Unpacks request ids packed by {@link #writeReqIds(ReqId[])}.
+     */
+    private static ReqId[] readReqIds(byte[] buf, int size) {
+        long[] mostSigBits = new long[size];
+        int[] offset = new int[1];
+
+        long prev = 0L;
+        for (int i = 0; i < size; i++) {
+            prev += readVarLong(buf, offset);
+            mostSigBits[i] = prev;
+        }
+
+        ReqId[] reqIds = new ReqId[size];
+
+        prev = 0L;
+        for (int i = 0; i < size; i++) {
+            prev += readVarLong(buf, offset);
+            reqIds[i] = new ReqId(mostSigBits[i], prev);
+        }
+
+        if (offset[0] != buf.length) {
+            throw new IllegalStateException("corrupted message: " + MessageType.FEED_DATA_BATCH);
+        }
+
+        return reqIds;
+    }
+
+    private static int writeVarLong(byte[] buf, int offset, long value) {
+        long v = (value << 1) ^ (value >> 63); // zigzag
+        while ((v & ~0x7FL) != 0L) {
+            buf[offset++] = (byte) ((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        buf[offset++] = (byte) v;
+        return offset;
+    }
+
+    private static long readVarLong(byte[] buf, int[] offset) {
+        long v = 0L;
+        int shift = 0;
+        while (true) {
+            if (offset[0] >= buf.length || shift > 63) {
+                throw new IllegalStateException("corrupted message: " + MessageType.FEED_DATA_BATCH);
+            }
+            byte b = buf[offset[0]++];
+            v |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                break;
+            }
+            shift += 7;
+        }
+        return (v >>> 1) ^ -(v & 1); // zigzag
+    }
+
+}
@@ -27,5 +27,8 @@ public final class MessageType {
     public static final int ADD_PREFERRED_PARTITION_RESPONSE = 18;
     public static final int REMOVE_PREFERRED_PARTITION_REQUEST = 19;
     public static final int REMOVE_PREFERRED_PARTITION_RESPONSE = 20;
+    public static final int FEED_DATA_BATCH = 21;
+    public static final int TRANSACTION_DATA_BATCH_REQUEST = 22;
+    public static final int TRANSACTION_DATA_BATCH_RESPONSE = 23;
 
 }
@@ -5,7 +5,15 @@ public class MountRequest extends FeedRequest {
     public final long seqNum;
 
     public MountRequest(ReqId reqId, long clientHighWaterMark, long seqNum) {
-        super(reqId, clientHighWaterMark);
+        this(reqId, clientHighWaterMark, seqNum, false);
+    }
+
+    public MountRequest(ReqId reqId, long clientHighWaterMark, long seqNum, boolean feedDataBatchEnabled) {
+        this(reqId, clientHighWaterMark, seqNum, feedDataBatchEnabled, 0);
+    }
+
+    public MountRequest(ReqId reqId, long clientHighWaterMark, long seqNum, boolean feedDataBatchEnabled, int maxInlineDataSize) {
+        super(reqId, clientHighWaterMark, feedDataBatchEnabled, maxInlineDataSize);
 
         this.seqNum = seqNum;
     }
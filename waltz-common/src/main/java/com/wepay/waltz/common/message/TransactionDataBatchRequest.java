@@ -0,0 +1,28 @@
+package com.wepay.waltz.common.message;
+
+/**
+ * A request for the data of a range of transactions with consecutive transaction ids.
+ */
+public class TransactionDataBatchRequest extends AbstractMessage {
+
+    public final long firstTransactionId;
+    public final int numTransactions;
+
+    /**
+     * Class constructor.
+     * @param reqId the request id.
+     * @param firstTransactionId the id of the first transaction.
+     * @param numTransactions the number of transactions.
+     */
+    public TransactionDataBatchRequest(ReqId reqId, long firstTransactionId, int numTransactions) {
+        super(reqId);
+
+        this.firstTransactionId = firstTransactionId;
+        this.numTransactions = numTransactions;
+    }
+
+    public byte type() {
+        return MessageType.TRANSACTION_DATA_BATCH_REQUEST;
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.wepay.waltz.common.message;
+
+import com.wepay.waltz.exception.RpcException;
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+/**
+ * The data of a range of transactions with consecutive transaction ids. The transaction id of the i-th entry is
+ * {@code firstTransactionId + i}. The server may return fewer transactions than requested, but at least one
+ * unless the request failed.
+ */
+public class TransactionDataBatchResponse extends AbstractMessage {
+
+    public final long firstTransactionId;
+    public final byte[][] data;
+    public final int[] checksums;
+    public final RpcException exception;
+
+    /**
+     * Class constructor.
+     * @param reqId the request id of the batch request.
+     * @param firstTransactionId the id of the first transaction.
+     * @param data the data of the transactions.
+     * @param checksums the checksums of the data.
+     */
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "internal class")
+    public TransactionDataBatchResponse(ReqId reqId, long firstTransactionId, byte[][] data, int[] checksums) {
+        super(reqId);
+
+        if (data == null || checksums == null) {
+            throw new NullPointerException();
+        }
+        if (data.length != checksums.length) {
+            throw new IllegalArgumentException("column size mismatch");
+        }
+
+        this.firstTransactionId = firstTransactionId;
+        this.data = data;
+        this.checksums = checksums;
+        this.exception = null;
+    }
+
+    /**
+     * Class constructor.
+     * @param reqId the request id of the batch request.
+     * @param firstTransactionId the id of the first transaction requested.
+     * @param exception the exception.
+     */
+    public TransactionDataBatchResponse(ReqId reqId, long firstTransactionId, RpcException exception) {
+        super(reqId);
+
+        if (exception == null) {
+            throw new NullPointerException();
+        }
+
+        this.firstTransactionId = firstTransactionId;
+        this.data = null;
+        this.checksums = null;
+        this.exception = exception;
+    }
+
+    public byte type() {
+        return MessageType.TRANSACTION_DATA_BATCH_RESPONSE;
+    }
+
+    /**
+     * Returns the number of transactions.
+     * @return the number of transactions.
+     */
+    public int size() {
+        return data != null ? data.length : 0;
+    }
+
+    /**
+     * Returns the transaction id of the i-th entry.
+     * @param i the index of the entry.
+     * @return the transaction id.
+     */
+    public long transactionId(int i) {
+        return firstTransactionId + i;
+    }
+
+}
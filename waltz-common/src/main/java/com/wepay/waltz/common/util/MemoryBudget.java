@@ -0,0 +1,121 @@
+package com.wepay.waltz.common.util;
+
+/**
+ * A budget of bytes held by requests in flight. A thread acquires bytes before it queues a request
+ * and the bytes are released when the request is done, so the memory held by queued requests is bounded
+ * regardless of the number of requests.
+ *
+ * <p>Budgets may be nested. A child budget (e.g. for a partition) acquires the same bytes from its parent
+ * (e.g. for a process), so both limits apply. A request larger than the limit is admitted when nothing else is
+ * in flight, so it never waits forever. A limit of zero or less means unlimited, but bytes are still counted.</p>
+ */
+public class MemoryBudget {
+
+    private final long limit;
+    private final MemoryBudget parent;
+
+    private long bytesInFlight = 0L;
+    private boolean closed = false;
+
+    /**
+     * Class constructor.
+     * @param limit The maximum number of bytes in flight. Zero or less means unlimited.
+     */
+    public MemoryBudget(long limit) {
+        this(limit, null);
+    }
+
+    /**
+     * Class constructor.
+     * @param limit The maximum number of bytes in flight. Zero or less means unlimited.
+     * @param parent The parent budget, or null.
+     */
+    public MemoryBudget(long limit, MemoryBudget parent) {
+        this.limit = limit;
+        this.parent = parent;
+    }
+
+    /**
+     * Acquires bytes. Blocks until the bytes fit in this budget and the parent budget.
+     * Returns immediately without acquiring anything if the budget is closed.
+     * @param bytes The number of bytes.
+     */
+    public void acquire(long bytes) {
+        synchronized (this) {
+            while (!closed && limit > 0 && bytesInFlight > 0 && bytesInFlight + bytes > limit) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    Thread.interrupted();
+                }
+            }
+            if (closed) {
+                return;
+            }
+            bytesInFlight += bytes;
+        }
+
+        if (parent != null) {
+            parent.acquire(bytes);
+        }
+    }
+
+    /**
+     * Releases bytes acquired by {@link #acquire(long)}. Does nothing if the budget is closed.
+     * @param bytes The number of bytes.
+     */
+    public void release(long bytes) {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            bytesInFlight -= bytes;
+            notifyAll();
+        }
+
+        if (parent != null) {
+            parent.release(bytes);
+        }
+    }
+
+    /**
+     * Closes the budget. All bytes in flight are returned to the parent budget,
+     * and waiting threads are woken up.
+     */
+    public void close() {
+        long bytes;
+
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            bytes = bytesInFlight;
+            bytesInFlight = 0L;
+            notifyAll();
+        }
+
+        if (parent != null) {
+            parent.release(bytes);
+        }
+    }
+
+    /**
+     * Returns the number of bytes in flight.
+     * @return the number of bytes in flight.
+     */
+    public long bytesInFlight() {
+        synchronized (this) {
+            return bytesInFlight;
+        }
+    }
+
+    /**
+     * Returns the maximum number of bytes in flight. Zero or less means unlimited.
+     * @return the maximum number of bytes in flight.
+     */
+    public long limit() {
+        return limit;
+    }
+
+}
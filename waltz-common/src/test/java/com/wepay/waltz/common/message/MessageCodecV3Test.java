@@ -0,0 +1,274 @@
+package com.wepay.waltz.common.message;
+
+import com.wepay.riff.message.ByteArrayMessageAttributeReader;
+import com.wepay.riff.message.ByteArrayMessageAttributeWriter;
+import com.wepay.riff.network.Message;
+import com.wepay.waltz.common.util.Utils;
+import com.wepay.waltz.exception.RpcException;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class MessageCodecV3Test {
+
+    private final MessageCodecV3 codec = new MessageCodecV3();
+    private final Random rand = new Random();
+
+    @Test
+    public void test() {
+        assertEquals(3, codec.version());
+
+        int[] writeLockRequest = lock();
+        int[] readLockRequest = lock();
+        int[] appendLockRequest = lock();
+        int header = rand.nextInt();
+        byte[] data;
+
+        data = data();
+        AppendRequest appendRequest1 = new AppendRequest(reqId(), rand.nextLong(), writeLockRequest, readLockRequest, appendLockRequest, header, data, Utils.checksum(data));
+        AppendRequest appendRequest2 = encodeThenDecode(appendRequest1);
+        assertEquals(MessageType.APPEND_REQUEST, appendRequest1.type());
+        assertEquals(appendRequest1.type(), appendRequest2.type());
+        assertEquals(appendRequest1.reqId, appendRequest2.reqId);
+        assertEquals(appendRequest1.clientHighWaterMark, appendRequest2.clientHighWaterMark);
+        assertTrue(Arrays.equals(appendRequest1.data, appendRequest2.data));
+
+        MountRequest mountRequest1 = new MountRequest(reqId(), rand.nextLong(), rand.nextLong(), true);
+        MountRequest mountRequest2 = encodeThenDecode(mountRequest1);
+        assertEquals(MessageType.MOUNT_REQUEST, mountRequest1.type());
+        assertEquals(mountRequest1.type(), mountRequest2.type());
+        assertEquals(mountRequest1.reqId, mountRequest2.reqId);
+        assertEquals(mountRequest1.clientHighWaterMark, mountRequest2.clientHighWaterMark);
+        assertEquals(mountRequest1.seqNum, mountRequest2.seqNum);
+        assertTrue(mountRequest2.feedDataBatchEnabled);
+        assertEquals(0, mountRequest2.maxInlineDataSize);
+
+        MountRequest mountRequest3 = new MountRequest(reqId(), rand.nextLong(), rand.nextLong(), true, 4096);
+        MountRequest mountRequest4 = encodeThenDecode(mountRequest3);
+        assertTrue(mountRequest4.feedDataBatchEnabled);
+        assertEquals(4096, mountRequest4.maxInlineDataSize);
+
+        MountResponse mountResponse1 = new MountResponse(reqId(), rand.nextBoolean());
+        MountResponse mountResponse2 = encodeThenDecode(mountResponse1);
+        assertEquals(MessageType.MOUNT_RESPONSE, mountResponse1.type());
+        assertEquals(mountResponse1.type(), mountResponse2.type());
+        assertEquals(mountResponse1.reqId, mountResponse2.reqId);
+        assertEquals(mountResponse1.partitionReady, mountResponse2.partitionReady);
+
+        FeedData feedData1 = new FeedData(reqId(), rand.nextLong(), header);
+        FeedData feedData2 = encodeThenDecode(feedData1);
+        assertEquals(MessageType.FEED_DATA, feedData1.type());
+        assertEquals(feedData1.type(), feedData2.type());
+        assertEquals(feedData1.reqId, feedData2.reqId);
+        assertEquals(feedData1.transactionId, feedData2.transactionId);
+        assertEquals(feedData1.header, feedData2.header);
+
+        FeedRequest feedRequest1 = new FeedRequest(reqId(), rand.nextLong(), true);
+        FeedRequest feedRequest2 = encodeThenDecode(feedRequest1);
+        assertEquals(MessageType.FEED_REQUEST, feedRequest1.type());
+        assertEquals(feedRequest1.type(), feedRequest2.type());
+        assertEquals(feedRequest1.reqId, feedRequest2.reqId);
+        assertEquals(feedRequest1.clientHighWaterMark, feedRequest2.clientHighWaterMark);
+        assertTrue(feedRequest2.feedDataBatchEnabled);
+        assertEquals(0, feedRequest2.maxInlineDataSize);
+
+        FeedRequest feedRequest3 = new FeedRequest(reqId(), rand.nextLong(), true, 4096);
+        FeedRequest feedRequest4 = encodeThenDecode(feedRequest3);
+        assertTrue(feedRequest4.feedDataBatchEnabled);
+        assertEquals(4096, feedRequest4.maxInlineDataSize);
+
+        ReqId writerReqId = reqId();
+        ArrayList<FeedData> feedDataList = new ArrayList<>();
+        long firstTransactionId = rand.nextInt(Integer.MAX_VALUE);
+        for (int i = 0; i < 100; i++) {
+            // Mix sequential request ids of one client with random request ids
+            ReqId feedDataReqId = rand.nextBoolean()
+                ? new ReqId(writerReqId.mostSigBits, writerReqId.leastSigBits + i)
+                : reqId();
+            feedDataList.add(new FeedData(feedDataReqId, firstTransactionId + i, rand.nextInt()));
+        }
+        FeedDataBatch feedDataBatch1 = new FeedDataBatch(reqId(), feedDataList);
+        FeedDataBatch feedDataBatch2 = encodeThenDecode(feedDataBatch1);
+        assertEquals(MessageType.FEED_DATA_BATCH, feedDataBatch1.type());
+        assertEquals(feedDataBatch1.type(), feedDataBatch2.type());
+        assertEquals(feedDataBatch1.reqId, feedDataBatch2.reqId);
+        assertEquals(feedDataList.size(), feedDataBatch2.size());
+        for (int i = 0; i < feedDataList.size(); i++) {
+            FeedData feedData = feedDataList.get(i);
+            assertEquals(feedData.transactionId, feedDataBatch2.transactionId(i));
+            assertEquals(feedData.reqId, feedDataBatch2.reqIds[i]);
+            assertEquals(feedData.header, feedDataBatch2.headers[i]);
+            assertNull(feedDataBatch2.data(i));
+        }
+        assertNull(feedDataBatch2.data);
+        assertNull(feedDataBatch2.checksums);
+
+        // Inlined data. Every other entry is not inlined.
+        byte[][] inlineData = new byte[feedDataList.size()][];
+        int[] inlineChecksums = new int[feedDataList.size()];
+        for (int i = 0; i < inlineData.length; i += 2) {
+            inlineData[i] = ("inline data " + i).getBytes(StandardCharsets.UTF_8);
+            inlineChecksums[i] = Utils.checksum(inlineData[i]);
+        }
+        FeedDataBatch feedDataBatch3 = new FeedDataBatch(
+            reqId(), feedDataBatch1.firstTransactionId, feedDataBatch1.reqIds, feedDataBatch1.headers, inlineData, inlineChecksums
+        );
+        FeedDataBatch feedDataBatch4 = encodeThenDecode(feedDataBatch3);
+        assertEquals(feedDataBatch3.reqId, feedDataBatch4.reqId);
+        assertEquals(feedDataList.size(), feedDataBatch4.size());
+        assertTrue(Arrays.equals(inlineChecksums, feedDataBatch4.checksums));
+        for (int i = 0; i < feedDataList.size(); i++) {
+            assertEquals(feedDataBatch3.reqIds[i], feedDataBatch4.reqIds[i]);
+            assertEquals(feedDataBatch3.headers[i], feedDataBatch4.headers[i]);
+            if (i % 2 == 0) {
+                assertTrue(Arrays.equals(inlineData[i], feedDataBatch4.data(i)));
+            } else {
+                assertNull(feedDataBatch4.data(i));
+            }
+        }
+
+        FeedSuspended feedSuspended1 = new FeedSuspended(reqId());
+        FeedSuspended feedSuspended2 = encodeThenDecode(feedSuspended1);
+        assertEquals(MessageType.FEED_SUSPENDED, feedSuspended1.type());
+        assertEquals(feedSuspended1.type(), feedSuspended2.type());
+        assertEquals(feedSuspended1.reqId, feedSuspended2.reqId);
+
+        FlushRequest flushRequest1 = new FlushRequest(reqId());
+        FlushRequest flushRequest2 = encodeThenDecode(flushRequest1);
+        assertEquals(MessageType.FLUSH_REQUEST, flushRequest1.type());
+        assertEquals(flushRequest1.type(), flushRequest2.type());
+        assertEquals(flushRequest1.reqId, flushRequest2.reqId);
+
+        FlushResponse flushResponse1 = new FlushResponse(reqId(), rand.nextLong());
+        FlushResponse flushResponse2 = encodeThenDecode(flushResponse1);
+        assertEquals(MessageType.FLUSH_RESPONSE, flushResponse1.type());
+        assertEquals(flushResponse1.type(), flushResponse2.type());
+        assertEquals(flushResponse1.reqId, flushResponse2.reqId);
+        assertEquals(flushResponse1.transactionId, flushResponse2.transactionId);
+
+        TransactionDataRequest transactionDataRequest1 = new TransactionDataRequest(reqId(), rand.nextLong());
+        TransactionDataRequest transactionDataRequest2 = encodeThenDecode(transactionDataRequest1);
+        assertEquals(MessageType.TRANSACTION_DATA_REQUEST, transactionDataRequest1.type());
+        assertEquals(transactionDataRequest1.type(), transactionDataRequest2.type());
+        assertEquals(transactionDataRequest1.reqId, transactionDataRequest2.reqId);
+        assertEquals(transactionDataRequest1.transactionId, transactionDataRequest2.transactionId);
+
+        TransactionDataResponse transactionDataResponse1 =
+            new TransactionDataResponse(reqId(), rand.nextLong(), data, Utils.checksum(data));
+        TransactionDataResponse transactionDataResponse2 = encodeThenDecode(transactionDataResponse1);
+        assertEquals(MessageType.TRANSACTION_DATA_RESPONSE, transactionDataResponse1.type());
+        assertEquals(transactionDataResponse1.type(), transactionDataResponse2.type());
+        assertEquals(transactionDataResponse1.reqId, transactionDataResponse2.reqId);
+        assertEquals(transactionDataResponse1.transactionId, transactionDataResponse2.transactionId);
+        assertNotNull(transactionDataResponse1.data);
+        assertNotNull(transactionDataResponse2.data);
+        assertNull(transactionDataResponse1.exception);
+        assertNull(transactionDataResponse2.exception);
+        assertTrue(Arrays.equals(transactionDataResponse1.data, transactionDataResponse2.data));
+        assertEquals(transactionDataResponse1.checksum, transactionDataResponse2.checksum);
+
+        TransactionDataResponse transactionDataResponse3 =
+            new TransactionDataResponse(reqId(), rand.nextLong(), new RpcException(Integer.toString(rand.nextInt())));
+        TransactionDataResponse transactionDataResponse4 = encodeThenDecode(transactionDataResponse3);
+        assertEquals(MessageType.TRANSACTION_DATA_RESPONSE, transactionDataResponse1.type());
+        assertEquals(transactionDataResponse3.type(), transactionDataResponse4.type());
+        assertEquals(transactionDataResponse3.reqId, transactionDataResponse4.reqId);
+        assertEquals(transactionDataResponse3.transactionId, transactionDataResponse4.transactionId);
+        assertNull(transactionDataResponse3.data);
+        assertNull(transactionDataResponse4.data);
+        assertEquals(0, transactionDataResponse3.checksum);
+        assertEquals(0, transactionDataResponse4.checksum);
+        assertNotNull(transactionDataResponse3.exception);
+        assertNotNull(transactionDataResponse4.exception);
+        assertEquals(transactionDataResponse3.exception.toString(), transactionDataResponse4.exception.toString());
+
+        TransactionDataBatchRequest transactionDataBatchRequest1 =
+            new TransactionDataBatchRequest(reqId(), rand.nextLong(), rand.nextInt(1000));
+        TransactionDataBatchRequest transactionDataBatchRequest2 = encodeThenDecode(transactionDataBatchRequest1);
+        assertEquals(MessageType.TRANSACTION_DATA_BATCH_REQUEST, transactionDataBatchRequest1.type());
+        assertEquals(transactionDataBatchRequest1.type(), transactionDataBatchRequest2.type());
+        assertEquals(transactionDataBatchRequest1.reqId, transactionDataBatchRequest2.reqId);
+        assertEquals(transactionDataBatchRequest1.firstTransactionId, transactionDataBatchRequest2.firstTransactionId);
+        assertEquals(transactionDataBatchRequest1.numTransactions, transactionDataBatchRequest2.numTransactions);
+
+        byte[][] dataList = new byte[10][];
+        int[] checksums = new int[dataList.length];
+        for (int i = 0; i < dataList.length; i++) {
+            dataList[i] = data();
+            checksums[i] = Utils.checksum(dataList[i]);
+        }
+        TransactionDataBatchResponse transactionDataBatchResponse1 =
+            new TransactionDataBatchResponse(reqId(), rand.nextLong(), dataList, checksums);
+        TransactionDataBatchResponse transactionDataBatchResponse2 = encodeThenDecode(transactionDataBatchResponse1);
+        assertEquals(MessageType.TRANSACTION_DATA_BATCH_RESPONSE, transactionDataBatchResponse1.type());
+        assertEquals(transactionDataBatchResponse1.type(), transactionDataBatchResponse2.type());
+        assertEquals(transactionDataBatchResponse1.reqId, transactionDataBatchResponse2.reqId);
+        assertEquals(transactionDataBatchResponse1.firstTransactionId, transactionDataBatchResponse2.firstTransactionId);
+        assertEquals(dataList.length, transactionDataBatchResponse2.size());
+        for (int i = 0; i < dataList.length; i++) {
+            assertTrue(Arrays.equals(dataList[i], transactionDataBatchResponse2.data[i]));
+        }
+        assertTrue(Arrays.equals(checksums, transactionDataBatchResponse2.checksums));
+        assertNull(transactionDataBatchResponse2.exception);
+
+        TransactionDataBatchResponse transactionDataBatchResponse3 =
+            new TransactionDataBatchResponse(reqId(), rand.nextLong(), new RpcException(Integer.toString(rand.nextInt())));
+        TransactionDataBatchResponse transactionDataBatchResponse4 = encodeThenDecode(transactionDataBatchResponse3);
+        assertEquals(transactionDataBatchResponse3.type(), transactionDataBatchResponse4.type());
+        assertEquals(transactionDataBatchResponse3.reqId, transactionDataBatchResponse4.reqId);
+        assertEquals(transactionDataBatchResponse3.firstTransactionId, transactionDataBatchResponse4.firstTransactionId);
+        assertNull(transactionDataBatchResponse4.data);
+        assertEquals(0, transactionDataBatchResponse4.size());
+        assertNotNull(transactionDataBatchResponse4.exception);
+        assertEquals(transactionDataBatchResponse3.exception.toString(), transactionDataBatchResponse4.exception.toString());
+
+        HighWaterMarkRequest highWaterMarkRequest1 = new HighWaterMarkRequest(reqId());
+        HighWaterMarkRequest highWaterMarkRequest2 = encodeThenDecode(highWaterMarkRequest1);
+        assertEquals(MessageType.HIGH_WATER_MARK_REQUEST, highWaterMarkRequest1.type());
+        assertEquals(highWaterMarkRequest1.type(), highWaterMarkRequest2.type());
+        assertEquals(highWaterMarkRequest1.reqId, highWaterMarkRequest2.reqId);
+
+        HighWaterMarkResponse highWaterMarkResponse1 = new HighWaterMarkResponse(reqId(), rand.nextLong());
+        HighWaterMarkResponse highWaterMarkResponse2 = encodeThenDecode(highWaterMarkResponse1);
+        assertEquals(MessageType.HIGH_WATER_MARK_RESPONSE, highWaterMarkResponse1.type());
+        assertEquals(highWaterMarkResponse1.type(), highWaterMarkResponse2.type());
+        assertEquals(highWaterMarkResponse1.reqId, highWaterMarkResponse2.reqId);
+        assertEquals(highWaterMarkResponse1.transactionId, highWaterMarkResponse2.transactionId);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Message> T encodeThenDecode(T message) {
+        ByteArrayMessageAttributeWriter writer = new ByteArrayMessageAttributeWriter();
+        codec.encode(message, writer);
+        ByteArrayMessageAttributeReader reader = new ByteArrayMessageAttributeReader(writer.toByteArray());
+        return (T) codec.decode(reader);
+    }
+
+    private ReqId reqId() {
+        return new ReqId(rand.nextLong(), rand.nextLong());
+    }
+
+    private int[] lock() {
+        int n = rand.nextInt(3);
+        int[] lock = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            lock[i] = rand.nextInt();
+        }
+
+        return lock;
+    }
+
+    private byte[] data() {
+        return Long.toOctalString(rand.nextLong()).getBytes(StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,123 @@
+package com.wepay.waltz.common.util;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class MemoryBudgetTest {
+
+    @Test
+    public void testUnlimited() {
+        MemoryBudget budget = new MemoryBudget(0L);
+
+        budget.acquire(1000L);
+        budget.acquire(1000L);
+        assertEquals(2000L, budget.bytesInFlight());
+
+        budget.release(1000L);
+        budget.release(1000L);
+        assertEquals(0L, budget.bytesInFlight());
+    }
+
+    @Test
+    public void testBlocking() throws Exception {
+        MemoryBudget budget = new MemoryBudget(100L);
+
+        budget.acquire(60L);
+        budget.acquire(40L);
+        assertEquals(100L, budget.bytesInFlight());
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            budget.acquire(10L);
+            acquired.countDown();
+        });
+        thread.start();
+
+        // The budget is used up
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+
+        budget.release(60L);
+        assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        assertEquals(50L, budget.bytesInFlight());
+
+        thread.join();
+    }
+
+    @Test
+    public void testLargeRequest() {
+        MemoryBudget budget = new MemoryBudget(100L);
+
+        // A request larger than the limit is admitted when nothing is in flight
+        budget.acquire(1000L);
+        assertEquals(1000L, budget.bytesInFlight());
+
+        budget.release(1000L);
+        assertEquals(0L, budget.bytesInFlight());
+    }
+
+    @Test
+    public void testParent() throws Exception {
+        MemoryBudget parent = new MemoryBudget(100L);
+        MemoryBudget child1 = new MemoryBudget(0L, parent);
+        MemoryBudget child2 = new MemoryBudget(0L, parent);
+
+        child1.acquire(100L);
+        assertEquals(100L, child1.bytesInFlight());
+        assertEquals(100L, parent.bytesInFlight());
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            child2.acquire(10L);
+            acquired.countDown();
+        });
+        thread.start();
+
+        // The parent budget is used up by the other child
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+
+        child1.release(100L);
+        assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        assertEquals(0L, child1.bytesInFlight());
+        assertEquals(10L, child2.bytesInFlight());
+        assertEquals(10L, parent.bytesInFlight());
+
+        thread.join();
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        MemoryBudget parent = new MemoryBudget(0L);
+        MemoryBudget budget = new MemoryBudget(100L, parent);
+
+        budget.acquire(100L);
+        assertEquals(100L, parent.bytesInFlight());
+
+        CountDownLatch acquired = new CountDownLatch(1);
+        Thread thread = new Thread(() -> {
+            budget.acquire(10L);
+            acquired.countDown();
+        });
+        thread.start();
+        assertFalse(acquired.await(100, TimeUnit.MILLISECONDS));
+
+        // Closing wakes up the waiting thread and returns bytes to the parent
+        budget.close();
+        assertTrue(acquired.await(10, TimeUnit.SECONDS));
+        assertEquals(0L, budget.bytesInFlight());
+        assertEquals(0L, parent.bytesInFlight());
+
+        // Releases after close are ignored
+        budget.release(100L);
+        assertEquals(0L, budget.bytesInFlight());
+        assertEquals(0L, parent.bytesInFlight());
+
+        thread.join();
+    }
+
+}
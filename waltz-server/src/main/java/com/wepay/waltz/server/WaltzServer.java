@@ -13,13 +13,16 @@ import com.wepay.riff.metrics.servlets.BuildInfoServlet;
 import com.wepay.riff.metrics.servlets.HealthCheckServlet;
 import com.wepay.riff.metrics.servlets.MetricsServlet;
 import com.wepay.riff.metrics.servlets.PingServlet;
+import com.wepay.riff.network.MessageCodec;
 import com.wepay.riff.network.MessageHandler;
 import com.wepay.riff.network.NetworkServer;
 import com.wepay.riff.network.ServerSSL;
 import com.wepay.riff.util.Logging;
+import com.wepay.waltz.common.util.MemoryBudget;
 import com.wepay.waltz.common.util.Utils;
 import com.wepay.waltz.exception.ServerException;
 import com.wepay.waltz.server.health.HealthCheck;
+import com.wepay.waltz.server.internal.CatchUpFeedScheduler;
 import com.wepay.waltz.server.internal.FeedCache;
 import com.wepay.waltz.server.internal.FeedCachePartition;
 import com.wepay.waltz.server.internal.Partition;
@@ -93,6 +96,8 @@ public class WaltzServer {
     private Server jettyServer;
     protected final FeedCache feedCache;
     protected final TransactionFetcher transactionFetcher;
+    protected final MemoryBudget appendBudget;
+    protected final CatchUpFeedScheduler catchupFeedScheduler;
 
     /**
      * Class constructor.
@@ -124,16 +129,36 @@ public class WaltzServer {
 
         Meter feedCacheMissMeter = REGISTRY.meter(metricsGroup, "feed-cache-miss");
 
-        this.feedCache = new FeedCache((int) config.get(WaltzServerConfig.FEED_CACHE_SIZE), feedCacheMissMeter);
+        this.feedCache = new FeedCache(
+            (int) config.get(WaltzServerConfig.FEED_CACHE_SIZE),
+            ((String) config.get(WaltzServerConfig.FEED_CACHE_ALLOCATION)).toLowerCase().equals("direct"),
+            feedCacheMissMeter
+        );
 
         Meter transactionCacheMissMeter = REGISTRY.meter(metricsGroup, "transaction-cache-miss");
 
         this.transactionFetcher = new TransactionFetcher(
             (int) config.get(WaltzServerConfig.TRANSACTION_DATA_CACHE_SIZE),
             ((String) config.get(WaltzServerConfig.TRANSACTION_DATA_CACHE_ALLOCATION)).toLowerCase().equals("direct"),
+            (boolean) config.get(WaltzServerConfig.TRANSACTION_DATA_CACHE_SCAN_RESISTANT),
             transactionCacheMissMeter
         );
 
+        this.appendBudget = new MemoryBudget((long) config.get(WaltzServerConfig.APPEND_BYTES_LIMIT));
+
+        // Catch-up feeds run on a shared pool of workers if configured, otherwise on a thread of each partition
+        int catchupFeedThreads = (int) config.get(WaltzServerConfig.CATCHUP_FEED_THREADS);
+        if (catchupFeedThreads > 0) {
+            this.catchupFeedScheduler = new CatchUpFeedScheduler(
+                catchupFeedThreads,
+                (int) config.get(WaltzServerConfig.CATCHUP_FEED_QUANTUM),
+                (long) config.get(WaltzServerConfig.CATCHUP_FEED_RATE_LIMIT)
+            );
+            this.catchupFeedScheduler.start();
+        } else {
+            this.catchupFeedScheduler = null;
+        }
+
         // Create an interface object for the cluster manager
         this.managedServer = new ManagedServer() {
 
@@ -197,7 +222,8 @@ public class WaltzServer {
         this.networkServer = new NetworkServer(port, sslCtx != null ? sslCtx : ServerSSL.createInsecureContext()) {
             @Override
             protected MessageHandler getMessageHandler() {
-                return new WaltzServerHandler(partitions, preferredPartitions, store, clusterManager, managedServer);
+                return new WaltzServerHandler(WaltzServer.this.messageCodecs(), partitions, preferredPartitions, store,
+                    clusterManager, managedServer);
             }
         };
 
@@ -206,10 +232,19 @@ public class WaltzServer {
         logger.info("WaltzServer Started: id=" + serverId + " endpoint=" + endpoint);
     }
 
+    /**
+     * Returns the message codecs to negotiate with clients, keyed by version.
+     *
+     * @return the message codecs.
+     */
+    protected Map<Short, MessageCodec> messageCodecs() {
+        return WaltzServerHandler.CODECS;
+    }
+
     protected Partition createPartition(PartitionInfo info) {
         StorePartition storePartition = store.getPartition(info.partitionId, info.generation);
         FeedCachePartition feedCachePartition = feedCache.getPartition(info.partitionId);
-        return new Partition(info.partitionId, storePartition, feedCachePartition, transactionFetcher, config);
+        return new Partition(info.partitionId, storePartition, feedCachePartition, transactionFetcher, config, appendBudget, catchupFeedScheduler);
     }
 
     Map<Integer, Partition> partitions() {
@@ -247,6 +282,15 @@ public class WaltzServer {
             partitions.clear();
         }
 
+        if (catchupFeedScheduler != null) {
+            try {
+                catchupFeedScheduler.close();
+
+            } catch (Throwable ex) {
+                logger.error("failed to close the catch-up feed scheduler", ex);
+            }
+        }
+
         try {
             store.close();
 
@@ -470,6 +514,8 @@ public class WaltzServer {
         REGISTRY.gauge(metricsGroup, "endpoint", (Gauge<String>) () -> endpoint.toString());
         REGISTRY.gauge(metricsGroup, "waltz-server-num-partitions", (Gauge<Integer>) () -> getPartitionIds().size());
         REGISTRY.gauge(metricsGroup, "replica-info", (Gauge<Map<Integer, List<String>>>) () -> getReplicaInfoMap());
+        REGISTRY.gauge(metricsGroup, "append-bytes-in-flight", (Gauge<Long>) () -> appendBudget.bytesInFlight());
+        REGISTRY.gauge(metricsGroup, "catchup-feed-clients", (Gauge<Integer>) () -> catchupFeedScheduler != null ? catchupFeedScheduler.numClients() : 0);
     }
 
     private void unregisterMetrics() {
@@ -480,6 +526,8 @@ public class WaltzServer {
         REGISTRY.remove(metricsGroup, "endpoint");
         REGISTRY.remove(metricsGroup, "waltz-server-num-partitions");
         REGISTRY.remove(metricsGroup, "replica-info");
+        REGISTRY.remove(metricsGroup, "append-bytes-in-flight");
+        REGISTRY.remove(metricsGroup, "catchup-feed-clients");
     }
 
     private Map<Integer, List<String>> getReplicaInfoMap() {
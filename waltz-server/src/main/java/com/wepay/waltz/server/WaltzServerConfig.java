@@ -41,11 +41,41 @@ public class WaltzServerConfig extends AbstractConfig {
     /** Default optimistic lock table size. */
     public static final int DEFAULT_OPTIMISTIC_LOCK_TABLE_SIZE = 30000;
 
+    /** Append request queue size per partition. */
+    public static final String APPEND_QUEUE_SIZE = "server.appendQueueSize";
+    /** Default append request queue size. */
+    public static final int DEFAULT_APPEND_QUEUE_SIZE = 100;
+
+    /** Maximum bytes of transaction data held by append requests in flight in the server, <code>server.appendBytesLimit</code>. Zero means unlimited. */
+    public static final String APPEND_BYTES_LIMIT = "server.appendBytesLimit";
+    /** Default value for {@link #APPEND_BYTES_LIMIT} config. */
+    public static final long DEFAULT_APPEND_BYTES_LIMIT = 0L;
+
+    /** Maximum bytes of transaction data held by append requests in flight per partition, <code>server.partitionAppendBytesLimit</code>. Zero means unlimited. */
+    public static final String PARTITION_APPEND_BYTES_LIMIT = "server.partitionAppendBytesLimit";
+    /** Default value for {@link #PARTITION_APPEND_BYTES_LIMIT} config. */
+    public static final long DEFAULT_PARTITION_APPEND_BYTES_LIMIT = 0L;
+
+    /** Number of threads per partition that prepare lock requests of appends. Zero prepares them in the append task. */
+    public static final String APPEND_PREPARE_THREADS = "server.appendPrepareThreads";
+    /** Default number of append prepare threads. */
+    public static final int DEFAULT_APPEND_PREPARE_THREADS = 0;
+
+    /** Hands off appends to the store partition in a separate task, <code>server.asyncStoreAppend</code> */
+    public static final String ASYNC_STORE_APPEND = "server.asyncStoreAppend";
+    /** Default value for {@link #ASYNC_STORE_APPEND} config. */
+    public static final boolean DEFAULT_ASYNC_STORE_APPEND = false;
+
     /** Feed cache size. */
     public static final String FEED_CACHE_SIZE = "server.feedCacheSize";
     /** Default feed cache size. */
     public static final int DEFAULT_FEED_CACHE_SIZE = 67108864; // 64MB
 
+    /** Feed cache allocation. */
+    public static final String FEED_CACHE_ALLOCATION = "server.feedCacheAllocation";
+    /** Default feed cache allocation. */
+    public static final String DEFAULT_FEED_CACHE_ALLOCATION = "heap"; // heap or direct
+
     /** Minimum fetch size. */
     public static final String MIN_FETCH_SIZE = "server.minFetchSize";
     /** Default minimum fetch size. */
@@ -56,21 +86,101 @@ public class WaltzServerConfig extends AbstractConfig {
     /** Real time threshold. */
     public static final int DEFAULT_REALTIME_THRESHOLD = 1000;
 
+    /** Maximum number of feed entries sent in one message to clients that accept batched feed data. One or less disables batching. */
+    public static final String FEED_BATCH_SIZE = "server.feedBatchSize";
+    /** Default value for {@link #FEED_BATCH_SIZE} config. */
+    public static final int DEFAULT_FEED_BATCH_SIZE = 100;
+
+    /** Upper bound of the size of transaction data sent inline with feed entries to clients that ask for it. Zero disables inlining. */
+    public static final String FEED_MAX_INLINE_DATA_SIZE = "server.feedMaxInlineDataSize";
+    /** Default value for {@link #FEED_MAX_INLINE_DATA_SIZE} config. */
+    public static final int DEFAULT_FEED_MAX_INLINE_DATA_SIZE = 65536;
+
+    /** Whether realtime feed contexts at the same high-water mark are fed together as a cohort. */
+    public static final String BROADCAST_FEED = "server.broadcastFeed";
+    /** Default value for {@link #BROADCAST_FEED} config. */
+    public static final boolean DEFAULT_BROADCAST_FEED = false;
+
+    /** Number of worker threads shared by all partitions for catch-up feeds. Zero runs one catch-up feed thread per partition. */
+    public static final String CATCHUP_FEED_THREADS = "server.catchupFeedThreads";
+    /** Default value for {@link #CATCHUP_FEED_THREADS} config. */
+    public static final int DEFAULT_CATCHUP_FEED_THREADS = 0;
+
+    /** Number of transactions fed to a client per round by the catch-up feed workers. */
+    public static final String CATCHUP_FEED_QUANTUM = "server.catchupFeedQuantum";
+    /** Default value for {@link #CATCHUP_FEED_QUANTUM} config. */
+    public static final int DEFAULT_CATCHUP_FEED_QUANTUM = 256;
+
+    /** Maximum number of transactions per second fed to a client by the catch-up feed workers. Zero or less means unlimited. */
+    public static final String CATCHUP_FEED_RATE_LIMIT = "server.catchupFeedRateLimit";
+    /** Default value for {@link #CATCHUP_FEED_RATE_LIMIT} config. */
+    public static final long DEFAULT_CATCHUP_FEED_RATE_LIMIT = 0L;
+
     /** Transaction data cache size. */
     public static final String TRANSACTION_DATA_CACHE_SIZE = "server.transactionDataCacheSize";
     /** Default transaction data cache size. */
     public static final int DEFAULT_TRANSACTION_DATA_CACHE_SIZE = 134217728; // 128MB
 
+    /** Maximum number of transactions returned for one transaction data batch request, <code>server.transactionDataBatchSize</code> */
+    public static final String TRANSACTION_DATA_BATCH_SIZE = "server.transactionDataBatchSize";
+    /** Default value for {@link #TRANSACTION_DATA_BATCH_SIZE} config. */
+    public static final int DEFAULT_TRANSACTION_DATA_BATCH_SIZE = 100;
+
     /** Transaction data cache allocation prefix. */
     public static final String TRANSACTION_DATA_CACHE_ALLOCATION = "server.transactionDataCacheAllocation";
     /** Default transaction data cache allocation. */
     public static final String DEFAULT_TRANSACTION_DATA_CACHE_ALLOCATION = "heap"; // heap or direct
 
+    /** Caches transaction data fetched by catch-up reads only if it is read frequently, <code>server.transactionDataCacheScanResistant</code> */
+    public static final String TRANSACTION_DATA_CACHE_SCAN_RESISTANT = "server.transactionDataCacheScanResistant";
+    /** Default value for {@link #TRANSACTION_DATA_CACHE_SCAN_RESISTANT} config. */
+    public static final boolean DEFAULT_TRANSACTION_DATA_CACHE_SCAN_RESISTANT = false;
+
     /** Maximum batch size, <code>storage.maxBatchSize</code> */
     public static final String MAX_BATCH_SIZE = "storage.maxBatchSize";
     /** Default value for {@link #MAX_BATCH_SIZE} config. */
     public static final int DEFAULT_MAX_BATCH_SIZE = 100;
 
+    /** Maximum total size of transaction data in a batch, <code>storage.maxBatchBytes</code> */
+    public static final String MAX_BATCH_BYTES = "storage.maxBatchBytes";
+    /** Default value for {@link #MAX_BATCH_BYTES} config. */
+    public static final int DEFAULT_MAX_BATCH_BYTES = 16777216; // 16MB
+
+    /** Target latency of a batch in milliseconds for adaptive batch sizing, <code>storage.targetBatchLatency</code>. Zero disables it. */
+    public static final String TARGET_BATCH_LATENCY = "storage.targetBatchLatency";
+    /** Default value for {@link #TARGET_BATCH_LATENCY} config. */
+    public static final long DEFAULT_TARGET_BATCH_LATENCY = 0;
+
+    /** Maximum number of batches in flight per store session, <code>storage.maxPipelinedBatches</code> */
+    public static final String MAX_PIPELINED_BATCHES = "storage.maxPipelinedBatches";
+    /** Default value for {@link #MAX_PIPELINED_BATCHES} config. */
+    public static final int DEFAULT_MAX_PIPELINED_BATCHES = 1;
+
+    /** Maximum number of records in a batch copied to a lagging replica, <code>storage.catchUpBatchSize</code> */
+    public static final String CATCH_UP_BATCH_SIZE = "storage.catchUpBatchSize";
+    /** Default value for {@link #CATCH_UP_BATCH_SIZE} config. */
+    public static final int DEFAULT_CATCH_UP_BATCH_SIZE = 20;
+
+    /** Maximum total size of transaction data in a batch copied to a lagging replica, <code>storage.catchUpBatchBytes</code> */
+    public static final String CATCH_UP_BATCH_BYTES = "storage.catchUpBatchBytes";
+    /** Default value for {@link #CATCH_UP_BATCH_BYTES} config. */
+    public static final int DEFAULT_CATCH_UP_BATCH_BYTES = 16777216; // 16MB
+
+    /** Number of batches read ahead while a batch is written to a lagging replica, <code>storage.catchUpReadAhead</code> */
+    public static final String CATCH_UP_READ_AHEAD = "storage.catchUpReadAhead";
+    /** Default value for {@link #CATCH_UP_READ_AHEAD} config. */
+    public static final int DEFAULT_CATCH_UP_READ_AHEAD = 0;
+
+    /** Lets replicas which are not needed for the quorum finish the recovery by the catch-up, <code>storage.recoveryHandOff</code> */
+    public static final String RECOVERY_HAND_OFF = "storage.recoveryHandOff";
+    /** Default value for {@link #RECOVERY_HAND_OFF} config. */
+    public static final boolean DEFAULT_RECOVERY_HAND_OFF = false;
+
+    /** Sends replica writes asynchronously and drives replica sessions by write completions, <code>storage.asyncReplicaWrites</code> */
+    public static final String ASYNC_REPLICA_WRITES = "storage.asyncReplicaWrites";
+    /** Default value for {@link #ASYNC_REPLICA_WRITES} config. */
+    public static final boolean DEFAULT_ASYNC_REPLICA_WRITES = false;
+
     /** Initial retry interval. */
     public static final String INITIAL_RETRY_INTERVAL = "storage.initialRetryInterval";
     /** Default initial retry interval. */
@@ -86,6 +196,14 @@ public class WaltzServerConfig extends AbstractConfig {
     /** Default checkpoint interval. */
     public static final int DEFAULT_CHECKPOINT_INTERVAL = 250000;
 
+    /**
+     * Whether a new store session is prepared in background at a checkpoint, while appends are queued for it.
+     * Queued appends still wait for the flush and the recovery before they are committed.
+     */
+    public static final String CHECKPOINT_HAND_OFF = "storage.checkpointHandOff";
+    /** Default value for {@link #CHECKPOINT_HAND_OFF} config. */
+    public static final boolean DEFAULT_CHECKPOINT_HAND_OFF = false;
+
     /** Waltz server jetty port. */
     public static final String SERVER_JETTY_PORT = "server.jetty.port";
 
@@ -122,18 +240,42 @@ public class WaltzServerConfig extends AbstractConfig {
 
             // Partition
             put(OPTIMISTIC_LOCK_TABLE_SIZE, intParser.withDefault(DEFAULT_OPTIMISTIC_LOCK_TABLE_SIZE));
+            put(APPEND_QUEUE_SIZE, intParser.withDefault(DEFAULT_APPEND_QUEUE_SIZE));
+            put(APPEND_BYTES_LIMIT, longParser.withDefault(DEFAULT_APPEND_BYTES_LIMIT));
+            put(PARTITION_APPEND_BYTES_LIMIT, longParser.withDefault(DEFAULT_PARTITION_APPEND_BYTES_LIMIT));
+            put(APPEND_PREPARE_THREADS, intParser.withDefault(DEFAULT_APPEND_PREPARE_THREADS));
+            put(ASYNC_STORE_APPEND, booleanParser.withDefault(DEFAULT_ASYNC_STORE_APPEND));
             put(FEED_CACHE_SIZE, intParser.withDefault(DEFAULT_FEED_CACHE_SIZE));
+            put(FEED_CACHE_ALLOCATION, stringParser.withDefault(DEFAULT_FEED_CACHE_ALLOCATION)
+                .withValidator(new CacheAllocationValidator()));
             put(MIN_FETCH_SIZE, intParser.withDefault(DEFAULT_MIN_FETCH_SIZE));
             put(REALTIME_THRESHOLD, intParser.withDefault(DEFAULT_REALTIME_THRESHOLD));
+            put(FEED_BATCH_SIZE, intParser.withDefault(DEFAULT_FEED_BATCH_SIZE));
+            put(FEED_MAX_INLINE_DATA_SIZE, intParser.withDefault(DEFAULT_FEED_MAX_INLINE_DATA_SIZE));
+            put(BROADCAST_FEED, booleanParser.withDefault(DEFAULT_BROADCAST_FEED));
+            put(CATCHUP_FEED_THREADS, intParser.withDefault(DEFAULT_CATCHUP_FEED_THREADS));
+            put(CATCHUP_FEED_QUANTUM, intParser.withDefault(DEFAULT_CATCHUP_FEED_QUANTUM));
+            put(CATCHUP_FEED_RATE_LIMIT, longParser.withDefault(DEFAULT_CATCHUP_FEED_RATE_LIMIT));
             put(TRANSACTION_DATA_CACHE_SIZE, intParser.withDefault(DEFAULT_TRANSACTION_DATA_CACHE_SIZE));
             put(TRANSACTION_DATA_CACHE_ALLOCATION, stringParser.withDefault(DEFAULT_TRANSACTION_DATA_CACHE_ALLOCATION)
                 .withValidator(new CacheAllocationValidator()));
+            put(TRANSACTION_DATA_CACHE_SCAN_RESISTANT, booleanParser.withDefault(DEFAULT_TRANSACTION_DATA_CACHE_SCAN_RESISTANT));
+            put(TRANSACTION_DATA_BATCH_SIZE, intParser.withDefault(DEFAULT_TRANSACTION_DATA_BATCH_SIZE));
 
             // Storage
             put(MAX_BATCH_SIZE, intParser.withDefault(DEFAULT_MAX_BATCH_SIZE));
+            put(MAX_BATCH_BYTES, intParser.withDefault(DEFAULT_MAX_BATCH_BYTES));
+            put(TARGET_BATCH_LATENCY, longParser.withDefault(DEFAULT_TARGET_BATCH_LATENCY));
+            put(MAX_PIPELINED_BATCHES, intParser.withDefault(DEFAULT_MAX_PIPELINED_BATCHES));
+            put(CATCH_UP_BATCH_SIZE, intParser.withDefault(DEFAULT_CATCH_UP_BATCH_SIZE));
+            put(CATCH_UP_BATCH_BYTES, intParser.withDefault(DEFAULT_CATCH_UP_BATCH_BYTES));
+            put(CATCH_UP_READ_AHEAD, intParser.withDefault(DEFAULT_CATCH_UP_READ_AHEAD));
+            put(RECOVERY_HAND_OFF, booleanParser.withDefault(DEFAULT_RECOVERY_HAND_OFF));
+            put(ASYNC_REPLICA_WRITES, booleanParser.withDefault(DEFAULT_ASYNC_REPLICA_WRITES));
             put(INITIAL_RETRY_INTERVAL, longParser.withDefault(DEFAULT_INITIAL_RETRY_INTERVAL));
             put(MAX_RETRY_INTERVAL, longParser.withDefault(DEFAULT_MAX_RETRY_INTERVAL));
             put(CHECKPOINT_INTERVAL, intParser.withDefault(DEFAULT_CHECKPOINT_INTERVAL));
+            put(CHECKPOINT_HAND_OFF, booleanParser.withDefault(DEFAULT_CHECKPOINT_HAND_OFF));
 
             // Jetty
             put(SERVER_JETTY_PORT, intParser.withValidator(portValidator));
@@ -0,0 +1,350 @@
+package com.wepay.waltz.server.internal;
+
+import com.wepay.riff.util.Logging;
+import com.wepay.riff.util.RepeatingTask;
+import org.slf4j.Logger;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Runs catch-up feeds of all partitions in a {@link com.wepay.waltz.server.WaltzServer} on a shared pool of worker
+ * threads, so the number of threads does not grow with the number of partitions and a partition with many lagging
+ * clients can use more than one thread.
+ *
+ * <p>Jobs are scheduled by deficit round robin over clients. Each client with pending jobs gets a quantum of
+ * transactions per round regardless of how many partitions it is catching up on, so a client replaying a long
+ * history does not starve other clients. The jobs of a client are served in turn and a client is served by at most
+ * one worker at a time. Optionally, the number of transactions per second fed to each client is limited.
+ * A job that failed may ask to be delayed, so it is retried with a back-off instead of busy looping.</p>
+ */
+public class CatchUpFeedScheduler {
+
+    private static final Logger logger = Logging.getLogger(CatchUpFeedScheduler.class);
+
+    /**
+     * A catch-up feed of a client on a partition.
+     */
+    public interface Job {
+
+        /**
+         * Returns the id of the client fed by this job.
+         * @return the client id.
+         */
+        int clientId();
+
+        /**
+         * Feeds the client. The job must not block waiting for new transactions.
+         * @param maxTransactions The maximum number of transactions to feed.
+         * @return the number of transactions fed.
+         */
+        int run(int maxTransactions);
+
+        /**
+         * Returns true if the job has nothing more to feed. A finished job is dropped by the scheduler.
+         * @return true if the job has nothing more to feed, otherwise false.
+         */
+        boolean isDone();
+
+        /**
+         * Returns the time until the job may run again. A job backs off this way after a failure.
+         * @param now The current time in nanoseconds from {@link System#nanoTime()}.
+         * @return zero or less if the job may run now, otherwise the time in nanoseconds until it may run.
+         */
+        long delay(long now);
+
+    }
+
+    private final int quantum;
+    private final long rateLimit;
+    private final ArrayList<Worker> workers = new ArrayList<>();
+
+    // Clients with pending jobs. A client being served by a worker is in the map but not in the ring.
+    private final HashMap<Integer, ClientJobs> clients = new HashMap<>();
+    private final ArrayDeque<ClientJobs> ring = new ArrayDeque<>();
+    private boolean running = true;
+
+    /**
+     * Class constructor.
+     * @param numThreads The number of worker threads.
+     * @param quantum The number of transactions fed to a client per round.
+     * @param rateLimit The maximum number of transactions per second fed to a client. Zero or less means unlimited.
+     */
+    public CatchUpFeedScheduler(int numThreads, int quantum, long rateLimit) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("numThreads must be positive");
+        }
+        if (quantum < 1) {
+            throw new IllegalArgumentException("quantum must be positive");
+        }
+
+        this.quantum = quantum;
+        this.rateLimit = rateLimit;
+
+        for (int i = 0; i < numThreads; i++) {
+            workers.add(new Worker(i));
+        }
+    }
+
+    /**
+     * Starts the worker threads.
+     */
+    public void start() {
+        for (Worker worker : workers) {
+            worker.start();
+        }
+    }
+
+    /**
+     * Closes the scheduler. Pending jobs are dropped.
+     */
+    public void close() {
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            clients.clear();
+            ring.clear();
+            notifyAll();
+        }
+
+        ArrayList<CompletableFuture<Boolean>> futures = new ArrayList<>();
+        for (Worker worker : workers) {
+            futures.add(worker.stop());
+        }
+
+        try {
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get();
+        } catch (Exception ex) {
+            logger.warn("failed to stop catch-up feed workers", ex);
+        }
+    }
+
+    /**
+     * Submits a job.
+     * @param job The job.
+     * @return true if the job is accepted, false if the scheduler is closed.
+     */
+    public boolean submit(Job job) {
+        synchronized (this) {
+            if (!running) {
+                return false;
+            }
+
+            ClientJobs client = clients.get(job.clientId());
+            if (client == null) {
+                client = new ClientJobs(job.clientId(), System.nanoTime());
+                clients.put(job.clientId(), client);
+                ring.add(client);
+                notifyAll();
+            }
+            client.jobs.add(job);
+            return true;
+        }
+    }
+
+    /**
+     * Returns the number of clients with pending jobs.
+     * @return the number of clients with pending jobs.
+     */
+    public int numClients() {
+        synchronized (this) {
+            return clients.size();
+        }
+    }
+
+    /**
+     * Returns the number of pending jobs.
+     * @return the number of pending jobs.
+     */
+    public int numJobs() {
+        synchronized (this) {
+            int numJobs = 0;
+            for (ClientJobs client : clients.values()) {
+                numJobs += client.jobs.size() + (client.running != null ? 1 : 0);
+            }
+            return numJobs;
+        }
+    }
+
+    /**
+     * Takes the next client that may be served. Blocks while there is none.
+     * @return the client, or null if the scheduler is closed.
+     */
+    private ClientJobs take() {
+        synchronized (this) {
+            while (running) {
+                long now = System.nanoTime();
+                long waitNanos = Long.MAX_VALUE;
+
+                Iterator<ClientJobs> iter = ring.iterator();
+                while (iter.hasNext()) {
+                    ClientJobs client = iter.next();
+                    long nanos = client.refill(now);
+                    if (nanos == 0L) {
+                        Job job = client.pollReadyJob(now);
+                        if (job != null) {
+                            iter.remove();
+                            client.running = job;
+                            client.deficit += quantum;
+                            return client;
+                        }
+                        nanos = client.delay(now);
+                    }
+                    waitNanos = Math.min(waitNanos, nanos);
+                }
+
+                try {
+                    if (waitNanos == Long.MAX_VALUE) {
+                        wait();
+                    } else {
+                        // All clients are throttled or backing off. Wait until one of them can be served.
+                        wait(Math.max(1L, waitNanos / 1000000L));
+                    }
+                } catch (InterruptedException ex) {
+                    Thread.interrupted();
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Puts back the client after it is served. A job that failed is dropped.
+     */
+    private void release(ClientJobs client, int numTransactions, boolean failed) {
+        synchronized (this) {
+            Job job = client.running;
+            client.running = null;
+            client.deficit = Math.max(0, client.deficit - numTransactions);
+            client.tokens -= numTransactions;
+
+            if (!running) {
+                return;
+            }
+
+            if (!failed && !job.isDone()) {
+                // Serve the other jobs of the client first
+                client.jobs.add(job);
+            }
+
+            if (client.jobs.isEmpty()) {
+                // The deficit is not carried over when the client becomes idle.
+                clients.remove(client.clientId);
+            } else {
+                ring.add(client);
+                notifyAll();
+            }
+        }
+    }
+
+    private void serve() {
+        ClientJobs client = take();
+        if (client == null) {
+            return;
+        }
+
+        int numTransactions = 0;
+        boolean failed = true;
+        try {
+            numTransactions = client.running.run(client.allowance());
+            failed = false;
+        } finally {
+            release(client, numTransactions, failed);
+        }
+    }
+
+    private class ClientJobs {
+
+        final int clientId;
+        final ArrayDeque<Job> jobs = new ArrayDeque<>();
+        Job running = null;
+        int deficit = 0;
+        double tokens;
+        long lastRefillTime;
+
+        ClientJobs(int clientId, long now) {
+            this.clientId = clientId;
+            this.tokens = rateLimit;
+            this.lastRefillTime = now;
+        }
+
+        /**
+         * Refills the rate limit tokens.
+         * @return zero if the client may be served, otherwise the time in nanoseconds until it may be served.
+         */
+        long refill(long now) {
+            if (rateLimit <= 0) {
+                return 0L;
+            }
+
+            // The bucket holds tokens for at most one second.
+            tokens = Math.min(rateLimit, tokens + (now - lastRefillTime) * rateLimit / 1000000000.0);
+            lastRefillTime = now;
+
+            return tokens >= 1.0 ? 0L : (long) ((1.0 - tokens) * 1000000000.0 / rateLimit) + 1L;
+        }
+
+        /**
+         * Removes and returns the first job that may run now.
+         * @return the job, or null if all jobs are backing off.
+         */
+        Job pollReadyJob(long now) {
+            Iterator<Job> iter = jobs.iterator();
+            while (iter.hasNext()) {
+                Job job = iter.next();
+                if (job.delay(now) <= 0L) {
+                    iter.remove();
+                    return job;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Returns the time in nanoseconds until one of the jobs may run.
+         */
+        long delay(long now) {
+            long nanos = Long.MAX_VALUE;
+            for (Job job : jobs) {
+                nanos = Math.min(nanos, Math.max(1L, job.delay(now)));
+            }
+            return nanos;
+        }
+
+        /**
+         * Returns the maximum number of transactions the client may be fed in this turn.
+         */
+        int allowance() {
+            if (rateLimit <= 0) {
+                return deficit;
+            } else {
+                return (int) Math.max(1, Math.min(deficit, (long) tokens));
+            }
+        }
+
+    }
+
+    private class Worker extends RepeatingTask {
+
+        Worker(int index) {
+            super("Feed-C-" + index);
+        }
+
+        @Override
+        protected void task() {
+            serve();
+        }
+
+        @Override
+        protected void exceptionCaught(Throwable ex) {
+            logger.error("exception caught", ex);
+        }
+
+    }
+
+}
@@ -4,10 +4,13 @@ import com.wepay.riff.metrics.core.Meter;
 import com.wepay.riff.util.Logging;
 import org.slf4j.Logger;
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>
@@ -26,12 +29,18 @@ import java.util.Map;
  * </p>
  * <p>
  * It is assumed that a majority of cache accesses are satisfied with the local pool.
- * So there won't be excessive contentions on the shared pool.
+ * To keep contentions low when it is not the case, the index of the shared pool is split into stripes by block key,
+ * and each stripe has its own lock.
  * </p>
  * <p>
- * Both types of pools use the FIFO replacement policy.
- * The behavior of two level caching as a whole is more complicated.
- * It is slightly closer to LRU policy or second chance replacement policy than pure FIFO policy.
+ * Local pools use the FIFO replacement policy. The shared pool uses the CLOCK (second chance) policy.
+ * Blocks that never held data are used first. After that, the clock hand moves over blocks in the order of check-in,
+ * and a block that has been read since it was last examined is passed over once. A checkout never waits for a block.
+ * If no block is available, the data is simply not cached.
+ * </p>
+ * <p>
+ * The feed data of all blocks is stored in one slab of memory, which may be allocated outside of the heap,
+ * so a large cache does not add to the garbage collection work.
  * </p>
  * <p>
  * The local pool size is basically (the total number of blocks) / (the number of partition assigned + 1),
@@ -44,28 +53,57 @@ public class FeedCache {
     private static final Logger logger = Logging.getLogger(FeedCache.class);
     private static final int MIN_PARTITION_SIZE = 2;
     private static final int MAX_PARTITION_SIZE = 10000;
+    private static final int STRIPE_BITS = 4;
+    private static final int NUM_STRIPES = 1 << STRIPE_BITS;
 
-    private final LinkedHashMap<FeedCacheBlockKey, FeedCacheBlock> sharedPool;
+    private final ConcurrentLinkedQueue<FeedCacheBlock> freeBlocks;
+    private final HashMap<FeedCacheBlockKey, SharedPoolEntry>[] sharedPool;
+    private final ConcurrentLinkedQueue<SharedPoolEntry> clock;
+    private final AtomicInteger clockSize = new AtomicInteger(0);
+    private final AtomicBoolean purging = new AtomicBoolean(false);
     private final Map<Integer, FeedCachePartition> partitions;
     private final int totalNumBlocks;
     private final Meter cacheMissMeter;
 
     private int partitionSize;
-    private boolean running = true;
+    private volatile boolean running = true;
 
     /**
-     * Class constructor. Initializes the shared pool.
+     * Class constructor. Initializes the shared pool on the heap.
      * @param size The size of the Feed cache.
      * @param cacheMissMeter Metric to track cache miss.
      */
     public FeedCache(int size, Meter cacheMissMeter) {
+        this(size, false, cacheMissMeter);
+    }
+
+    /**
+     * Class constructor. Initializes the shared pool.
+     * @param size The size of the Feed cache.
+     * @param directAllocation If True, allocates the feed data outside of the heap, else on the heap.
+     * @param cacheMissMeter Metric to track cache miss.
+     */
+    @SuppressWarnings("unchecked")
+    public FeedCache(int size, boolean directAllocation, Meter cacheMissMeter) {
         this.cacheMissMeter = cacheMissMeter;
-        this.sharedPool = new LinkedHashMap<>();
+        this.freeBlocks = new ConcurrentLinkedQueue<>();
+        this.sharedPool = new HashMap[NUM_STRIPES];
+        this.clock = new ConcurrentLinkedQueue<>();
         this.partitions = new HashMap<>();
         this.totalNumBlocks = size / BLOCK_SIZE;
 
+        for (int i = 0; i < NUM_STRIPES; i++) {
+            this.sharedPool[i] = new HashMap<>();
+        }
+
+        // One slab for all blocks. Each block gets a slice of it.
+        int slabSize = this.totalNumBlocks * FeedCacheBlock.DATA_SIZE;
+        ByteBuffer slab = directAllocation ? ByteBuffer.allocateDirect(slabSize) : ByteBuffer.allocate(slabSize);
+
         for (int i = 0; i < this.totalNumBlocks; i++) {
-            this.sharedPool.put(FeedCacheBlockKey.get(-1, i * FeedCacheBlock.NUM_TRANSACTIONS), new FeedCacheBlock());
+            slab.limit((i + 1) * FeedCacheBlock.DATA_SIZE);
+            slab.position(i * FeedCacheBlock.DATA_SIZE);
+            this.freeBlocks.add(new FeedCacheBlock(slab.slice()));
         }
     }
 
@@ -73,10 +111,7 @@ public class FeedCache {
      * Closes the feed cache.
      */
     public void close() {
-        synchronized (sharedPool) {
-            running = false;
-            sharedPool.notifyAll();
-        }
+        running = false;
     }
 
     /**
@@ -133,44 +168,46 @@ public class FeedCache {
      * @return the number of blocks.
      */
     int getSharedPoolSize() {
-        synchronized (sharedPool) {
-            return sharedPool.size();
+        int size = freeBlocks.size();
+        for (HashMap<FeedCacheBlockKey, SharedPoolEntry> stripe : sharedPool) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
         }
+        return size;
     }
 
     /**
-     * Checks out a cache block from the shared pool.
+     * Checks out a cache block from the shared pool. This never waits for a block.
      * @param key The key of a specific block from the shared pool.
-     * @return a cache block.
+     * @return a cache block, or null if no block is available or the cache is closed.
      */
     FeedCacheBlock checkOut(FeedCacheBlockKey key) {
-        synchronized (sharedPool) {
-            FeedCacheBlock block = sharedPool.remove(key);
-
-            if (block != null) {
-                return block;
-
-            } else {
-                while (running) {
-                    Map.Entry<?, FeedCacheBlock> entry = removeOldestEntry(sharedPool);
-                    if (entry != null) {
-                        block = entry.getValue();
-                        block.reset(key);
-                        return block;
-
-                    } else {
-                        logger.warn("unable to checkout a cache block. you may want to increase feed cache size");
-                        try {
-                            sharedPool.wait();
-
-                        } catch (InterruptedException ex) {
-                            Thread.interrupted();
-                        }
-                    }
-                }
-                return null;
+        if (!running) {
+            return null;
+        }
+
+        HashMap<FeedCacheBlockKey, SharedPoolEntry> stripe = stripe(key);
+        synchronized (stripe) {
+            SharedPoolEntry entry = stripe.remove(key);
+            if (entry != null) {
+                entry.valid = false;
+                return entry.block;
             }
         }
+
+        FeedCacheBlock block = freeBlocks.poll();
+        if (block == null) {
+            block = evict();
+        }
+
+        if (block != null) {
+            block.reset(key);
+            return block;
+        }
+
+        logger.warn("unable to checkout a cache block. you may want to increase feed cache size");
+        return null;
     }
 
     /**
@@ -179,9 +216,16 @@ public class FeedCache {
      * @param block The block associated with the given key.
      */
     void checkIn(FeedCacheBlockKey key, FeedCacheBlock block) {
-        synchronized (sharedPool) {
-            sharedPool.put(key, block);
-            sharedPool.notifyAll();
+        SharedPoolEntry entry = new SharedPoolEntry(key, block);
+
+        HashMap<FeedCacheBlockKey, SharedPoolEntry> stripe = stripe(key);
+        synchronized (stripe) {
+            stripe.put(key, entry);
+        }
+        clock.add(entry);
+
+        if (clockSize.incrementAndGet() > 2 * totalNumBlocks + NUM_STRIPES) {
+            purge();
         }
     }
 
@@ -190,10 +234,7 @@ public class FeedCache {
      * @param map A map of blocks (FeedCacheBlockKey -> FeedCacheBlock)
      */
     void checkInAll(Map<FeedCacheBlockKey, FeedCacheBlock> map) {
-        synchronized (sharedPool) {
-            map.forEach(sharedPool::put);
-            sharedPool.notifyAll();
-        }
+        map.forEach(this::checkIn);
     }
 
     /**
@@ -213,16 +254,81 @@ public class FeedCache {
         }
     }
 
-    private static <K, V> Map.Entry<K, V> removeOldestEntry(LinkedHashMap<K, V> map) {
-        Iterator<Map.Entry<K, V>> iterator = map.entrySet().iterator();
-        if (iterator.hasNext()) {
-            Map.Entry<K, V> entry = iterator.next();
-            iterator.remove();
-            return entry;
+    /**
+     * Evicts a block from the shared pool. The clock hand is the head of the clock queue.
+     * @return the block, or null if the shared pool is empty.
+     */
+    private FeedCacheBlock evict() {
+        SharedPoolEntry entry;
+        while ((entry = clock.poll()) != null) {
+            clockSize.decrementAndGet();
 
-        } else {
-            return null;
+            if (!entry.valid) {
+                // The block has been checked out since this entry was added.
+                continue;
+            }
+
+            HashMap<FeedCacheBlockKey, SharedPoolEntry> stripe = stripe(entry.key);
+            synchronized (stripe) {
+                if (stripe.get(entry.key) != entry) {
+                    continue;
+                }
+
+                if (entry.block.testAndClearReferenced()) {
+                    // Second chance. Move the block to the end of the clock queue.
+                    SharedPoolEntry newEntry = new SharedPoolEntry(entry.key, entry.block);
+                    stripe.put(entry.key, newEntry);
+                    clock.add(newEntry);
+                    clockSize.incrementAndGet();
+
+                } else {
+                    stripe.remove(entry.key);
+                    return entry.block;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Removes entries of blocks that have been checked out from the clock queue, so the queue does not grow
+     * without evictions.
+     */
+    private void purge() {
+        if (purging.compareAndSet(false, true)) {
+            try {
+                Iterator<SharedPoolEntry> iterator = clock.iterator();
+                while (iterator.hasNext()) {
+                    if (!iterator.next().valid) {
+                        iterator.remove();
+                        clockSize.decrementAndGet();
+                    }
+                }
+            } finally {
+                purging.set(false);
+            }
+        }
+    }
+
+    private HashMap<FeedCacheBlockKey, SharedPoolEntry> stripe(FeedCacheBlockKey key) {
+        // Block ids are multiples of 64, so the low bits of the hash are zero. Use the high bits of a multiplicative hash.
+        return sharedPool[(key.hashCode() * 0x9E3779B9) >>> (32 - STRIPE_BITS)];
+    }
+
+    /**
+     * An entry of a block in the shared pool. A new entry is created each time a block is checked in.
+     */
+    private static class SharedPoolEntry {
+
+        final FeedCacheBlockKey key;
+        final FeedCacheBlock block;
+        volatile boolean valid = true;
+
+        SharedPoolEntry(FeedCacheBlockKey key, FeedCacheBlock block) {
+            this.key = key;
+            this.block = block;
         }
+
     }
 
 }
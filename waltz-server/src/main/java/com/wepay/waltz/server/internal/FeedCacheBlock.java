@@ -3,8 +3,12 @@ package com.wepay.waltz.server.internal;
 import com.wepay.waltz.common.message.FeedData;
 import com.wepay.waltz.common.message.ReqId;
 
+import java.nio.ByteBuffer;
+
 /**
  * A block of a feed cache. It can hold up to 64 transactions.
+ * Request ids and headers are stored in a region of a byte buffer, which is usually a slice of a slab shared by
+ * all blocks of a {@link FeedCache}, so a block adds no per-transaction objects to the heap.
  * This class not thread-safe.
  */
 public class FeedCacheBlock {
@@ -12,18 +16,32 @@ public class FeedCacheBlock {
     static final int SIZE = 8 + 8 + 64 * (16 + 4);
     static final long INDEX_MASK = 63;
     static final int NUM_TRANSACTIONS = (int) (INDEX_MASK + 1);
+    static final int DATA_SIZE = NUM_TRANSACTIONS * (16 + 4);
+
+    private static final int HEADERS_OFFSET = NUM_TRANSACTIONS * 16;
 
-    private final long[] reqIdBits;
-    private final int[] headers;
+    private final ByteBuffer buffer;
 
     private long firstTransactionId;
     private long usage;
+    private boolean referenced;
 
     FeedCacheBlock() {
-        this.reqIdBits = new long[2 * NUM_TRANSACTIONS];
-        this.headers = new int[NUM_TRANSACTIONS];
+        this(ByteBuffer.allocate(DATA_SIZE));
+    }
+
+    /**
+     * Class constructor.
+     * @param buffer The buffer to store feed data. The block uses {@link #DATA_SIZE} bytes from the position zero.
+     */
+    FeedCacheBlock(ByteBuffer buffer) {
+        if (buffer.capacity() < DATA_SIZE) {
+            throw new IllegalArgumentException("buffer too small");
+        }
+        this.buffer = buffer;
         this.firstTransactionId = Long.MIN_VALUE;
         this.usage = 0L;
+        this.referenced = false;
     }
 
     /**
@@ -33,6 +51,7 @@ public class FeedCacheBlock {
     public void reset(FeedCacheBlockKey key) {
         this.firstTransactionId = key.firstTransactionId();
         this.usage = 0L;
+        this.referenced = false;
     }
 
     /**
@@ -45,10 +64,10 @@ public class FeedCacheBlock {
     public boolean add(long transactionId, ReqId reqId, int header) {
         if (transactionId >= firstTransactionId && transactionId < firstTransactionId + NUM_TRANSACTIONS) {
             int index = (int) (transactionId & INDEX_MASK);
-            int rindex = index << 1; // = 2 * i
-            reqIdBits[rindex] = reqId.mostSigBits;
-            reqIdBits[rindex + 1] = reqId.leastSigBits;
-            headers[index] = header;
+            int offset = index << 4; // = 16 * i
+            buffer.putLong(offset, reqId.mostSigBits);
+            buffer.putLong(offset + 8, reqId.leastSigBits);
+            buffer.putInt(HEADERS_OFFSET + (index << 2), header);
             usage |= (1L << index);
 
             return true;
@@ -66,8 +85,13 @@ public class FeedCacheBlock {
         if (transactionId >= firstTransactionId && transactionId < firstTransactionId + NUM_TRANSACTIONS) {
             int index = (int) (transactionId & INDEX_MASK);
             if (((usage >> index) & 1L) != 0) {
-                int rindex = index << 1; // = 2 * i
-                return new FeedData(new ReqId(reqIdBits[rindex], reqIdBits[rindex + 1]), transactionId, headers[index]);
+                int offset = index << 4; // = 16 * i
+                referenced = true;
+                return new FeedData(
+                    new ReqId(buffer.getLong(offset), buffer.getLong(offset + 8)),
+                    transactionId,
+                    buffer.getInt(HEADERS_OFFSET + (index << 2))
+                );
             }
         }
 
@@ -78,4 +102,16 @@ public class FeedCacheBlock {
         return usage;
     }
 
+    /**
+     * Returns true if the block has been hit by {@link #get(long)} since the last call of this method or
+     * {@link #reset(FeedCacheBlockKey)}, and clears the flag. Adds do not set it, so a block that is filled but never
+     * read is evicted first. This is the reference bit of the CLOCK eviction in {@link FeedCache}.
+     * @return true if the block has been read.
+     */
+    boolean testAndClearReferenced() {
+        boolean result = referenced;
+        referenced = false;
+        return result;
+    }
+
 }
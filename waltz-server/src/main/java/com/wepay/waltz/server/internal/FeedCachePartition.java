@@ -61,9 +61,13 @@ public class FeedCachePartition {
 
     /**
      * Clears the feed cache partition. This will remove all cache blocks.
+     * The blocks are checked in without a second chance, since their hits are from before the partition was cleared.
      */
     public void clear() {
         synchronized (this) {
+            for (FeedCacheBlock block : localPool.values()) {
+                block.testAndClearReferenced();
+            }
             feedCache.checkInAll(localPool);
             localPool.clear();
             frontier = null;
@@ -118,7 +122,7 @@ public class FeedCachePartition {
                     } else {
                         frontier = checkOut(key);
                         if (frontier == null) {
-                            // FeedCache is closed.
+                            // FeedCache is closed or has no block available.
                             return;
                         }
                     }
@@ -142,7 +146,7 @@ public class FeedCachePartition {
                         if (block == null) {
                             block = checkOut(key);
                             if (block == null) {
-                                // FeedCache is closed.
+                                // FeedCache is closed or has no block available.
                                 return;
                             }
                         }
@@ -175,7 +179,7 @@ public class FeedCachePartition {
                     block = checkOut(key);
 
                     if (block == null) {
-                        // FeedCache is closed.
+                        // FeedCache is closed or has no block available.
                         return null;
                     }
                 }
@@ -218,9 +222,9 @@ public class FeedCachePartition {
     }
 
     /**
-     * Checks out a cache block. This returns null if FeedCache is closed.
+     * Checks out a cache block. This returns null if FeedCache is closed or has no block available.
      * @param key The key of a block to be checked out of the shared pool.
-     * @return a cache block, or null if FeedCache is closed.
+     * @return a cache block, or null if FeedCache is closed or has no block available.
      */
     private FeedCacheBlock checkOut(FeedCacheBlockKey key) {
         reduceLocalPoolSize(maxNumBlocks - 1);
@@ -1,23 +1,50 @@
 package com.wepay.waltz.server.internal;
 
+import com.wepay.riff.util.Logging;
+import com.wepay.waltz.common.message.FeedDataBatch;
 import com.wepay.waltz.common.message.FeedSuspended;
 import com.wepay.waltz.common.message.ReqId;
 import com.wepay.waltz.common.message.FeedData;
+import org.slf4j.Logger;
 
+import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.List;
 
 /**
  * This class takes care of bringing the client up to date with the current high-water mark.
  */
 public class FeedContext {
 
+    private static final Logger logger = Logging.getLogger(FeedContext.class);
+
     public static final Comparator<FeedContext> HIGH_WATER_MARK_COMPARATOR =
         (o1, o2) -> o1.highWaterMark < o2.highWaterMark ? -1 : o1.highWaterMark > o2.highWaterMark ? 1 : 0;
 
     public final ReqId reqId;
     public final PartitionClient sender;
 
+    /**
+     * Fetches transaction data to be sent inline with feed entries.
+     */
+    public interface InlineDataFetcher {
+
+        /**
+         * Returns the data of consecutive transactions.
+         * @param firstTransactionId The id of the first transaction.
+         * @param numTransactions The number of transactions.
+         * @return the data of the transactions in the order of transaction ids. It may be shorter than requested.
+         * @throws Exception thrown if the data cannot be fetched.
+         */
+        List<TransactionData> fetch(long firstTransactionId, int numTransactions) throws Exception;
+
+    }
+
     public final FeedSuspended suspendMessage;
+    private final int maxBatchSize;
+    private final int maxInlineDataSize;
+    private final InlineDataFetcher inlineDataFetcher;
+    private final ArrayList<FeedData> batch;
     private long highWaterMark;
     private long remaining;
 
@@ -30,11 +57,53 @@ public class FeedContext {
      * @param suspendMessage The {@link com.wepay.waltz.common.message.MountResponse} to be sent back to the client.
      */
     public FeedContext(ReqId reqId, long highWaterMark, long fetchSize, PartitionClient sender, FeedSuspended suspendMessage) {
+        this(reqId, highWaterMark, fetchSize, sender, suspendMessage, 1);
+    }
+
+    /**
+     * Class constructor.
+     * @param reqId The request ID.
+     * @param highWaterMark The client high-water mark received in the request.
+     * @param fetchSize This size represents how far the client high-water mark is behind.
+     * @param sender The client that has sent the request.
+     * @param suspendMessage The {@link com.wepay.waltz.common.message.MountResponse} to be sent back to the client.
+     * @param maxBatchSize The maximum number of transactions sent in one {@link FeedDataBatch}. One or less disables batching.
+     */
+    public FeedContext(ReqId reqId, long highWaterMark, long fetchSize, PartitionClient sender, FeedSuspended suspendMessage, int maxBatchSize) {
+        this(reqId, highWaterMark, fetchSize, sender, suspendMessage, maxBatchSize, 0, null);
+    }
+
+    /**
+     * Class constructor.
+     * @param reqId The request ID.
+     * @param highWaterMark The client high-water mark received in the request.
+     * @param fetchSize This size represents how far the client high-water mark is behind.
+     * @param sender The client that has sent the request.
+     * @param suspendMessage The {@link com.wepay.waltz.common.message.MountResponse} to be sent back to the client.
+     * @param maxBatchSize The maximum number of transactions sent in one {@link FeedDataBatch}. One or less disables batching.
+     * @param maxInlineDataSize The maximum size of transaction data sent inline with feed entries. Zero disables inlining.
+     *                          Data is inlined only when batching is enabled.
+     * @param inlineDataFetcher The fetcher of transaction data to be inlined.
+     */
+    public FeedContext(
+        ReqId reqId,
+        long highWaterMark,
+        long fetchSize,
+        PartitionClient sender,
+        FeedSuspended suspendMessage,
+        int maxBatchSize,
+        int maxInlineDataSize,
+        InlineDataFetcher inlineDataFetcher
+    ) {
         this.reqId = reqId;
         this.highWaterMark = highWaterMark;
         this.remaining = fetchSize;
         this.sender = sender;
         this.suspendMessage = suspendMessage;
+        this.maxBatchSize = maxBatchSize;
+        this.batch = maxBatchSize > 1 ? new ArrayList<>(maxBatchSize) : null;
+        this.maxInlineDataSize = batch != null && inlineDataFetcher != null ? Math.max(0, maxInlineDataSize) : 0;
+        this.inlineDataFetcher = inlineDataFetcher;
     }
 
     /**
@@ -61,7 +130,22 @@ public class FeedContext {
         highWaterMark = data.transactionId;
         remaining--;
 
-        if (remaining > 0) {
+        if (batch != null) {
+            // Hold the data until the batch is full or a flush is requested
+            batch.add(data);
+
+            if (remaining > 0) {
+                if (flush || batch.size() >= maxBatchSize) {
+                    sendBatch(true);
+                }
+            } else {
+                sendBatch(false);
+
+                // Send a suspend message. The client should send another feed request to continue
+                sender.sendMessage(suspendMessage, true);
+            }
+
+        } else if (remaining > 0) {
             // Force flushing every 10 transactions
             sender.sendMessage(data, remaining % 10 == 0 || flush);
         } else {
@@ -72,6 +156,44 @@ public class FeedContext {
         }
     }
 
+    private void sendBatch(boolean flush) {
+        if (maxInlineDataSize > 0) {
+            // Always send a batch since a single feed data has no room for the data
+            sender.sendMessage(inlineData(new FeedDataBatch(reqId, batch)), flush);
+        } else if (batch.size() == 1) {
+            sender.sendMessage(batch.get(0), flush);
+        } else {
+            sender.sendMessage(new FeedDataBatch(reqId, batch), flush);
+        }
+        batch.clear();
+    }
+
+    /**
+     * Returns a copy of the batch with the data of transactions not larger than the inline limit.
+     * The client fetches the data of the other transactions on demand, so a failure here is not fatal.
+     */
+    private FeedDataBatch inlineData(FeedDataBatch feedDataBatch) {
+        int size = feedDataBatch.size();
+        byte[][] data = new byte[size][];
+        int[] checksums = new int[size];
+
+        try {
+            List<TransactionData> list = inlineDataFetcher.fetch(feedDataBatch.firstTransactionId, size);
+            int numFetched = Math.min(size, list.size());
+            for (int i = 0; i < numFetched; i++) {
+                TransactionData transactionData = list.get(i);
+                if (transactionData.data.length <= maxInlineDataSize) {
+                    data[i] = transactionData.data;
+                    checksums[i] = transactionData.checksum;
+                }
+            }
+        } catch (Exception ex) {
+            logger.warn("failed to fetch inline data: " + this, ex);
+        }
+
+        return new FeedDataBatch(reqId, feedDataBatch.firstTransactionId, feedDataBatch.reqIds, feedDataBatch.headers, data, checksums);
+    }
+
     /**
      * Returns True if the client is active, otherwise returns False.
      * @return True if the client is active, otherwise returns False.
@@ -0,0 +1,95 @@
+package com.wepay.waltz.server.internal;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Notifies feed threads of a {@link Partition} of new transactions and new feed contexts.
+ * A feed thread takes a snapshot of the version, checks the high-water mark, and then waits until the version changes.
+ *
+ * <p>The synchronizer is lock-free. The version is an atomic counter, and waiting threads register themselves
+ * and park. {@link #unblock()} is called for every committed transaction. It always increments the counter with a
+ * compare-and-set, and unparks only the threads that are registered. A waiting thread is removed from the registry
+ * when it is unparked, so commits that arrive before it runs again do not wake it again.</p>
+ */
+class FeedSynchronizer {
+
+    private static final long CLOSED = Long.MIN_VALUE;
+
+    private final AtomicLong version = new AtomicLong(-1L);
+    private final ConcurrentLinkedQueue<Thread> waiters = new ConcurrentLinkedQueue<>();
+
+    /**
+     * Returns the current version.
+     * @return the current version.
+     * @throws PartitionClosedException thrown if the synchronizer is closed.
+     */
+    long version() throws PartitionClosedException {
+        long current = version.get();
+        if (current != CLOSED) {
+            return current;
+        } else {
+            throw new PartitionClosedException("already closed");
+        }
+    }
+
+    /**
+     * Waits until the version is different from the snapshot version or the synchronizer is closed.
+     * @param snapshotVersion The version returned by {@link #version()}.
+     */
+    void await(long snapshotVersion) {
+        Thread thread = Thread.currentThread();
+
+        while (version.get() == snapshotVersion) {
+            // Register before checking the version again, so an unblock in between is not missed.
+            waiters.add(thread);
+            if (version.get() != snapshotVersion) {
+                waiters.remove(thread);
+                break;
+            }
+
+            LockSupport.park(this);
+
+            // The thread may return from park spuriously, while it is still registered.
+            waiters.remove(thread);
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * Increments the version and wakes up waiting threads.
+     */
+    void unblock() {
+        long current;
+        do {
+            current = version.get();
+        } while (current != CLOSED && !version.compareAndSet(current, current + 1));
+
+        wakeUp();
+    }
+
+    /**
+     * Closes the synchronizer and wakes up waiting threads.
+     */
+    void close() {
+        version.set(CLOSED);
+        wakeUp();
+    }
+
+    /**
+     * Returns the number of waiting threads.
+     * @return the number of waiting threads.
+     */
+    int numWaiters() {
+        return waiters.size();
+    }
+
+    private void wakeUp() {
+        Thread thread;
+        while ((thread = waiters.poll()) != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+
+}
@@ -0,0 +1,104 @@
+package com.wepay.waltz.server.internal;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * An approximate counter of how often keys are accessed, used by {@link TransactionCache} to decide
+ * whether a transaction is worth caching. It is a count-min sketch of 4-bit counters packed in longs.
+ * The estimate of a key is never smaller than the true count, up to the maximum of 15.
+ *
+ * <p>When the number of recorded accesses reaches the sample size, all counters are halved, so the sketch
+ * reflects recent accesses rather than the whole history.</p>
+ *
+ * <p>The sketch is lock-free. Each counter is updated with a compare-and-set of the long holding it, so
+ * concurrent feed and fetch threads do not serialize on the sketch. An access that races with halving may
+ * be counted before or after it.</p>
+ */
+public class FrequencySketch {
+
+    static final int MAX_COUNT = 15;
+
+    private static final int DEPTH = 4;
+    private static final long[] SEEDS = {
+        0x9E3779B97F4A7C15L, 0xC2B2AE3D27D4EB4FL, 0x165667B19E3779F9L, 0xD6E8FEB86659FD93L
+    };
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final AtomicLongArray table;
+    private final int tableMask;
+    private final int sampleSize;
+    private final AtomicInteger size = new AtomicInteger(0);
+
+    /**
+     * Class constructor.
+     * @param capacity The expected number of distinct keys of interest.
+     */
+    public FrequencySketch(int capacity) {
+        int numLongs = Integer.highestOneBit(Math.max(64, Math.min(capacity, 1 << 26)) - 1) << 1;
+        this.table = new AtomicLongArray(numLongs);
+        this.tableMask = numLongs - 1;
+        this.sampleSize = 10 * Math.max(64, capacity);
+    }
+
+    /**
+     * Records an access of the key.
+     * @param hash The hash code of the key.
+     */
+    public void increment(int hash) {
+        boolean incremented = false;
+        for (int i = 0; i < DEPTH; i++) {
+            incremented |= increment(index(hash, i), shift(hash, i));
+        }
+
+        // Only the thread that reaches the sample size halves the counters.
+        if (incremented && size.incrementAndGet() == sampleSize) {
+            reset();
+        }
+    }
+
+    /**
+     * Returns the estimated number of recent accesses of the key.
+     * @param hash The hash code of the key.
+     * @return the estimated number of recent accesses.
+     */
+    public int frequency(int hash) {
+        int frequency = MAX_COUNT;
+        for (int i = 0; i < DEPTH; i++) {
+            frequency = Math.min(frequency, (int) ((table.get(index(hash, i)) >>> shift(hash, i)) & 0xFL));
+        }
+        return frequency;
+    }
+
+    // Increments a counter unless it is saturated. Returns true if incremented.
+    private boolean increment(int index, int shift) {
+        while (true) {
+            long value = table.get(index);
+            if (((value >>> shift) & 0xFL) >= MAX_COUNT) {
+                return false;
+            }
+            if (table.compareAndSet(index, value, value + (1L << shift))) {
+                return true;
+            }
+        }
+    }
+
+    // Halves all counters
+    private void reset() {
+        for (int i = 0; i < table.length(); i++) {
+            table.getAndUpdate(i, value -> (value >>> 1) & RESET_MASK);
+        }
+        size.addAndGet(-sampleSize / 2);
+    }
+
+    private int index(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        return (int) (h >>> 32) & tableMask;
+    }
+
+    // Each row uses a different 4-bit counter in the long
+    private static int shift(int hash, int i) {
+        return ((((hash >>> (i << 3)) & 3) << 2) + i) << 2;
+    }
+
+}
@@ -1,13 +1,20 @@
 package com.wepay.waltz.server.internal;
 
 import java.util.Arrays;
-import java.util.BitSet;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 /**
  * This class represents the lock table that can contain multiple read and write locks for a {@link Partition} in the
  * {@link com.wepay.waltz.server.WaltzServer}. It uses a probabilistic approach similar to Bloom Filter to determine the
  * estimated transaction ID of the last successful transaction for the given lock ID. The estimated transaction ID is
  * guaranteed to be equal to or greater than the true transaction ID.
+ *
+ * <p>The table is lock-free. Entries are marked in an atomic bitset with CAS, and high-water marks are kept in an
+ * {@link AtomicLongArray}, so {@link #begin(LockRequest)}, {@link #commit(LockRequest, long)} and
+ * {@link #end(LockRequest)} may be called from different threads. A request that passes {@link #begin(LockRequest)}
+ * is ordered before any request that marks its entries later, so callers must append transactions in the order
+ * their locks were acquired.</p>
  */
 public class Locks {
 
@@ -15,11 +22,12 @@ public class Locks {
     private static final int ADDER = 12345;
     private static final int MASK = 0x3FFFFFFF;
 
-    private final long[] highWaterMarks;
-    private final BitSet locks;
+    private final AtomicLongArray highWaterMarks;
+    private final AtomicLongArray locks;
+    private final int size;
     private final int numHashFuncs;
 
-    private int numActiveLockRequests = 0;
+    private final AtomicInteger numActiveLockRequests = new AtomicInteger(0);
 
     /**
      * Class constructor.
@@ -28,9 +36,12 @@ public class Locks {
      * @param defaultHighWaterMark The default high-water mark to set initially.
      */
     public Locks(int size, int numHashFuncs, long defaultHighWaterMark) {
-        this.highWaterMarks = new long[size];
-        Arrays.fill(this.highWaterMarks, defaultHighWaterMark);
-        this.locks = new BitSet(size);
+        this.size = size;
+        this.highWaterMarks = new AtomicLongArray(size);
+        for (int i = 0; i < size; i++) {
+            this.highWaterMarks.set(i, defaultHighWaterMark);
+        }
+        this.locks = new AtomicLongArray((size + 63) / 64);
         this.numHashFuncs = numHashFuncs;
     }
 
@@ -41,31 +52,27 @@ public class Locks {
      * @return True if the locks doesn't overlap with the locks that are currently in use, otherwise returns False.
      */
     public boolean begin(LockRequest request) {
-        synchronized (locks) {
-            if (begin(request.writeLocks) && begin(request.readLocks) && begin(request.appendLocks)) {
-                // Mark entries for write locks and append locks.
-                // Entries for Read locks are not marked since they won't change the high-water marks.
-                mark(request.writeLocks);
-                mark(request.appendLocks);
-                numActiveLockRequests++;
-                return true;
-            } else {
+        prepare(request);
+
+        // Mark entries for write locks and append locks.
+        // Entries for Read locks are not marked since they won't change the high-water marks.
+        int[] markIndexes = request.markIndexes;
+        for (int i = 0; i < markIndexes.length; i++) {
+            if (!mark(markIndexes[i])) {
+                unmark(markIndexes, i);
                 return false;
             }
         }
-    }
 
-    private boolean begin(int[] lockRequest) {
-        for (int hash : lockRequest) {
-            for (int i = 0; i < numHashFuncs; i++) {
-                // linear congruential generator
-                hash = nextHash(hash);
-                int index = index(hash);
-                if (locks.get(index)) {
-                    return false;
-                }
+        // Entries for read locks must not be marked by other requests.
+        for (int index : request.readIndexes) {
+            if (isMarked(index) && Arrays.binarySearch(markIndexes, index) < 0) {
+                unmark(markIndexes, markIndexes.length);
+                return false;
             }
         }
+
+        numActiveLockRequests.incrementAndGet();
         return true;
     }
 
@@ -74,52 +81,64 @@ public class Locks {
      * @param request List of write locks to be released.
      */
     public void end(LockRequest request) {
-        synchronized (locks) {
-            unmark(request.writeLocks);
-            unmark(request.appendLocks);
-            numActiveLockRequests--;
-        }
+        prepare(request);
+        unmark(request.markIndexes, request.markIndexes.length);
+        numActiveLockRequests.decrementAndGet();
     }
 
-    private void mark(int[] lockRequest) {
-        for (int hash : lockRequest) {
-            for (int i = 0; i < numHashFuncs; i++) {
-                // linear congruential generator
-                hash = nextHash(hash);
-                locks.set(index(hash), true);
+    // Sets the bit of the entry. Returns false if the bit is already set.
+    private boolean mark(int index) {
+        int word = index >>> 6;
+        long bit = 1L << index;
+        while (true) {
+            long current = locks.get(word);
+            if ((current & bit) != 0) {
+                return false;
+            }
+            if (locks.compareAndSet(word, current, current | bit)) {
+                return true;
             }
         }
     }
 
-    private void unmark(int[] lockRequest) {
-        for (int hash : lockRequest) {
-            for (int i = 0; i < numHashFuncs; i++) {
-                // linear congruential generator
-                hash = nextHash(hash);
-                locks.set(index(hash), false);
+    // Clears the bits of the first n entries.
+    private void unmark(int[] indexes, int n) {
+        for (int i = 0; i < n; i++) {
+            int index = indexes[i];
+            int word = index >>> 6;
+            long bit = 1L << index;
+            while (true) {
+                long current = locks.get(word);
+                if (locks.compareAndSet(word, current, current & ~bit)) {
+                    break;
+                }
             }
         }
     }
 
+    private boolean isMarked(int index) {
+        return (locks.get(index >>> 6) & (1L << index)) != 0;
+    }
+
     /**
      * Returns the estimated transaction ID of the last successful transaction for the given lock.
      * @param request Locks for which last successful transaction ID is to be determined.
      * @return the estimated transaction ID of the last successful transaction for the given lock.
      */
     public long getLockHighWaterMark(LockRequest request) {
-        return Math.max(getLockHighWaterMark(request.writeLocks), getLockHighWaterMark(request.readLocks));
+        prepare(request);
+        return Math.max(getLockHighWaterMark(request.writeIndexes), getLockHighWaterMark(request.readIndexes));
     }
 
-    private long getLockHighWaterMark(int[] lockRequest) {
+    // The indexes are grouped by lock. Each lock has numHashFuncs indexes.
+    private long getLockHighWaterMark(int[] indexes) {
         long maxHighWaterMark = -1L;
 
-        for (int hash : lockRequest) {
+        for (int i = 0; i < indexes.length; i += numHashFuncs) {
             long minHighWaterMark = Long.MAX_VALUE;
 
-            for (int i = 0; i < numHashFuncs; i++) {
-                // linear congruential generator
-                hash = nextHash(hash);
-                minHighWaterMark = Math.min(minHighWaterMark, highWaterMarks[index(hash)]);
+            for (int j = i; j < i + numHashFuncs; j++) {
+                minHighWaterMark = Math.min(minHighWaterMark, highWaterMarks.get(indexes[j]));
             }
 
             if (minHighWaterMark > maxHighWaterMark) {
@@ -136,30 +155,26 @@ public class Locks {
      * @param transactionId The new transaction ID of the lock.
      */
     public void commit(LockRequest request, long transactionId) {
-        commit(request.writeLocks, transactionId);
-        commit(request.appendLocks, transactionId);
-    }
-
-    private void commit(int[] locks, long transactionId) {
-        for (int hash : locks) {
-            for (int i = 0; i < numHashFuncs; i++) {
-                // linear congruential generator
-                hash = nextHash(hash);
-                highWaterMarks[index(hash)] = transactionId;
-            }
+        prepare(request);
+        for (int index : request.markIndexes) {
+            // High-water marks never move backward, even if commits of different threads are reordered
+            highWaterMarks.accumulateAndGet(index, transactionId, Math::max);
         }
     }
 
     /**
      * Clear all locks and reset their high-water mark to the default high-water mark provided.
+     * This must not be called while other threads are using the table.
      * @param defaultHighWaterMark The new default high-water mark.
      */
     public void reset(long defaultHighWaterMark) {
-        synchronized (locks) {
-            Arrays.fill(highWaterMarks, defaultHighWaterMark);
-            locks.clear();
-            numActiveLockRequests = 0;
+        for (int i = 0; i < highWaterMarks.length(); i++) {
+            highWaterMarks.set(i, defaultHighWaterMark);
         }
+        for (int i = 0; i < locks.length(); i++) {
+            locks.set(i, 0L);
+        }
+        numActiveLockRequests.set(0);
     }
 
     /**
@@ -167,9 +182,51 @@ public class Locks {
      * @return number of active locks.
      */
     public int numActiveLocks() {
-        synchronized (locks) {
-            return numActiveLockRequests;
+        return numActiveLockRequests.get();
+    }
+
+    /**
+     * Computes the table entries of the request. This is done once per request,
+     * and it may be done by any thread before the request is passed to {@link #begin(LockRequest)}.
+     * @param request Locks to use.
+     */
+    public void prepare(LockRequest request) {
+        if (request.markIndexes == null) {
+            int[] writeIndexes = indexes(request.writeLocks);
+            int[] appendIndexes = indexes(request.appendLocks);
+
+            int[] markIndexes = Arrays.copyOf(writeIndexes, writeIndexes.length + appendIndexes.length);
+            System.arraycopy(appendIndexes, 0, markIndexes, writeIndexes.length, appendIndexes.length);
+            Arrays.sort(markIndexes);
+
+            request.writeIndexes = writeIndexes;
+            request.readIndexes = indexes(request.readLocks);
+            request.markIndexes = distinct(markIndexes);
+        }
+    }
+
+    private int[] indexes(int[] lockRequest) {
+        int[] indexes = new int[lockRequest.length * numHashFuncs];
+        int n = 0;
+        for (int hash : lockRequest) {
+            for (int i = 0; i < numHashFuncs; i++) {
+                // linear congruential generator
+                hash = nextHash(hash);
+                indexes[n++] = index(hash);
+            }
         }
+        return indexes;
+    }
+
+    // Removes duplicates from a sorted array
+    private static int[] distinct(int[] sorted) {
+        int n = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[n++] = sorted[i];
+            }
+        }
+        return n == sorted.length ? sorted : Arrays.copyOf(sorted, n);
     }
 
     private static int nextHash(int hash) {
@@ -178,7 +235,7 @@ public class Locks {
     }
 
     private int index(int hash) {
-        return (hash & MASK) % highWaterMarks.length;
+        return (hash & MASK) % size;
     }
 
     /**
@@ -200,6 +257,11 @@ public class Locks {
         private final int[] readLocks;
         private final int[] appendLocks;
 
+        // Table entries computed by prepare()
+        private volatile int[] markIndexes;
+        private int[] writeIndexes;
+        private int[] readIndexes;
+
         LockRequest(int[] writeLocks, int[] readLocks, int[] appendLocks) {
             this.writeLocks = writeLocks;
             this.readLocks = readLocks;
@@ -23,8 +23,12 @@ import com.wepay.waltz.common.message.MountRequest;
 import com.wepay.waltz.common.message.MountResponse;
 import com.wepay.waltz.common.message.RecordHeader;
 import com.wepay.waltz.common.message.ReqId;
+import com.wepay.waltz.common.message.TransactionDataBatchRequest;
+import com.wepay.waltz.common.message.TransactionDataBatchResponse;
 import com.wepay.waltz.common.message.TransactionDataRequest;
 import com.wepay.waltz.common.message.TransactionDataResponse;
+import com.wepay.waltz.common.util.DaemonThreadFactory;
+import com.wepay.waltz.common.util.MemoryBudget;
 import com.wepay.waltz.common.util.QueueConsumerTask;
 import com.wepay.waltz.exception.InvalidOperationException;
 import com.wepay.waltz.exception.RpcException;
@@ -39,11 +43,16 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.LinkedList;
+import java.util.List;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -54,17 +63,29 @@ public class Partition {
 
     private static final Logger logger = Logging.getLogger(Partition.class);
     private static final MetricRegistry REGISTRY = MetricRegistry.getInstance();
+    private static final long CATCH_UP_MIN_BACKOFF_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long CATCH_UP_MAX_BACKOFF_NANOS = TimeUnit.SECONDS.toNanos(1);
 
     public final int lockTableSize;
     public final long minFetchSize;
     public final long realtimeThreshold; // > minFetchSize
+    private final int feedBatchSize;
+    private final int feedMaxInlineDataSize;
+    private final int transactionDataBatchSize;
 
     public final int partitionId;
 
     private final StorePartition storePartition;
+    private final Locks locks;
+    private final MemoryBudget appendBudget;
+    private final ThreadPoolExecutor appendPrepareExecutor;
     private final AppendTask appendTask;
+    private final StoreAppendTask storeAppendTask;
     private final FeedTask nearRealtimeFeedTask;
     private final FeedTask catchupFeedTask;
+    private final CatchUpFeedScheduler catchupFeedScheduler;
+    private final AtomicLong totalCatchupJobAdded = new AtomicLong(0);
+    private final AtomicLong totalCatchupJobRemoved = new AtomicLong(0);
     private final LinkedList<FeedContext> pausedFeedContexts;
     private final FeedCachePartition feedCachePartition;
     private final FeedSynchronizer feedSync = new FeedSynchronizer();
@@ -91,14 +112,58 @@ public class Partition {
      * @param config the config of the {@code WaltzServer} to which the partition is part of.
      */
     public Partition(int partitionId, StorePartition storePartition, FeedCachePartition feedCachePartition, TransactionFetcher transactionFetcher, WaltzServerConfig config) {
+        this(partitionId, storePartition, feedCachePartition, transactionFetcher, config, null, null);
+    }
+
+    /**
+     * Class Constructor.
+     * @param partitionId ID of the partition.
+     * @param storePartition {@link StorePartition} associated with the given partition ID.
+     * @param feedCachePartition {@link FeedCachePartition} associated with the given partition ID.
+     * @param transactionFetcher {@link TransactionFetcher} associated with the {@code WaltzServer} to which the partition is part of.
+     * @param config the config of the {@code WaltzServer} to which the partition is part of.
+     * @param serverAppendBudget the {@link MemoryBudget} for append requests shared by all partitions of the {@code WaltzServer}, or null.
+     * @param catchupFeedScheduler the {@link CatchUpFeedScheduler} shared by all partitions of the {@code WaltzServer},
+     *                             or null to run catch-up feeds on a thread of this partition.
+     */
+    public Partition(
+        int partitionId,
+        StorePartition storePartition,
+        FeedCachePartition feedCachePartition,
+        TransactionFetcher transactionFetcher,
+        WaltzServerConfig config,
+        MemoryBudget serverAppendBudget,
+        CatchUpFeedScheduler catchupFeedScheduler
+    ) {
         this.partitionId = partitionId;
         this.lockTableSize = (int) config.get(WaltzServerConfig.OPTIMISTIC_LOCK_TABLE_SIZE);
         this.minFetchSize = (int) config.get(WaltzServerConfig.MIN_FETCH_SIZE);
         this.realtimeThreshold = (int) config.get(WaltzServerConfig.REALTIME_THRESHOLD);
+        this.feedBatchSize = (int) config.get(WaltzServerConfig.FEED_BATCH_SIZE);
+        this.feedMaxInlineDataSize = (int) config.get(WaltzServerConfig.FEED_MAX_INLINE_DATA_SIZE);
+        this.transactionDataBatchSize = (int) config.get(WaltzServerConfig.TRANSACTION_DATA_BATCH_SIZE);
         this.storePartition = storePartition;
-        this.appendTask = new AppendTask();
-        this.nearRealtimeFeedTask = new FeedTask("R", new PriorityBlockingQueue<>(100, FeedContext.HIGH_WATER_MARK_COMPARATOR));
+        this.locks = new Locks(lockTableSize, 3, -1L);
+        this.appendBudget = new MemoryBudget((long) config.get(WaltzServerConfig.PARTITION_APPEND_BYTES_LIMIT), serverAppendBudget);
+
+        // The append pipeline. Lock requests are prepared in parallel by the prepare executor (if any),
+        // sequenced by the append task, and passed to the store partition by the store append task (if any).
+        int appendQueueSize = (int) config.get(WaltzServerConfig.APPEND_QUEUE_SIZE);
+        int appendPrepareThreads = (int) config.get(WaltzServerConfig.APPEND_PREPARE_THREADS);
+        if (appendPrepareThreads > 0) {
+            this.appendPrepareExecutor = new ThreadPoolExecutor(
+                appendPrepareThreads, appendPrepareThreads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), DaemonThreadFactory.INSTANCE
+            );
+        } else {
+            this.appendPrepareExecutor = null;
+        }
+        this.appendTask = new AppendTask(appendQueueSize);
+        this.storeAppendTask = (boolean) config.get(WaltzServerConfig.ASYNC_STORE_APPEND) ? new StoreAppendTask(appendQueueSize) : null;
+        this.nearRealtimeFeedTask = new FeedTask(
+            "R", new PriorityBlockingQueue<>(100, FeedContext.HIGH_WATER_MARK_COMPARATOR), (boolean) config.get(WaltzServerConfig.BROADCAST_FEED)
+        );
         this.catchupFeedTask = new FeedTask("C", new LinkedBlockingQueue<>());
+        this.catchupFeedScheduler = catchupFeedScheduler;
         this.pausedFeedContexts = new LinkedList<>();
         this.metricsGroup = String.format("%s.partition-%d", MetricGroup.WALTZ_SERVER_METRIC_GROUP, partitionId);
 
@@ -115,6 +180,9 @@ public class Partition {
      */
     public void open() throws StoreException {
         // Start threads
+        if (storeAppendTask != null) {
+            storeAppendTask.start();
+        }
         appendTask.start();
         nearRealtimeFeedTask.start();
         catchupFeedTask.start();
@@ -135,10 +203,19 @@ public class Partition {
             CompletableFuture<Boolean> f1 = nearRealtimeFeedTask.stop();
             CompletableFuture<Boolean> f2 = catchupFeedTask.stop();
             CompletableFuture<Boolean> f3 = appendTask.stop();
+            CompletableFuture<Boolean> f4 = storeAppendTask != null ? storeAppendTask.stop() : CompletableFuture.completedFuture(Boolean.TRUE);
+
+            if (appendPrepareExecutor != null) {
+                // Already submitted tasks are still executed, so the append task never waits forever.
+                appendPrepareExecutor.shutdown();
+            }
+
+            // Return bytes held by unresolved appends to the server budget, and wake up waiting threads
+            appendBudget.close();
 
             feedSync.close();
 
-            CompletableFuture.allOf(f1, f2, f3).whenComplete((v, t) -> closeFuture.complete(Boolean.TRUE));
+            CompletableFuture.allOf(f1, f2, f3, f4).whenComplete((v, t) -> closeFuture.complete(Boolean.TRUE));
         }
         return closeFuture;
     }
@@ -197,7 +274,7 @@ public class Partition {
      * @return total number of catchup {@link FeedContext} added this partition.
      */
     public int getTotalCatchupFeedContextAdded() {
-        return (int) catchupFeedTask.totalAdded();
+        return (int) (catchupFeedTask.totalAdded() + totalCatchupJobAdded.get());
     }
 
     /**
@@ -205,7 +282,7 @@ public class Partition {
      * @return total number of catchup {@link FeedContext} removed from this partition.
      */
     public int getTotalCatchupFeedContextRemoved() {
-        return (int) catchupFeedTask.totalRemoved();
+        return (int) (catchupFeedTask.totalRemoved() + totalCatchupJobRemoved.get());
     }
 
     /**
@@ -233,7 +310,13 @@ public class Partition {
             case MessageType.APPEND_REQUEST:
                 transactionMeter.mark(); // measures rate of transaction
                 if (isValid(client)) {
-                    appendTask.enqueue(new AppendContext((AppendRequest) msg, client));
+                    AppendRequest request = (AppendRequest) msg;
+                    Locks.LockRequest lockRequest = Locks.createRequest(request.writeLockRequest, request.readLockRequest, request.appendLockRequest);
+                    // The transaction data is held until the append is resolved. Wait if the memory budget is used up.
+                    appendBudget.acquire(request.data.length);
+                    if (!appendTask.enqueue(new AppendContext(request, client, lockRequest, prepareAsync(lockRequest)))) {
+                        appendBudget.release(request.data.length);
+                    }
                 }
                 break;
 
@@ -247,6 +330,10 @@ public class Partition {
                 getTransactionData((TransactionDataRequest) msg, client);
                 break;
 
+            case MessageType.TRANSACTION_DATA_BATCH_REQUEST:
+                getTransactionDataBatch((TransactionDataBatchRequest) msg, client);
+                break;
+
             case MessageType.FLUSH_REQUEST:
                 // Flush the append queue
                 flushAppendQueue().whenComplete((h, t) -> {
@@ -318,6 +405,11 @@ public class Partition {
                 client.sendMessage(new TransactionDataResponse(reqId, transactionId, new RpcException("partition not ready")), true);
                 break;
 
+            case MessageType.TRANSACTION_DATA_BATCH_REQUEST:
+                long firstTransactionId = ((TransactionDataBatchRequest) msg).firstTransactionId;
+                client.sendMessage(new TransactionDataBatchResponse(reqId, firstTransactionId, new RpcException("partition not ready")), true);
+                break;
+
             default:
                 logger.error("partition not found: partitionId=" + reqId.partitionId() + " clientId=" + reqId.clientId() + " msg=" + msg);
         }
@@ -332,6 +424,9 @@ public class Partition {
         REGISTRY.gauge(metricsGroup, "is-closed", (Gauge<Boolean>) () -> isClosed());
         REGISTRY.gauge(metricsGroup, "generation", (Gauge<Integer>) () -> storePartition.generation());
         REGISTRY.gauge(metricsGroup, "append-queue-size", (Gauge<Integer>) () -> appendTask.queueSize());
+        REGISTRY.gauge(metricsGroup, "append-prepare-queue-size", (Gauge<Integer>) () -> appendPrepareExecutor != null ? appendPrepareExecutor.getQueue().size() : 0);
+        REGISTRY.gauge(metricsGroup, "append-store-queue-size", (Gauge<Integer>) () -> storeAppendTask != null ? storeAppendTask.queueSize() : 0);
+        REGISTRY.gauge(metricsGroup, "append-bytes-in-flight", (Gauge<Long>) () -> appendBudget.bytesInFlight());
         REGISTRY.gauge(metricsGroup, "total-real-time-feed-context-added", (Gauge<Long>) () -> getTotalRealtimeFeedContextAdded());
         REGISTRY.gauge(metricsGroup, "total-real-time-feed-context-removed", (Gauge<Long>) () -> getTotalRealtimeFeedContextRemoved());
         REGISTRY.gauge(metricsGroup, "total-catchup-feed-context-added", (Gauge<Integer>) () -> getTotalCatchupFeedContextAdded());
@@ -348,6 +443,9 @@ public class Partition {
         REGISTRY.remove(metricsGroup, "is-closed");
         REGISTRY.remove(metricsGroup, "generation");
         REGISTRY.remove(metricsGroup, "append-queue-size");
+        REGISTRY.remove(metricsGroup, "append-prepare-queue-size");
+        REGISTRY.remove(metricsGroup, "append-store-queue-size");
+        REGISTRY.remove(metricsGroup, "append-bytes-in-flight");
         REGISTRY.remove(metricsGroup, "total-real-time-feed-context-added");
         REGISTRY.remove(metricsGroup, "total-real-time-feed-context-removed");
         REGISTRY.remove(metricsGroup, "total-catchup-feed-context-added");
@@ -452,8 +550,20 @@ public class Partition {
     }
 
     private void addFeedContext(FeedRequest request, long fetchSize, FeedSuspended suspendMessage, PartitionClient client) throws StoreException {
-        FeedContext feedContext =
-            new FeedContext(request.reqId, request.clientHighWaterMark, fetchSize, client, suspendMessage);
+        // Feed entries are batched only when the client accepts batched feed data
+        int maxBatchSize = request.feedDataBatchEnabled ? feedBatchSize : 1;
+        // Transaction data is inlined up to the smaller of the client's limit and the server's limit
+        int maxInlineDataSize = Math.max(0, Math.min(request.maxInlineDataSize, feedMaxInlineDataSize));
+        FeedContext feedContext = new FeedContext(
+            request.reqId,
+            request.clientHighWaterMark,
+            fetchSize,
+            client,
+            suspendMessage,
+            maxBatchSize,
+            maxInlineDataSize,
+            this::fetchInlineData
+        );
 
         if (feedContext.isWritable()) {
             addFeedContext(feedContext);
@@ -469,7 +579,13 @@ public class Partition {
                 nearRealtimeFeedTask.enqueue(feedContext);
             } else {
                 logger.debug("added a catch up task: {}", feedContext);
-                catchupFeedTask.enqueue(feedContext);
+                if (catchupFeedScheduler != null) {
+                    if (catchupFeedScheduler.submit(new CatchUpFeedJob(feedContext))) {
+                        totalCatchupJobAdded.incrementAndGet();
+                    }
+                } else {
+                    catchupFeedTask.enqueue(feedContext);
+                }
             }
         } finally {
             // Unblock waiting feed threads because the new feed request may be satisfied immediately
@@ -477,10 +593,41 @@ public class Partition {
         }
     }
 
+    /**
+     * Returns the feed data of the given transaction from the feed cache, or null if it is not found.
+     * On a cache miss, the rest of the cache block is prefetched from the store.
+     */
+    private FeedData fetchFeedData(long transactionId) throws StoreException {
+        FeedData feedData = feedCachePartition.get(transactionId);
+        if (feedData == null) {
+            // Prefetch record headers to fill the cache block.
+            int prefetchSize = FeedCacheBlock.NUM_TRANSACTIONS - (int) (transactionId & FeedCacheBlock.INDEX_MASK);
+            ArrayList<RecordHeader> recordHeaderList = storePartition.getRecordHeaderList(transactionId, prefetchSize);
+            if (!recordHeaderList.isEmpty()) {
+                RecordHeader firstItem = recordHeaderList.get(0);
+                feedData = new FeedData(firstItem.reqId, firstItem.transactionId, firstItem.header);
+
+                feedCachePartition.addAll(recordHeaderList);
+            }
+        }
+        return feedData;
+    }
+
+    /**
+     * Returns the transaction data to be sent inline with feed entries. The data is served from the transaction cache,
+     * and the rest of the range is read from the store at once on a cache miss.
+     */
+    private List<TransactionData> fetchInlineData(long firstTransactionId, int numTransactions) throws StoreException {
+        boolean catchup = commitHighWaterMark - firstTransactionId >= realtimeThreshold;
+        return transactionFetcher.fetchList(partitionId, firstTransactionId, numTransactions, storePartition, catchup);
+    }
+
     private void getTransactionData(TransactionDataRequest request, PartitionClient client) {
         try {
             TransactionKey key = new TransactionKey(partitionId, request.transactionId);
-            TransactionData transactionData = transactionFetcher.fetch(key, storePartition);
+            // A request far behind the high-water mark comes from a catch-up read
+            boolean catchup = commitHighWaterMark - request.transactionId >= realtimeThreshold;
+            TransactionData transactionData = transactionFetcher.fetch(key, storePartition, catchup);
             client.sendMessage(new TransactionDataResponse(request.reqId, request.transactionId, transactionData.data, transactionData.checksum), true);
 
         } catch (Throwable ex) {
@@ -492,13 +639,131 @@ public class Partition {
         }
     }
 
+    private void getTransactionDataBatch(TransactionDataBatchRequest request, PartitionClient client) {
+        try {
+            int maxNumTransactions = Math.max(1, Math.min(request.numTransactions, transactionDataBatchSize));
+            // A request far behind the high-water mark comes from a catch-up read
+            boolean catchup = commitHighWaterMark - request.firstTransactionId >= realtimeThreshold;
+            ArrayList<TransactionData> list =
+                transactionFetcher.fetchList(partitionId, request.firstTransactionId, maxNumTransactions, storePartition, catchup);
+
+            byte[][] data = new byte[list.size()][];
+            int[] checksums = new int[list.size()];
+            for (int i = 0; i < list.size(); i++) {
+                data[i] = list.get(i).data;
+                checksums[i] = list.get(i).checksum;
+            }
+            client.sendMessage(new TransactionDataBatchResponse(request.reqId, request.firstTransactionId, data, checksums), true);
+
+        } catch (Throwable ex) {
+            if (running.get()) {
+                logger.error("failed to get transaction data", ex);
+            }
+            RpcException exception = new RpcException(ex.toString());
+            client.sendMessage(new TransactionDataBatchResponse(request.reqId, request.firstTransactionId, exception), true);
+        }
+    }
+
+    /**
+     * Computes the lock table entries of the request in the prepare executor.
+     * @return a future completed when the request is prepared, or null if it is left to the append task.
+     */
+    private CompletableFuture<Void> prepareAsync(Locks.LockRequest lockRequest) {
+        if (appendPrepareExecutor != null) {
+            try {
+                return CompletableFuture.runAsync(() -> locks.prepare(lockRequest), appendPrepareExecutor);
+            } catch (RejectedExecutionException ex) {
+                // The partition is closing
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of appends passed to the store partition or waiting in the store append task.
+     * @return the number of pending appends.
+     */
+    private int numPendingAppends() {
+        int numPendingAppends = storePartition.numPendingAppends();
+        if (storeAppendTask != null) {
+            numPendingAppends += storeAppendTask.numPending();
+        }
+        return numPendingAppends;
+    }
+
+    /**
+     * Waits for all pending appends to complete.
+     * @throws StoreException thrown if {@code StorePartition} for this partition is closed.
+     */
+    private void flushStore() throws StoreException {
+        if (storeAppendTask != null) {
+            storeAppendTask.awaitDrained();
+        }
+        storePartition.flush();
+    }
+
+    private void appendToStore(AppendContext context) throws StoreException {
+        AppendRequest request = context.request;
+        Locks.LockRequest lockRequest = context.lockRequest;
+
+        try {
+            Timer.Context timerContext = responseLatencyTimer.time();
+            storePartition.append(request.reqId, request.header, request.data, request.checksum, transactionId -> {
+                // The following code is executed when the transaction is resolved.
+                try {
+                    if (transactionId >= 0L) {
+                        try {
+                            // Put the entry into the feed cache
+                            feedCachePartition.add(transactionId, request.reqId, request.header);
+                            // Put the entry into the transaction cache
+                            transactionFetcher.cache(
+                                new TransactionKey(partitionId, transactionId),
+                                new TransactionData(request.data, request.checksum)
+                            );
+                            // Commit locks
+                            locks.commit(lockRequest, transactionId);
+                            highWaterMarkMeter.mark(); // measures mark as rate of high water mark change
+                            commitHighWaterMark = transactionId;
+                        } finally {
+                            // Unblock waiting feed threads
+                            feedSync.unblock();
+                        }
+                    }
+                } finally {
+                    locks.end(lockRequest);
+                    appendBudget.release(request.data.length);
+                    timerContext.stop(); // measures latency of response
+                }
+            });
+        } catch (StoreException ex) {
+            // Append failed. End lock.
+            locks.end(lockRequest);
+            appendBudget.release(request.data.length);
+            throw ex;
+        }
+    }
+
     private static class AppendContext {
         final AppendRequest request;
         final PartitionClient client;
+        final Locks.LockRequest lockRequest;
+        final CompletableFuture<Void> prepared;
 
-        AppendContext(AppendRequest request, PartitionClient client) {
+        AppendContext(AppendRequest request, PartitionClient client, Locks.LockRequest lockRequest, CompletableFuture<Void> prepared) {
             this.request = request;
             this.client = client;
+            this.lockRequest = lockRequest;
+            this.prepared = prepared;
+        }
+
+        void awaitPrepared() {
+            if (prepared != null) {
+                try {
+                    prepared.join();
+                } catch (CompletionException ex) {
+                    // Ignore. Locks.begin() prepares the request if it is not prepared yet.
+                }
+            }
         }
     }
 
@@ -506,36 +771,42 @@ public class Partition {
         final CompletableFuture<Long> future = new CompletableFuture<>();
 
         FlushContext() {
-            super(null, null);
+            super(null, null, null, null);
         }
     }
 
     private class AppendTask extends QueueConsumerTask<AppendContext> {
 
-        private Locks locks;
-
-        AppendTask() {
-            super("Append-P" + partitionId, new RequestQueue<>(new ArrayBlockingQueue<>(100)));
+        AppendTask(int queueSize) {
+            super("Append-P" + partitionId, new RequestQueue<>(new ArrayBlockingQueue<>(queueSize)));
         }
 
         @Override
         public void init() throws Exception {
-            locks = new Locks(lockTableSize, 3, storePartition.highWaterMark());
+            locks.reset(storePartition.highWaterMark());
         }
 
         @Override
         protected void process(AppendContext context) throws Exception {
             if (context.request == null) {
                 // This is a flush request
-                ((FlushContext) context).future.complete(storePartition.flush());
+                if (storeAppendTask == null) {
+                    ((FlushContext) context).future.complete(storePartition.flush());
+                } else if (!storeAppendTask.enqueue(context)) {
+                    // The store append task is stopped. Fail the flush since it will never be processed.
+                    ((FlushContext) context).future.completeExceptionally(new PartitionClosedException("already closed"));
+                }
 
             } else {
                 AppendRequest request = context.request;
+                Locks.LockRequest lockRequest = context.lockRequest;
+
+                // Lock requests are prepared in parallel, but they are sequenced in the order of the queue
+                context.awaitPrepared();
 
-                Locks.LockRequest lockRequest = Locks.createRequest(request.writeLockRequest, request.readLockRequest, request.appendLockRequest);
                 // Begin locking
                 while (!locks.begin(lockRequest)) {
-                    if (storePartition.numPendingAppends() == 0) {
+                    if (numPendingAppends() == 0) {
                         // Retry
                         if (locks.begin(lockRequest)) {
                             break;
@@ -545,7 +816,7 @@ public class Partition {
                             logger.error("Locks has been reset: partitionId=" + partitionId);
                         }
                     } else {
-                        storePartition.flush();
+                        flushStore();
                     }
                 }
 
@@ -554,42 +825,14 @@ public class Partition {
                     transactionRejectionMeter.mark(); // measures rate of transaction rejection
                     // Unable to lock since the min high-water mark is bigger than the client's high-water mark.
                     locks.end(lockRequest);
+                    appendBudget.release(request.data.length);
                     context.client.sendMessage(new LockFailure(request.reqId, minHighWaterMark), true);
 
+                } else if (storeAppendTask == null) {
+                    appendToStore(context);
+
                 } else {
-                    try {
-                        Timer.Context timerContext = responseLatencyTimer.time();
-                        storePartition.append(request.reqId, request.header, request.data, request.checksum, transactionId -> {
-                            // The following code is executed when the transaction is resolved.
-                            try {
-                                if (transactionId >= 0L) {
-                                    try {
-                                        // Put the entry into the feed cache
-                                        feedCachePartition.add(transactionId, request.reqId, request.header);
-                                        // Put the entry into the transaction cache
-                                        transactionFetcher.cache(
-                                            new TransactionKey(partitionId, transactionId),
-                                            new TransactionData(request.data, request.checksum)
-                                        );
-                                        // Commit locks
-                                        locks.commit(lockRequest, transactionId);
-                                        highWaterMarkMeter.mark(); // measures mark as rate of high water mark change
-                                        commitHighWaterMark = transactionId;
-                                    } finally {
-                                        // Unblock waiting feed threads
-                                        feedSync.unblock();
-                                    }
-                                }
-                            } finally {
-                                locks.end(lockRequest);
-                                timerContext.stop(); // measures latency of response
-                            }
-                        });
-                    } catch (StoreException ex) {
-                        // Append failed. End lock.
-                        locks.end(lockRequest);
-                        throw ex;
-                    }
+                    storeAppendTask.handOff(context);
                 }
             }
         }
@@ -627,15 +870,134 @@ public class Partition {
 
     }
 
+    /**
+     * Passes appends to the store partition in the order they were sequenced by the {@link AppendTask},
+     * so that the append task does not block on the store partition.
+     */
+    private class StoreAppendTask extends QueueConsumerTask<AppendContext> {
+
+        private int numPending = 0;
+
+        StoreAppendTask(int queueSize) {
+            super("StoreAppend-P" + partitionId, new RequestQueue<>(new ArrayBlockingQueue<>(queueSize)));
+        }
+
+        /**
+         * Enqueues an append whose locks are acquired.
+         * @param context the append context.
+         * @throws StorePartitionClosedException if this task is stopped.
+         */
+        void handOff(AppendContext context) throws StorePartitionClosedException {
+            synchronized (this) {
+                numPending++;
+            }
+            if (!enqueue(context)) {
+                locks.end(context.lockRequest);
+                appendBudget.release(context.request.data.length);
+                done();
+                throw new StorePartitionClosedException();
+            }
+        }
+
+        int numPending() {
+            synchronized (this) {
+                return numPending;
+            }
+        }
+
+        /**
+         * Waits until all handed-off appends are passed to the store partition.
+         */
+        void awaitDrained() {
+            synchronized (this) {
+                while (numPending > 0 && isRunning()) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        Thread.interrupted();
+                    }
+                }
+            }
+        }
+
+        private void done() {
+            synchronized (this) {
+                numPending--;
+                notifyAll();
+            }
+        }
+
+        @Override
+        protected void process(AppendContext context) throws Exception {
+            if (context.request == null) {
+                // This is a flush request. All appends before it are already passed to the store partition.
+                FlushContext flushContext = (FlushContext) context;
+                try {
+                    flushContext.future.complete(storePartition.flush());
+                } catch (StoreException ex) {
+                    flushContext.future.completeExceptionally(ex);
+                    throw ex;
+                }
+
+            } else {
+                try {
+                    appendToStore(context);
+                } finally {
+                    done();
+                }
+            }
+        }
+
+        @Override
+        protected void exceptionCaught(Throwable ex) {
+            if (ex instanceof StorePartitionClosedException) {
+                if (running.get()) {
+                    logger.warn("exception caught", ex);
+                } else {
+                    // The store partition is closed. The store append task can no longer append transactions.
+                    stop();
+                }
+            } else {
+                logger.debug("exception caught", ex);
+            }
+        }
+
+        @Override
+        public CompletableFuture<Boolean> stop() {
+            CompletableFuture<Boolean> future = super.stop();
+            synchronized (this) {
+                // Wake up the append task waiting for the drain
+                notifyAll();
+            }
+            return future;
+        }
+
+    }
+
     private class FeedTask extends QueueConsumerTask<FeedContext> {
 
         private final AtomicLong totalAdded = new AtomicLong(0);
         private final AtomicLong totalRemoved = new AtomicLong(0);
+        private final BlockingQueue<FeedContext> feedContextQueue;
+        private final boolean broadcast;
         private FeedData cachedFeedData = null;
         private long highWaterMark = -1L;
 
         FeedTask(String threadType, BlockingQueue<FeedContext> feedContextQueue) {
+            this(threadType, feedContextQueue, false);
+        }
+
+        /**
+         * Class constructor.
+         * @param threadType the thread type.
+         * @param feedContextQueue the queue of feed contexts.
+         * @param broadcast if true, feed contexts at the same high-water mark are fed together as a cohort.
+         *                  The queue must be ordered by {@link FeedContext#HIGH_WATER_MARK_COMPARATOR}.
+         */
+        FeedTask(String threadType, BlockingQueue<FeedContext> feedContextQueue, boolean broadcast) {
             super("Feed-" + threadType + "-P" + partitionId, new RequestQueue<>(feedContextQueue));
+            this.feedContextQueue = feedContextQueue;
+            this.broadcast = broadcast;
         }
 
         public long totalAdded() {
@@ -659,63 +1021,143 @@ public class Partition {
         public void process(FeedContext feedContext) throws Exception {
             if (feedContext.isActive()) {
                 if (feedContext.isWritable()) {
-                    try {
-                        long nextTransactionId = feedContext.nextTransactionId();
+                    if (broadcast) {
+                        processCohort(feedContext);
 
-                        if (highWaterMark < nextTransactionId) {
-                            long version = feedSync.version();
-                            highWaterMark = storePartition.highWaterMark();
+                    } else {
+                        try {
+                            long nextTransactionId = feedContext.nextTransactionId();
 
-                            if (highWaterMark < nextTransactionId) {
-                                // Wait for more data or new feed context
-                                feedSync.await(version);
+                            if (awaitTransaction(nextTransactionId)) {
+                                FeedData feedData = getFeedData(nextTransactionId);
+
+                                if (feedData != null) {
+                                    // Send data. Force flushing when we reach the high-water mark.
+                                    feedContext.send(feedData, highWaterMark == nextTransactionId);
+                                }
                             }
+                        } finally {
+                            requeue(feedContext);
                         }
+                    }
+                } else {
+                    totalRemoved.incrementAndGet();
+                    pauseFeedContext(feedContext);
+                }
+            }
+        }
 
-                        if (highWaterMark >= nextTransactionId) {
-                            FeedData feedData;
+        /**
+         * Feeds all feed contexts in the queue at the same high-water mark as the given feed context together.
+         * The members of the cohort advance in lockstep up to the current high-water mark, so each feed data is
+         * looked up once and the same message is sent to all members, and the queue is touched once per member
+         * instead of once per member per transaction.
+         */
+        private void processCohort(FeedContext head) throws Exception {
+            ArrayList<FeedContext> cohort = new ArrayList<>();
+            cohort.add(head);
+
+            long nextTransactionId = head.nextTransactionId();
+
+            // The queue is ordered by the high-water mark, and this task is the only consumer.
+            // A context that does not belong to the cohort is put back.
+            FeedContext next;
+            while ((next = feedContextQueue.peek()) != null && next.nextTransactionId() == nextTransactionId) {
+                next = feedContextQueue.poll();
+                if (next == null) {
+                    break;
+                } else if (next.nextTransactionId() != nextTransactionId) {
+                    super.enqueue(next);
+                    break;
+                } else if (!next.isActive()) {
+                    continue;
+                } else if (!next.isWritable()) {
+                    totalRemoved.incrementAndGet();
+                    pauseFeedContext(next);
+                } else {
+                    cohort.add(next);
+                }
+            }
 
-                            if (cachedFeedData != null && cachedFeedData.transactionId == nextTransactionId) {
-                                feedData = cachedFeedData;
-                            } else {
-                                // Fetch the feed data
-                                feedData = feedCachePartition.get(nextTransactionId);
-                                if (feedData == null) {
-                                    // Prefetch record headers to fill the cache block.
-                                    int prefetchSize = FeedCacheBlock.NUM_TRANSACTIONS - (int) (nextTransactionId & FeedCacheBlock.INDEX_MASK);
-                                    ArrayList<RecordHeader> recordHeaderList = storePartition.getRecordHeaderList(nextTransactionId, prefetchSize);
-                                    if (!recordHeaderList.isEmpty()) {
-                                        RecordHeader firstItem = recordHeaderList.get(0);
-                                        feedData = new FeedData(firstItem.reqId, firstItem.transactionId, firstItem.header);
-
-                                        feedCachePartition.addAll(recordHeaderList);
-                                    }
-                                }
-                            }
+            try {
+                if (awaitTransaction(nextTransactionId)) {
+                    long lastTransactionId = highWaterMark;
+
+                    while (nextTransactionId <= lastTransactionId && !cohort.isEmpty()) {
+                        FeedData feedData = getFeedData(nextTransactionId);
+                        if (feedData == null) {
+                            break;
+                        }
 
-                            if (feedData != null) {
-                                // Cache it in a local variable for the next feed context
-                                cachedFeedData = feedData;
+                        // Force flushing when we reach the high-water mark.
+                        boolean flush = nextTransactionId == lastTransactionId;
 
-                                // Send data. Force flushing when we reach the high-water mark.
-                                feedContext.send(feedData, highWaterMark == nextTransactionId);
+                        Iterator<FeedContext> iter = cohort.iterator();
+                        while (iter.hasNext()) {
+                            FeedContext member = iter.next();
+                            if (member.isActive() && member.isWritable() && member.hasMoreToFetch()) {
+                                member.send(feedData, flush);
+                            } else {
+                                iter.remove();
+                                requeue(member);
                             }
                         }
-                    } finally {
-                        if (feedContext.isActive() && feedContext.hasMoreToFetch()) {
-                            // Put the feed context back into the queue without incrementing totalAdded
-                            super.enqueue(feedContext);
-                        } else {
-                            totalRemoved.incrementAndGet();
-                        }
+                        nextTransactionId++;
                     }
-                } else {
-                    totalRemoved.incrementAndGet();
-                    pauseFeedContext(feedContext);
+                }
+            } finally {
+                for (FeedContext member : cohort) {
+                    requeue(member);
                 }
             }
         }
 
+        /**
+         * Waits for the given transaction to be committed if this task has seen all transactions.
+         * @return true if the transaction is committed, otherwise false.
+         */
+        private boolean awaitTransaction(long transactionId) throws PartitionClosedException, StoreException {
+            if (highWaterMark < transactionId) {
+                long version = feedSync.version();
+                highWaterMark = storePartition.highWaterMark();
+
+                if (highWaterMark < transactionId) {
+                    // Wait for more data or new feed context
+                    feedSync.await(version);
+                }
+            }
+            return highWaterMark >= transactionId;
+        }
+
+        /**
+         * Returns the feed data of the given transaction, or null if it is not found.
+         */
+        private FeedData getFeedData(long transactionId) throws StoreException {
+            FeedData feedData;
+
+            if (cachedFeedData != null && cachedFeedData.transactionId == transactionId) {
+                feedData = cachedFeedData;
+            } else {
+                feedData = fetchFeedData(transactionId);
+            }
+
+            if (feedData != null) {
+                // Cache it in a local variable for the next feed context
+                cachedFeedData = feedData;
+            }
+
+            return feedData;
+        }
+
+        private void requeue(FeedContext feedContext) {
+            if (feedContext.isActive() && feedContext.hasMoreToFetch()) {
+                // Put the feed context back into the queue without incrementing totalAdded
+                super.enqueue(feedContext);
+            } else {
+                totalRemoved.incrementAndGet();
+            }
+        }
+
         @Override
         protected void exceptionCaught(Throwable ex) {
             if (ex instanceof StorePartitionClosedException) {
@@ -732,46 +1174,98 @@ public class Partition {
 
     }
 
-    private static class FeedSynchronizer {
+    /**
+     * A catch-up feed context run by the {@link CatchUpFeedScheduler}. Each turn feeds a run of consecutive
+     * transactions, so the feed cache block fetched on a miss is consumed by the same turn. If the feed context
+     * reaches the high-water mark, it is handed over to the near realtime feed task, which waits for new transactions.
+     * A turn that fails is retried with an exponential back-off.
+     */
+    private class CatchUpFeedJob implements CatchUpFeedScheduler.Job {
 
-        private static final long CLOSED = Long.MIN_VALUE;
-        private long version = -1L;
+        private final FeedContext feedContext;
+        private boolean done = false;
+        private long backoffNanos = 0L;
+        private long retryTime = 0L;
 
-        long version() throws PartitionClosedException {
-            synchronized (this) {
-                if (version != CLOSED) {
-                    return version;
-                } else {
-                    throw new PartitionClosedException("already closed");
-                }
-            }
+        CatchUpFeedJob(FeedContext feedContext) {
+            this.feedContext = feedContext;
         }
 
-        void await(long snapshotVersion) {
-            synchronized (this) {
-                while (version != CLOSED && version == snapshotVersion) {
-                    try {
-                        wait();
-                    } catch (InterruptedException ex) {
-                        Thread.interrupted();
+        @Override
+        public int clientId() {
+            return feedContext.reqId.clientId();
+        }
+
+        @Override
+        public int run(int maxTransactions) {
+            int numTransactions = 0;
+
+            try {
+                if (!running.get() || !feedContext.isActive()) {
+                    finish();
+
+                } else if (!feedContext.isWritable()) {
+                    finish();
+                    pauseFeedContext(feedContext);
+
+                } else {
+                    long highWaterMark = storePartition.highWaterMark();
+
+                    while (numTransactions < maxTransactions && feedContext.hasMoreToFetch() && feedContext.isWritable()) {
+                        long nextTransactionId = feedContext.nextTransactionId();
+
+                        if (nextTransactionId > highWaterMark) {
+                            // Caught up. Let the near realtime feed task wait for new transactions.
+                            finish();
+                            nearRealtimeFeedTask.enqueue(feedContext);
+                            feedSync.unblock();
+                            return numTransactions;
+                        }
+
+                        FeedData feedData = fetchFeedData(nextTransactionId);
+                        if (feedData == null) {
+                            break;
+                        }
+
+                        numTransactions++;
+
+                        // Force flushing at the end of the turn and when we reach the high-water mark.
+                        feedContext.send(feedData, numTransactions == maxTransactions || nextTransactionId == highWaterMark);
+                    }
+
+                    if (!feedContext.isActive() || !feedContext.hasMoreToFetch()) {
+                        finish();
                     }
                 }
-            }
-        }
+                backoffNanos = 0L;
 
-        void unblock() {
-            synchronized (this) {
-                if (version != CLOSED) {
-                    version++;
+            } catch (Exception ex) {
+                if (running.get() && feedContext.isActive()) {
+                    backoffNanos = Math.min(Math.max(CATCH_UP_MIN_BACKOFF_NANOS, backoffNanos * 2), CATCH_UP_MAX_BACKOFF_NANOS);
+                    retryTime = System.nanoTime() + backoffNanos;
+                    logger.error("exception caught, retrying in " + TimeUnit.NANOSECONDS.toMillis(backoffNanos) + " ms", ex);
+                } else {
+                    finish();
                 }
-                notifyAll();
             }
+
+            return numTransactions;
         }
 
-        void close() {
-            synchronized (this) {
-                version = CLOSED;
-                notifyAll();
+        @Override
+        public boolean isDone() {
+            return done;
+        }
+
+        @Override
+        public long delay(long now) {
+            return backoffNanos > 0L ? retryTime - now : 0L;
+        }
+
+        private void finish() {
+            if (!done) {
+                done = true;
+                totalCatchupJobRemoved.incrementAndGet();
             }
         }
 
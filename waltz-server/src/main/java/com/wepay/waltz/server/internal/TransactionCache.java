@@ -106,34 +106,115 @@ public class TransactionCache {
             return;
         }
 
+        synchronized (this) {
+            write(key, data, serializedSize);
+        }
+    }
+
+    /**
+     * Puts a transaction data in the cache only if it is accessed more often than every cached transaction it would
+     * replace, and it has been accessed at least {@code minFrequency} times. This keeps a scan of old transactions from
+     * flushing out transactions that are read repeatedly.
+     * @param key transaction key.
+     * @param data transaction data.
+     * @param sketch the access frequencies of transactions.
+     * @param minFrequency the minimum access frequency to be cached.
+     * @return True if the data is cached or already in the cache, otherwise False.
+     */
+    public boolean putIfFrequent(TransactionKey key, TransactionData data, FrequencySketch sketch, int minFrequency) {
+        int serializedSize = TransactionKey.SERIALIZED_KEY_SIZE + data.serializedSize();
+
+        if (serializedSize > maxSerializedSize) {
+            // Data is too big to cache.
+            return false;
+        }
+
+        int frequency = sketch.frequency(key.hashCode());
+        if (frequency < minFrequency) {
+            return false;
+        }
+
         synchronized (this) {
             Descriptor descriptor = index.get(key);
+            if (descriptor != null && descriptor.isValid()) {
+                // A valid cached entry exists. Do nothing.
+                return true;
+            }
 
-            if (descriptor != null) {
-                if (descriptor.isValid()) {
-                    // A valid cached entry exists. Do nothing.
-                    return;
+            if (!isMoreFrequentThanVictims(serializedSize, frequency, sketch)) {
+                return false;
+            }
+
+            write(key, data, serializedSize);
+            return true;
+        }
+    }
+
+    /**
+     * Returns true if the given frequency is higher than the frequencies of all cached transactions that would be
+     * reclaimed to make the target free size. This walks the buffer in the same order as {@link #reclaim(int)}
+     * without reclaiming anything.
+     */
+    private boolean isMoreFrequentThanVictims(int targetFreeSize, int frequency, FrequencySketch sketch) {
+        int start = startOfFreeSpace;
+        int end = endOfFreeSpace;
+
+        while (end - start < targetFreeSize) {
+            int reclaimableSize = cacheSize - end;
+            if (reclaimableSize > MIN_RECORD_SIZE) {
+                TransactionKey key = TransactionKey.readFrom(end, buffer);
+
+                Descriptor descriptor = index.get(key);
+                if (descriptor != null) {
+                    if (frequency <= sketch.frequency(key.hashCode())) {
+                        return false;
+                    }
+                    end += descriptor.length();
 
                 } else {
-                    // This shouldn't happen.
-                    logger.error("invalid descriptor, removing it");
-                    index.remove(key);
+                    // The dummy key. The remaining space is unused.
+                    end = cacheSize;
                 }
+            } else if (reclaimableSize > 0) {
+                end = cacheSize;
+
+            } else {
+                // Rewind to the beginning.
+                end = 0;
+                start = 0;
             }
+        }
 
-            // Reclaim a sufficient space to write the key and data.
-            reclaim(serializedSize);
+        return true;
+    }
 
-            // Write the key and data.
-            key.writeTo(startOfFreeSpace, buffer);
-            data.writeTo(startOfFreeSpace + TransactionKey.SERIALIZED_KEY_SIZE, buffer);
+    private void write(TransactionKey key, TransactionData data, int serializedSize) {
+        Descriptor descriptor = index.get(key);
 
-            // The creation of a descriptor includes a volatile write. It ensures the visibility of above writes to reader.
-            descriptor = new Descriptor(startOfFreeSpace, serializedSize);
-            startOfFreeSpace += serializedSize;
+        if (descriptor != null) {
+            if (descriptor.isValid()) {
+                // A valid cached entry exists. Do nothing.
+                return;
 
-            index.put(key, descriptor);
+            } else {
+                // This shouldn't happen.
+                logger.error("invalid descriptor, removing it");
+                index.remove(key);
+            }
         }
+
+        // Reclaim a sufficient space to write the key and data.
+        reclaim(serializedSize);
+
+        // Write the key and data.
+        key.writeTo(startOfFreeSpace, buffer);
+        data.writeTo(startOfFreeSpace + TransactionKey.SERIALIZED_KEY_SIZE, buffer);
+
+        // The creation of a descriptor includes a volatile write. It ensures the visibility of above writes to reader.
+        descriptor = new Descriptor(startOfFreeSpace, serializedSize);
+        startOfFreeSpace += serializedSize;
+
+        index.put(key, descriptor);
     }
 
     /**
@@ -1,6 +1,8 @@
 package com.wepay.waltz.server.internal;
 
 import com.wepay.riff.metrics.core.Meter;
+import com.wepay.riff.metrics.core.MetricGroup;
+import com.wepay.riff.metrics.core.MetricRegistry;
 import com.wepay.riff.util.Logging;
 import com.wepay.riff.util.RequestQueue;
 import com.wepay.waltz.common.message.Record;
@@ -10,6 +12,7 @@ import com.wepay.waltz.store.exception.StoreException;
 import com.wepay.waltz.store.exception.TransactionNotFoundException;
 import org.slf4j.Logger;
 
+import java.util.ArrayList;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
@@ -17,15 +20,33 @@ import java.util.concurrent.ExecutionException;
 
 /**
  * Used to fetch the transaction data from the {@link StorePartition}. Unique for each Waltz-Server.
+ *
+ * <p>If scan resistance is enabled, the access frequencies of transactions are recorded in a {@link FrequencySketch}.
+ * Transactions fetched by catch-up reads are cached only if they are read more often than the transaction they would
+ * evict, so a client replaying old history does not flush out the recent transactions read by realtime clients.</p>
  */
 public class TransactionFetcher {
 
     private static final Logger logger = Logging.getLogger(TransactionFetcher.class);
+    private static final MetricRegistry REGISTRY = MetricRegistry.getInstance();
     private static final int QUEUE_SIZE = 100;
 
+    // Used to size the frequency sketch from the cache size
+    private static final int AVERAGE_ENTRY_SIZE = 256;
+
+    // A catch-up read must have been seen at least this many times recently to be cached
+    private static final int MIN_CATCHUP_FREQUENCY = 2;
+
     private final TransactionCache cache;
+    private final FrequencySketch sketch;
     private final ConcurrentHashMap<TransactionKey, CompletableFuture<TransactionData>> futures;
     private final CachingTask task;
+    private final String metricsGroup = MetricGroup.WALTZ_SERVER_METRIC_GROUP;
+    private final Meter realtimeHitMeter;
+    private final Meter realtimeMissMeter;
+    private final Meter catchupHitMeter;
+    private final Meter catchupMissMeter;
+    private final Meter rejectionMeter;
 
     /**
      * Class constructor.
@@ -34,8 +55,25 @@ public class TransactionFetcher {
      * @param cacheMissMeter Metric to track cache miss.
      */
     public TransactionFetcher(int cacheSize, boolean directAllocation, Meter cacheMissMeter) {
+        this(cacheSize, directAllocation, false, cacheMissMeter);
+    }
+
+    /**
+     * Class constructor.
+     * @param cacheSize The maximum size of the transaction cache.
+     * @param directAllocation If True, allocates a new direct byte buffer (outside Head memory) else a new byte buffer (from Heap memory).
+     * @param scanResistant If True, transactions fetched by catch-up reads are cached only if they are read frequently.
+     * @param cacheMissMeter Metric to track cache miss.
+     */
+    public TransactionFetcher(int cacheSize, boolean directAllocation, boolean scanResistant, Meter cacheMissMeter) {
         this.cache = new TransactionCache(cacheSize, cacheSize / 4, directAllocation, cacheMissMeter);
+        this.sketch = scanResistant ? new FrequencySketch(cacheSize / AVERAGE_ENTRY_SIZE) : null;
         this.futures = new ConcurrentHashMap<>();
+        this.realtimeHitMeter = REGISTRY.meter(metricsGroup, "transaction-cache-hit-realtime");
+        this.realtimeMissMeter = REGISTRY.meter(metricsGroup, "transaction-cache-miss-realtime");
+        this.catchupHitMeter = REGISTRY.meter(metricsGroup, "transaction-cache-hit-catchup");
+        this.catchupMissMeter = REGISTRY.meter(metricsGroup, "transaction-cache-miss-catchup");
+        this.rejectionMeter = REGISTRY.meter(metricsGroup, "transaction-cache-rejected");
         this.task = new CachingTask(QUEUE_SIZE);
         this.task.start();
     }
@@ -45,6 +83,12 @@ public class TransactionFetcher {
      */
     public void close() {
         task.stop();
+
+        REGISTRY.remove(metricsGroup, "transaction-cache-hit-realtime");
+        REGISTRY.remove(metricsGroup, "transaction-cache-miss-realtime");
+        REGISTRY.remove(metricsGroup, "transaction-cache-hit-catchup");
+        REGISTRY.remove(metricsGroup, "transaction-cache-miss-catchup");
+        REGISTRY.remove(metricsGroup, "transaction-cache-rejected");
     }
 
     /**
@@ -53,14 +97,7 @@ public class TransactionFetcher {
      * @param data The data to be written to a partition.
      */
     public void cache(TransactionKey key, TransactionData data) {
-        CompletableFuture<TransactionData> future = CompletableFuture.completedFuture(data);
-
-        if (futures.putIfAbsent(key, future) == null) {
-            // Enqueue the transaction to cache it asynchronously
-            if (!task.enqueue(new Item(key, data))) {
-                futures.remove(key);
-            }
-        }
+        cacheAsync(key, data, false);
     }
 
     /**
@@ -71,6 +108,22 @@ public class TransactionFetcher {
      * @throws StoreException thrown if {@code StorePartition} is closed.
      */
     public TransactionData fetch(TransactionKey key, StorePartition storePartition) throws StoreException {
+        return fetch(key, storePartition, false);
+    }
+
+    /**
+     * Returns the transaction data for a specific {@link TransactionKey} from the given {@link StorePartition}.
+     * @param key Transaction data key.
+     * @param storePartition {@link StorePartition} associated with the given partition ID.
+     * @param catchup True if the transaction is far behind the high-water mark.
+     * @return Transaction data for the given key.
+     * @throws StoreException thrown if {@code StorePartition} is closed.
+     */
+    public TransactionData fetch(TransactionKey key, StorePartition storePartition, boolean catchup) throws StoreException {
+        if (sketch != null) {
+            sketch.increment(key.hashCode());
+        }
+
         CompletableFuture<TransactionData> existingFuture = futures.get(key);
 
         if (existingFuture == null) {
@@ -83,7 +136,12 @@ public class TransactionFetcher {
                     // Try to fetch from the cache
                     TransactionData data = cache.get(key);
 
-                    if (data == null) {
+                    if (data != null) {
+                        markHit(catchup);
+
+                    } else {
+                        markMiss(catchup);
+
                         // Try to fetch from the store.
                         Record record = storePartition.getRecord(key.transactionId);
                         if (record == null) {
@@ -96,7 +154,7 @@ public class TransactionFetcher {
                     future.complete(data);
 
                     // Enqueue the transaction data to cache asynchronously. The future will be removed when the caching completes.
-                    if (!task.enqueue(new Item(key, data))) {
+                    if (!task.enqueue(new Item(key, data, catchup))) {
                         futures.remove(key);
                     }
 
@@ -120,14 +178,107 @@ public class TransactionFetcher {
         }
     }
 
+    /**
+     * Returns the transaction data of consecutive transactions starting from the given transaction id.
+     * Transactions not in the cache are read from the {@link StorePartition} in one range read.
+     * The returned list may be shorter than requested if the store has fewer transactions.
+     * @param partitionId The partition id.
+     * @param transactionId The id of the first transaction.
+     * @param maxNumTransactions The maximum number of transactions.
+     * @param storePartition {@link StorePartition} associated with the given partition ID.
+     * @param catchup True if the transactions are far behind the high-water mark.
+     * @return Transaction data of the transactions in the order of transaction ids.
+     * @throws StoreException thrown if {@code StorePartition} is closed.
+     */
+    public ArrayList<TransactionData> fetchList(
+        int partitionId,
+        long transactionId,
+        int maxNumTransactions,
+        StorePartition storePartition,
+        boolean catchup
+    ) throws StoreException {
+        ArrayList<TransactionData> list = new ArrayList<>(maxNumTransactions);
+        long nextTransactionId = transactionId;
+        long endTransactionId = transactionId + maxNumTransactions;
+
+        while (nextTransactionId < endTransactionId) {
+            TransactionKey key = new TransactionKey(partitionId, nextTransactionId);
+            TransactionData data = cache.get(key);
+
+            if (data != null) {
+                if (sketch != null) {
+                    sketch.increment(key.hashCode());
+                }
+                markHit(catchup);
+                list.add(data);
+                nextTransactionId++;
+
+            } else {
+                // Read the rest of the range from the store at once.
+                ArrayList<Record> records = storePartition.getRecordList(nextTransactionId, (int) (endTransactionId - nextTransactionId));
+                if (records.isEmpty()) {
+                    break;
+                }
+
+                for (Record record : records) {
+                    markMiss(catchup);
+                    data = new TransactionData(record.data, record.checksum);
+                    list.add(data);
+
+                    key = new TransactionKey(partitionId, record.transactionId);
+                    if (sketch != null) {
+                        sketch.increment(key.hashCode());
+                    }
+                    cacheAsync(key, data, catchup);
+                    nextTransactionId++;
+                }
+            }
+        }
+
+        if (list.isEmpty()) {
+            throw new TransactionNotFoundException(partitionId, transactionId);
+        }
+
+        return list;
+    }
+
+    private void cacheAsync(TransactionKey key, TransactionData data, boolean catchup) {
+        CompletableFuture<TransactionData> future = CompletableFuture.completedFuture(data);
+
+        if (futures.putIfAbsent(key, future) == null) {
+            // Enqueue the transaction to cache it asynchronously
+            if (!task.enqueue(new Item(key, data, catchup))) {
+                futures.remove(key);
+            }
+        }
+    }
+
+    private void markHit(boolean catchup) {
+        if (catchup) {
+            catchupHitMeter.mark();
+        } else {
+            realtimeHitMeter.mark();
+        }
+    }
+
+    private void markMiss(boolean catchup) {
+        if (catchup) {
+            catchupMissMeter.mark();
+        } else {
+            realtimeMissMeter.mark();
+        }
+    }
+
     private static class Item {
 
         final TransactionKey key;
         final TransactionData data;
+        final boolean catchup;
 
-        Item(TransactionKey key, TransactionData data) {
+        Item(TransactionKey key, TransactionData data, boolean catchup) {
             this.key = key;
             this.data = data;
+            this.catchup = catchup;
         }
 
     }
@@ -140,7 +291,13 @@ public class TransactionFetcher {
 
         @Override
         public void process(Item item) throws Exception {
-            cache.put(item.key, item.data);
+            if (item.catchup && sketch != null) {
+                if (!cache.putIfFrequent(item.key, item.data, sketch, MIN_CATCHUP_FREQUENCY)) {
+                    rejectionMeter.mark();
+                }
+            } else {
+                cache.put(item.key, item.data);
+            }
             futures.remove(item.key);
         }
 
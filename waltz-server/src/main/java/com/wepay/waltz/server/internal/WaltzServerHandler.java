@@ -13,6 +13,7 @@ import com.wepay.waltz.common.message.CheckStorageConnectivityResponse;
 import com.wepay.waltz.common.message.MessageCodecV0;
 import com.wepay.waltz.common.message.MessageCodecV1;
 import com.wepay.waltz.common.message.MessageCodecV2;
+import com.wepay.waltz.common.message.MessageCodecV3;
 import com.wepay.waltz.common.message.MessageType;
 import com.wepay.waltz.common.message.MountRequest;
 import com.wepay.waltz.common.message.RemovePreferredPartitionRequest;
@@ -29,6 +30,7 @@ import com.wepay.zktools.clustermgr.ClusterManager;
 import com.wepay.zktools.clustermgr.ManagedServer;
 import org.slf4j.Logger;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
@@ -47,11 +49,17 @@ public class WaltzServerHandler extends MessageHandler implements PartitionClien
     private static final int QUEUE_LOW_WATER_MARK = 300;
     private static final int QUEUE_HIGH_WATER_MARK = 600;
 
-    private static final HashMap<Short, MessageCodec> CODECS = new HashMap<>();
+    /**
+     * The message codecs supported by the server, keyed by version.
+     */
+    public static final Map<Short, MessageCodec> CODECS;
     static {
-        CODECS.put(MessageCodecV0.VERSION, MessageCodecV0.INSTANCE);
-        CODECS.put(MessageCodecV1.VERSION, MessageCodecV1.INSTANCE);
-        CODECS.put(MessageCodecV2.VERSION, MessageCodecV2.INSTANCE);
+        HashMap<Short, MessageCodec> codecs = new HashMap<>();
+        codecs.put(MessageCodecV0.VERSION, MessageCodecV0.INSTANCE);
+        codecs.put(MessageCodecV1.VERSION, MessageCodecV1.INSTANCE);
+        codecs.put(MessageCodecV2.VERSION, MessageCodecV2.INSTANCE);
+        codecs.put(MessageCodecV3.VERSION, MessageCodecV3.INSTANCE);
+        CODECS = Collections.unmodifiableMap(codecs);
     }
 
     private static final String HELLO_MESSAGE = "Waltz Server";
@@ -71,14 +79,25 @@ public class WaltzServerHandler extends MessageHandler implements PartitionClien
     public WaltzServerHandler(Map<Integer, Partition> partitions, HashSet<Integer> preferredPartitions, Store store,
                               ClusterManager clusterManager,
                               ManagedServer managedServer) {
-        this(partitions, new WaltzServerHandlerCallbacks(partitions), preferredPartitions, store, clusterManager,
-            managedServer);
+        this(CODECS, partitions, preferredPartitions, store, clusterManager, managedServer);
+    }
+
+    /**
+     * Class constructor.
+     * @param codecs the message codecs to negotiate with clients, keyed by version.
+     * @param partitions Partition IDs that are part of the {@link com.wepay.waltz.server.WaltzServer} and their corresponding {@link Partition} object.
+     */
+    public WaltzServerHandler(Map<Short, MessageCodec> codecs, Map<Integer, Partition> partitions,
+                              HashSet<Integer> preferredPartitions, Store store, ClusterManager clusterManager,
+                              ManagedServer managedServer) {
+        this(codecs, partitions, new WaltzServerHandlerCallbacks(partitions), preferredPartitions, store,
+            clusterManager, managedServer);
     }
 
-    private WaltzServerHandler(Map<Integer, Partition> partitions, WaltzServerHandlerCallbacks callbacks,
-                               HashSet<Integer> preferredPartitions, Store store, ClusterManager clusterManager,
-                               ManagedServer managedServer) {
-        super(CODECS, HELLO_MESSAGE, callbacks, QUEUE_LOW_WATER_MARK, QUEUE_HIGH_WATER_MARK);
+    private WaltzServerHandler(Map<Short, MessageCodec> codecs, Map<Integer, Partition> partitions,
+                               WaltzServerHandlerCallbacks callbacks, HashSet<Integer> preferredPartitions, Store store,
+                               ClusterManager clusterManager, ManagedServer managedServer) {
+        super(codecs, HELLO_MESSAGE, callbacks, QUEUE_LOW_WATER_MARK, QUEUE_HIGH_WATER_MARK);
 
         this.partitions = partitions;
         this.preferredPartitions = preferredPartitions;
@@ -78,6 +78,15 @@ public interface StorePartition {
      */
     Record getRecord(long transactionId) throws StoreException;
 
+    /**
+     * Returns {@link Record}s starting from the given transaction Id.
+     * @param transactionId The transaction Id of the first record.
+     * @param maxNumRecords The maximum number of records.
+     * @return list of {@link Record}s.
+     * @throws StoreException thrown if failed to access the store.
+     */
+    ArrayList<Record> getRecordList(long transactionId, int maxNumRecords) throws StoreException;
+
     /**
      * Returns the high-water mark of this store partition.
      * @return the high-water mark.
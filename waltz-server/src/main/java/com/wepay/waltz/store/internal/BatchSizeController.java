@@ -0,0 +1,139 @@
+package com.wepay.waltz.store.internal;
+
+import com.wepay.riff.metrics.core.Gauge;
+import com.wepay.riff.metrics.core.MetricGroup;
+import com.wepay.riff.metrics.core.MetricRegistry;
+
+/**
+ * Decides the size of batches sent to replicas by {@link StoreSessionImpl}.
+ * A batch is capped by both the number of records and the total size of record data.
+ *
+ * <p>When a target latency is set, the record count limit is adjusted after each batch reaches the quorum.
+ * The latency of a batch is the time from sending the batch to reaching the quorum, and the controller keeps its
+ * exponential moving average. The limit grows while batches are full or requests are piling up in the queue,
+ * which favors throughput under load. The limit shrinks when the average latency exceeds the target and there is
+ * no backlog, which favors latency under light load. Without a target latency the limit stays at the maximum.</p>
+ *
+ * <p>The controller belongs to a partition and outlives store sessions, so a new session starts
+ * with the decisions of the previous session.</p>
+ */
+public class BatchSizeController {
+
+    private static final MetricRegistry REGISTRY = MetricRegistry.getInstance();
+
+    private final int maxBatchSize;
+    private final int maxBatchBytes;
+    private final long targetLatencyNanos;
+    private final String metricsGroup;
+
+    private volatile int batchSizeLimit;
+    private volatile long expectedLatencyNanos = -1L;
+    private volatile int lastBatchBytes = 0;
+
+    /**
+     * Class constructor. The batch size limit is static.
+     * @param partitionId The partition Id.
+     * @param maxBatchSize The maximum number of records in a batch.
+     */
+    public BatchSizeController(int partitionId, int maxBatchSize) {
+        this(partitionId, maxBatchSize, Integer.MAX_VALUE, 0L);
+    }
+
+    /**
+     * Class constructor.
+     * @param partitionId The partition Id.
+     * @param maxBatchSize The maximum number of records in a batch.
+     * @param maxBatchBytes The maximum total size of record data in a batch. A single record larger than this is sent alone.
+     * @param targetLatency The target latency of a batch in milliseconds. Zero disables the adjustment.
+     */
+    public BatchSizeController(int partitionId, int maxBatchSize, int maxBatchBytes, long targetLatency) {
+        if (maxBatchSize < 1) {
+            throw new IllegalArgumentException("maxBatchSize must be positive");
+        }
+        if (maxBatchBytes < 1) {
+            throw new IllegalArgumentException("maxBatchBytes must be positive");
+        }
+
+        this.maxBatchSize = maxBatchSize;
+        this.maxBatchBytes = maxBatchBytes;
+        this.targetLatencyNanos = targetLatency * 1000000L;
+        this.batchSizeLimit = maxBatchSize;
+        this.metricsGroup = String.format("%s.partition-%d", MetricGroup.WALTZ_SERVER_METRIC_GROUP, partitionId);
+    }
+
+    /**
+     * Registers metrics of the current decisions.
+     */
+    public void registerMetrics() {
+        REGISTRY.gauge(metricsGroup, "batch-size-limit", (Gauge<Integer>) () -> batchSizeLimit);
+        REGISTRY.gauge(metricsGroup, "batch-latency", (Gauge<Long>) () -> expectedLatency());
+        REGISTRY.gauge(metricsGroup, "batch-bytes", (Gauge<Integer>) () -> lastBatchBytes);
+    }
+
+    /**
+     * Un-registers metrics of the current decisions.
+     */
+    public void unregisterMetrics() {
+        REGISTRY.remove(metricsGroup, "batch-size-limit");
+        REGISTRY.remove(metricsGroup, "batch-latency");
+        REGISTRY.remove(metricsGroup, "batch-bytes");
+    }
+
+    /**
+     * Returns the current limit of the number of records in a batch.
+     * @return the current limit of the number of records in a batch.
+     */
+    public int batchSizeLimit() {
+        return batchSizeLimit;
+    }
+
+    /**
+     * Returns the maximum total size of record data in a batch.
+     * @return the maximum total size of record data in a batch.
+     */
+    public int maxBatchBytes() {
+        return maxBatchBytes;
+    }
+
+    /**
+     * Returns the moving average of the batch latency in milliseconds, or -1 if no batch has completed yet.
+     * @return the moving average of the batch latency in milliseconds.
+     */
+    public long expectedLatency() {
+        long latency = expectedLatencyNanos;
+        return latency < 0 ? -1L : latency / 1000000L;
+    }
+
+    /**
+     * Updates the decision with the result of a batch that reached the quorum.
+     * @param batchSize The number of records in the batch.
+     * @param batchBytes The total size of record data in the batch.
+     * @param latencyNanos The time from sending the batch to reaching the quorum in nanoseconds.
+     * @param queueSize The number of requests waiting in the queue.
+     */
+    public void update(int batchSize, int batchBytes, long latencyNanos, int queueSize) {
+        synchronized (this) {
+            lastBatchBytes = batchBytes;
+
+            long expected = expectedLatencyNanos;
+            expected = expected < 0 ? latencyNanos : expected + (latencyNanos - expected) / 8;
+            expectedLatencyNanos = expected;
+
+            if (targetLatencyNanos > 0) {
+                int limit = batchSizeLimit;
+
+                if (expected > targetLatencyNanos && queueSize <= limit) {
+                    // Too slow without a backlog. Shrink the batch to reduce latency.
+                    limit = Math.max(1, limit - Math.max(1, limit / 4));
+
+                } else if (batchSize >= limit || queueSize > limit) {
+                    // Requests are waiting. Grow the batch to increase throughput.
+                    limit = Math.min(maxBatchSize, limit + Math.max(1, limit / 8));
+                }
+
+                batchSizeLimit = limit;
+            }
+        }
+    }
+
+}
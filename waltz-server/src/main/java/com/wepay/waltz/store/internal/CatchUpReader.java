@@ -0,0 +1,193 @@
+package com.wepay.waltz.store.internal;
+
+import com.wepay.waltz.common.message.Record;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+
+/**
+ * Reads committed records in batches for copying them to a replica which is behind.
+ *
+ * <p>A batch holds at most the maximum number of records and, except for a single large record, at most the maximum
+ * total size of record data. Since the size of records is unknown until they are read, the number of records to read
+ * is estimated from the average record size of the last batch, and a batch larger than the limit is returned in pieces.
+ * When an executor is given, up to the read-ahead number of batches are read while the caller writes the current one.</p>
+ */
+class CatchUpReader {
+
+    /**
+     * Reads a list of records starting from the given transaction id.
+     */
+    interface RecordListReader {
+
+        ArrayList<Record> getRecordList(long transactionId, int maxNumRecords) throws Exception;
+
+    }
+
+    private final RecordListReader reader;
+    private final int batchSize;
+    private final int batchBytes;
+    private final int readAhead;
+    private final Executor executor;
+
+    private final ArrayDeque<PendingRead> pendingReads = new ArrayDeque<>();
+    private long nextTransactionId;
+    private long readTransactionId;
+    private int recordBytes = 0;
+    private ArrayList<Record> batch = null;
+    private int position = 0;
+
+    /**
+     * Class constructor.
+     * @param reader The {@link RecordListReader} of the source.
+     * @param nextTransactionId The first transaction id to read.
+     * @param batchSize The maximum number of records in a batch.
+     * @param batchBytes The maximum total size of record data in a batch.
+     * @param readAhead The number of batches read ahead.
+     * @param executor The executor which reads batches ahead, or null to read batches when they are needed.
+     */
+    CatchUpReader(RecordListReader reader, long nextTransactionId, int batchSize, int batchBytes, int readAhead, Executor executor) {
+        this.reader = reader;
+        this.nextTransactionId = nextTransactionId;
+        this.readTransactionId = nextTransactionId;
+        this.batchSize = batchSize;
+        this.batchBytes = batchBytes;
+        this.readAhead = executor != null ? readAhead : 0;
+        this.executor = executor;
+    }
+
+    /**
+     * Returns the transaction id of the first record of the next batch.
+     * @return the transaction id of the first record of the next batch.
+     */
+    long nextTransactionId() {
+        return nextTransactionId;
+    }
+
+    /**
+     * Returns the next batch of records. The batch may be empty when the source does not have the next record yet.
+     * @param endTransactionId The transaction id where the copy ends (exclusive). It may change between calls.
+     * @return the list of records.
+     * @throws Exception thrown if the read fails.
+     */
+    ArrayList<Record> next(long endTransactionId) throws Exception {
+        if (batch == null || position >= batch.size()) {
+            batch = read(endTransactionId);
+            position = 0;
+        }
+
+        ArrayList<Record> records = new ArrayList<>();
+        int numBytes = 0;
+        boolean discard = false;
+
+        while (position < batch.size()) {
+            Record record = batch.get(position);
+
+            if (record.transactionId >= endTransactionId) {
+                // The end moved back. The rest of the batch and the batches read ahead are not needed.
+                discard = true;
+                break;
+            }
+
+            if (!records.isEmpty() && numBytes + record.data.length > batchBytes) {
+                break;
+            }
+
+            records.add(record);
+            numBytes += record.data.length;
+            position++;
+        }
+
+        nextTransactionId += records.size();
+
+        if (discard) {
+            batch = null;
+            position = 0;
+            pendingReads.clear();
+            readTransactionId = nextTransactionId;
+        }
+
+        return records;
+    }
+
+    private ArrayList<Record> read(long endTransactionId) throws Exception {
+        // Fill the read-ahead window
+        while (pendingReads.size() <= readAhead && readTransactionId < endTransactionId) {
+            int numRecords = (int) Math.min(endTransactionId - readTransactionId, batchSize);
+            if (recordBytes > 0) {
+                numRecords = Math.min(numRecords, Math.max(1, batchBytes / recordBytes));
+            }
+            pendingReads.addLast(new PendingRead(readTransactionId, numRecords));
+            readTransactionId += numRecords;
+        }
+
+        PendingRead pendingRead = pendingReads.pollFirst();
+        if (pendingRead == null) {
+            return new ArrayList<>();
+        }
+
+        ArrayList<Record> records = pendingRead.get();
+
+        if (records.size() < pendingRead.numRecords) {
+            // A short read. The batches read ahead do not follow this batch.
+            pendingReads.clear();
+            readTransactionId = pendingRead.transactionId + records.size();
+        }
+
+        if (!records.isEmpty()) {
+            long totalBytes = 0;
+            for (Record record : records) {
+                totalBytes += record.data.length;
+            }
+            recordBytes = (int) (totalBytes / records.size());
+        }
+
+        return records;
+    }
+
+    private class PendingRead {
+
+        final long transactionId;
+        final int numRecords;
+        final CompletableFuture<ArrayList<Record>> future = new CompletableFuture<>();
+
+        PendingRead(long transactionId, int numRecords) throws Exception {
+            this.transactionId = transactionId;
+            this.numRecords = numRecords;
+
+            if (executor != null) {
+                executor.execute(() -> {
+                    try {
+                        future.complete(reader.getRecordList(transactionId, numRecords));
+                    } catch (Throwable ex) {
+                        future.completeExceptionally(ex);
+                    }
+                });
+            } else {
+                future.complete(reader.getRecordList(transactionId, numRecords));
+            }
+        }
+
+        ArrayList<Record> get() throws Exception {
+            while (true) {
+                try {
+                    return future.get();
+
+                } catch (InterruptedException ex) {
+                    Thread.interrupted();
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    }
+                    throw ex;
+                }
+            }
+        }
+
+    }
+
+}
@@ -18,6 +18,11 @@ public class ConnectionConfig {
     public final int numPartitions;
     public final long initialRetryInterval;
     public final long maxRetryInterval;
+    public final int catchUpBatchSize;
+    public final int catchUpBatchBytes;
+    public final int catchUpReadAhead;
+    public final boolean recoveryHandOff;
+    public final boolean asyncWrites;
 
     /**
      * Class constructor.
@@ -33,7 +38,12 @@ public class ConnectionConfig {
             key,
             numPartitions,
             (long) waltzServerConfig.get(WaltzServerConfig.INITIAL_RETRY_INTERVAL),
-            (long) waltzServerConfig.get(WaltzServerConfig.MAX_RETRY_INTERVAL)
+            (long) waltzServerConfig.get(WaltzServerConfig.MAX_RETRY_INTERVAL),
+            (int) waltzServerConfig.get(WaltzServerConfig.CATCH_UP_BATCH_SIZE),
+            (int) waltzServerConfig.get(WaltzServerConfig.CATCH_UP_BATCH_BYTES),
+            (int) waltzServerConfig.get(WaltzServerConfig.CATCH_UP_READ_AHEAD),
+            (boolean) waltzServerConfig.get(WaltzServerConfig.RECOVERY_HAND_OFF),
+            (boolean) waltzServerConfig.get(WaltzServerConfig.ASYNC_REPLICA_WRITES)
         );
     }
 
@@ -54,10 +64,104 @@ public class ConnectionConfig {
         final long initialRetryInterval,
         final long maxRetryInterval
     ) throws GeneralSecurityException, IOException {
+        this(
+            sslCtx,
+            key,
+            numPartitions,
+            initialRetryInterval,
+            maxRetryInterval,
+            WaltzServerConfig.DEFAULT_CATCH_UP_BATCH_SIZE,
+            WaltzServerConfig.DEFAULT_CATCH_UP_BATCH_BYTES,
+            WaltzServerConfig.DEFAULT_CATCH_UP_READ_AHEAD,
+            WaltzServerConfig.DEFAULT_RECOVERY_HAND_OFF
+        );
+    }
+
+    /**
+     * Class constructor.
+     * @param sslCtx SSLContext for communication.
+     * @param key The cluster key.
+     * @param numPartitions The total number of partitions in the cluster.
+     * @param initialRetryInterval The initial retry interval.
+     * @param maxRetryInterval The maximum retry interval.
+     * @param catchUpBatchSize The maximum number of records in a batch copied to a lagging replica.
+     * @param catchUpBatchBytes The maximum total size of record data in a batch copied to a lagging replica.
+     * @param catchUpReadAhead The number of batches read ahead while a batch is written to a lagging replica.
+     * @param recoveryHandOff If true, replicas which are not needed for the quorum finish the recovery by the catch-up.
+     * @throws GeneralSecurityException thrown if failed to create {@link javax.net.ssl.SSLContext}.
+     * @throws IOException thrown if any issue occurs.
+     */
+    public ConnectionConfig(
+        SslContext sslCtx,
+        UUID key,
+        int numPartitions,
+        final long initialRetryInterval,
+        final long maxRetryInterval,
+        final int catchUpBatchSize,
+        final int catchUpBatchBytes,
+        final int catchUpReadAhead,
+        final boolean recoveryHandOff
+    ) throws GeneralSecurityException, IOException {
+        this(
+            sslCtx,
+            key,
+            numPartitions,
+            initialRetryInterval,
+            maxRetryInterval,
+            catchUpBatchSize,
+            catchUpBatchBytes,
+            catchUpReadAhead,
+            recoveryHandOff,
+            WaltzServerConfig.DEFAULT_ASYNC_REPLICA_WRITES
+        );
+    }
+
+    /**
+     * Class constructor.
+     * @param sslCtx SSLContext for communication.
+     * @param key The cluster key.
+     * @param numPartitions The total number of partitions in the cluster.
+     * @param initialRetryInterval The initial retry interval.
+     * @param maxRetryInterval The maximum retry interval.
+     * @param catchUpBatchSize The maximum number of records in a batch copied to a lagging replica.
+     * @param catchUpBatchBytes The maximum total size of record data in a batch copied to a lagging replica.
+     * @param catchUpReadAhead The number of batches read ahead while a batch is written to a lagging replica.
+     * @param recoveryHandOff If true, replicas which are not needed for the quorum finish the recovery by the catch-up.
+     * @param asyncWrites If true, replica sessions write asynchronously and are driven by write completions.
+     * @throws GeneralSecurityException thrown if failed to create {@link javax.net.ssl.SSLContext}.
+     * @throws IOException thrown if any issue occurs.
+     */
+    public ConnectionConfig(
+        SslContext sslCtx,
+        UUID key,
+        int numPartitions,
+        final long initialRetryInterval,
+        final long maxRetryInterval,
+        final int catchUpBatchSize,
+        final int catchUpBatchBytes,
+        final int catchUpReadAhead,
+        final boolean recoveryHandOff,
+        final boolean asyncWrites
+    ) throws GeneralSecurityException, IOException {
+        if (catchUpBatchSize < 1) {
+            throw new IllegalArgumentException("catchUpBatchSize must be positive");
+        }
+        if (catchUpBatchBytes < 1) {
+            throw new IllegalArgumentException("catchUpBatchBytes must be positive");
+        }
+        if (catchUpReadAhead < 0) {
+            throw new IllegalArgumentException("catchUpReadAhead must not be negative");
+        }
+
         this.sslCtx = sslCtx != null ? sslCtx : ClientSSL.createInsecureContext();
         this.key = key;
         this.numPartitions = numPartitions;
         this.initialRetryInterval = initialRetryInterval;
         this.maxRetryInterval = maxRetryInterval;
+        this.catchUpBatchSize = catchUpBatchSize;
+        this.catchUpBatchBytes = catchUpBatchBytes;
+        this.catchUpReadAhead = catchUpReadAhead;
+        this.recoveryHandOff = recoveryHandOff;
+        this.asyncWrites = asyncWrites;
     }
 }
@@ -26,7 +26,8 @@ public interface RecoveryManager {
      * Starts recovery for the given replica.
      * @param replicaId The replica Id.
      * @param connection The {@link ReplicaConnection}.
-     * @return the high-water mark.
+     * @return the high-water mark of the replica after the recovery. It may be lower than the resolved high-water mark
+     *         when the rest of the records are left to the catch-up of the replica session.
      * @throws RecoveryFailedException thrown if the recovery failed.
      */
     long start(ReplicaId replicaId, ReplicaConnection connection) throws RecoveryFailedException;
@@ -2,8 +2,9 @@ package com.wepay.waltz.store.internal;
 
 import com.wepay.riff.util.Logging;
 import com.wepay.waltz.common.message.Record;
+import com.wepay.waltz.common.util.DaemonThreadFactory;
+import com.wepay.waltz.server.WaltzServerConfig;
 import com.wepay.waltz.storage.common.SessionInfo;
-import com.wepay.waltz.storage.exception.StorageRpcException;
 import com.wepay.waltz.store.exception.RecoveryAbortedException;
 import com.wepay.waltz.store.exception.RecoveryFailedException;
 import com.wepay.waltz.common.metadata.PartitionMetadata;
@@ -22,6 +23,9 @@ import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
@@ -31,13 +35,17 @@ public class RecoveryManagerImpl implements RecoveryManager {
 
     private static final Logger logger = Logging.getLogger(RecoveryManagerImpl.class);
 
-    private static final int MAX_BATCH_SIZE = 20;
     private static final Comparator<ReplicaRecoveryState> HIGH_WATER_MARK_DESC = (o1, o2) -> Long.compare(o2.highWaterMark, o1.highWaterMark);
 
     private final int generation;
     private final long sessionId;
 
     private final int quorum;
+    private final int batchSize;
+    private final int batchBytes;
+    private final int readAhead;
+    private final boolean handOff;
+    private final ThreadPoolExecutor readAheadExecutor;
     private final HashMap<ReplicaId, ReplicaRecoveryState> replicaRecoveryStates = new HashMap<>();
     private final ArrayList<ReplicaSession> replicaSessions = new ArrayList<>();
 
@@ -51,6 +59,7 @@ public class RecoveryManagerImpl implements RecoveryManager {
 
     private final Set<ReplicaId> recoveredReplicas = Collections.synchronizedSet(new HashSet<>());
     private final Set<ReplicaId> cleanReplicas = Collections.synchronizedSet(new HashSet<>());
+    private final Set<ReplicaId> caughtUpReplicas = Collections.synchronizedSet(new HashSet<>());
     private PartitionMetadata partitionMetadata;
     private int partitionMetadataVersion;
 
@@ -65,11 +74,47 @@ public class RecoveryManagerImpl implements RecoveryManager {
      * @param znode Path to the znode.
      */
     public RecoveryManagerImpl(int generation, long sessionId, int quorum, ZooKeeperClient zkClient, ZNode znode) {
+        this(generation, sessionId, quorum, null, zkClient, znode);
+    }
+
+    /**
+     * Class constructor.
+     * @param generation The generation number.
+     * @param sessionId The session Id.
+     * @param quorum The Quorum required.
+     * @param config The replica connection config which decides how records are copied to replicas which are behind,
+     *               or null to use the default settings.
+     * @param zkClient The ZooKeeperClient used for the Waltz Cluster.
+     * @param znode Path to the znode.
+     */
+    public RecoveryManagerImpl(int generation, long sessionId, int quorum, ConnectionConfig config, ZooKeeperClient zkClient, ZNode znode) {
         this.generation = generation;
         this.sessionId = sessionId;
         this.quorum = quorum;
         this.zkClient = zkClient;
         this.znode = znode;
+
+        if (config != null) {
+            this.batchSize = config.catchUpBatchSize;
+            this.batchBytes = config.catchUpBatchBytes;
+            this.readAhead = config.catchUpReadAhead;
+            this.handOff = config.recoveryHandOff;
+        } else {
+            this.batchSize = WaltzServerConfig.DEFAULT_CATCH_UP_BATCH_SIZE;
+            this.batchBytes = WaltzServerConfig.DEFAULT_CATCH_UP_BATCH_BYTES;
+            this.readAhead = WaltzServerConfig.DEFAULT_CATCH_UP_READ_AHEAD;
+            this.handOff = WaltzServerConfig.DEFAULT_RECOVERY_HAND_OFF;
+        }
+
+        // Replicas recover in parallel, each reading batches ahead from its usher.
+        // The executor is shut down when all replicas have ended the recovery or the recovery is aborted.
+        if (this.readAhead > 0) {
+            this.readAheadExecutor = new ThreadPoolExecutor(
+                0, Integer.MAX_VALUE, 60L, TimeUnit.SECONDS, new SynchronousQueue<>(), DaemonThreadFactory.INSTANCE
+            );
+        } else {
+            this.readAheadExecutor = null;
+        }
     }
 
     @Override
@@ -110,6 +155,8 @@ public class RecoveryManagerImpl implements RecoveryManager {
             synchronized (lock) {
                 lock.notifyAll();
             }
+
+            shutdownReadAhead();
         }
     }
 
@@ -198,9 +245,7 @@ public class RecoveryManagerImpl implements RecoveryManager {
                 }
             }
 
-            resolve(replicaState.replicaId, connection, voting, maxTransactionId);
-
-            return resolvedHighWaterMark.get();
+            return resolve(replicaState.replicaId, connection, voting, maxTransactionId);
 
         } catch (Throwable ex) {
             throw fail(ex);
@@ -216,6 +261,13 @@ public class RecoveryManagerImpl implements RecoveryManager {
         recoveredReplicas.add(replicaId);
         cleanReplicas.add(replicaId);
 
+        synchronized (lock) {
+            if (recoveredReplicas.size() >= replicaSessions.size()) {
+                // No replica is catching up with an usher anymore
+                shutdownReadAhead();
+            }
+        }
+
         if (recoveredReplicas.size() >= quorum) {
             // Update metadata in ZK
             updateReplicaStates();
@@ -227,7 +279,9 @@ public class RecoveryManagerImpl implements RecoveryManager {
         logger.debug("recovery complete : {}", replicaId);
     }
 
-    private void resolve(ReplicaId replicaId, ReplicaConnection connection, boolean voting, long highWaterMark) throws RecoveryFailedException {
+    // Returns the high-water mark of the replica after the recovery. It is the resolved high-water mark
+    // unless the replica is handed off to the catch-up of the replica session.
+    private long resolve(ReplicaId replicaId, ReplicaConnection connection, boolean voting, long highWaterMark) throws RecoveryFailedException {
         Set<ReplicaId> lastReplicaIds;
         int lastQuorum;
 
@@ -275,6 +329,14 @@ public class RecoveryManagerImpl implements RecoveryManager {
 
                     if (replicaRecoveryState.highWaterMark >= resolvedHighWaterMark.get()) {
                         // The replica has fully caught up.
+                        caughtUpReplicas.add(replicaId);
+                        break;
+                    }
+
+                    if (isHandOffReady()) {
+                        // A quorum of replicas has fully caught up, and the store session may be writable already.
+                        // The replica session catches up the rest of the records.
+                        logger.debug("handing off to catch-up : {}", replicaId);
                         break;
                     }
                 }
@@ -367,6 +429,8 @@ public class RecoveryManagerImpl implements RecoveryManager {
 
             logger.debug("resolved : {}", replicaId);
 
+            return Math.min(replicaRecoveryState.highWaterMark, resolvedHighWaterMark.get());
+
         } catch (Throwable ex) {
             throw fail(ex);
         }
@@ -374,19 +438,23 @@ public class RecoveryManagerImpl implements RecoveryManager {
 
     /**
      * Replica follows the usher to catch up, and return its high-water mark after complete.
+     * Records are read from the usher in batches, and batches are read ahead while the replica writes the current one.
      * @param replicaRecoveryState replica recovery state
      * @param usher the usher to catch up with
      * @param connection replica connection
      * @return currentHighWaterMark
-     * @throws StorageRpcException
+     * @throws Exception thrown if the read or the write fails.
      */
-    private long catchUpWithUsher(ReplicaRecoveryState replicaRecoveryState, ReplicaRecoveryState usher, ReplicaConnection connection) throws StorageRpcException {
+    private long catchUpWithUsher(ReplicaRecoveryState replicaRecoveryState, ReplicaRecoveryState usher, ReplicaConnection connection) throws Exception {
         long currentHighWaterMark = replicaRecoveryState.highWaterMark;
         long targetHighWaterMark = resolvedHighWaterMark.get() != null ? resolvedHighWaterMark.get() : usher.highWaterMark;
 
-        while (currentHighWaterMark < targetHighWaterMark) {
-            int batchSize = (int) Math.min((targetHighWaterMark - currentHighWaterMark), (long) MAX_BATCH_SIZE);
-            ArrayList<Record> records = usher.connection.getRecordList(currentHighWaterMark + 1, batchSize);
+        CatchUpReader catchUpReader = new CatchUpReader(
+            usher.connection::getRecordList, currentHighWaterMark + 1, batchSize, batchBytes, readAhead, readAheadExecutor
+        );
+
+        while (currentHighWaterMark < targetHighWaterMark && !isHandOffReady()) {
+            ArrayList<Record> records = catchUpReader.next(targetHighWaterMark + 1);
             connection.appendRecords(records);
             currentHighWaterMark += records.size();
             targetHighWaterMark = resolvedHighWaterMark.get() != null ? resolvedHighWaterMark.get() : targetHighWaterMark;
@@ -395,6 +463,16 @@ public class RecoveryManagerImpl implements RecoveryManager {
         return currentHighWaterMark;
     }
 
+    private void shutdownReadAhead() {
+        if (readAheadExecutor != null) {
+            readAheadExecutor.shutdown();
+        }
+    }
+
+    private boolean isHandOffReady() {
+        return handOff && caughtUpReplicas.size() >= quorum;
+    }
+
     @Override
     public long highWaterMark() throws RecoveryFailedException {
         awaitCompletion();
@@ -7,6 +7,7 @@ import com.wepay.waltz.storage.exception.StorageRpcException;
 
 import java.io.Closeable;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * This class handles replica's connection.
@@ -89,6 +90,14 @@ public interface ReplicaConnection extends Closeable {
      */
     void appendRecords(ArrayList<Record> records) throws StorageRpcException;
 
+    /**
+     * Appends the given list of {@link Record}s without waiting for the response.
+     * @param records List of {@code Record}s.
+     * @return a completable future which is completed when the storage acknowledges the write,
+     *         or completed exceptionally if Storage connection fails.
+     */
+    CompletableFuture<Void> appendRecordsAsync(ArrayList<Record> records);
+
     /**
      * Closes the Replica connection.
      */
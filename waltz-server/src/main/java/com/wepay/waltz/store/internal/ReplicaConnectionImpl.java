@@ -128,6 +128,15 @@ public class ReplicaConnectionImpl implements ReplicaConnection {
         get(client.appendRecords(sessionId, partitionId, records));
     }
 
+    /**
+     * Appends the given list of {@link Record}s without waiting for the response.
+     * @param records List of {@code Record}s.
+     * @return a completable future which is completed when the storage acknowledges the write.
+     */
+    public CompletableFuture<Void> appendRecordsAsync(ArrayList<Record> records) {
+        return client.appendRecords(sessionId, partitionId, records).thenApply(response -> null);
+    }
+
     /**
      * Closes the Replica connection.
      */
@@ -1,10 +1,14 @@
 package com.wepay.waltz.store.internal;
 
+import com.wepay.riff.metrics.core.Meter;
+import com.wepay.riff.metrics.core.MetricGroup;
+import com.wepay.riff.metrics.core.MetricRegistry;
 import com.wepay.riff.util.Logging;
 import com.wepay.riff.util.RepeatingTask;
 import com.wepay.waltz.common.message.Record;
 import com.wepay.waltz.common.message.RecordHeader;
 import com.wepay.waltz.common.util.BackoffTimer;
+import com.wepay.waltz.common.util.DaemonThreadFactory;
 import com.wepay.waltz.store.exception.RecoveryAbortedException;
 import com.wepay.waltz.store.exception.RecoveryFailedException;
 import com.wepay.waltz.store.exception.ReplicaConnectionException;
@@ -16,9 +20,15 @@ import com.wepay.zktools.util.Uninterruptibly;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import org.slf4j.Logger;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class implements the replica session.
@@ -26,7 +36,7 @@ import java.util.concurrent.ExecutionException;
 public class ReplicaSession extends LatencyWeightedRoute {
 
     private static final Logger logger = Logging.getLogger(ReplicaSession.class);
-    private static final int CATCH_UP_BATCH_SIZE = 20;
+    private static final MetricRegistry REGISTRY = MetricRegistry.getInstance();
 
     public final ReplicaId replicaId;
 
@@ -36,17 +46,27 @@ public class ReplicaSession extends LatencyWeightedRoute {
     private final BackoffTimer backoffTimer;
     private final ReplicaConnectionFactory connectionFactory;
     private final RepeatingTask task;
+    private final ThreadPoolExecutor catchUpExecutor;
+    private final ThreadPoolExecutor asyncExecutor;
+    private final Meter catchUpRecordsMeter;
+    private final Meter catchUpBytesMeter;
 
     final ReplicaReader reader;
     final ReplicaWriter writer;
 
-    private long currentAppendRequestTransactionId = -1L;
-    private Iterable<StoreAppendRequest> currentAppendRequestList = null;
-    private Voting currentVoting = null;
+    private final ArrayDeque<PendingAppend> pendingAppends = new ArrayDeque<>();
 
     private volatile RecoveryManager recoveryManager;
     private volatile StoreSession storeSession;
 
+    // States of the asynchronous mode. There is no replica session task. A recovery and catch-ups run in the async
+    // executor, and append requests are written by the thread which queues them or completes the previous write.
+    private volatile boolean running = false;
+    private boolean busy = false;
+    private boolean writing = false;
+    private boolean draining = false;
+    private boolean drainAgain = false;
+
     /**
      * Class constructor.
      * @param replicaId The replica Id.
@@ -64,6 +84,29 @@ public class ReplicaSession extends LatencyWeightedRoute {
         this.task = new ReplicaSessionTask();
         this.reader = new ReplicaReader(connectionFuture);
         this.writer = new ReplicaWriter(connectionFuture);
+
+        // Batches read ahead during a catch-up are fetched from other replicas by the catch-up executor (if any)
+        if (config.catchUpReadAhead > 0) {
+            this.catchUpExecutor = new ThreadPoolExecutor(
+                config.catchUpReadAhead, config.catchUpReadAhead, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), DaemonThreadFactory.INSTANCE
+            );
+            this.catchUpExecutor.allowCoreThreadTimeOut(true);
+        } else {
+            this.catchUpExecutor = null;
+        }
+
+        // In the asynchronous mode, a thread is used only while the replica recovers or catches up
+        if (config.asyncWrites) {
+            this.asyncExecutor = new ThreadPoolExecutor(
+                0, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), DaemonThreadFactory.INSTANCE
+            );
+        } else {
+            this.asyncExecutor = null;
+        }
+
+        String metricsGroup = String.format("%s.partition-%d", MetricGroup.WALTZ_SERVER_METRIC_GROUP, replicaId.partitionId);
+        this.catchUpRecordsMeter = REGISTRY.meter(metricsGroup, "replica-catch-up-records");
+        this.catchUpBytesMeter = REGISTRY.meter(metricsGroup, "replica-catch-up-bytes");
     }
 
     /**
@@ -76,7 +119,16 @@ public class ReplicaSession extends LatencyWeightedRoute {
             this.recoveryManager = recoveryManager;
             this.storeSession = storeSession;
         }
-        this.task.start();
+
+        if (asyncExecutor != null) {
+            synchronized (this) {
+                running = true;
+                busy = true;
+            }
+            executeAsync(this::initialize);
+        } else {
+            this.task.start();
+        }
     }
 
     /**
@@ -96,25 +148,35 @@ public class ReplicaSession extends LatencyWeightedRoute {
 
             backoffTimer.close();
 
+            if (catchUpExecutor != null) {
+                catchUpExecutor.shutdown();
+            }
+
+            if (asyncExecutor != null) {
+                asyncExecutor.shutdown();
+            }
+
         } catch (Throwable ex) {
             logger.warn("exception when closing session", ex);
         }
 
         synchronized (this) {
             try {
-                task.stop();
+                if (asyncExecutor != null) {
+                    running = false;
+                } else {
+                    task.stop();
+                }
 
                 if (recoveryManager != null) {
                     recoveryManager.abort(new RecoveryFailedException("replica session closed: sessionId=" + sessionId));
                     recoveryManager = null;
                 }
 
-                if (currentVoting != null) {
-                    currentVoting.abstain();
-
-                    currentAppendRequestList = null;
-                    currentVoting = null;
+                for (PendingAppend pendingAppend : pendingAppends) {
+                    pendingAppend.voting.abstain();
                 }
+                pendingAppends.clear();
             } finally {
                 notifyAll();
             }
@@ -131,28 +193,41 @@ public class ReplicaSession extends LatencyWeightedRoute {
 
     @Override
     public boolean isClosed() {
-        return !task.isRunning();
+        return !isRunning();
     }
 
     /**
-     * Appends the request.
+     * Appends the request. Requests are queued and written in transaction id order, so the store session may have
+     * more than one batch in flight. A queued batch which has already reached the quorum without this replica is
+     * discarded, and the replica catches up from the other replicas instead.
      * @param transactionId The transaction Id.
      * @param requests The {@link StoreAppendRequest}s.
      * @param voting The {@link Voting}.
      */
     public void append(final long transactionId, final Iterable<StoreAppendRequest> requests, final Voting voting) {
         synchronized (this) {
-            if (task.isRunning()) {
-                if (currentVoting != null) {
-                    currentVoting.abstain();
+            if (isRunning()) {
+                Iterator<PendingAppend> iterator = pendingAppends.iterator();
+                while (iterator.hasNext()) {
+                    PendingAppend pendingAppend = iterator.next();
+                    if (pendingAppend.transactionId >= transactionId) {
+                        // Superseded by the new request (e.g. resent after a session change)
+                        pendingAppend.voting.abstain();
+                        iterator.remove();
+                    } else if (pendingAppend.voting.hasQuorum()) {
+                        // Committed without this replica. We are falling behind.
+                        iterator.remove();
+                    }
                 }
-                currentAppendRequestTransactionId = transactionId;
-                currentAppendRequestList = requests;
-                currentVoting = voting;
+                pendingAppends.addLast(new PendingAppend(transactionId, requests, voting));
             } else {
                 voting.abstain();
             }
             notifyAll();
+
+            if (asyncExecutor != null) {
+                drain();
+            }
         }
     }
 
@@ -177,7 +252,7 @@ public class ReplicaSession extends LatencyWeightedRoute {
      * @throws ReplicaSessionException thrown if it fails to get the record.
      */
     public Record getRecord(long transactionId) throws ReplicaSessionException {
-        if (task.isRunning()) {
+        if (isRunning()) {
             if (transactionId < writer.nextTransactionId()) {
                 return reader.getRecord(transactionId);
             } else {
@@ -196,7 +271,7 @@ public class ReplicaSession extends LatencyWeightedRoute {
      * @throws ReplicaSessionException thrown if it fails to get the records.
      */
     public ArrayList<Record> getRecordList(long transactionId, int maxNumRecords) throws ReplicaSessionException {
-        if (task.isRunning()) {
+        if (isRunning()) {
             long numRecords = writer.nextTransactionId() - transactionId;
             if (numRecords > 0) {
                 int batchSize = numRecords < maxNumRecords ? (int) numRecords : maxNumRecords;
@@ -217,7 +292,7 @@ public class ReplicaSession extends LatencyWeightedRoute {
      * @throws ReplicaSessionException thrown if it fails to get the record header.
      */
     public RecordHeader getRecordHeader(long transactionId) throws ReplicaSessionException {
-        if (task.isRunning()) {
+        if (isRunning()) {
             long nextTransactionId = writer.nextTransactionId();
             if (transactionId < nextTransactionId) {
                 return reader.getRecordHeader(transactionId);
@@ -238,7 +313,7 @@ public class ReplicaSession extends LatencyWeightedRoute {
      * @throws ReplicaSessionException thrown if it fails to get the record headers.
      */
     public ArrayList<RecordHeader> getRecordHeaderList(long transactionId, int maxNumRecords) throws ReplicaSessionException {
-        if (task.isRunning()) {
+        if (isRunning()) {
             long numRecords = writer.nextTransactionId() - transactionId;
             if (numRecords > 0) {
                 int batchSize = numRecords < maxNumRecords ? (int) numRecords : maxNumRecords;
@@ -333,28 +408,31 @@ public class ReplicaSession extends LatencyWeightedRoute {
 
     @SuppressFBWarnings(value = "WA_NOT_IN_LOOP", justification = "the next call decides what to do")
     private boolean tryExecuteCurrentAppendRequests(long nextTransactionId) throws Exception {
-        long requestTransactionId;
-        Iterable<StoreAppendRequest> requests;
-        Voting voting;
+        PendingAppend pendingAppend;
 
         synchronized (this) {
-            requestTransactionId = currentAppendRequestTransactionId;
+            // Discard requests we have already written
+            while (!pendingAppends.isEmpty() && pendingAppends.peekFirst().transactionId < nextTransactionId) {
+                Voting voting = pendingAppends.pollFirst().voting;
+                if (!voting.hasQuorum()) {
+                    voting.abstain();
+                }
+            }
 
-            if (nextTransactionId == requestTransactionId) {
-                // We caught up and have append requests to execute.
-                // Append the transactions after exiting this sync block.
-                requests = currentAppendRequestList;
-                voting = currentVoting;
-                currentAppendRequestList = null;
-                currentVoting = null;
+            pendingAppend = pendingAppends.peekFirst();
 
-            } else if (nextTransactionId > requestTransactionId) {
+            if (pendingAppend == null) {
                 // We caught up and have nothing to execute, just wait for new requests
                 if (task.isRunning()) {
                     wait();
                 }
                 return true;
 
+            } else if (nextTransactionId == pendingAppend.transactionId) {
+                // We caught up and have append requests to execute.
+                // Append the transactions after exiting this sync block.
+                pendingAppends.pollFirst();
+
             } else {
                 // We are falling behind. Failed to process the current requests
                 return false;
@@ -363,12 +441,12 @@ public class ReplicaSession extends LatencyWeightedRoute {
 
         // Append the transactions
         try {
-            writer.append(requestTransactionId, requests);
-            voting.vote();
+            writer.append(pendingAppend.transactionId, pendingAppend.requests);
+            pendingAppend.voting.vote();
 
         } catch (ReplicaWriterException ex) {
             // Write failed. We don't know if the transaction is written to the storage.
-            voting.abstain();
+            pendingAppend.voting.abstain();
             throw ex;
         }
         // We successfully executed the current append requests.
@@ -376,25 +454,156 @@ public class ReplicaSession extends LatencyWeightedRoute {
     }
 
     private void catchUp(long nextTransactionId) throws Exception {
-        long numRecords;
+        long endTransactionId;
 
         synchronized (this) {
-            numRecords = currentAppendRequestTransactionId - nextTransactionId;
+            endTransactionId = nextTransactionId + numRecordsBehind(nextTransactionId);
         }
 
-        while (numRecords > 0 && task.isRunning()) {
+        CatchUpReader catchUpReader = new CatchUpReader(
+            storeSession::getRecordList,
+            nextTransactionId,
+            config.catchUpBatchSize,
+            config.catchUpBatchBytes,
+            config.catchUpReadAhead,
+            catchUpExecutor
+        );
+
+        while (catchUpReader.nextTransactionId() < endTransactionId && isRunning()) {
             // Get a batch of committed transactions
-            int batchSize = numRecords < CATCH_UP_BATCH_SIZE ? (int) numRecords : CATCH_UP_BATCH_SIZE;
-            ArrayList<Record> batch = storeSession.getRecordList(nextTransactionId, batchSize);
-            // Write the batch
-            writer.append(batch);
-            nextTransactionId += batch.size();
+            ArrayList<Record> batch = catchUpReader.next(endTransactionId);
+            if (!batch.isEmpty()) {
+                // Write the batch
+                writer.append(batch);
+
+                long numBytes = 0;
+                for (Record record : batch) {
+                    numBytes += record.data.length;
+                }
+                catchUpRecordsMeter.mark(batch.size());
+                catchUpBytesMeter.mark(numBytes);
+            }
+
             synchronized (this) {
-                numRecords = currentAppendRequestTransactionId - nextTransactionId;
+                endTransactionId = catchUpReader.nextTransactionId() + numRecordsBehind(catchUpReader.nextTransactionId());
             }
         }
     }
 
+    private boolean isRunning() {
+        return asyncExecutor != null ? running : task.isRunning();
+    }
+
+    // Writes pending append requests in the asynchronous mode. A write completion calls this again for the next requests.
+    // When the replica is falling behind, a catch-up is started in the async executor.
+    private void drain() {
+        synchronized (this) {
+            if (draining) {
+                // Called back by a write completed in this thread. The outer call continues.
+                drainAgain = true;
+                return;
+            }
+
+            draining = true;
+            try {
+                do {
+                    drainAgain = false;
+
+                    if (!running || busy || writing) {
+                        return;
+                    }
+
+                    long nextTransactionId = writer.nextTransactionId();
+
+                    // Discard requests we have already written
+                    while (!pendingAppends.isEmpty() && pendingAppends.peekFirst().transactionId < nextTransactionId) {
+                        Voting voting = pendingAppends.pollFirst().voting;
+                        if (!voting.hasQuorum()) {
+                            voting.abstain();
+                        }
+                    }
+
+                    PendingAppend pendingAppend = pendingAppends.peekFirst();
+
+                    if (pendingAppend == null) {
+                        // We caught up and have nothing to write
+                        return;
+
+                    } else if (nextTransactionId == pendingAppend.transactionId) {
+                        pendingAppends.pollFirst();
+                        writing = true;
+                        writer.appendAsync(pendingAppend.transactionId, pendingAppend.requests)
+                            .whenComplete((response, exception) -> appendCompleted(pendingAppend, exception));
+
+                    } else {
+                        // We are falling behind
+                        busy = true;
+                        executeAsync(() -> catchUp(nextTransactionId));
+                    }
+                } while (drainAgain);
+
+            } catch (ReplicaWriterException ex) {
+                logger.warn("closing a replica session", ex);
+                close();
+
+            } finally {
+                draining = false;
+            }
+        }
+    }
+
+    private void appendCompleted(PendingAppend pendingAppend, Throwable exception) {
+        if (exception == null) {
+            pendingAppend.voting.vote();
+        } else {
+            // Write failed. We don't know if the transaction is written to the storage.
+            pendingAppend.voting.abstain();
+        }
+
+        synchronized (this) {
+            writing = false;
+        }
+
+        if (exception == null) {
+            drain();
+        } else {
+            logger.warn("closing a replica session: write failed", exception);
+            close();
+        }
+    }
+
+    // Runs a recovery or a catch-up in the async executor, and resumes writes when it is done
+    private void executeAsync(AsyncJob job) {
+        try {
+            asyncExecutor.execute(() -> {
+                try {
+                    job.run();
+
+                    synchronized (this) {
+                        busy = false;
+                    }
+                    drain();
+
+                } catch (Throwable ex) {
+                    if (ex instanceof RecoveryAbortedException) {
+                        logger.warn("closing a replica session: aborted");
+                    } else {
+                        logger.warn("closing a replica session", ex);
+                    }
+                    close();
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            // The replica session is closed
+        }
+    }
+
+    // Returns the number of records between the given transaction id and the oldest pending append request
+    private long numRecordsBehind(long nextTransactionId) {
+        PendingAppend pendingAppend = pendingAppends.peekFirst();
+        return pendingAppend != null ? pendingAppend.transactionId - nextTransactionId : 0L;
+    }
+
     private class ReplicaSessionTask extends RepeatingTask {
 
         ReplicaSessionTask() {
@@ -429,4 +638,24 @@ public class ReplicaSession extends LatencyWeightedRoute {
         }
     }
 
+    private interface AsyncJob {
+
+        void run() throws Exception;
+
+    }
+
+    private static class PendingAppend {
+
+        final long transactionId;
+        final Iterable<StoreAppendRequest> requests;
+        final Voting voting;
+
+        PendingAppend(long transactionId, Iterable<StoreAppendRequest> requests, Voting voting) {
+            this.transactionId = transactionId;
+            this.requests = requests;
+            this.voting = voting;
+        }
+
+    }
+
 }
@@ -17,6 +17,7 @@ public class ReplicaWriter {
 
     private long nextTransactionId = -1L;
     private boolean running = true;
+    private boolean writing = false;
 
     /**
      * Class constructor.
@@ -48,7 +49,7 @@ public class ReplicaWriter {
                 throw new ReplicaWriterException("closed");
             }
 
-            if (nextTransactionId != transactionId) {
+            if (nextTransactionId != transactionId || writing) {
                 running = false;
                 throw new ReplicaWriterException("transaction out of order");
             }
@@ -85,6 +86,10 @@ public class ReplicaWriter {
                 throw new ReplicaWriterException("closed");
             }
 
+            if (writing) {
+                throw new ReplicaWriterException("transaction out of order");
+            }
+
             // Check transaction ids
             long txid = nextTransactionId;
             for (Record record : records) {
@@ -106,6 +111,68 @@ public class ReplicaWriter {
         }
     }
 
+    /**
+     * Appends the given {@link StoreAppendRequest}s without waiting for the storage. Only one asynchronous write may be
+     * in flight at a time. The next transaction Id advances when the write completes.
+     * @param transactionId The transaction Id.
+     * @param requests The {@link StoreAppendRequest}s.
+     * @return a completable future which is completed when the write completes, or completed exceptionally
+     *         with {@link ReplicaWriterException} if the write fails.
+     */
+    public CompletableFuture<Void> appendAsync(final long transactionId, final Iterable<StoreAppendRequest> requests) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+
+        synchronized (this) {
+            if (!running) {
+                future.completeExceptionally(new ReplicaWriterException("closed"));
+                return future;
+            }
+
+            if (nextTransactionId != transactionId || writing) {
+                running = false;
+                future.completeExceptionally(new ReplicaWriterException("transaction out of order"));
+                return future;
+            }
+
+            ArrayList<Record> records = new ArrayList<>();
+            long txid = nextTransactionId;
+            for (StoreAppendRequest request : requests) {
+                records.add(
+                    new Record(txid, request.reqId, request.header, request.data, request.checksum)
+                );
+                txid++;
+            }
+            final long endTransactionId = txid;
+
+            ReplicaConnection connection = connectionFuture.getNow(null);
+            if (connection == null) {
+                running = false;
+                future.completeExceptionally(new ReplicaWriterException("not connected"));
+                return future;
+            }
+
+            writing = true;
+            connection.appendRecordsAsync(records).whenComplete((response, exception) -> {
+                synchronized (this) {
+                    writing = false;
+                    if (exception == null) {
+                        nextTransactionId = endTransactionId;
+                    } else {
+                        running = false;
+                    }
+                }
+
+                if (exception == null) {
+                    future.complete(null);
+                } else {
+                    future.completeExceptionally(new ReplicaWriterException("failed to write", exception));
+                }
+            });
+        }
+
+        return future;
+    }
+
     /**
      * Returns the next transaction Id.
      * @return the next transaction Id.
@@ -76,11 +76,21 @@ public class StoreImpl implements Store {
             ZNode partitionRoot = new ZNode(storeRoot, StoreMetadata.PARTITION_ZNODE_NAME);
             ZNode znode = new ZNode(partitionRoot, Integer.toString(partitionId));
 
+            BatchSizeController batchSizeController =
+                new BatchSizeController(
+                    partitionId,
+                    (int) config.get(WaltzServerConfig.MAX_BATCH_SIZE),
+                    (int) config.get(WaltzServerConfig.MAX_BATCH_BYTES),
+                    (long) config.get(WaltzServerConfig.TARGET_BATCH_LATENCY)
+                );
+            batchSizeController.registerMetrics();
+
             StoreSessionManager storeSessionManager =
                 new StoreSessionManager(
                     partitionId,
                     generation,
-                    (int) config.get(WaltzServerConfig.MAX_BATCH_SIZE),
+                    batchSizeController,
+                    (int) config.get(WaltzServerConfig.MAX_PIPELINED_BATCHES),
                     replicaSessionManager,
                     zkClient,
                     znode
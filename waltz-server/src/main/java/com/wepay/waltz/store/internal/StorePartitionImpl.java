@@ -27,6 +27,7 @@ public class StorePartitionImpl implements StorePartition {
     private final long initialRetryInterval;
     private final BackoffTimer backoffTimer;
     private final int checkpointInterval;
+    private final boolean checkpointHandOff;
     private final StoreSessionManager storeSessionManager;
 
     private volatile boolean running = true;
@@ -40,6 +41,7 @@ public class StorePartitionImpl implements StorePartition {
         this.initialRetryInterval = (long) config.get(WaltzServerConfig.INITIAL_RETRY_INTERVAL);
         this.backoffTimer = new BackoffTimer((long) config.get(WaltzServerConfig.MAX_RETRY_INTERVAL));
         this.checkpointInterval = (int) config.get(WaltzServerConfig.CHECKPOINT_INTERVAL);
+        this.checkpointHandOff = (boolean) config.get(WaltzServerConfig.CHECKPOINT_HAND_OFF);
         this.storeSessionManager = storeSessionManager;
     }
 
@@ -81,6 +83,12 @@ public class StorePartitionImpl implements StorePartition {
 
         while (running) {
             try {
+                if (checkpointHandOff) {
+                    // The store session manager hands off to a new session at a checkpoint
+                    storeSessionManager.getStoreSession(reqId.generation(), checkpointInterval).append(request);
+                    return;
+                }
+
                 StoreSession session = storeSessionManager.getStoreSession(reqId.generation());
                 if (session.highWaterMark() - session.lowWaterMark() >= checkpointInterval) {
                     session.flush();
@@ -123,6 +131,27 @@ public class StorePartitionImpl implements StorePartition {
         throw new StorePartitionClosedException();
     }
 
+    @Override
+    public ArrayList<Record> getRecordList(long transactionId, int maxNumRecords) throws StoreException {
+        long retryInterval = initialRetryInterval;
+
+        while (running) {
+            try {
+                StoreSession session = storeSessionManager.getStoreSession();
+                return session.getRecordList(transactionId, maxNumRecords);
+
+            } catch (SessionClosedException ex) {
+                // Retry
+            } catch (StoreSessionManagerException ex) {
+                throw new StorePartitionClosedException();
+            } catch (RecoveryFailedException ex) {
+                logger.warn("recovery failed, retrying...", ex);
+            }
+            retryInterval = backoffTimer.backoff(retryInterval);
+        }
+        throw new StorePartitionClosedException();
+    }
+
     @Override
     public RecordHeader getRecordHeader(long transactionId) throws StoreException {
         long retryInterval = initialRetryInterval;
@@ -14,6 +14,7 @@ import com.wepay.zktools.zookeeper.ZNode;
 import com.wepay.zktools.zookeeper.ZooKeeperClient;
 import org.slf4j.Logger;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.LinkedBlockingDeque;
@@ -29,18 +30,24 @@ public class StoreSessionImpl implements StoreSession {
     public final int partitionId;
     public final long sessionId;
 
-    private final int maxBatchSize;
+    private final BatchSizeController batchSizeController;
+    private final int maxPipelinedBatches;
     private final int numReplicas;
     private final int quorum;
     private final ArrayList<ReplicaSession> replicaSessions;
     private final StoreSessionTask task;
+    private final CommitTask commitTask;
     private final RequestQueue<StoreAppendRequest> requestQueue = new RequestQueue<>(new LinkedBlockingDeque<>());
     private final Object requestQueueProcessingLock = new Object();
 
+    // Requests dequeued but left out of the last batch by the byte limit. Guarded by requestQueueProcessingLock.
+    private final ArrayDeque<StoreAppendRequest> carryOver = new ArrayDeque<>();
+
     private LatencyWeightedRouter<ReplicaSession> router = null;
 
     private int numPending = 0;
-    private List<StoreAppendRequest> pendingAppendRequests = null;
+    private final ArrayDeque<PendingBatch> pendingBatches = new ArrayDeque<>();
+    private long nextAppendTransactionId;
 
     private volatile RecoveryManager recoveryManager;
     private volatile long lowWaterMark = Long.MIN_VALUE;
@@ -66,16 +73,99 @@ public class StoreSessionImpl implements StoreSession {
         final ZooKeeperClient zkClient,
         final ZNode znode
     ) {
+        this(partitionId, generation, sessionId, maxBatchSize, 1, replicaSessions, zkClient, znode);
+    }
+
+    /**
+     * Class constructor.
+     * @param partitionId The partition Id.
+     * @param generation The generation number.
+     * @param sessionId The session Id.
+     * @param maxBatchSize Maximum number of pending {@link StoreAppendRequest}s processed at a time.
+     * @param maxPipelinedBatches Maximum number of batches sent to replicas and waiting for a quorum at a time.
+     * @param replicaSessions List of {@link ReplicaSession}s.
+     * @param zkClient The ZooKeeperClient used in Waltz cluster.
+     * @param znode Path to the znode.
+     */
+    public StoreSessionImpl(
+        final int partitionId,
+        final int generation,
+        final long sessionId,
+        final int maxBatchSize,
+        final int maxPipelinedBatches,
+        final ArrayList<ReplicaSession> replicaSessions,
+        final ZooKeeperClient zkClient,
+        final ZNode znode
+    ) {
+        this(
+            partitionId, generation, sessionId, new BatchSizeController(partitionId, maxBatchSize), maxPipelinedBatches, replicaSessions, zkClient, znode
+        );
+    }
+
+    /**
+     * Class constructor.
+     * @param partitionId The partition Id.
+     * @param generation The generation number.
+     * @param sessionId The session Id.
+     * @param batchSizeController The {@link BatchSizeController} that limits the size of a batch.
+     * @param maxPipelinedBatches Maximum number of batches sent to replicas and waiting for a quorum at a time.
+     * @param replicaSessions List of {@link ReplicaSession}s.
+     * @param zkClient The ZooKeeperClient used in Waltz cluster.
+     * @param znode Path to the znode.
+     */
+    public StoreSessionImpl(
+        final int partitionId,
+        final int generation,
+        final long sessionId,
+        final BatchSizeController batchSizeController,
+        final int maxPipelinedBatches,
+        final ArrayList<ReplicaSession> replicaSessions,
+        final ZooKeeperClient zkClient,
+        final ZNode znode
+    ) {
+        this(partitionId, generation, sessionId, batchSizeController, maxPipelinedBatches, null, replicaSessions, zkClient, znode);
+    }
+
+    /**
+     * Class constructor.
+     * @param partitionId The partition Id.
+     * @param generation The generation number.
+     * @param sessionId The session Id.
+     * @param batchSizeController The {@link BatchSizeController} that limits the size of a batch.
+     * @param maxPipelinedBatches Maximum number of batches sent to replicas and waiting for a quorum at a time.
+     * @param connectionConfig The replica connection config for the recovery, or null to use the default settings.
+     * @param replicaSessions List of {@link ReplicaSession}s.
+     * @param zkClient The ZooKeeperClient used in Waltz cluster.
+     * @param znode Path to the znode.
+     */
+    public StoreSessionImpl(
+        final int partitionId,
+        final int generation,
+        final long sessionId,
+        final BatchSizeController batchSizeController,
+        final int maxPipelinedBatches,
+        final ConnectionConfig connectionConfig,
+        final ArrayList<ReplicaSession> replicaSessions,
+        final ZooKeeperClient zkClient,
+        final ZNode znode
+    ) {
+        if (maxPipelinedBatches < 1) {
+            throw new IllegalArgumentException("maxPipelinedBatches must be positive");
+        }
+
         this.generation = generation;
         this.partitionId = partitionId;
         this.sessionId = sessionId;
-        this.maxBatchSize = maxBatchSize;
+        this.batchSizeController = batchSizeController;
+        this.maxPipelinedBatches = maxPipelinedBatches;
         this.numReplicas = replicaSessions.size();
         this.quorum = this.numReplicas / 2 + 1;
         this.replicaSessions = replicaSessions;
 
-        this.recoveryManager = new RecoveryManagerImpl(generation, sessionId, quorum, zkClient, znode);
+        this.recoveryManager = new RecoveryManagerImpl(generation, sessionId, quorum, connectionConfig, zkClient, znode);
         this.task = new StoreSessionTask();
+        // When only one batch is in flight, the store session task waits for the quorum by itself.
+        this.commitTask = maxPipelinedBatches > 1 ? new CommitTask() : null;
     }
 
     /**
@@ -84,6 +174,17 @@ public class StoreSessionImpl implements StoreSession {
      * @throws StoreException thrown is fail to read the store metadata.
      */
     public void open() throws RecoveryFailedException, StoreException {
+        open(null);
+    }
+
+    /**
+     * Opens the store session handed off from the previous session. Append requests of the previous session not
+     * resolved yet are resolved against the low-water mark of this session before this session starts appending.
+     * @param previousSession The previous store session which is already closed, or null.
+     * @throws RecoveryFailedException thrown if the recovery fails.
+     * @throws StoreException thrown is fail to read the store metadata.
+     */
+    void open(StoreSession previousSession) throws RecoveryFailedException, StoreException {
         if (quorum < 1) {
             throw new StoreException("not enough replicas");
         }
@@ -99,6 +200,7 @@ public class StoreSessionImpl implements StoreSession {
             // This is the low-water mark of this session.
             lowWaterMark = recoveryManager.highWaterMark();
             nextTransactionId = lowWaterMark + 1;
+            nextAppendTransactionId = nextTransactionId;
 
             // Add replica sessions to the router to make them available for get-RPCs
             router = new LatencyWeightedRouter<>(replicaSessions);
@@ -113,7 +215,14 @@ public class StoreSessionImpl implements StoreSession {
             recoveryManager = null;
         }
 
+        if (previousSession != null) {
+            previousSession.resolveAllAppendRequests(lowWaterMark);
+        }
+
         task.start();
+        if (commitTask != null) {
+            commitTask.start();
+        }
     }
 
     @Override
@@ -123,6 +232,9 @@ public class StoreSessionImpl implements StoreSession {
                 running = false;
                 try {
                     task.stop();
+                    if (commitTask != null) {
+                        commitTask.stop();
+                    }
                     requestQueue.close();
 
                     if (recoveryManager != null) {
@@ -169,14 +281,15 @@ public class StoreSessionImpl implements StoreSession {
                 }
 
                 // Wait until the queue has enough space.
-                while (requestQueue.size() > maxBatchSize * 2) {
+                while (requestQueue.size() > batchSizeController.batchSizeLimit() * 2) {
                     try {
                         wait();
                     } catch (InterruptedException ex) {
                         Thread.interrupted();
                     }
                     if (!running) {
-                        return;
+                        // The request is not queued. The caller must retry.
+                        throw new SessionClosedException();
                     }
                 }
 
@@ -205,10 +318,13 @@ public class StoreSessionImpl implements StoreSession {
                     logger.error("store session still running");
                 }
 
-                resolveAppendRequests(highWaterMark);
-
-                pendingAppendRequests = requestQueue.toList();
-                resolveAppendRequests(highWaterMark);
+                // Resolve batches in flight first, then requests still in the queue, in transaction id order.
+                while (!pendingBatches.isEmpty()) {
+                    resolveAppendRequests(pendingBatches.pollFirst().requests, highWaterMark);
+                }
+                resolveAppendRequests(new ArrayList<>(carryOver), highWaterMark);
+                carryOver.clear();
+                resolveAppendRequests(requestQueue.toList(), highWaterMark);
 
                 // wake up a flushing thread
                 notifyAll();
@@ -217,10 +333,10 @@ public class StoreSessionImpl implements StoreSession {
     }
 
     // Resolves requests as success if transaction id <= high-water mark, otherwise as failure
-    private void resolveAppendRequests(long highWaterMark) {
+    private void resolveAppendRequests(List<StoreAppendRequest> requests, long highWaterMark) {
         synchronized (this) {
-            if (pendingAppendRequests != null) {
-                for (StoreAppendRequest request : pendingAppendRequests) {
+            if (requests != null) {
+                for (StoreAppendRequest request : requests) {
                     if (!request.isCommitted()) {
                         if (nextTransactionId <= highWaterMark) {
                             request.commit(nextTransactionId++);
@@ -230,11 +346,10 @@ public class StoreSessionImpl implements StoreSession {
                     }
                 }
 
-                numPending -= pendingAppendRequests.size();
-                pendingAppendRequests = null;
+                numPending -= requests.size();
 
-                if (numPending == 0) {
-                    // wake up a flushing thread
+                if (numPending == 0 || maxPipelinedBatches > 1) {
+                    // wake up a flushing thread, or a store session task waiting for a free slot in the window
                     notifyAll();
                 }
             }
@@ -337,46 +452,139 @@ public class StoreSessionImpl implements StoreSession {
     }
 
     private void doAppend() {
-        synchronized (requestQueueProcessingLock) {
-            List<StoreAppendRequest> batch = requestQueue.dequeue(maxBatchSize);
-
-            if (batch != null && batch.size() > 0) {
-                synchronized (this) {
-                    // Bookkeeping the pending requests
-                    if (pendingAppendRequests == null) {
-                        pendingAppendRequests = batch;
-                    } else {
-                        throw new IllegalStateException("there are pending append requests already");
+        if (commitTask != null) {
+            // Wait until the pipeline window has a free slot
+            synchronized (this) {
+                while (running && pendingBatches.size() >= maxPipelinedBatches) {
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        Thread.interrupted();
                     }
                 }
+                if (!running) {
+                    return;
+                }
+            }
+        }
 
+        PendingBatch pendingBatch = null;
+
+        synchronized (requestQueueProcessingLock) {
+            List<StoreAppendRequest> batch = nextBatch();
+
+            if (batch != null && batch.size() > 0) {
                 // Dynamically adjust number of voters. Only replica that successfully connected will be treated as voter.
                 int numVoters = 0;
                 for (ReplicaSession replicaSession : replicaSessions) {
                     numVoters = replicaSession.isConnected() ? numVoters + 1 : numVoters;
                 }
-                Voting voting = new Voting(quorum, numVoters);
+
+                synchronized (this) {
+                    // Bookkeeping the pending requests
+                    pendingBatch = new PendingBatch(nextAppendTransactionId, batch, new Voting(quorum, numVoters), System.nanoTime());
+                    pendingBatches.addLast(pendingBatch);
+                    nextAppendTransactionId += batch.size();
+
+                    // wake up the commit task
+                    notifyAll();
+                }
 
                 for (ReplicaSession replicaSession : replicaSessions) {
-                    replicaSession.append(nextTransactionId, batch, voting);
+                    replicaSession.append(pendingBatch.transactionId, batch, pendingBatch.voting);
                 }
+            }
+        }
 
-                if (voting.await()) {
-                    // Transactions succeeded. commit all transactions.
-                    resolveAppendRequests(Long.MAX_VALUE);
+        if (pendingBatch != null && commitTask == null) {
+            commit(pendingBatch);
+        }
+    }
 
-                    if (voting.hasAbstention()) {
-                        // Some replica failed. We must start a new session.
-                        close();
+    // Takes the next batch limited by both the number of records and the size of record data.
+    // Requests over the byte limit are carried over to the next batch.
+    private List<StoreAppendRequest> nextBatch() {
+        int sizeLimit = batchSizeController.batchSizeLimit();
+        List<StoreAppendRequest> requests;
+
+        if (carryOver.isEmpty()) {
+            requests = requestQueue.dequeue(sizeLimit);
+            if (requests == null) {
+                return null;
+            }
+        } else {
+            requests = new ArrayList<>(carryOver);
+            carryOver.clear();
+        }
+
+        int maxBatchBytes = batchSizeController.maxBatchBytes();
+        long batchBytes = 0;
+        int batchSize = 0;
+        for (StoreAppendRequest request : requests) {
+            batchBytes += request.data.length;
+            if (batchSize >= sizeLimit || (batchSize > 0 && batchBytes > maxBatchBytes)) {
+                break;
+            }
+            batchSize++;
+        }
+
+        if (batchSize < requests.size()) {
+            carryOver.addAll(requests.subList(batchSize, requests.size()));
+            requests = new ArrayList<>(requests.subList(0, batchSize));
+        }
+
+        return requests;
+    }
+
+    private void commit(PendingBatch pendingBatch) {
+        if (pendingBatch.voting.await()) {
+            long latency = System.nanoTime() - pendingBatch.startTime;
+            batchSizeController.update(pendingBatch.requests.size(), pendingBatch.numBytes(), latency, requestQueue.size());
+
+            synchronized (this) {
+                // The batch may have been resolved already by resolveAllAppendRequests.
+                if (pendingBatches.peekFirst() == pendingBatch) {
+                    pendingBatches.pollFirst();
+                    if (pendingBatch.transactionId != nextTransactionId) {
+                        throw new IllegalStateException(
+                            "transaction out of order: expected=" + nextTransactionId + " actual=" + pendingBatch.transactionId
+                        );
                     }
-                } else {
-                    // Transactions failed. Close the session so that no one can write a transaction using this session.
-                    // Transactions will be resolved when the next session is started.
-                    close();
+                    // Transactions succeeded. commit all transactions in the batch.
+                    resolveAppendRequests(pendingBatch.requests, Long.MAX_VALUE);
+                }
+            }
+
+            if (pendingBatch.voting.hasAbstention()) {
+                // Some replica failed. We must start a new session.
+                close();
+            }
+        } else {
+            // Transactions failed. Close the session so that no one can write a transaction using this session.
+            // Transactions will be resolved when the next session is started.
+            close();
+        }
+    }
+
+    private void doCommit() {
+        PendingBatch pendingBatch;
+
+        // Wait for the oldest batch in flight. Batches are committed strictly in transaction id order.
+        synchronized (this) {
+            while (running && pendingBatches.isEmpty()) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    Thread.interrupted();
                 }
             }
+            if (!running) {
+                return;
+            }
+            pendingBatch = pendingBatches.peekFirst();
         }
 
+        commit(pendingBatch);
     }
 
     private class StoreSessionTask extends RepeatingTask {
@@ -398,6 +606,49 @@ public class StoreSessionImpl implements StoreSession {
 
     }
 
+    private class CommitTask extends RepeatingTask {
+
+        CommitTask() {
+            super("StoreSessionCommit-" + partitionId + "-" + sessionId);
+        }
+
+        @Override
+        protected void task() throws InterruptedException {
+            doCommit();
+        }
+
+        @Override
+        protected void exceptionCaught(Throwable ex) {
+            logger.error("exception caught", ex);
+            close();
+        }
+
+    }
+
+    private static class PendingBatch {
+
+        final long transactionId;
+        final List<StoreAppendRequest> requests;
+        final Voting voting;
+        final long startTime;
+
+        PendingBatch(long transactionId, List<StoreAppendRequest> requests, Voting voting, long startTime) {
+            this.transactionId = transactionId;
+            this.requests = requests;
+            this.voting = voting;
+            this.startTime = startTime;
+        }
+
+        int numBytes() {
+            int numBytes = 0;
+            for (StoreAppendRequest request : requests) {
+                numBytes += request.data.length;
+            }
+            return numBytes;
+        }
+
+    }
+
     private interface ValueGetter<T> {
 
         T getValue(ReplicaSession replicaSession) throws ReplicaSessionException;
@@ -1,9 +1,14 @@
 package com.wepay.waltz.store.internal;
 
+import com.wepay.riff.metrics.core.MetricGroup;
+import com.wepay.riff.metrics.core.MetricRegistry;
+import com.wepay.riff.metrics.core.Timer;
 import com.wepay.riff.util.Logging;
 import com.wepay.waltz.common.util.BackoffTimer;
+import com.wepay.waltz.common.util.DaemonThreadFactory;
 import com.wepay.waltz.store.exception.GenerationMismatchException;
 import com.wepay.waltz.store.exception.RecoveryFailedException;
+import com.wepay.waltz.store.exception.SessionClosedException;
 import com.wepay.waltz.store.exception.StoreException;
 import com.wepay.waltz.store.exception.StoreSessionManagerException;
 import com.wepay.waltz.common.metadata.PartitionMetadata;
@@ -17,6 +22,10 @@ import org.apache.zookeeper.KeeperException;
 import org.slf4j.Logger;
 
 import java.util.ArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -26,6 +35,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 public class StoreSessionManager {
 
     private static final Logger logger = Logging.getLogger(StoreSessionManager.class);
+    private static final MetricRegistry REGISTRY = MetricRegistry.getInstance();
     private static final long MIN_METADATA_BACKOFF = 100;
     private static final long MAX_METADATA_BACKOFF = 1000;
 
@@ -41,13 +51,42 @@ public class StoreSessionManager {
     private final AtomicInteger generation;
     private volatile boolean healthy = true;
     private volatile StoreSession currentSession;
-    private final int maxBatchSize;
+    private final BatchSizeController batchSizeController;
+    private final int maxPipelinedBatches;
+    private final ThreadPoolExecutor handOffExecutor;
+    private final String metricsGroup;
+    private final Timer handOffPauseTimer;
+
+    // The next session is set while a checkpoint hand-off is opening it
+    private boolean handingOff = false;
+    private volatile StoreSessionImpl nextSession = null;
+
+    /**
+     * Class constructor.
+     * @param partitionId The partition Id.
+     * @param generation The generation number.
+     * @param maxBatchSize Batch size in {@link StoreSessionImpl}.
+     * @param replicaSessionManager The {@link ReplicaSessionManager}.
+     * @param zkClient The Zoo Keeper Client used in the Waltz cluster.
+     * @param znode Path to the znode.
+     */
+    public StoreSessionManager(
+        final int partitionId,
+        final int generation,
+        final int maxBatchSize,
+        final ReplicaSessionManager replicaSessionManager,
+        final ZooKeeperClient zkClient,
+        final ZNode znode
+    ) {
+        this(partitionId, generation, maxBatchSize, 1, replicaSessionManager, zkClient, znode);
+    }
 
     /**
      * Class constructor.
      * @param partitionId The partition Id.
      * @param generation The generation number.
      * @param maxBatchSize Batch size in {@link StoreSessionImpl}.
+     * @param maxPipelinedBatches Maximum number of batches in flight in {@link StoreSessionImpl}.
      * @param replicaSessionManager The {@link ReplicaSessionManager}.
      * @param zkClient The Zoo Keeper Client used in the Waltz cluster.
      * @param znode Path to the znode.
@@ -56,16 +95,47 @@ public class StoreSessionManager {
         final int partitionId,
         final int generation,
         final int maxBatchSize,
+        final int maxPipelinedBatches,
+        final ReplicaSessionManager replicaSessionManager,
+        final ZooKeeperClient zkClient,
+        final ZNode znode
+    ) {
+        this(partitionId, generation, new BatchSizeController(partitionId, maxBatchSize), maxPipelinedBatches, replicaSessionManager, zkClient, znode);
+    }
+
+    /**
+     * Class constructor.
+     * @param partitionId The partition Id.
+     * @param generation The generation number.
+     * @param batchSizeController The {@link BatchSizeController} shared by {@link StoreSessionImpl}s of the partition.
+     * @param maxPipelinedBatches Maximum number of batches in flight in {@link StoreSessionImpl}.
+     * @param replicaSessionManager The {@link ReplicaSessionManager}.
+     * @param zkClient The Zoo Keeper Client used in the Waltz cluster.
+     * @param znode Path to the znode.
+     */
+    public StoreSessionManager(
+        final int partitionId,
+        final int generation,
+        final BatchSizeController batchSizeController,
+        final int maxPipelinedBatches,
         final ReplicaSessionManager replicaSessionManager,
         final ZooKeeperClient zkClient,
         final ZNode znode
     ) {
         this.partitionId = partitionId;
         this.generation = new AtomicInteger(generation);
-        this.maxBatchSize = maxBatchSize;
+        this.batchSizeController = batchSizeController;
+        this.maxPipelinedBatches = maxPipelinedBatches;
         this.zkClient = zkClient;
         this.znode = znode;
         this.replicaSessionManager = replicaSessionManager;
+
+        // A checkpoint hand-off runs in background. The idle thread exits by itself.
+        this.handOffExecutor = new ThreadPoolExecutor(
+            0, 1, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), DaemonThreadFactory.INSTANCE
+        );
+        this.metricsGroup = String.format("%s.partition-%d", MetricGroup.WALTZ_SERVER_METRIC_GROUP, partitionId);
+        this.handOffPauseTimer = REGISTRY.timer(metricsGroup, "checkpoint-hand-off-pause");
     }
 
     /**
@@ -80,7 +150,15 @@ public class StoreSessionManager {
                     currentSession = null;
                 }
             }
+            StoreSessionImpl next = nextSession;
+            if (next != null) {
+                // Abort the hand-off in progress
+                next.close();
+            }
+            handOffExecutor.shutdown();
             backoffTimer.close();
+            batchSizeController.unregisterMetrics();
+            REGISTRY.remove(metricsGroup, "checkpoint-hand-off-pause");
         }
     }
 
@@ -126,25 +204,71 @@ public class StoreSessionManager {
             while (running.get()) {
                 StoreSession session = currentSession;
 
-                if (session != null) {
+                if (session != null && nextSession == null) {
                     if (session.generation() == generation.get() && session.isWritable()) {
                         return session;
                     }
                 }
 
-                createSession(generation.get());
+                if (handingOff) {
+                    // Wait for the hand-off to the next session
+                    try {
+                        wait();
+                    } catch (InterruptedException ex) {
+                        Thread.interrupted();
+                    }
+                } else {
+                    createSession(generation.get());
+                }
             }
             throw new StoreSessionManagerException();
         }
     }
 
+    /**
+     * Returns a store session to append to if the current generation is equal to the specified generation number.
+     * When the current session has reached the checkpoint interval, a new session is prepared and opened in background.
+     * Appends made in the meantime are queued in the new session, and are processed once it is open.
+     * The low-water mark still moves only with a new session. The hand-off takes the session setup off the append path,
+     * but appends queued during the flush of the old session and the recovery of the new session are committed only
+     * after that. The pause shows up in commit latency instead of blocking the appending thread.
+     * @param generation
+     * @param checkpointInterval The checkpoint interval in transactions.
+     * @return a store session
+     * @throws RecoveryFailedException
+     * @throws GenerationMismatchException
+     * @throws StoreSessionManagerException
+     */
+    public StoreSession getStoreSession(int generation, int checkpointInterval)
+        throws RecoveryFailedException, GenerationMismatchException, StoreSessionManagerException {
+        synchronized (this) {
+            if (this.generation.get() == generation && nextSession != null && nextSession.generation() == generation) {
+                return nextSession;
+            }
+
+            StoreSession session = getStoreSession(generation);
+
+            if (!handingOff && session.highWaterMark() - session.lowWaterMark() >= checkpointInterval) {
+                try {
+                    handOffExecutor.execute(() -> handOff(session));
+                    handingOff = true;
+                } catch (RejectedExecutionException ex) {
+                    // This store session manager is closed
+                }
+            }
+
+            return session;
+        }
+    }
+
     /**
      * Returns the number of pending append requests
      * @return the number of pending append requests
      */
     public int numPendingAppends() {
         StoreSession session = currentSession;
-        return session != null ? session.numPendingAppends() : 0;
+        StoreSession next = nextSession;
+        return (session != null ? session.numPendingAppends() : 0) + (next != null ? next.numPendingAppends() : 0);
     }
 
     /**
@@ -187,7 +311,17 @@ public class StoreSessionManager {
 
                 // Create a new session
                 ArrayList<ReplicaSession> replicaSessions = replicaSessionManager.getReplicaSessions(partitionId, sessionId);
-                session = new StoreSessionImpl(partitionId, generation, sessionId, maxBatchSize, replicaSessions, zkClient, znode);
+                session = new StoreSessionImpl(
+                    partitionId,
+                    generation,
+                    sessionId,
+                    batchSizeController,
+                    maxPipelinedBatches,
+                    replicaSessionManager.getConnectionConfig(),
+                    replicaSessions,
+                    zkClient,
+                    znode
+                );
                 session.open();
                 healthy = true;
 
@@ -228,6 +362,91 @@ public class StoreSessionManager {
         }
     }
 
+    private void handOff(StoreSession session) {
+        StoreSessionImpl next;
+
+        try {
+            // Prepare the next session while the current session is still accepting appends
+            PartitionMetadata partitionMetadata = updatePartitionMetadata(session.generation());
+            ArrayList<ReplicaSession> replicaSessions = replicaSessionManager.getReplicaSessions(partitionId, partitionMetadata.sessionId);
+            next = new StoreSessionImpl(
+                partitionId,
+                session.generation(),
+                partitionMetadata.sessionId,
+                batchSizeController,
+                maxPipelinedBatches,
+                replicaSessionManager.getConnectionConfig(),
+                replicaSessions,
+                zkClient,
+                znode
+            );
+
+        } catch (Exception ex) {
+            // Fall back to a new session created on demand
+            logger.warn("failed to prepare the next session", ex);
+            session.close();
+            endHandOff(null);
+            return;
+        }
+
+        synchronized (this) {
+            if (!running.get() || currentSession != session) {
+                next.close();
+                endHandOff(null);
+                return;
+            }
+            // From now on appends are queued in the next session
+            nextSession = next;
+        }
+
+        Timer.Context pauseTimerContext = handOffPauseTimer.time();
+        try {
+            try {
+                session.flush();
+            } catch (SessionClosedException ex) {
+                // Pending append requests are resolved when the next session is opened
+            }
+            session.close();
+
+            next.open(session);
+            healthy = true;
+            endHandOff(next);
+
+        } catch (Exception ex) {
+            if (ex instanceof RecoveryFailedException) {
+                healthy = false;
+            }
+            logger.warn("failed to open the next session", ex);
+
+            // Fail append requests queued in the next session. The current session is replaced on demand.
+            next.close();
+            next.resolveAllAppendRequests(-1L);
+            endHandOff(null);
+
+        } finally {
+            pauseTimerContext.stop();
+        }
+    }
+
+    private void endHandOff(StoreSessionImpl session) {
+        synchronized (this) {
+            if (session != null) {
+                synchronized (sessionAssignLock) {
+                    if (running.get()) {
+                        currentSession = session;
+                    } else {
+                        session.close();
+                    }
+                }
+            }
+            nextSession = null;
+            handingOff = false;
+
+            // Wake up threads waiting for the hand-off
+            notifyAll();
+        }
+    }
+
     private PartitionMetadata updatePartitionMetadata(int generation) throws StoreException, ZooKeeperClientException, KeeperException {
         PartitionMetadataSerializer serializer = PartitionMetadataSerializer.INSTANCE;
         long retryInterval = MIN_METADATA_BACKOFF;
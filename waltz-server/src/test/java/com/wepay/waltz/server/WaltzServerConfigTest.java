@@ -32,11 +32,28 @@ public class WaltzServerConfigTest {
         map.put(WaltzServerConfig.SERVER_PORT, "8888");
 
         map.put(WaltzServerConfig.OPTIMISTIC_LOCK_TABLE_SIZE, "2000");
+        map.put(WaltzServerConfig.APPEND_QUEUE_SIZE, "200");
+        map.put(WaltzServerConfig.APPEND_PREPARE_THREADS, "2");
+        map.put(WaltzServerConfig.APPEND_BYTES_LIMIT, "100000000");
+        map.put(WaltzServerConfig.PARTITION_APPEND_BYTES_LIMIT, "10000000");
+        map.put(WaltzServerConfig.ASYNC_STORE_APPEND, "true");
         map.put(WaltzServerConfig.FEED_CACHE_SIZE, "1000");
+        map.put(WaltzServerConfig.FEED_CACHE_ALLOCATION, "direct");
+        map.put(WaltzServerConfig.TRANSACTION_DATA_CACHE_SCAN_RESISTANT, "true");
+        map.put(WaltzServerConfig.TRANSACTION_DATA_BATCH_SIZE, "20");
         map.put(WaltzServerConfig.MIN_FETCH_SIZE, "50");
         map.put(WaltzServerConfig.REALTIME_THRESHOLD, "500");
+        map.put(WaltzServerConfig.FEED_BATCH_SIZE, "50");
+        map.put(WaltzServerConfig.FEED_MAX_INLINE_DATA_SIZE, "1024");
+        map.put(WaltzServerConfig.BROADCAST_FEED, "true");
+        map.put(WaltzServerConfig.CATCHUP_FEED_THREADS, "4");
+        map.put(WaltzServerConfig.CATCHUP_FEED_QUANTUM, "128");
+        map.put(WaltzServerConfig.CATCHUP_FEED_RATE_LIMIT, "10000");
 
         map.put(WaltzServerConfig.MAX_BATCH_SIZE, "500");
+        map.put(WaltzServerConfig.MAX_BATCH_BYTES, "1000000");
+        map.put(WaltzServerConfig.TARGET_BATCH_LATENCY, "20");
+        map.put(WaltzServerConfig.MAX_PIPELINED_BATCHES, "4");
         map.put(WaltzServerConfig.INITIAL_RETRY_INTERVAL, "30");
         map.put(WaltzServerConfig.MAX_RETRY_INTERVAL, "30000");
 
@@ -63,10 +80,42 @@ public class WaltzServerConfigTest {
         assertTrue(value instanceof Integer);
         assertEquals(2000, value);
 
+        value = config.get(WaltzServerConfig.APPEND_QUEUE_SIZE);
+        assertTrue(value instanceof Integer);
+        assertEquals(200, value);
+
+        value = config.get(WaltzServerConfig.APPEND_PREPARE_THREADS);
+        assertTrue(value instanceof Integer);
+        assertEquals(2, value);
+
+        value = config.get(WaltzServerConfig.APPEND_BYTES_LIMIT);
+        assertTrue(value instanceof Long);
+        assertEquals(100000000L, value);
+
+        value = config.get(WaltzServerConfig.PARTITION_APPEND_BYTES_LIMIT);
+        assertTrue(value instanceof Long);
+        assertEquals(10000000L, value);
+
+        value = config.get(WaltzServerConfig.ASYNC_STORE_APPEND);
+        assertTrue(value instanceof Boolean);
+        assertEquals(true, value);
+
         value = config.get(WaltzServerConfig.FEED_CACHE_SIZE);
         assertTrue(value instanceof Integer);
         assertEquals(1000, value);
 
+        value = config.get(WaltzServerConfig.FEED_CACHE_ALLOCATION);
+        assertTrue(value instanceof String);
+        assertEquals("direct", value);
+
+        value = config.get(WaltzServerConfig.TRANSACTION_DATA_CACHE_SCAN_RESISTANT);
+        assertTrue(value instanceof Boolean);
+        assertEquals(true, value);
+
+        value = config.get(WaltzServerConfig.TRANSACTION_DATA_BATCH_SIZE);
+        assertTrue(value instanceof Integer);
+        assertEquals(20, value);
+
         value = config.get(WaltzServerConfig.MIN_FETCH_SIZE);
         assertTrue(value instanceof Integer);
         assertEquals(50, value);
@@ -75,10 +124,46 @@ public class WaltzServerConfigTest {
         assertTrue(value instanceof Integer);
         assertEquals(500, value);
 
+        value = config.get(WaltzServerConfig.FEED_BATCH_SIZE);
+        assertTrue(value instanceof Integer);
+        assertEquals(50, value);
+
+        value = config.get(WaltzServerConfig.FEED_MAX_INLINE_DATA_SIZE);
+        assertTrue(value instanceof Integer);
+        assertEquals(1024, value);
+
+        value = config.get(WaltzServerConfig.BROADCAST_FEED);
+        assertTrue(value instanceof Boolean);
+        assertEquals(true, value);
+
+        value = config.get(WaltzServerConfig.CATCHUP_FEED_THREADS);
+        assertTrue(value instanceof Integer);
+        assertEquals(4, value);
+
+        value = config.get(WaltzServerConfig.CATCHUP_FEED_QUANTUM);
+        assertTrue(value instanceof Integer);
+        assertEquals(128, value);
+
+        value = config.get(WaltzServerConfig.CATCHUP_FEED_RATE_LIMIT);
+        assertTrue(value instanceof Long);
+        assertEquals(10000L, value);
+
         value = config.get(WaltzServerConfig.MAX_BATCH_SIZE);
         assertTrue(value instanceof Integer);
         assertEquals(500, value);
 
+        value = config.get(WaltzServerConfig.MAX_BATCH_BYTES);
+        assertTrue(value instanceof Integer);
+        assertEquals(1000000, value);
+
+        value = config.get(WaltzServerConfig.TARGET_BATCH_LATENCY);
+        assertTrue(value instanceof Long);
+        assertEquals(20L, value);
+
+        value = config.get(WaltzServerConfig.MAX_PIPELINED_BATCHES);
+        assertTrue(value instanceof Integer);
+        assertEquals(4, value);
+
         value = config.get(WaltzServerConfig.INITIAL_RETRY_INTERVAL);
         assertTrue(value instanceof Long);
         assertEquals(30L, value);
@@ -124,10 +209,42 @@ public class WaltzServerConfigTest {
         assertTrue(value instanceof Integer);
         assertEquals(WaltzServerConfig.DEFAULT_OPTIMISTIC_LOCK_TABLE_SIZE, value);
 
+        value = config.get(WaltzServerConfig.APPEND_QUEUE_SIZE);
+        assertTrue(value instanceof Integer);
+        assertEquals(WaltzServerConfig.DEFAULT_APPEND_QUEUE_SIZE, value);
+
+        value = config.get(WaltzServerConfig.APPEND_PREPARE_THREADS);
+        assertTrue(value instanceof Integer);
+        assertEquals(WaltzServerConfig.DEFAULT_APPEND_PREPARE_THREADS, value);
+
+        value = config.get(WaltzServerConfig.APPEND_BYTES_LIMIT);
+        assertTrue(value instanceof Long);
+        assertEquals(WaltzServerConfig.DEFAULT_APPEND_BYTES_LIMIT, value);
+
+        value = config.get(WaltzServerConfig.PARTITION_APPEND_BYTES_LIMIT);
+        assertTrue(value instanceof Long);
+        assertEquals(WaltzServerConfig.DEFAULT_PARTITION_APPEND_BYTES_LIMIT, value);
+
+        value = config.get(WaltzServerConfig.ASYNC_STORE_APPEND);
+        assertTrue(value instanceof Boolean);
+        assertEquals(WaltzServerConfig.DEFAULT_ASYNC_STORE_APPEND, value);
+
         value = config.get(WaltzServerConfig.FEED_CACHE_SIZE);
         assertTrue(value instanceof Integer);
         assertEquals(WaltzServerConfig.DEFAULT_FEED_CACHE_SIZE, value);
 
+        value = config.get(WaltzServerConfig.FEED_CACHE_ALLOCATION);
+        assertTrue(value instanceof String);
+        assertEquals(WaltzServerConfig.DEFAULT_FEED_CACHE_ALLOCATION, value);
+
+        value = config.get(WaltzServerConfig.TRANSACTION_DATA_CACHE_SCAN_RESISTANT);
+        assertTrue(value instanceof Boolean);
+        assertEquals(WaltzServerConfig.DEFAULT_TRANSACTION_DATA_CACHE_SCAN_RESISTANT, value);
+
+        value = config.get(WaltzServerConfig.TRANSACTION_DATA_BATCH_SIZE);
+        assertTrue(value instanceof Integer);
+        assertEquals(WaltzServerConfig.DEFAULT_TRANSACTION_DATA_BATCH_SIZE, value);
+
         value = config.get(WaltzServerConfig.MIN_FETCH_SIZE);
         assertTrue(value instanceof Integer);
         assertEquals(WaltzServerConfig.DEFAULT_MIN_FETCH_SIZE, value);
@@ -136,10 +253,46 @@ public class WaltzServerConfigTest {
         assertTrue(value instanceof Integer);
         assertEquals(WaltzServerConfig.DEFAULT_REALTIME_THRESHOLD, value);
 
+        value = config.get(WaltzServerConfig.FEED_BATCH_SIZE);
+        assertTrue(value instanceof Integer);
+        assertEquals(WaltzServerConfig.DEFAULT_FEED_BATCH_SIZE, value);
+
+        value = config.get(WaltzServerConfig.FEED_MAX_INLINE_DATA_SIZE);
+        assertTrue(value instanceof Integer);
+        assertEquals(WaltzServerConfig.DEFAULT_FEED_MAX_INLINE_DATA_SIZE, value);
+
+        value = config.get(WaltzServerConfig.BROADCAST_FEED);
+        assertTrue(value instanceof Boolean);
+        assertEquals(WaltzServerConfig.DEFAULT_BROADCAST_FEED, value);
+
+        value = config.get(WaltzServerConfig.CATCHUP_FEED_THREADS);
+        assertTrue(value instanceof Integer);
+        assertEquals(WaltzServerConfig.DEFAULT_CATCHUP_FEED_THREADS, value);
+
+        value = config.get(WaltzServerConfig.CATCHUP_FEED_QUANTUM);
+        assertTrue(value instanceof Integer);
+        assertEquals(WaltzServerConfig.DEFAULT_CATCHUP_FEED_QUANTUM, value);
+
+        value = config.get(WaltzServerConfig.CATCHUP_FEED_RATE_LIMIT);
+        assertTrue(value instanceof Long);
+        assertEquals(WaltzServerConfig.DEFAULT_CATCHUP_FEED_RATE_LIMIT, value);
+
         value = config.get(WaltzServerConfig.MAX_BATCH_SIZE);
         assertTrue(value instanceof Integer);
         assertEquals(WaltzServerConfig.DEFAULT_MAX_BATCH_SIZE, value);
 
+        value = config.get(WaltzServerConfig.MAX_BATCH_BYTES);
+        assertTrue(value instanceof Integer);
+        assertEquals(WaltzServerConfig.DEFAULT_MAX_BATCH_BYTES, value);
+
+        value = config.get(WaltzServerConfig.TARGET_BATCH_LATENCY);
+        assertTrue(value instanceof Long);
+        assertEquals(WaltzServerConfig.DEFAULT_TARGET_BATCH_LATENCY, value);
+
+        value = config.get(WaltzServerConfig.MAX_PIPELINED_BATCHES);
+        assertTrue(value instanceof Integer);
+        assertEquals(WaltzServerConfig.DEFAULT_MAX_PIPELINED_BATCHES, value);
+
         value = config.get(WaltzServerConfig.INITIAL_RETRY_INTERVAL);
         assertTrue(value instanceof Long);
         assertEquals(WaltzServerConfig.DEFAULT_INITIAL_RETRY_INTERVAL, value);
@@ -0,0 +1,212 @@
+package com.wepay.waltz.server.internal;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class CatchUpFeedSchedulerTest {
+
+    private static final long TIMEOUT = 10000;
+
+    @Test
+    public void testJobsRunToCompletion() throws Exception {
+        CatchUpFeedScheduler scheduler = new CatchUpFeedScheduler(3, 10, 0L);
+        scheduler.start();
+        try {
+            ArrayList<MockJob> jobs = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                MockJob job = new MockJob(i % 4, 1000, null);
+                jobs.add(job);
+                assertTrue(scheduler.submit(job));
+            }
+
+            for (MockJob job : jobs) {
+                assertTrue(job.await(TIMEOUT));
+                assertEquals(1000, job.fed());
+                assertEquals(10, job.maxTurnSize());
+            }
+
+            assertEquals(0, scheduler.numJobs());
+            assertEquals(0, scheduler.numClients());
+
+        } finally {
+            scheduler.close();
+        }
+    }
+
+    @Test
+    public void testFairness() throws Exception {
+        List<Integer> turns = Collections.synchronizedList(new ArrayList<>());
+
+        CatchUpFeedScheduler scheduler = new CatchUpFeedScheduler(1, 10, 0L);
+        try {
+            // Client 0 catches up on ten partitions, client 1 on one partition
+            ArrayList<MockJob> jobs = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                jobs.add(new MockJob(0, 100, turns));
+            }
+            MockJob job1 = new MockJob(1, 100, turns);
+            jobs.add(job1);
+
+            for (MockJob job : jobs) {
+                assertTrue(scheduler.submit(job));
+            }
+            scheduler.start();
+
+            // Turns alternate between clients regardless of the number of jobs
+            assertTrue(job1.await(TIMEOUT));
+            for (int i = 0; i < 20; i++) {
+                assertEquals(i % 2, (int) turns.get(i));
+            }
+
+            for (MockJob job : jobs) {
+                assertTrue(job.await(TIMEOUT));
+            }
+
+        } finally {
+            scheduler.close();
+        }
+    }
+
+    @Test
+    public void testRateLimit() throws Exception {
+        CatchUpFeedScheduler scheduler = new CatchUpFeedScheduler(2, 10, 100L);
+        scheduler.start();
+        try {
+            long start = System.currentTimeMillis();
+
+            MockJob job = new MockJob(0, 300, null);
+            assertTrue(scheduler.submit(job));
+
+            // The bucket starts with tokens for one second, so the rest takes about two seconds
+            assertTrue(job.await(TIMEOUT));
+            assertTrue(System.currentTimeMillis() - start >= 1500);
+
+        } finally {
+            scheduler.close();
+        }
+    }
+
+    @Test
+    public void testBackoff() throws Exception {
+        CatchUpFeedScheduler scheduler = new CatchUpFeedScheduler(1, 10, 0L);
+        scheduler.start();
+        try {
+            long start = System.nanoTime();
+
+            // The first three turns fail and back off for 100 ms each
+            MockJob failingJob = new MockJob(0, 100, null, 3, TimeUnit.MILLISECONDS.toNanos(100));
+            MockJob job = new MockJob(1, 1000, null);
+            assertTrue(scheduler.submit(failingJob));
+            assertTrue(scheduler.submit(job));
+
+            // The other client is served while the failing job backs off
+            assertTrue(job.await(TIMEOUT));
+            assertFalse(failingJob.isDone());
+
+            assertTrue(failingJob.await(TIMEOUT));
+            assertEquals(100, failingJob.fed());
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(300));
+
+        } finally {
+            scheduler.close();
+        }
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        CatchUpFeedScheduler scheduler = new CatchUpFeedScheduler(1, 10, 1L);
+        scheduler.start();
+
+        MockJob job = new MockJob(0, 100, null);
+        assertTrue(scheduler.submit(job));
+        scheduler.close();
+
+        assertFalse(scheduler.submit(new MockJob(0, 100, null)));
+        assertFalse(job.await(100));
+        assertEquals(0, scheduler.numJobs());
+    }
+
+    private static class MockJob implements CatchUpFeedScheduler.Job {
+
+        private final int clientId;
+        private final int size;
+        private final List<Integer> turns;
+        private final long backoffNanos;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private int failures;
+        private int fed = 0;
+        private int maxTurnSize = 0;
+        private long retryTime = 0L;
+
+        MockJob(int clientId, int size, List<Integer> turns) {
+            this(clientId, size, turns, 0, 0L);
+        }
+
+        MockJob(int clientId, int size, List<Integer> turns, int failures, long backoffNanos) {
+            this.clientId = clientId;
+            this.size = size;
+            this.turns = turns;
+            this.failures = failures;
+            this.backoffNanos = backoffNanos;
+        }
+
+        @Override
+        public int clientId() {
+            return clientId;
+        }
+
+        @Override
+        public synchronized int run(int maxTransactions) {
+            if (failures > 0) {
+                failures--;
+                retryTime = System.nanoTime() + backoffNanos;
+                return 0;
+            }
+
+            int n = Math.min(maxTransactions, size - fed);
+            fed += n;
+            maxTurnSize = Math.max(maxTurnSize, n);
+
+            if (turns != null) {
+                turns.add(clientId);
+            }
+            if (fed == size) {
+                done.countDown();
+            }
+            return n;
+        }
+
+        @Override
+        public synchronized boolean isDone() {
+            return fed == size;
+        }
+
+        @Override
+        public synchronized long delay(long now) {
+            return retryTime - now;
+        }
+
+        synchronized int fed() {
+            return fed;
+        }
+
+        synchronized int maxTurnSize() {
+            return maxTurnSize;
+        }
+
+        boolean await(long timeout) throws InterruptedException {
+            return done.await(timeout, TimeUnit.MILLISECONDS);
+        }
+
+    }
+
+}
@@ -7,6 +7,9 @@ import org.junit.Before;
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 
 public class FeedCacheTest {
 
@@ -99,6 +102,79 @@ public class FeedCacheTest {
         assertEquals(expectedMaxNumBlocks, partition2.getMaxNumBlocks());
     }
 
+    @Test
+    public void testDirectAllocation() {
+        FeedCache directCache = new FeedCache(FEED_CACHE_SIZE, true, null);
+        try {
+            assertEquals(NUM_BLOCKS, directCache.getSharedPoolSize());
+
+            FeedCachePartition partition = directCache.getPartition(0);
+            FeedData[] data = fillPartition(partition);
+
+            for (FeedData feedData : data) {
+                assertEquals(feedData, partition.get(feedData.transactionId));
+            }
+
+            partition.close();
+            assertEquals(NUM_BLOCKS, directCache.getSharedPoolSize());
+
+        } finally {
+            directCache.close();
+        }
+    }
+
+    @Test
+    public void testCheckOutNeverBlocks() {
+        FeedCache smallCache = new FeedCache(FeedCache.BLOCK_SIZE * 2, null);
+        try {
+            FeedCacheBlock block1 = smallCache.checkOut(FeedCacheBlockKey.get(0, 0));
+            FeedCacheBlock block2 = smallCache.checkOut(FeedCacheBlockKey.get(0, 64));
+            assertNotNull(block1);
+            assertNotNull(block2);
+
+            // No block is available
+            assertNull(smallCache.checkOut(FeedCacheBlockKey.get(0, 128)));
+
+            smallCache.checkIn(FeedCacheBlockKey.get(0, 0), block1);
+            assertSame(block1, smallCache.checkOut(FeedCacheBlockKey.get(0, 128)));
+
+        } finally {
+            smallCache.close();
+        }
+
+        // A closed cache returns no block
+        assertNull(smallCache.checkOut(FeedCacheBlockKey.get(0, 0)));
+    }
+
+    @Test
+    public void testSecondChance() {
+        FeedCache smallCache = new FeedCache(FeedCache.BLOCK_SIZE * 2, null);
+        try {
+            FeedCacheBlockKey key1 = FeedCacheBlockKey.get(0, 0);
+            FeedCacheBlockKey key2 = FeedCacheBlockKey.get(0, 64);
+            FeedCacheBlock block1 = smallCache.checkOut(key1);
+            FeedCacheBlock block2 = smallCache.checkOut(key2);
+
+            // Both blocks are written, but only block 1 has been hit.
+            FeedData feedData1 = new FeedData(TestUtils.reqId(), 0, 0);
+            FeedData feedData2 = new FeedData(TestUtils.reqId(), 64, 0);
+            block1.add(feedData1.transactionId, feedData1.reqId, feedData1.header);
+            block2.add(feedData2.transactionId, feedData2.reqId, feedData2.header);
+            assertEquals(feedData1, block1.get(feedData1.transactionId));
+
+            smallCache.checkIn(key1, block1);
+            smallCache.checkIn(key2, block2);
+
+            // The older block gets a second chance because it has been hit. The block only written is evicted.
+            assertSame(block2, smallCache.checkOut(FeedCacheBlockKey.get(0, 128)));
+            assertSame(block1, smallCache.checkOut(key1));
+            assertEquals(feedData1, block1.get(feedData1.transactionId));
+
+        } finally {
+            smallCache.close();
+        }
+    }
+
     private FeedData[] fillPartition(FeedCachePartition partition) {
         FeedData[] data = new FeedData[partition.getMaxNumBlocks() * FeedCacheBlock.NUM_TRANSACTIONS];
 
@@ -0,0 +1,134 @@
+package com.wepay.waltz.server.internal;
+
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.Assert.assertFalse;
+
+/**
+ * Measures the latency from a commit to the feed threads seeing it, and the number of wake-ups and context switches
+ * of the feed threads. Feed threads follow the high-water mark the same way the feed tasks of a partition do.
+ * Context switches are read from /proc on Linux and reported as -1 elsewhere.
+ */
+@Ignore
+public class FeedSynchronizerStressTest {
+
+    private static final int NUM_COMMITS = 200000;
+    private static final long COMMIT_INTERVAL_NANOS = TimeUnit.MICROSECONDS.toNanos(20);
+    private static final long TIMEOUT = 100000;
+
+    @Test
+    public void testOneFeedThread() throws Exception {
+        test(1);
+    }
+
+    @Test
+    public void testManyFeedThreads() throws Exception {
+        test(8);
+    }
+
+    private void test(int numFeedThreads) throws Exception {
+        FeedSynchronizer feedSync = new FeedSynchronizer();
+        AtomicLong highWaterMark = new AtomicLong(-1L);
+        AtomicLongArray commitTimes = new AtomicLongArray(NUM_COMMITS);
+
+        long[][] latencies = new long[numFeedThreads][NUM_COMMITS];
+        int[] numSamples = new int[numFeedThreads];
+        long[] numAwaits = new long[numFeedThreads];
+        long[] numContextSwitches = new long[numFeedThreads];
+
+        Thread[] feedThreads = new Thread[numFeedThreads];
+        for (int i = 0; i < numFeedThreads; i++) {
+            final int index = i;
+            feedThreads[i] = new Thread(() -> {
+                long switches = contextSwitches();
+                long seen = -1L;
+                try {
+                    while (seen < NUM_COMMITS - 1) {
+                        long version = feedSync.version();
+                        long current = highWaterMark.get();
+                        if (current > seen) {
+                            // The latency of the latest commit seen
+                            latencies[index][numSamples[index]++] = System.nanoTime() - commitTimes.get((int) current);
+                            seen = current;
+                        } else {
+                            numAwaits[index]++;
+                            feedSync.await(version);
+                        }
+                    }
+                } catch (PartitionClosedException ex) {
+                    // Ignore
+                }
+                numContextSwitches[index] = switches < 0 ? -1L : contextSwitches() - switches;
+            });
+            feedThreads[i].start();
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < NUM_COMMITS; i++) {
+            commitTimes.set(i, System.nanoTime());
+            highWaterMark.set(i);
+            feedSync.unblock();
+
+            LockSupport.parkNanos(COMMIT_INTERVAL_NANOS);
+        }
+        long elapsed = System.nanoTime() - start;
+
+        for (Thread thread : feedThreads) {
+            thread.join(TIMEOUT);
+            assertFalse(thread.isAlive());
+        }
+        feedSync.close();
+
+        long[] all = new long[Arrays.stream(numSamples).sum()];
+        int pos = 0;
+        for (int i = 0; i < numFeedThreads; i++) {
+            System.arraycopy(latencies[i], 0, all, pos, numSamples[i]);
+            pos += numSamples[i];
+        }
+        Arrays.sort(all);
+
+        System.out.println(String.format("   feed threads: %12d", numFeedThreads));
+        System.out.println(String.format("        commits: %12d", NUM_COMMITS));
+        System.out.println(String.format("    commits/sec: %12d", NUM_COMMITS * 1000000000L / elapsed));
+        System.out.println(String.format(" p50 latency us: %12d", TimeUnit.NANOSECONDS.toMicros(all[all.length / 2])));
+        System.out.println(String.format(" p99 latency us: %12d", TimeUnit.NANOSECONDS.toMicros(all[all.length * 99 / 100])));
+        System.out.println(String.format(" max latency us: %12d", TimeUnit.NANOSECONDS.toMicros(all[all.length - 1])));
+        System.out.println(String.format("awaits/commit  : %12.3f", (double) Arrays.stream(numAwaits).sum() / numFeedThreads / NUM_COMMITS));
+        System.out.println(String.format("switches/commit: %12.3f", Arrays.stream(numContextSwitches).anyMatch(n -> n < 0)
+            ? -1.0 : (double) Arrays.stream(numContextSwitches).sum() / numFeedThreads / NUM_COMMITS));
+    }
+
+    /**
+     * Returns the number of context switches of the current thread, or -1 if not available.
+     */
+    private static long contextSwitches() {
+        Path status = Paths.get("/proc/thread-self/status");
+        if (!Files.exists(status)) {
+            return -1L;
+        }
+
+        try {
+            long switches = 0L;
+            for (String line : Files.readAllLines(status)) {
+                if (line.startsWith("voluntary_ctxt_switches:") || line.startsWith("nonvoluntary_ctxt_switches:")) {
+                    switches += Long.parseLong(line.substring(line.indexOf(':') + 1).trim());
+                }
+            }
+            return switches;
+        } catch (IOException | NumberFormatException ex) {
+            return -1L;
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+package com.wepay.waltz.server.internal;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FeedSynchronizerTest {
+
+    private static final long TIMEOUT = 10000;
+
+    @Test
+    public void testAwait() throws Exception {
+        FeedSynchronizer feedSync = new FeedSynchronizer();
+
+        // Returns immediately if the version has changed
+        long version = feedSync.version();
+        feedSync.unblock();
+        feedSync.await(version);
+        assertEquals(version + 1, feedSync.version());
+
+        CountDownLatch done = new CountDownLatch(1);
+        long snapshot = feedSync.version();
+        Thread thread = new Thread(() -> {
+            feedSync.await(snapshot);
+            done.countDown();
+        });
+        thread.start();
+
+        assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+        assertEquals(1, feedSync.numWaiters());
+
+        feedSync.unblock();
+        assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+        assertEquals(0, feedSync.numWaiters());
+
+        thread.join();
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        FeedSynchronizer feedSync = new FeedSynchronizer();
+
+        CountDownLatch done = new CountDownLatch(1);
+        long snapshot = feedSync.version();
+        Thread thread = new Thread(() -> {
+            feedSync.await(snapshot);
+            done.countDown();
+        });
+        thread.start();
+        assertFalse(done.await(100, TimeUnit.MILLISECONDS));
+
+        feedSync.close();
+        assertTrue(done.await(TIMEOUT, TimeUnit.MILLISECONDS));
+
+        // The version stays closed
+        feedSync.unblock();
+        try {
+            feedSync.version();
+            fail();
+        } catch (PartitionClosedException ex) {
+            // OK
+        }
+
+        thread.join();
+    }
+
+    @Test
+    public void testNoLostWakeUp() throws Exception {
+        final int numWaiters = 4;
+        final long numUpdates = 100000;
+
+        FeedSynchronizer feedSync = new FeedSynchronizer();
+        AtomicLong highWaterMark = new AtomicLong(-1L);
+
+        // Each waiter follows the high-water mark the same way feed tasks do
+        ArrayList<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < numWaiters; i++) {
+            Thread thread = new Thread(() -> {
+                long seen = -1L;
+                try {
+                    while (seen < numUpdates - 1) {
+                        long version = feedSync.version();
+                        long current = highWaterMark.get();
+                        if (current > seen) {
+                            seen = current;
+                        } else {
+                            feedSync.await(version);
+                        }
+                    }
+                } catch (PartitionClosedException ex) {
+                    // Ignore
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+
+        for (long i = 0; i < numUpdates; i++) {
+            highWaterMark.set(i);
+            feedSync.unblock();
+        }
+
+        for (Thread thread : threads) {
+            thread.join(TIMEOUT);
+            assertFalse(thread.isAlive());
+        }
+        feedSync.close();
+    }
+
+}
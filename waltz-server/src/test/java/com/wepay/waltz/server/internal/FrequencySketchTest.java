@@ -0,0 +1,91 @@
+package com.wepay.waltz.server.internal;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrequencySketchTest {
+
+    @Test
+    public void testFrequency() {
+        FrequencySketch sketch = new FrequencySketch(1000);
+        Random rand = new Random();
+
+        int[] hashes = new int[500];
+        int[] counts = new int[hashes.length];
+        for (int i = 0; i < hashes.length; i++) {
+            hashes[i] = rand.nextInt();
+            counts[i] = rand.nextInt(FrequencySketch.MAX_COUNT + 1);
+            for (int j = 0; j < counts[i]; j++) {
+                sketch.increment(hashes[i]);
+            }
+        }
+
+        // The estimate is never smaller than the true count and rarely larger
+        int overestimated = 0;
+        for (int i = 0; i < hashes.length; i++) {
+            int frequency = sketch.frequency(hashes[i]);
+            assertTrue(frequency >= counts[i]);
+            if (frequency > counts[i]) {
+                overestimated++;
+            }
+        }
+        assertTrue(overestimated < hashes.length / 10);
+    }
+
+    @Test
+    public void testMaxCount() {
+        FrequencySketch sketch = new FrequencySketch(1000);
+
+        for (int i = 0; i < FrequencySketch.MAX_COUNT * 2; i++) {
+            sketch.increment(12345);
+        }
+        assertEquals(FrequencySketch.MAX_COUNT, sketch.frequency(12345));
+    }
+
+    @Test
+    public void testAging() {
+        FrequencySketch sketch = new FrequencySketch(100);
+
+        for (int i = 0; i < 8; i++) {
+            sketch.increment(12345);
+        }
+        assertEquals(8, sketch.frequency(12345));
+
+        // Counters are halved after the sample size (ten times the capacity) of accesses
+        for (int i = 0; i < 1000; i++) {
+            sketch.increment(i);
+        }
+        assertTrue(sketch.frequency(12345) < 8);
+    }
+
+    @Test
+    public void testConcurrentIncrements() throws Exception {
+        FrequencySketch sketch = new FrequencySketch(1000);
+
+        // Threads increment distinct keys concurrently. No increment is lost.
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            final int hash = i * 7919;
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < FrequencySketch.MAX_COUNT; j++) {
+                    sketch.increment(hash);
+                }
+            });
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int i = 0; i < threads.length; i++) {
+            assertEquals(FrequencySketch.MAX_COUNT, sketch.frequency(i * 7919));
+        }
+    }
+
+}
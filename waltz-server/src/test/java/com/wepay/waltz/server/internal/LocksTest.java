@@ -3,6 +3,9 @@ package com.wepay.waltz.server.internal;
 import org.junit.Test;
 
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
@@ -352,6 +355,63 @@ public class LocksTest {
         assertTrue("numLockFailures=" + numLockFailures, 0 < numLockFailures && numLockFailures < numAccounts);
     }
 
+    @Test
+    public void testConcurrentLocking() throws Exception {
+        int numLocks = 20;
+        int numThreads = 8;
+        int numIterations = 20000;
+
+        Locks locks = new Locks(1000, 3, -1L);
+        AtomicIntegerArray holders = new AtomicIntegerArray(numLocks);
+        AtomicLong nextTransactionId = new AtomicLong(0L);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+
+        Thread[] threads = new Thread[numThreads];
+        for (int t = 0; t < numThreads; t++) {
+            threads[t] = new Thread(() -> {
+                Random random = new Random();
+                try {
+                    for (int i = 0; i < numIterations; i++) {
+                        int lock1 = random.nextInt(numLocks);
+                        int lock2 = random.nextInt(numLocks);
+                        Locks.LockRequest lockRequest = Locks.createRequest(array(lock1), array(lock2), noLocks);
+
+                        if (locks.begin(lockRequest)) {
+                            // No other thread may hold the write lock
+                            assertTrue(holders.compareAndSet(lock1, 0, 1));
+
+                            long transactionId = nextTransactionId.getAndIncrement();
+                            locks.commit(lockRequest, transactionId);
+                            assertTrue(locks.getLockHighWaterMark(lockRequest) >= transactionId);
+
+                            holders.set(lock1, 0);
+                            locks.end(lockRequest);
+                        }
+                    }
+                } catch (Throwable ex) {
+                    error.compareAndSet(null, ex);
+                }
+            });
+            threads[t].start();
+        }
+
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        if (error.get() != null) {
+            throw new AssertionError(error.get());
+        }
+
+        assertEquals(0, locks.numActiveLocks());
+        assertTrue(nextTransactionId.get() > 0);
+
+        // All locks are released
+        for (int lock = 0; lock < numLocks; lock++) {
+            assertTrue(locks.begin(Locks.createRequest(array(lock), noLocks, noLocks)));
+        }
+    }
+
     private int[] array(int... arr) {
         return arr;
     }
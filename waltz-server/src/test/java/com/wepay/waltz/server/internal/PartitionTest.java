@@ -3,11 +3,16 @@ package com.wepay.waltz.server.internal;
 import com.wepay.riff.network.Message;
 import com.wepay.waltz.common.message.AppendRequest;
 import com.wepay.waltz.common.message.FeedData;
+import com.wepay.waltz.common.message.FeedDataBatch;
 import com.wepay.waltz.common.message.FeedRequest;
+import com.wepay.waltz.common.message.LockFailure;
 import com.wepay.waltz.common.message.MessageType;
 import com.wepay.waltz.common.message.MountRequest;
 import com.wepay.waltz.common.message.MountResponse;
+import com.wepay.waltz.common.message.Record;
 import com.wepay.waltz.common.message.ReqId;
+import com.wepay.waltz.common.message.TransactionDataBatchRequest;
+import com.wepay.waltz.common.message.TransactionDataBatchResponse;
 import com.wepay.waltz.common.util.Utils;
 import com.wepay.waltz.server.WaltzServerConfig;
 import com.wepay.waltz.store.exception.StoreException;
@@ -19,6 +24,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Properties;
 import java.util.Random;
 import java.util.concurrent.LinkedBlockingQueue;
@@ -267,6 +273,221 @@ public class PartitionTest {
         }
     }
 
+    @Test
+    public void testBatchedFeed() throws Exception {
+        Properties props = new Properties();
+        props.setProperty(WaltzServerConfig.FEED_BATCH_SIZE, "30");
+        WaltzServerConfig config = new WaltzServerConfig(props);
+        Partition partition = new Partition(PARTITION_ID, storePartition, feedCachePartition, fetcher, config);
+        partition.open();
+        try {
+            int clientId = 0;
+            long clientHighWaterMark = -1L;
+            Message msg;
+
+            MockPartitionClient partitionClient = new MockPartitionClient(seqNumGenerator.getAndIncrement(), clientId);
+            partition.setPartitionClient(partitionClient);
+            partition.receiveMessage(
+                new MountRequest(reqId(clientId), clientHighWaterMark, partitionClient.seqNum(), true),
+                partitionClient
+            );
+
+            msg = partitionClient.nextMessage(TIMEOUT);
+            assertNotNull(msg);
+            assertEquals(MessageType.MOUNT_RESPONSE, msg.type());
+
+            // Append
+            int numTransactions = (int) partition.minFetchSize * 2;
+            append(partition, partitionClient, numTransactions);
+
+            Uninterruptibly.run(() -> storePartition.await(numTransactions - 1, TIMEOUT));
+
+            // Send feed request after data are stored.
+            partition.receiveMessage(
+                new FeedRequest(reqId(clientId), clientHighWaterMark, true),
+                partitionClient
+            );
+
+            // Get the feed data in batches (all data in one fetch, thus no intervening suspension)
+            long nextTransactionId = 0L;
+            while (nextTransactionId < numTransactions) {
+                msg = partitionClient.nextMessage(TIMEOUT);
+                assertNotNull(msg);
+                if (msg.type() == MessageType.FEED_DATA_BATCH) {
+                    FeedDataBatch batch = (FeedDataBatch) msg;
+                    assertTrue(batch.size() <= 30);
+                    assertEquals(nextTransactionId, batch.firstTransactionId);
+                    nextTransactionId += batch.size();
+                } else {
+                    assertEquals(MessageType.FEED_DATA, msg.type());
+                    assertEquals(nextTransactionId, ((FeedData) msg).transactionId);
+                    nextTransactionId++;
+                }
+            }
+            assertEquals(numTransactions, nextTransactionId);
+
+            // Feed suspended
+            msg = partitionClient.nextMessage(TIMEOUT);
+            assertNotNull(msg);
+            assertEquals(MessageType.FEED_SUSPENDED, msg.type());
+
+        } finally {
+            partition.close();
+        }
+    }
+
+    @Test
+    public void testInlineDataFeed() throws Exception {
+        Properties props = new Properties();
+        props.setProperty(WaltzServerConfig.FEED_BATCH_SIZE, "30");
+        WaltzServerConfig config = new WaltzServerConfig(props);
+        Partition partition = new Partition(PARTITION_ID, storePartition, feedCachePartition, fetcher, config);
+        partition.open();
+        try {
+            long clientHighWaterMark = -1L;
+            Message msg;
+
+            // Client 0 asks for inline data. Client 1 asks for inline data only up to zero bytes, thus nothing is inlined.
+            MockPartitionClient[] partitionClients = new MockPartitionClient[2];
+            for (int clientId = 0; clientId < 2; clientId++) {
+                MockPartitionClient partitionClient = new MockPartitionClient(seqNumGenerator.getAndIncrement(), clientId);
+                partition.setPartitionClient(partitionClient);
+                partition.receiveMessage(
+                    new MountRequest(reqId(clientId), clientHighWaterMark, partitionClient.seqNum(), true, clientId == 0 ? 1024 : 0),
+                    partitionClient
+                );
+
+                msg = partitionClient.nextMessage(TIMEOUT);
+                assertNotNull(msg);
+                assertEquals(MessageType.MOUNT_RESPONSE, msg.type());
+
+                partitionClients[clientId] = partitionClient;
+            }
+
+            // Append
+            int numTransactions = (int) partition.minFetchSize * 2;
+            append(partition, partitionClients[0], numTransactions);
+
+            Uninterruptibly.run(() -> storePartition.await(numTransactions - 1, TIMEOUT));
+
+            partition.receiveMessage(new FeedRequest(reqId(0), clientHighWaterMark, true, 1024), partitionClients[0]);
+            partition.receiveMessage(new FeedRequest(reqId(1), clientHighWaterMark, true, 0), partitionClients[1]);
+
+            // Client 0 gets all entries in batches with the data inlined
+            long nextTransactionId = 0L;
+            while (nextTransactionId < numTransactions) {
+                msg = partitionClients[0].nextMessage(TIMEOUT);
+                assertNotNull(msg);
+                assertEquals(MessageType.FEED_DATA_BATCH, msg.type());
+
+                FeedDataBatch batch = (FeedDataBatch) msg;
+                assertEquals(nextTransactionId, batch.firstTransactionId);
+                assertNotNull(batch.data);
+                for (int i = 0; i < batch.size(); i++) {
+                    Record record = storePartition.getRecord(batch.transactionId(i));
+                    assertTrue(Arrays.equals(record.data, batch.data(i)));
+                    assertEquals(record.checksum, batch.checksums[i]);
+                }
+                nextTransactionId += batch.size();
+            }
+            assertEquals(numTransactions, nextTransactionId);
+
+            msg = partitionClients[0].nextMessage(TIMEOUT);
+            assertNotNull(msg);
+            assertEquals(MessageType.FEED_SUSPENDED, msg.type());
+
+            // Client 1 gets no data
+            nextTransactionId = 0L;
+            while (nextTransactionId < numTransactions) {
+                msg = partitionClients[1].nextMessage(TIMEOUT);
+                assertNotNull(msg);
+                if (msg.type() == MessageType.FEED_DATA_BATCH) {
+                    FeedDataBatch batch = (FeedDataBatch) msg;
+                    assertEquals(nextTransactionId, batch.firstTransactionId);
+                    assertNull(batch.data);
+                    nextTransactionId += batch.size();
+                } else {
+                    assertEquals(MessageType.FEED_DATA, msg.type());
+                    nextTransactionId++;
+                }
+            }
+            assertEquals(numTransactions, nextTransactionId);
+
+        } finally {
+            partition.close();
+        }
+    }
+
+    @Test
+    public void testBroadcastFeed() throws Exception {
+        Properties props = new Properties();
+        props.setProperty(WaltzServerConfig.BROADCAST_FEED, "true");
+        WaltzServerConfig config = new WaltzServerConfig(props);
+        Partition partition = new Partition(PARTITION_ID, storePartition, feedCachePartition, fetcher, config);
+        partition.open();
+        try {
+            int numClients = 3;
+            long clientHighWaterMark = -1L;
+            Message msg;
+
+            MockPartitionClient[] partitionClients = new MockPartitionClient[numClients];
+            for (int clientId = 0; clientId < numClients; clientId++) {
+                MockPartitionClient partitionClient = new MockPartitionClient(seqNumGenerator.getAndIncrement(), clientId);
+                partition.setPartitionClient(partitionClient);
+                partition.receiveMessage(
+                    new MountRequest(reqId(clientId), clientHighWaterMark, partitionClient.seqNum()),
+                    partitionClient
+                );
+
+                msg = partitionClient.nextMessage(TIMEOUT);
+                assertNotNull(msg);
+                assertEquals(MessageType.MOUNT_RESPONSE, msg.type());
+
+                partitionClients[clientId] = partitionClient;
+            }
+
+            // Append
+            append(partition, partitionClients[0], (int) partition.minFetchSize * 2);
+
+            Uninterruptibly.run(() -> storePartition.await(partition.minFetchSize * 2 - 1, TIMEOUT));
+
+            // Send feed requests after data are stored.
+            for (int clientId = 0; clientId < numClients; clientId++) {
+                partition.receiveMessage(
+                    new FeedRequest(reqId(clientId), clientHighWaterMark),
+                    partitionClients[clientId]
+                );
+            }
+
+            // All clients get the feed data in order (all data in one batch, thus no intervening suspension)
+            for (int i = 0; i < partition.minFetchSize * 2; i++) {
+                for (MockPartitionClient partitionClient : partitionClients) {
+                    msg = partitionClient.nextMessage(TIMEOUT);
+                    assertNotNull(msg);
+                    assertEquals(MessageType.FEED_DATA, msg.type());
+                    assertEquals(i, ((FeedData) msg).transactionId);
+                }
+            }
+
+            // Feed suspended
+            for (MockPartitionClient partitionClient : partitionClients) {
+                msg = partitionClient.nextMessage(TIMEOUT);
+                assertNotNull(msg);
+                assertEquals(MessageType.FEED_SUSPENDED, msg.type());
+            }
+
+            partition.close();
+
+            assertEquals(numClients, partition.getTotalRealtimeFeedContextAdded());
+            assertEquals(numClients, partition.getTotalRealtimeFeedContextRemoved());
+
+        } finally {
+            if (!partition.isClosed()) {
+                partition.close();
+            }
+        }
+    }
+
     @Test
     public void testFeedContextCleanUp() throws Exception {
         Partition partition = new Partition(PARTITION_ID, storePartition, feedCachePartition, fetcher, config);
@@ -565,6 +786,195 @@ public class PartitionTest {
         }
     }
 
+    @Test
+    public void testScheduledCatchUp() throws Exception {
+        CatchUpFeedScheduler scheduler = new CatchUpFeedScheduler(2, 7, 0L);
+        scheduler.start();
+
+        Partition partition = new Partition(PARTITION_ID, storePartition, feedCachePartition, fetcher, config, null, scheduler);
+        partition.open();
+        try {
+            int clientId = 0;
+            long clientHighWaterMark = -1L;
+            Message msg;
+
+            MockPartitionClient partitionClient = new MockPartitionClient(seqNumGenerator.getAndIncrement(), clientId);
+            partition.setPartitionClient(partitionClient);
+            partition.receiveMessage(
+                new MountRequest(reqId(clientId), clientHighWaterMark, partitionClient.seqNum()),
+                partitionClient
+            );
+
+            msg = partitionClient.nextMessage(TIMEOUT);
+            assertNotNull(msg);
+            assertEquals(MessageType.MOUNT_RESPONSE, msg.type());
+
+            // Append
+            append(partition, partitionClient, (int) partition.realtimeThreshold);
+
+            Uninterruptibly.run(() -> storePartition.await(partition.realtimeThreshold - 1, TIMEOUT));
+
+            // Send feed request after data are stored. The fetch size is the size of the data set.
+            partition.receiveMessage(
+                new FeedRequest(reqId(clientId), clientHighWaterMark),
+                partitionClient
+            );
+
+            // Get feed data in order across turns of the scheduler
+            for (int i = 0; i < partition.realtimeThreshold; i++) {
+                msg = partitionClient.nextMessage(TIMEOUT);
+                assertNotNull(msg);
+                assertEquals(MessageType.FEED_DATA, msg.type());
+                assertEquals(i, ((FeedData) msg).transactionId);
+            }
+
+            // Feed suspended
+            msg = partitionClient.nextMessage(TIMEOUT);
+            assertNotNull(msg);
+            assertEquals(MessageType.FEED_SUSPENDED, msg.type());
+
+            // Stop the workers to make sure the job is done before checking asserts.
+            scheduler.close();
+            partition.close();
+
+            assertEquals(0, partition.getTotalRealtimeFeedContextAdded());
+            assertEquals(0, partition.getTotalRealtimeFeedContextRemoved());
+            assertEquals(1, partition.getTotalCatchupFeedContextAdded());
+            assertEquals(1, partition.getTotalCatchupFeedContextRemoved());
+
+        } finally {
+            scheduler.close();
+            if (!partition.isClosed()) {
+                partition.close();
+            }
+        }
+    }
+
+    @Test
+    public void testAppendPipeline() throws Exception {
+        Properties props = new Properties();
+        props.setProperty(WaltzServerConfig.APPEND_QUEUE_SIZE, "10");
+        props.setProperty(WaltzServerConfig.APPEND_PREPARE_THREADS, "2");
+        props.setProperty(WaltzServerConfig.ASYNC_STORE_APPEND, "true");
+        WaltzServerConfig config = new WaltzServerConfig(props);
+        Partition partition = new Partition(PARTITION_ID, storePartition, feedCachePartition, fetcher, config);
+        partition.open();
+        try {
+            int clientId = 0;
+            Message msg;
+
+            MockPartitionClient partitionClient = new MockPartitionClient(seqNumGenerator.getAndIncrement(), clientId);
+            partition.setPartitionClient(partitionClient);
+            partition.receiveMessage(
+                new MountRequest(reqId(clientId), -1L, partitionClient.seqNum()),
+                partitionClient
+            );
+
+            msg = partitionClient.nextMessage(TIMEOUT);
+            assertNotNull(msg);
+            assertEquals(MessageType.MOUNT_RESPONSE, msg.type());
+
+            // Appends with distinct locks. More appends than the queue size.
+            for (int i = 0; i < 100; i++) {
+                byte[] data = data();
+                partition.receiveMessage(
+                    new AppendRequest(reqId(clientId), -1L, new int[] {i}, NO_LOCK, NO_LOCK, HEADER, data, Utils.checksum(data)),
+                    partitionClient
+                );
+            }
+
+            // The flush completes after all appends
+            assertEquals(99L, (long) partition.flushAppendQueue().get());
+
+            // An append with a stale high-water mark fails
+            byte[] data = data();
+            ReqId reqId = reqId(clientId);
+            partition.receiveMessage(
+                new AppendRequest(reqId, -1L, new int[] {0}, NO_LOCK, NO_LOCK, HEADER, data, Utils.checksum(data)),
+                partitionClient
+            );
+
+            msg = partitionClient.nextMessage(TIMEOUT);
+            assertNotNull(msg);
+            assertEquals(MessageType.LOCK_FAILURE, msg.type());
+            assertEquals(reqId, ((LockFailure) msg).reqId);
+            assertTrue(((LockFailure) msg).transactionId >= 0L);
+
+            assertEquals(99L, (long) partition.flushAppendQueue().get());
+
+        } finally {
+            partition.close();
+        }
+    }
+
+    @Test
+    public void testTransactionDataBatch() throws Exception {
+        Properties props = new Properties();
+        props.setProperty(WaltzServerConfig.TRANSACTION_DATA_BATCH_SIZE, "8");
+        WaltzServerConfig config = new WaltzServerConfig(props);
+        Partition partition = new Partition(PARTITION_ID, storePartition, feedCachePartition, fetcher, config);
+        partition.open();
+        try {
+            int clientId = 0;
+            Message msg;
+
+            MockPartitionClient partitionClient = new MockPartitionClient(seqNumGenerator.getAndIncrement(), clientId);
+            partition.setPartitionClient(partitionClient);
+            partition.receiveMessage(
+                new MountRequest(reqId(clientId), -1L, partitionClient.seqNum()),
+                partitionClient
+            );
+
+            msg = partitionClient.nextMessage(TIMEOUT);
+            assertNotNull(msg);
+            assertEquals(MessageType.MOUNT_RESPONSE, msg.type());
+
+            append(partition, partitionClient, 30);
+            assertEquals(29L, (long) partition.flushAppendQueue().get());
+
+            // Some of the transactions are in the cache
+            fetcher.fetch(new TransactionKey(PARTITION_ID, 3), storePartition);
+            fetcher.fetch(new TransactionKey(PARTITION_ID, 6), storePartition);
+
+            // The batch size is limited by the config
+            partition.receiveMessage(new TransactionDataBatchRequest(reqId(clientId), 2, 10), partitionClient);
+            TransactionDataBatchResponse response = nextTransactionDataBatchResponse(partitionClient);
+            assertNull(response.exception);
+            assertEquals(2L, response.firstTransactionId);
+            assertEquals(8, response.size());
+            for (int i = 0; i < response.size(); i++) {
+                Record record = storePartition.getRecord(response.transactionId(i));
+                assertTrue(Arrays.equals(record.data, response.data[i]));
+                assertEquals(record.checksum, response.checksums[i]);
+            }
+
+            // The batch ends at the high-water mark
+            partition.receiveMessage(new TransactionDataBatchRequest(reqId(clientId), 27, 5), partitionClient);
+            response = nextTransactionDataBatchResponse(partitionClient);
+            assertNull(response.exception);
+            assertEquals(3, response.size());
+
+            // No transaction
+            partition.receiveMessage(new TransactionDataBatchRequest(reqId(clientId), 30, 5), partitionClient);
+            response = nextTransactionDataBatchResponse(partitionClient);
+            assertNotNull(response.exception);
+            assertEquals(0, response.size());
+
+        } finally {
+            partition.close();
+        }
+    }
+
+    private TransactionDataBatchResponse nextTransactionDataBatchResponse(MockPartitionClient partitionClient) {
+        while (true) {
+            Message msg = partitionClient.nextMessage(TIMEOUT);
+            assertNotNull(msg);
+            if (msg.type() == MessageType.TRANSACTION_DATA_BATCH_RESPONSE) {
+                return (TransactionDataBatchResponse) msg;
+            }
+        }
+    }
+
     @Test(expected = PartitionClosedException.class)
     public void testFlushAppendQueueAlreadyClosed() throws StoreException, PartitionClosedException {
         Partition partition = new Partition(PARTITION_ID, storePartition, feedCachePartition, fetcher, config);
@@ -4,9 +4,11 @@ import com.wepay.waltz.common.util.Utils;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
@@ -140,4 +142,107 @@ public class TransactionCacheTest {
         }
     }
 
+    @Test
+    public void testPutIfFrequent() {
+        FrequencySketch sketch = new FrequencySketch(1000);
+        Random rand = new Random();
+
+        // Fill the cache with transactions read five times each
+        TransactionKey[] hotKeys = new TransactionKey[100];
+        for (int i = 0; i < hotKeys.length; i++) {
+            hotKeys[i] = new TransactionKey(0, i);
+            for (int j = 0; j < 5; j++) {
+                sketch.increment(hotKeys[i].hashCode());
+            }
+            cache.put(hotKeys[i], newData(rand, 100));
+        }
+
+        ArrayList<TransactionKey> retained = new ArrayList<>();
+        for (TransactionKey key : hotKeys) {
+            if (cache.get(key) != null) {
+                retained.add(key);
+            }
+        }
+        assertTrue(retained.size() < hotKeys.length);
+
+        // A scan of transactions read once is not cached
+        for (int i = 0; i < 100; i++) {
+            TransactionKey key = new TransactionKey(1, i);
+            sketch.increment(key.hashCode());
+            assertFalse(cache.putIfFrequent(key, newData(rand, 100), sketch, 2));
+            assertNull(cache.get(key));
+        }
+
+        // Transactions read less often than the victim are not cached
+        for (int i = 0; i < 100; i++) {
+            TransactionKey key = new TransactionKey(2, i);
+            for (int j = 0; j < 3; j++) {
+                sketch.increment(key.hashCode());
+            }
+            assertFalse(cache.putIfFrequent(key, newData(rand, 100), sketch, 2));
+        }
+
+        for (TransactionKey key : retained) {
+            assertNotNull(cache.get(key));
+        }
+
+        // A transaction read more often than the victim is cached
+        TransactionKey frequentKey = new TransactionKey(3, 0);
+        for (int j = 0; j < 10; j++) {
+            sketch.increment(frequentKey.hashCode());
+        }
+        TransactionData frequentData = newData(rand, 100);
+        assertTrue(cache.putIfFrequent(frequentKey, frequentData, sketch, 2));
+        assertEquals(frequentData, cache.get(frequentKey));
+        assertNull(cache.get(retained.get(0)));
+    }
+
+    @Test
+    public void testPutIfFrequentWithMultipleVictims() {
+        FrequencySketch sketch = new FrequencySketch(1000);
+        Random rand = new Random();
+
+        int entrySize = TransactionKey.SERIALIZED_KEY_SIZE + TransactionData.RECORD_OVERHEAD + 100;
+        int numEntries = CACHE_SIZE / entrySize;
+
+        // Fill the cache. The first transaction is read once, the others ten times each.
+        TransactionKey[] keys = new TransactionKey[numEntries];
+        for (int i = 0; i < numEntries; i++) {
+            keys[i] = new TransactionKey(0, i);
+            for (int j = 0; j < (i == 0 ? 1 : 10); j++) {
+                sketch.increment(keys[i].hashCode());
+            }
+            cache.put(keys[i], newData(rand, 100));
+        }
+
+        // A large transaction replaces the first three transactions. It is read more often than the first one only.
+        int largeDataSize = 2 * entrySize + 1 - TransactionKey.SERIALIZED_KEY_SIZE - TransactionData.RECORD_OVERHEAD;
+        TransactionKey largeKey = new TransactionKey(1, 0);
+        for (int j = 0; j < 5; j++) {
+            sketch.increment(largeKey.hashCode());
+        }
+        assertFalse(cache.putIfFrequent(largeKey, newData(rand, largeDataSize), sketch, 2));
+        for (TransactionKey key : keys) {
+            assertNotNull(cache.get(key));
+        }
+
+        // It is cached once it is read more often than all of them
+        for (int j = 0; j < 10; j++) {
+            sketch.increment(largeKey.hashCode());
+        }
+        TransactionData largeData = newData(rand, largeDataSize);
+        assertTrue(cache.putIfFrequent(largeKey, largeData, sketch, 2));
+        assertEquals(largeData, cache.get(largeKey));
+        for (int i = 0; i < 3; i++) {
+            assertNull(cache.get(keys[i]));
+        }
+        assertNotNull(cache.get(keys[3]));
+    }
+
+    private static TransactionData newData(Random rand, int dataSize) {
+        byte[] data = new byte[dataSize];
+        rand.nextBytes(data);
+        return new TransactionData(data, Utils.checksum(data));
+    }
+
 }
@@ -0,0 +1,61 @@
+package com.wepay.waltz.store.internal;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BatchSizeControllerTest {
+
+    private static final long MILLIS = 1000000L;
+
+    @Test
+    public void testStaticLimit() {
+        BatchSizeController controller = new BatchSizeController(0, 100);
+        assertEquals(100, controller.batchSizeLimit());
+        assertEquals(Integer.MAX_VALUE, controller.maxBatchBytes());
+        assertEquals(-1L, controller.expectedLatency());
+
+        for (int i = 0; i < 100; i++) {
+            controller.update(100, 1000, 1000 * MILLIS, 0);
+        }
+
+        // The limit never changes without a target latency
+        assertEquals(100, controller.batchSizeLimit());
+        assertEquals(1000L, controller.expectedLatency());
+    }
+
+    @Test
+    public void testAdaptiveLimit() {
+        BatchSizeController controller = new BatchSizeController(0, 100, 1000000, 10L);
+        assertEquals(100, controller.batchSizeLimit());
+        assertEquals(1000000, controller.maxBatchBytes());
+
+        // Slow batches without a backlog shrink the limit
+        for (int i = 0; i < 100; i++) {
+            controller.update(controller.batchSizeLimit(), 1000, 50 * MILLIS, 0);
+        }
+        assertEquals(1, controller.batchSizeLimit());
+
+        // A backlog grows the limit even if batches are slow
+        int prev = controller.batchSizeLimit();
+        for (int i = 0; i < 10; i++) {
+            controller.update(1, 1000, 50 * MILLIS, 1000);
+            assertTrue(controller.batchSizeLimit() > prev);
+            prev = controller.batchSizeLimit();
+        }
+
+        // Fast and full batches grow the limit up to the maximum
+        for (int i = 0; i < 100; i++) {
+            controller.update(controller.batchSizeLimit(), 1000, MILLIS, 0);
+        }
+        assertEquals(100, controller.batchSizeLimit());
+
+        // Fast batches that are not full keep the limit
+        for (int i = 0; i < 100; i++) {
+            controller.update(10, 1000, MILLIS, 0);
+        }
+        assertEquals(100, controller.batchSizeLimit());
+    }
+
+}
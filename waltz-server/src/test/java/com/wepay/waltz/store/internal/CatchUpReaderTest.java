@@ -0,0 +1,166 @@
+package com.wepay.waltz.store.internal;
+
+import com.wepay.waltz.common.message.Record;
+import com.wepay.waltz.store.TestUtils;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class CatchUpReaderTest {
+
+    @Test
+    public void testBatchSize() throws Exception {
+        MockSource source = new MockSource(100L);
+        CatchUpReader reader = new CatchUpReader(source, 0L, 10, 1000, 0, null);
+
+        long nextTransactionId = 0L;
+        while (nextTransactionId < 100L) {
+            ArrayList<Record> records = reader.next(100L);
+            assertTrue(records.size() <= 10);
+            nextTransactionId = assertRecords(nextTransactionId, records);
+            assertEquals(nextTransactionId, reader.nextTransactionId());
+        }
+        assertEquals(10, source.reads.size());
+    }
+
+    @Test
+    public void testBatchBytes() throws Exception {
+        // Data of transactions 8 to 63 is 2 bytes
+        MockSource source = new MockSource(64L);
+        CatchUpReader reader = new CatchUpReader(source, 8L, 20, 10, 0, null);
+
+        long nextTransactionId = 8L;
+        while (nextTransactionId < 64L) {
+            ArrayList<Record> records = reader.next(64L);
+            assertTrue(records.size() <= 5);
+            nextTransactionId = assertRecords(nextTransactionId, records);
+        }
+
+        // The first read is limited by the number of records. The rest are estimated from the record size.
+        assertEquals(20, (int) source.reads.get(0));
+        for (int i = 1; i < source.reads.size(); i++) {
+            assertTrue(source.reads.get(i) <= 5);
+        }
+    }
+
+    @Test
+    public void testReadAhead() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            MockSource source = new MockSource(100L);
+            CatchUpReader reader = new CatchUpReader(source, 0L, 10, 1000, 3, executor);
+
+            ArrayList<Record> records = reader.next(100L);
+            assertRecords(0L, records);
+
+            // The next three batches are read ahead
+            synchronized (source.reads) {
+                while (source.reads.size() < 4) {
+                    source.reads.wait(100);
+                }
+            }
+
+            long nextTransactionId = 10L;
+            while (nextTransactionId < 100L) {
+                nextTransactionId = assertRecords(nextTransactionId, reader.next(100L));
+            }
+            assertEquals(10, source.reads.size());
+
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testShortRead() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            // The source has only 25 records yet
+            MockSource source = new MockSource(25L);
+            CatchUpReader reader = new CatchUpReader(source, 0L, 10, 1000, 3, executor);
+
+            long nextTransactionId = 0L;
+            while (nextTransactionId < 25L) {
+                nextTransactionId = assertRecords(nextTransactionId, reader.next(100L));
+            }
+            assertEquals(0, reader.next(100L).size());
+
+            // The batches read ahead beyond the end of the source are discarded, and the read resumes after the gap
+            source.setSize(100L);
+            while (nextTransactionId < 100L) {
+                nextTransactionId = assertRecords(nextTransactionId, reader.next(100L));
+            }
+            assertEquals(100L, reader.nextTransactionId());
+
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void testEndMovedBack() throws Exception {
+        // Data of transactions 0 to 7 is 1 byte. A batch of ten records is returned in pieces of five records.
+        MockSource source = new MockSource(100L);
+        CatchUpReader reader = new CatchUpReader(source, 0L, 10, 5, 0, null);
+
+        ArrayList<Record> records = reader.next(100L);
+        assertRecords(0L, records);
+        assertEquals(5, records.size());
+
+        // No record at or after the end is returned
+        records = reader.next(7L);
+        assertRecords(5L, records);
+        assertEquals(2, records.size());
+        assertEquals(0, reader.next(7L).size());
+        assertEquals(7L, reader.nextTransactionId());
+
+        // The rest of the batch was discarded. The next batch is read from the source.
+        assertRecords(7L, reader.next(100L));
+        assertEquals(2, source.reads.size());
+    }
+
+    private static long assertRecords(long nextTransactionId, List<Record> records) {
+        for (Record record : records) {
+            assertEquals(nextTransactionId++, record.transactionId);
+        }
+        return nextTransactionId;
+    }
+
+    private static class MockSource implements CatchUpReader.RecordListReader {
+
+        final List<Integer> reads = Collections.synchronizedList(new ArrayList<>());
+
+        private volatile long size;
+
+        MockSource(long size) {
+            this.size = size;
+        }
+
+        void setSize(long size) {
+            this.size = size;
+        }
+
+        @Override
+        public ArrayList<Record> getRecordList(long transactionId, int maxNumRecords) {
+            ArrayList<Record> records = new ArrayList<>();
+            for (long txid = transactionId; txid < transactionId + maxNumRecords && txid < size; txid++) {
+                records.add(TestUtils.record(txid));
+            }
+
+            synchronized (reads) {
+                reads.add(maxNumRecords);
+                reads.notifyAll();
+            }
+            return records;
+        }
+
+    }
+
+}
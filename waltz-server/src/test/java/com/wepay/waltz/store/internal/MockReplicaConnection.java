@@ -6,6 +6,8 @@ import com.wepay.waltz.storage.common.SessionInfo;
 import com.wepay.waltz.storage.exception.StorageRpcException;
 
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 class MockReplicaConnection implements ReplicaConnection {
 
@@ -105,6 +107,18 @@ class MockReplicaConnection implements ReplicaConnection {
         factory.appendRecords(partitionId, sessionId, records);
     }
 
+    @Override
+    public CompletableFuture<Void> appendRecordsAsync(ArrayList<Record> records) {
+        // Complete in another thread like a response from the storage
+        return CompletableFuture.runAsync(() -> {
+            try {
+                appendRecords(records);
+            } catch (StorageRpcException ex) {
+                throw new CompletionException(ex);
+            }
+        });
+    }
+
     @Override
     public void close() {
 
@@ -1,5 +1,7 @@
 package com.wepay.waltz.store.internal;
 
+import com.wepay.waltz.common.message.Record;
+import com.wepay.waltz.common.message.ReqId;
 import com.wepay.waltz.store.TestUtils;
 import com.wepay.waltz.store.exception.GenerationMismatchException;
 import com.wepay.waltz.store.exception.RecoveryFailedException;
@@ -150,6 +152,128 @@ public class RecoveryManagerTest {
         test0(metaLastSessionIds, metaHighWaterMarks, storageLastSessionIds, storageLowWaterMarks, storageMaxTransactionIds, replicaAvailability);
     }
 
+    @Test
+    public void testCatchUpReplicasWithReadAhead() throws Exception {
+        // Test recovery when the last two replicas are falling far behind, and records are copied in small batches read ahead.
+        List<Long> metaLastSessionIds = Arrays.asList(998L, 998L, 998L, 998L, 998L);
+        List<Long> metaHighWaterMarks = Arrays.asList(UNRESOLVED, UNRESOLVED, UNRESOLVED, UNRESOLVED, UNRESOLVED);
+        List<Long> storageLastSessionIds = Arrays.asList(998L, 998L, 998L, 998L, 998L);
+        List<Long> storageLowWaterMarks = Arrays.asList(120L, 120L, 120L, 120L, 120L);
+        List<Long> storageMaxTransactionIds = Arrays.asList(120L, 120L, 120L, 110L, 100L);
+        List<Boolean> replicaAvailability = Arrays.asList(false, false, true, true, true); // Disable the first two replicas
+        ConnectionConfig recoveryConfig = new ConnectionConfig(null, UUID.randomUUID(), NUM_PARTITIONS, 100, 100, 3, 10, 2, false);
+
+        test0(
+            metaLastSessionIds,
+            metaHighWaterMarks,
+            storageLastSessionIds,
+            storageLowWaterMarks,
+            storageMaxTransactionIds,
+            replicaAvailability,
+            MIN_EXPECTED_HIGH_WATER_MARK,
+            MAX_EXPECTED_HIGH_WATER_MARK,
+            recoveryConfig
+        );
+    }
+
+    @Test
+    public void testCatchUpReplicasWithHandOff() throws Exception {
+        // Test that the last two replicas, which are falling far behind, are handed off to the catch-up of the replica
+        // sessions once a quorum has caught up.
+        List<Long> metaLastSessionIds = Arrays.asList(998L, 998L, 998L, 998L, 998L);
+        List<Long> metaHighWaterMarks = Arrays.asList(UNRESOLVED, UNRESOLVED, UNRESOLVED, UNRESOLVED, UNRESOLVED);
+        List<Long> storageMaxTransactionIds = Arrays.asList(120L, 120L, 120L, 110L, 100L);
+        ConnectionConfig recoveryConfig = new ConnectionConfig(null, UUID.randomUUID(), NUM_PARTITIONS, 100, 100, 3, 10, 2, true);
+
+        ZooKeeperServerRunner zooKeeperServerRunner = new ZooKeeperServerRunner(0);
+        try {
+            String connectString = zooKeeperServerRunner.start();
+            ZooKeeperClient zkClient = new ZooKeeperClientImpl(connectString, 30000);
+            ZNode znode = new ZNode("/test/partitions/0");
+
+            ArrayList<MockReplicaConnectionFactory> factories = new ArrayList<>();
+            ArrayList<ReplicaSession> replicaSessions = new ArrayList<>();
+            StoreSessionImpl session = null;
+
+            try {
+                TestUtils.setUpMetadata(GENERATION, SESSION_ID, metaLastSessionIds, metaHighWaterMarks, zkClient, znode);
+
+                ConnectionConfig config = TestUtils.makeConnectionConfig(NUM_PARTITIONS, UUID.randomUUID());
+
+                for (int i = 0; i < storageMaxTransactionIds.size(); i++) {
+                    MockReplicaConnectionFactory factory = new MockReplicaConnectionFactory(NUM_PARTITIONS);
+                    factory.setCurrentSession(PARTITION_ID, 998L);
+                    factory.appendRecords(PARTITION_ID, 998L, TestUtils.records(0, storageMaxTransactionIds.get(i) + 1));
+                    factory.setLastSessionInfo(PARTITION_ID, 998L, 120L);
+                    factory.setMaxTransactionId(PARTITION_ID, storageMaxTransactionIds.get(i));
+                    if (i >= 3) {
+                        // The replicas falling behind are not available until the others have recovered
+                        factory.setReplicaDown();
+                    }
+
+                    ReplicaId replicaId = new ReplicaId(PARTITION_ID, String.format(TestReplicaSessionManager.CONNECT_STRING_TEMPLATE, i));
+
+                    factories.add(factory);
+                    replicaSessions.add(new ReplicaSession(replicaId, SESSION_ID, config, factory));
+                }
+
+                session = new StoreSessionImpl(
+                    PARTITION_ID, GENERATION, SESSION_ID, new BatchSizeController(PARTITION_ID, 10), 1, recoveryConfig, replicaSessions, zkClient, znode
+                );
+                session.open();
+                assertEquals(MIN_EXPECTED_HIGH_WATER_MARK, session.highWaterMark());
+
+                for (int i = 0; i < 3; i++) {
+                    replicaSessions.get(i).awaitRecovery();
+                }
+
+                // A quorum has caught up. The replicas falling behind end the recovery at their own high-water marks.
+                for (int i = 3; i < factories.size(); i++) {
+                    factories.get(i).setReplicaUp();
+                    replicaSessions.get(i).awaitRecovery();
+
+                    MockReplicaConnectionFactory factory = factories.get(i);
+                    assertEquals(MIN_EXPECTED_HIGH_WATER_MARK, factory.getLowWaterMark(PARTITION_ID, SESSION_ID));
+                    assertEquals((long) storageMaxTransactionIds.get(i), factory.getMaxTransactionId(PARTITION_ID, SESSION_ID));
+                }
+
+                // The catch-up of the replica sessions copies the rest when a new transaction is appended
+                Record record = TestUtils.record(new ReqId(1, GENERATION, PARTITION_ID, 0), MIN_EXPECTED_HIGH_WATER_MARK + 1);
+                assertEquals(MIN_EXPECTED_HIGH_WATER_MARK + 1, TestUtils.syncAppend(session, record));
+
+                for (MockReplicaConnectionFactory factory : factories) {
+                    factory.await(PARTITION_ID, MIN_EXPECTED_HIGH_WATER_MARK + 1);
+                    assertEquals(MIN_EXPECTED_HIGH_WATER_MARK + 1, factory.getMaxTransactionId(PARTITION_ID, SESSION_ID));
+                    for (long transactionId = 0L; transactionId <= MIN_EXPECTED_HIGH_WATER_MARK; transactionId++) {
+                        Record copied = factory.getRecord(PARTITION_ID, SESSION_ID, transactionId);
+                        assertEquals(transactionId, copied.transactionId);
+                        assertTrue(Arrays.equals(TestUtils.data(transactionId), copied.data));
+                    }
+                }
+
+                // All replicas are recovered in the metadata
+                assertTrue("timeout while wait for metadata", TestUtils.awaitMetadata(factories.size(), SESSION_ID, zkClient, znode));
+
+            } finally {
+                if (session != null) {
+                    session.close();
+                }
+                for (ReplicaSession replicaSession : replicaSessions) {
+                    replicaSession.close();
+                }
+
+                zkClient.close();
+
+                for (ReplicaConnectionFactory factory : factories) {
+                    factory.close();
+                }
+            }
+        } finally {
+            zooKeeperServerRunner.stop();
+            zooKeeperServerRunner.clear();
+        }
+    }
+
     @Test
     public void testInconsistentStorage1() throws Exception {
         // Test recovery when third replica cannot vote due to inconsistent sessionId
@@ -336,6 +460,30 @@ public class RecoveryManagerTest {
         List<Boolean> replicaAvailability,
         long minExpectedHighWaterMark,
         long maxExpectedHighWaterMark
+    ) throws Exception {
+        test0(
+            metaLastSessionIds,
+            metaHighWaterMarks,
+            storageLastSessionIds,
+            storageLowWaterMarks,
+            storageMaxTransactionIds,
+            replicaAvailability,
+            minExpectedHighWaterMark,
+            maxExpectedHighWaterMark,
+            null
+        );
+    }
+
+    private void test0(
+        List<Long> metaLastSessionIds,
+        List<Long> metaHighWaterMarks,
+        List<Long> storageLastSessionIds,
+        List<Long> storageLowWaterMarks,
+        List<Long> storageMaxTransactionIds,
+        List<Boolean> replicaAvailability,
+        long minExpectedHighWaterMark,
+        long maxExpectedHighWaterMark,
+        ConnectionConfig recoveryConfig
     ) throws Exception {
         ZooKeeperServerRunner zooKeeperServerRunner = new ZooKeeperServerRunner(0);
         try {
@@ -346,7 +494,7 @@ public class RecoveryManagerTest {
             // Number of replicas; not include the ones get removed.
             int numReplicas = (int) replicaAvailability.stream().filter(bool -> bool != null).count();
             int quorum = numReplicas / 2 + 1;
-            RecoveryManager recoveryManager = new RecoveryManagerImpl(GENERATION, SESSION_ID, quorum, zkClient, znode);
+            RecoveryManager recoveryManager = new RecoveryManagerImpl(GENERATION, SESSION_ID, quorum, recoveryConfig, zkClient, znode);
 
             // Availabilities for replicas; not include the ones get removed.
             List<Boolean> availabilities = new ArrayList<>();
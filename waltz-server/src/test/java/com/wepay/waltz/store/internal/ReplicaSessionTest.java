@@ -19,6 +19,8 @@ import java.util.Properties;
 import java.util.UUID;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class ReplicaSessionTest {
 
@@ -185,6 +187,109 @@ public class ReplicaSessionTest {
         }
     }
 
+    @Test
+    public void testWindowedCatchUp() throws Exception {
+        ReplicaId replicaId = new ReplicaId(0, String.format(TestReplicaSessionManager.CONNECT_STRING_TEMPLATE, 0));
+        MockReplicaConnectionFactory connectionFactory = new MockReplicaConnectionFactory(1);
+        connectionFactory.setCurrentSession(0, 2);
+
+        // Read up to three batches ahead. Batches hold at most 20 records and 20 bytes of data.
+        ConnectionConfig config = new ConnectionConfig(null, UUID.randomUUID(), 1, 100, 100, 20, 20, 3, false);
+
+        MockStoreSession mockStoreSession = new MockStoreSession(0, -1L, -1L);
+        mockStoreSession.insertTransactions(0L, 1000L);
+        mockStoreSession.setHighWaterMark(999L);
+
+        ReplicaSession replicaSession = new ReplicaSession(replicaId, 2, config, connectionFactory);
+        RecoveryManager recoveryManager = TestUtils.mockRecoveryManager(1, -1L);
+        replicaSession.open(recoveryManager, mockStoreSession);
+
+        try {
+            ReplicaReader reader = replicaSession.reader;
+
+            // The replica has to catch up 990 transactions before it can write the append request
+            Voting voting = new Voting(1, 1);
+            replicaSession.append(990L, TestUtils.makeStoreAppendRequests(990L, 1000L), voting);
+            voting.await();
+
+            assertEquals(999L, connectionFactory.getMaxTransactionId(0, 2));
+            for (long transactionId = 0L; transactionId < 990L; transactionId++) {
+                assertEquals(transactionId, reader.getRecord(transactionId).transactionId);
+            }
+
+            // The batches are limited by both the number of records and the data size. Data of transactions 512 to 999 is 4 bytes.
+            synchronized (mockStoreSession.readSizes) {
+                assertEquals(20, (int) mockStoreSession.readSizes.get(0));
+                for (int readSize : mockStoreSession.readSizes) {
+                    assertTrue(readSize <= 20);
+                }
+                assertTrue(mockStoreSession.readSizes.contains(5));
+            }
+            assertEquals(1000L, replicaSession.nextTransactionId());
+
+        } finally {
+            replicaSession.close();
+            mockStoreSession.close();
+        }
+    }
+
+    @Test
+    public void testAsyncWrites() throws Exception {
+        ReplicaId replicaId = new ReplicaId(0, String.format(TestReplicaSessionManager.CONNECT_STRING_TEMPLATE, 0));
+        MockReplicaConnectionFactory connectionFactory = new MockReplicaConnectionFactory(1);
+        connectionFactory.setCurrentSession(0, 2);
+
+        // Writes are driven by completions. A catch-up runs in the async executor.
+        ConnectionConfig config = new ConnectionConfig(null, UUID.randomUUID(), 1, 100, 100, 20, 1000, 0, false, true);
+
+        MockStoreSession mockStoreSession = new MockStoreSession(0, -1L, -1L);
+        mockStoreSession.insertTransactions(0L, 100L);
+        mockStoreSession.setHighWaterMark(99L);
+
+        ReplicaSession replicaSession = new ReplicaSession(replicaId, 2, config, connectionFactory);
+        RecoveryManager recoveryManager = TestUtils.mockRecoveryManager(1, -1L);
+        replicaSession.open(recoveryManager, mockStoreSession);
+
+        try {
+            ReplicaReader reader = replicaSession.reader;
+
+            // Append requests queued while the replica is recovering are written after the recovery
+            Voting[] votings = new Voting[5];
+            for (int i = 0; i < votings.length; i++) {
+                votings[i] = new Voting(1, 1);
+                replicaSession.append(i * 10L, TestUtils.makeStoreAppendRequests(i * 10L, i * 10L + 10L), votings[i]);
+            }
+            for (Voting voting : votings) {
+                assertTrue(voting.await());
+            }
+            assertEquals(49L, connectionFactory.getMaxTransactionId(0, 2));
+
+            // The replica has to catch up 40 transactions before it can write the append request
+            Voting voting = new Voting(1, 1);
+            replicaSession.append(90L, TestUtils.makeStoreAppendRequests(90L, 100L), voting);
+            assertTrue(voting.await());
+
+            assertEquals(99L, connectionFactory.getMaxTransactionId(0, 2));
+            for (long transactionId = 0L; transactionId < 100L; transactionId++) {
+                assertEquals(transactionId, reader.getRecord(transactionId).transactionId);
+            }
+            assertEquals(100L, replicaSession.nextTransactionId());
+
+            // The session is closed when a write fails
+            connectionFactory.setReplicaDown();
+            voting = new Voting(1, 1);
+            replicaSession.append(100L, TestUtils.makeStoreAppendRequests(100L, 110L), voting);
+            assertFalse(voting.await());
+            while (!replicaSession.isClosed()) {
+                Thread.sleep(10);
+            }
+
+        } finally {
+            replicaSession.close();
+            mockStoreSession.close();
+        }
+    }
+
     private long maxTransactionId(ReplicaReader reader) throws ReplicaReaderException {
         long maxTransactionId = -1L;
         while (reader.getRecord(maxTransactionId + 1) != null) {
@@ -201,6 +306,7 @@ public class ReplicaSessionTest {
         private long highWaterMark;
         private long lowWaterMark;
         private volatile boolean running = true;
+        private final ArrayList<Integer> readSizes = new ArrayList<>();
 
         MockStoreSession(int generation, long highWaterMark, long lowWaterMark) {
             this.generation = generation;
@@ -268,6 +374,9 @@ public class ReplicaSessionTest {
         @Override
         public ArrayList<Record> getRecordList(long transactionId, int maxNumRecords) throws SessionClosedException {
             ArrayList<Record> list = new ArrayList<>();
+            synchronized (readSizes) {
+                readSizes.add(maxNumRecords);
+            }
             if (transactionId <= highWaterMark) {
                 for (int i = 0; i < maxNumRecords; i++) {
                     Record record = getRecordUnsafe(transactionId + i);
@@ -8,8 +8,10 @@ import org.junit.Test;
 
 import java.util.ArrayList;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class ReplicaWriterTest {
@@ -99,6 +101,43 @@ public class ReplicaWriterTest {
         }
     }
 
+    @Test
+    public void testAppendAsync() throws Exception {
+        ReplicaId replicaId = new ReplicaId(PARTITION_ID, String.format(TestReplicaSessionManager.CONNECT_STRING_TEMPLATE, 0));
+        MockReplicaConnectionFactory connectionFactory = new MockReplicaConnectionFactory(NUM_PARTITIONS);
+        connectionFactory.setCurrentSession(PARTITION_ID, SESSION_ID);
+
+        try {
+            CompletableFuture<ReplicaConnection> future = new CompletableFuture<>();
+            future.complete(connectionFactory.get(replicaId.partitionId, SESSION_ID));
+
+            ReplicaWriter writer = new ReplicaWriter(future);
+            writer.open(0L);
+
+            writer.appendAsync(0L, TestUtils.makeStoreAppendRequests(0L, 10L)).get();
+
+            assertEquals(9L, connectionFactory.getMaxTransactionId(PARTITION_ID, SESSION_ID));
+            assertEquals(10L, writer.nextTransactionId());
+
+            writer.appendAsync(10L, TestUtils.makeStoreAppendRequests(10L, 20L)).get();
+
+            assertEquals(19L, connectionFactory.getMaxTransactionId(PARTITION_ID, SESSION_ID));
+            assertEquals(20L, writer.nextTransactionId());
+
+            try {
+                // overlapping transaction id
+                writer.appendAsync(19L, TestUtils.makeStoreAppendRequests(19L, 30L)).get();
+                fail();
+            } catch (ExecutionException ex) {
+                assertTrue(ex.getCause() instanceof ReplicaWriterException);
+            }
+            assertEquals(19L, connectionFactory.getMaxTransactionId(PARTITION_ID, SESSION_ID));
+
+        } finally {
+            connectionFactory.close();
+        }
+    }
+
     private ArrayList<Record> makeRecords(long startTransactionId, long endTransactionId) {
         ArrayList<Record> records = new ArrayList<>();
         long transactionId = startTransactionId;
@@ -1,7 +1,12 @@
 package com.wepay.waltz.store.internal;
 
+import com.wepay.riff.metrics.core.MetricGroup;
+import com.wepay.riff.metrics.core.MetricRegistry;
+import com.wepay.riff.metrics.core.Timer;
 import com.wepay.waltz.common.message.Record;
 import com.wepay.waltz.common.message.ReqId;
+import com.wepay.waltz.common.metadata.PartitionMetadata;
+import com.wepay.waltz.common.metadata.PartitionMetadataSerializer;
 import com.wepay.waltz.common.util.BackoffTimer;
 import com.wepay.waltz.server.WaltzServerConfig;
 import com.wepay.waltz.store.StorePartition;
@@ -9,16 +14,21 @@ import com.wepay.waltz.store.TestUtils;
 import com.wepay.waltz.store.exception.StoreException;
 import com.wepay.waltz.test.util.ZooKeeperServerRunner;
 import com.wepay.zktools.util.State;
+import com.wepay.zktools.util.Uninterruptibly;
 import com.wepay.zktools.util.StateChangeFuture;
 import com.wepay.zktools.zookeeper.ZNode;
 import com.wepay.zktools.zookeeper.ZooKeeperClient;
 import com.wepay.zktools.zookeeper.internal.ZooKeeperClientImpl;
 import org.junit.Test;
 
+import java.util.ArrayList;
 import java.util.Properties;
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public class StorePartitionTest {
 
@@ -177,6 +187,198 @@ public class StorePartitionTest {
         }
     }
 
+    @Test
+    public void testCheckpointHandOff() throws Exception {
+        int partitionId = 0;
+        int generation = 0;
+        int seqNum = rand.nextInt(1000);
+
+        Properties props = new Properties();
+        props.setProperty(WaltzServerConfig.CHECKPOINT_INTERVAL, "10");
+        props.setProperty(WaltzServerConfig.CHECKPOINT_HAND_OFF, "true");
+        WaltzServerConfig handOffConfig = new WaltzServerConfig(props);
+
+        ZooKeeperServerRunner zooKeeperServerRunner = new ZooKeeperServerRunner(0);
+        try {
+            String connectString = zooKeeperServerRunner.start();
+            ZooKeeperClient zkClient = new ZooKeeperClientImpl(connectString, 30000);
+
+            ZNode root = zkClient.createPath(new ZNode("/test/store"));
+            ZNode znode = new ZNode(root, Integer.toString(partitionId));
+
+            ReplicaSessionManager replicaSessionManager = new TestReplicaSessionManager(1, NUM_REPLICAS);
+            StoreSessionManager storeSessionManager =
+                new StoreSessionManager(
+                    partitionId,
+                    generation,
+                    WaltzServerConfig.DEFAULT_MAX_BATCH_SIZE,
+                    replicaSessionManager,
+                    zkClient,
+                    znode
+                );
+            StorePartitionImpl partition = new StorePartitionImpl(storeSessionManager, handOffConfig);
+
+            try {
+                int numTransactions = 100;
+                Record[] records = new Record[numTransactions];
+                long[] transactionIds = new long[numTransactions];
+                long sessionId = -1L;
+
+                // Append in chunks without waiting for each commit. The first append of a chunk starts a hand-off,
+                // and the rest of the chunk is queued in the next session.
+                for (int i = 0; i < numTransactions; i++) {
+                    ReqId reqId = new ReqId(1, generation, 1, seqNum++);
+                    records[i] = TestUtils.record(reqId, i);
+
+                    final int index = i;
+                    transactionIds[i] = Long.MIN_VALUE;
+                    partition.append(records[i].reqId, records[i].header, records[i].data, records[i].checksum, txid -> transactionIds[index] = txid);
+
+                    if (i % 15 == 14) {
+                        partition.flush();
+                        if (sessionId < 0L) {
+                            sessionId = TestUtils.getMetadata(zkClient, znode).sessionId;
+                        }
+                    }
+                }
+                partition.flush();
+
+                // New sessions were created at checkpoints
+                assertTrue(TestUtils.getMetadata(zkClient, znode).sessionId > sessionId);
+                assertTrue(handOffPauseTimer(partitionId).getCount() > 0);
+
+                // All appends are committed in order
+                for (int i = 0; i < numTransactions; i++) {
+                    assertEquals((long) i, transactionIds[i]);
+                }
+                assertEquals(numTransactions - 1, partition.highWaterMark());
+
+                for (int i = 0; i < 50; i++) {
+                    long transactionId = (long) rand.nextInt(numTransactions);
+                    assertEquals(records[(int) transactionId], partition.getRecord(transactionId));
+                }
+
+            } finally {
+                partition.close();
+
+                zkClient.close();
+            }
+        } finally {
+            zooKeeperServerRunner.stop();
+            zooKeeperServerRunner.clear();
+        }
+    }
+
+    @Test
+    public void testCheckpointHandOffFailure() throws Exception {
+        int partitionId = 0;
+        int generation = 0;
+        int seqNum = rand.nextInt(1000);
+
+        Properties props = new Properties();
+        props.setProperty(WaltzServerConfig.CHECKPOINT_INTERVAL, "10");
+        props.setProperty(WaltzServerConfig.CHECKPOINT_HAND_OFF, "true");
+        WaltzServerConfig handOffConfig = new WaltzServerConfig(props);
+
+        ZooKeeperServerRunner zooKeeperServerRunner = new ZooKeeperServerRunner(0);
+        try {
+            String connectString = zooKeeperServerRunner.start();
+            ZooKeeperClient zkClient = new ZooKeeperClientImpl(connectString, 30000);
+
+            ZNode root = zkClient.createPath(new ZNode("/test/store"));
+            ZNode znode = new ZNode(root, Integer.toString(partitionId));
+
+            // When armed, the session id is bumped behind the back of the next session after it is prepared.
+            // This makes the recovery of the next session fail.
+            AtomicBoolean failNextSession = new AtomicBoolean(false);
+            ReplicaSessionManager replicaSessionManager = new TestReplicaSessionManager(1, NUM_REPLICAS) {
+                @Override
+                ArrayList<ReplicaSession> getReplicaSessions(int id, long sessionId) {
+                    ArrayList<ReplicaSession> replicaSessions = super.getReplicaSessions(id, sessionId);
+                    if (failNextSession.compareAndSet(true, false)) {
+                        try {
+                            PartitionMetadata metadata = TestUtils.getMetadata(zkClient, znode);
+                            zkClient.setData(
+                                znode,
+                                new PartitionMetadata(metadata.generation, metadata.sessionId + 1, metadata.replicaStates),
+                                PartitionMetadataSerializer.INSTANCE
+                            );
+                        } catch (Exception ex) {
+                            throw new IllegalStateException(ex);
+                        }
+                    }
+                    return replicaSessions;
+                }
+            };
+            StoreSessionManager storeSessionManager =
+                new StoreSessionManager(
+                    partitionId,
+                    generation,
+                    WaltzServerConfig.DEFAULT_MAX_BATCH_SIZE,
+                    replicaSessionManager,
+                    zkClient,
+                    znode
+                );
+            StorePartitionImpl partition = new StorePartitionImpl(storeSessionManager, handOffConfig);
+
+            try {
+                // Fill the first session up to the checkpoint
+                for (int i = 0; i < 10; i++) {
+                    assertEquals((long) i, syncAppend(partition, TestUtils.record(new ReqId(1, generation, 1, seqNum++), i)));
+                }
+
+                // The next append starts a hand-off which fails to open the next session
+                failNextSession.set(true);
+
+                int numTransactions = 20;
+                long[] transactionIds = new long[numTransactions];
+                for (int i = 0; i < numTransactions; i++) {
+                    Record record = TestUtils.record(new ReqId(1, generation, 1, seqNum++), 10 + i);
+
+                    final int index = i;
+                    transactionIds[i] = Long.MIN_VALUE;
+                    partition.append(record.reqId, record.header, record.data, record.checksum, txid -> transactionIds[index] = txid);
+                }
+
+                // Reads and flushes use the current session until the hand-off switches appends to the next session
+                while (handOffPauseTimer(partitionId).getCount() == 0) {
+                    Uninterruptibly.sleep(10);
+                }
+                partition.flush();
+                assertFalse(failNextSession.get());
+
+                // Appends queued in the failed session are failed. Others are committed in order after the checkpoint.
+                long expectedTransactionId = 10L;
+                for (int i = 0; i < numTransactions; i++) {
+                    assertTrue(transactionIds[i] != Long.MIN_VALUE);
+                    if (transactionIds[i] >= 0L) {
+                        assertEquals(expectedTransactionId++, transactionIds[i]);
+                    }
+                }
+                assertEquals(expectedTransactionId - 1, partition.highWaterMark());
+
+                // The manager falls back to a new session
+                Record record = TestUtils.record(new ReqId(1, generation, 1, seqNum++), expectedTransactionId);
+                assertEquals(expectedTransactionId, syncAppend(partition, record));
+                assertEquals(record, partition.getRecord(expectedTransactionId));
+                assertTrue(partition.isHealthy());
+
+            } finally {
+                partition.close();
+
+                zkClient.close();
+            }
+        } finally {
+            zooKeeperServerRunner.stop();
+            zooKeeperServerRunner.clear();
+        }
+    }
+
+    private static Timer handOffPauseTimer(int partitionId) {
+        String metricsGroup = String.format("%s.partition-%d", MetricGroup.WALTZ_SERVER_METRIC_GROUP, partitionId);
+        return MetricRegistry.getInstance().timer(metricsGroup, "checkpoint-hand-off-pause");
+    }
+
     private long syncAppend(StorePartition partition, Record record) throws Exception {
         long retryInterval = 10;
         int attempts = 0;
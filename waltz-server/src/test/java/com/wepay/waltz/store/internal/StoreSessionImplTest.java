@@ -6,6 +6,7 @@ import com.wepay.waltz.common.message.ReqId;
 import com.wepay.waltz.server.WaltzServerConfig;
 import com.wepay.waltz.store.TestUtils;
 import com.wepay.waltz.store.exception.GenerationMismatchException;
+import com.wepay.waltz.store.exception.SessionClosedException;
 import com.wepay.waltz.common.metadata.PartitionMetadata;
 import com.wepay.waltz.common.metadata.PartitionMetadataSerializer;
 import com.wepay.waltz.common.metadata.ReplicaId;
@@ -21,9 +22,13 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 public class StoreSessionImplTest {
@@ -129,4 +134,219 @@ public class StoreSessionImplTest {
         }
     }
 
+    @Test
+    public void testPipelinedAppend() throws Exception {
+        int partitionId = 0;
+        int generation = 30;
+        long sessionId = 20;
+        long firstTransactionId = rand.nextInt(100);
+        int seqNum = rand.nextInt(1000);
+        int numTransactions = 1000;
+
+        ZooKeeperServerRunner zooKeeperServerRunner = new ZooKeeperServerRunner(0);
+        try {
+            String connectString = zooKeeperServerRunner.start();
+            ZooKeeperClient zkClient = new ZooKeeperClientImpl(connectString, 30000);
+
+            ZNode root = zkClient.createPath(new ZNode("/test/store"));
+            ZNode znode = new ZNode(root, Integer.toString(partitionId));
+
+            TestReplicaSessionManager replicaSessionManager = new TestReplicaSessionManager(1, NUM_REPLICAS);
+            replicaSessionManager.setLastSessionInfo(partitionId, sessionId - 1L, -1L);
+            replicaSessionManager.setMaxTransactionId(partitionId, firstTransactionId - 1);
+
+            Map<ReplicaId, ReplicaState> replicaStates = new HashMap<>();
+            for (int i = 0; i < NUM_REPLICAS; i++) {
+                ReplicaId replicaId = new ReplicaId(partitionId, String.format(TestReplicaSessionManager.CONNECT_STRING_TEMPLATE, i));
+                replicaStates.put(replicaId, new ReplicaState(replicaId, sessionId - 1L, ReplicaState.UNRESOLVED));
+            }
+
+            zkClient.create(
+                znode,
+                new PartitionMetadata(generation - 1, sessionId, replicaStates),
+                PartitionMetadataSerializer.INSTANCE,
+                CreateMode.PERSISTENT
+            );
+
+            try {
+                ArrayList<ReplicaSession> replicaSessions = replicaSessionManager.getReplicaSessions(partitionId, sessionId);
+                StoreSessionImpl session =
+                    new StoreSessionImpl(
+                        partitionId,
+                        generation,
+                        sessionId,
+                        10,
+                        4,
+                        replicaSessions,
+                        zkClient,
+                        znode
+                    );
+                session.open();
+                try {
+                    Record[] records = new Record[numTransactions];
+                    long[] committed = new long[numTransactions];
+                    for (int i = 0; i < numTransactions; i++) {
+                        final int index = i;
+                        records[i] = TestUtils.record(new ReqId(1, generation, partitionId, seqNum++), firstTransactionId + i);
+                        session.append(
+                            new StoreAppendRequest(
+                                records[i].reqId,
+                                records[i].header,
+                                records[i].data,
+                                records[i].checksum,
+                                transactionId -> committed[index] = transactionId
+                            )
+                        );
+                    }
+
+                    assertEquals(firstTransactionId + numTransactions - 1, session.flush());
+
+                    // Transactions are committed in the order of append requests
+                    for (int i = 0; i < numTransactions; i++) {
+                        assertEquals(firstTransactionId + i, committed[i]);
+                    }
+
+                    for (int i = 0; i < 10; i++) {
+                        long j = rand.nextInt(numTransactions);
+                        assertEquals(records[(int) j], session.getRecord(firstTransactionId + j));
+                    }
+
+                } finally {
+                    session.close();
+                }
+            } finally {
+                replicaSessionManager.close();
+                zkClient.close();
+            }
+        } finally {
+            zooKeeperServerRunner.stop();
+            zooKeeperServerRunner.clear();
+        }
+    }
+
+    @Test
+    public void testByteLimitedBatches() throws Exception {
+        int partitionId = 0;
+        int generation = 30;
+        long sessionId = 20;
+        long firstTransactionId = rand.nextInt(100);
+        int seqNum = rand.nextInt(1000);
+        int numTransactions = 1000;
+
+        ZooKeeperServerRunner zooKeeperServerRunner = new ZooKeeperServerRunner(0);
+        try {
+            String connectString = zooKeeperServerRunner.start();
+            ZooKeeperClient zkClient = new ZooKeeperClientImpl(connectString, 30000);
+
+            ZNode root = zkClient.createPath(new ZNode("/test/store"));
+            ZNode znode = new ZNode(root, Integer.toString(partitionId));
+
+            TestReplicaSessionManager replicaSessionManager = new TestReplicaSessionManager(1, NUM_REPLICAS);
+            replicaSessionManager.setLastSessionInfo(partitionId, sessionId - 1L, -1L);
+            replicaSessionManager.setMaxTransactionId(partitionId, firstTransactionId - 1);
+
+            Map<ReplicaId, ReplicaState> replicaStates = new HashMap<>();
+            for (int i = 0; i < NUM_REPLICAS; i++) {
+                ReplicaId replicaId = new ReplicaId(partitionId, String.format(TestReplicaSessionManager.CONNECT_STRING_TEMPLATE, i));
+                replicaStates.put(replicaId, new ReplicaState(replicaId, sessionId - 1L, ReplicaState.UNRESOLVED));
+            }
+
+            zkClient.create(
+                znode,
+                new PartitionMetadata(generation - 1, sessionId, replicaStates),
+                PartitionMetadataSerializer.INSTANCE,
+                CreateMode.PERSISTENT
+            );
+
+            try {
+                ArrayList<ReplicaSession> replicaSessions = replicaSessionManager.getReplicaSessions(partitionId, sessionId);
+                StoreSessionImpl session =
+                    new StoreSessionImpl(
+                        partitionId,
+                        generation,
+                        sessionId,
+                        // A small byte limit splits batches dequeued from the request queue
+                        new BatchSizeController(partitionId, 10, 100, 1L),
+                        4,
+                        replicaSessions,
+                        zkClient,
+                        znode
+                    );
+                session.open();
+                try {
+                    Record[] records = new Record[numTransactions];
+                    long[] committed = new long[numTransactions];
+                    for (int i = 0; i < numTransactions; i++) {
+                        final int index = i;
+                        records[i] = TestUtils.record(new ReqId(1, generation, partitionId, seqNum++), firstTransactionId + i);
+                        session.append(
+                            new StoreAppendRequest(
+                                records[i].reqId,
+                                records[i].header,
+                                records[i].data,
+                                records[i].checksum,
+                                transactionId -> committed[index] = transactionId
+                            )
+                        );
+                    }
+
+                    assertEquals(firstTransactionId + numTransactions - 1, session.flush());
+
+                    // Transactions are committed in the order of append requests
+                    for (int i = 0; i < numTransactions; i++) {
+                        assertEquals(firstTransactionId + i, committed[i]);
+                    }
+
+                    for (int i = 0; i < 10; i++) {
+                        long j = rand.nextInt(numTransactions);
+                        assertEquals(records[(int) j], session.getRecord(firstTransactionId + j));
+                    }
+
+                } finally {
+                    session.close();
+                }
+            } finally {
+                replicaSessionManager.close();
+                zkClient.close();
+            }
+        } finally {
+            zooKeeperServerRunner.stop();
+            zooKeeperServerRunner.clear();
+        }
+    }
+
+
+    @Test
+    public void testAppendWaitingWhenClosed() throws Exception {
+        int partitionId = 0;
+        int generation = 30;
+        long sessionId = 20;
+        int seqNum = rand.nextInt(1000);
+
+        // The session is not open, so appends stay in the queue. The fourth append waits for space in the queue.
+        StoreSessionImpl session = new StoreSessionImpl(partitionId, generation, sessionId, 1, new ArrayList<>(), null, null);
+        CompletableFuture<Exception> future = new CompletableFuture<>();
+        Thread thread = new Thread(() -> {
+            try {
+                for (int i = 0; i < 4; i++) {
+                    Record record = TestUtils.record(new ReqId(1, generation, partitionId, seqNum + i), i);
+                    session.append(new StoreAppendRequest(record.reqId, record.header, record.data, record.checksum, transactionId -> { }));
+                }
+                future.complete(null);
+            } catch (Exception ex) {
+                future.complete(ex);
+            }
+        });
+        thread.start();
+
+        while (thread.getState() != Thread.State.WAITING) {
+            Thread.sleep(10);
+        }
+        assertFalse(future.isDone());
+
+        // The waiting append must not be dropped silently
+        session.close();
+        assertTrue(future.get(10, TimeUnit.SECONDS) instanceof SessionClosedException);
+    }
+
 }
@@ -85,7 +85,11 @@ public class WaltzStorage {
                 (long) config.get(WaltzStorageConfig.SEGMENT_SIZE_THRESHOLD),
                 storeParams.numPartitions,
                 storeParams.key,
-                (Integer) config.get(WaltzStorageConfig.STORAGE_SEGMENT_CACHE_CAPACITY)
+                (Integer) config.get(WaltzStorageConfig.STORAGE_SEGMENT_CACHE_CAPACITY),
+                (Boolean) config.get(WaltzStorageConfig.GROUP_COMMIT_ENABLED),
+                (Long) config.get(WaltzStorageConfig.GROUP_COMMIT_WINDOW),
+                (Long) config.get(WaltzStorageConfig.REQUEST_BYTES_LIMIT),
+                (Long) config.get(WaltzStorageConfig.PARTITION_REQUEST_BYTES_LIMIT)
         );
         this.networkServer = new NetworkServer(port, sslCtx != null ? sslCtx : ServerSSL.createInsecureContext()) {
             @Override
@@ -256,10 +260,12 @@ public class WaltzStorage {
                 return Collections.emptySet();
             }
         });
+        REGISTRY.gauge(metricsGroup, "request-bytes-in-flight", (Gauge<Long>) () -> storageManager.requestBytesInFlight());
     }
 
     private void unregisterMetrics() {
         REGISTRY.remove(metricsGroup, "waltz-storage-num-partitions");
         REGISTRY.remove(metricsGroup, "waltz-storage-partition-ids");
+        REGISTRY.remove(metricsGroup, "request-bytes-in-flight");
     }
 }
@@ -34,6 +34,18 @@ public class WaltzStorageConfig extends AbstractConfig {
     public static final String STORAGE_SEGMENT_CACHE_CAPACITY = "storage.segment.cache.capacity";
     public static final int DEFAULT_STORAGE_SEGMENT_CACHE_CAPACITY = 5;
 
+    public static final String GROUP_COMMIT_ENABLED = "storage.groupCommit.enabled";
+    public static final boolean DEFAULT_GROUP_COMMIT_ENABLED = false;
+
+    public static final String GROUP_COMMIT_WINDOW = "storage.groupCommit.window";
+    public static final long DEFAULT_GROUP_COMMIT_WINDOW = 1L;
+
+    public static final String REQUEST_BYTES_LIMIT = "storage.requestBytesLimit";
+    public static final long DEFAULT_REQUEST_BYTES_LIMIT = 0L;
+
+    public static final String PARTITION_REQUEST_BYTES_LIMIT = "storage.partitionRequestBytesLimit";
+    public static final long DEFAULT_PARTITION_REQUEST_BYTES_LIMIT = 0L;
+
     public WaltzStorageConfig(Map<Object, Object> configValues) {
         this("", configValues);
     }
@@ -61,6 +73,10 @@ public class WaltzStorageConfig extends AbstractConfig {
             put(CLUSTER_ROOT, stringParser);
 
             put(STORAGE_SEGMENT_CACHE_CAPACITY, intParser.withDefault(DEFAULT_STORAGE_SEGMENT_CACHE_CAPACITY));
+            put(GROUP_COMMIT_ENABLED, booleanParser.withDefault(DEFAULT_GROUP_COMMIT_ENABLED));
+            put(GROUP_COMMIT_WINDOW, longParser.withDefault(DEFAULT_GROUP_COMMIT_WINDOW));
+            put(REQUEST_BYTES_LIMIT, longParser.withDefault(DEFAULT_REQUEST_BYTES_LIMIT));
+            put(PARTITION_REQUEST_BYTES_LIMIT, longParser.withDefault(DEFAULT_PARTITION_REQUEST_BYTES_LIMIT));
         }});
     }
 
@@ -18,6 +18,14 @@ import com.wepay.waltz.storage.common.message.admin.PartitionAssignmentRequest;
 import com.wepay.waltz.storage.common.message.admin.PartitionAvailableRequest;
 import com.wepay.waltz.storage.common.message.admin.RecordListRequest;
 import com.wepay.waltz.storage.common.message.admin.RecordListResponse;
+import com.wepay.waltz.storage.common.message.admin.SegmentChecksumRequest;
+import com.wepay.waltz.storage.common.message.admin.SegmentChecksumResponse;
+import com.wepay.waltz.storage.common.message.admin.SegmentInstallRequest;
+import com.wepay.waltz.storage.common.message.admin.SegmentListRequest;
+import com.wepay.waltz.storage.common.message.admin.SegmentListResponse;
+import com.wepay.waltz.storage.common.message.admin.SegmentReadRequest;
+import com.wepay.waltz.storage.common.message.admin.SegmentReadResponse;
+import com.wepay.waltz.storage.common.message.admin.SegmentWriteRequest;
 import com.wepay.waltz.storage.exception.StorageRpcException;
 import io.netty.handler.ssl.SslContext;
 
@@ -92,6 +100,63 @@ public class StorageAdminClient extends StorageBaseClient {
         return call(new LastSessionInfoRequest(seqNum.getAndIncrement(), partitionId));
     }
 
+    /**
+     * Gets the list of segments of a partition
+     * @param partitionId the partition id
+     * @return Future of ArrayList of SegmentInfo
+     */
+    public CompletableFuture<Object> getSegmentList(int partitionId) {
+        return call(new SegmentListRequest(seqNum.getAndIncrement(), partitionId));
+    }
+
+    /**
+     * Gets the checksums of the segment file and the index file of a sealed segment
+     * @param partitionId the partition id
+     * @param firstTransactionId the first transaction id of the segment
+     * @return Future of int array of the segment file checksum and the index file checksum
+     */
+    public CompletableFuture<Object> getSegmentChecksum(int partitionId, long firstTransactionId) {
+        return call(new SegmentChecksumRequest(seqNum.getAndIncrement(), partitionId, firstTransactionId));
+    }
+
+    /**
+     * Reads a chunk of the segment file or the index file of a sealed segment
+     * @param partitionId the partition id
+     * @param firstTransactionId the first transaction id of the segment
+     * @param index whether to read the index file instead of the segment file
+     * @param position the position in the file
+     * @param maxLength the maximum number of bytes to read
+     * @return Future of byte array
+     */
+    public CompletableFuture<Object> readSegmentFile(int partitionId, long firstTransactionId, boolean index, long position, int maxLength) {
+        return call(new SegmentReadRequest(seqNum.getAndIncrement(), partitionId, firstTransactionId, index, position, maxLength));
+    }
+
+    /**
+     * Writes a chunk of the segment file or the index file of a segment to be installed. Chunks must be written in order.
+     * @param partitionId the partition id
+     * @param firstTransactionId the first transaction id of the segment
+     * @param index whether to write the index file instead of the segment file
+     * @param position the position in the file
+     * @param data the chunk
+     * @return Future of Boolean
+     */
+    public CompletableFuture<Object> writeSegmentFile(int partitionId, long firstTransactionId, boolean index, long position, byte[] data) {
+        return call(new SegmentWriteRequest(seqNum.getAndIncrement(), partitionId, firstTransactionId, index, position, data));
+    }
+
+    /**
+     * Installs a segment whose files are written, after verifying the checksums
+     * @param partitionId the partition id
+     * @param firstTransactionId the first transaction id of the segment
+     * @param segmentChecksum the checksum of the segment file
+     * @param indexChecksum the checksum of the index file
+     * @return Future of Boolean
+     */
+    public CompletableFuture<Object> installSegment(int partitionId, long firstTransactionId, int segmentChecksum, int indexChecksum) {
+        return call(new SegmentInstallRequest(seqNum.getAndIncrement(), partitionId, firstTransactionId, segmentChecksum, indexChecksum));
+    }
+
     @Override
     protected MessageHandler getMessageHandler() {
         return new MessageHandlerImpl(new StorageBaseClient.MessageHandlerCallbacksImpl());
@@ -136,6 +201,19 @@ public class StorageAdminClient extends StorageBaseClient {
                     future.complete(((LastSessionInfoResponse) msg).lastSessionInfo);
                     break;
 
+                case AdminMessageType.SEGMENT_LIST_RESPONSE:
+                    future.complete(((SegmentListResponse) msg).segments);
+                    break;
+
+                case AdminMessageType.SEGMENT_CHECKSUM_RESPONSE:
+                    SegmentChecksumResponse segmentChecksumResponse = (SegmentChecksumResponse) msg;
+                    future.complete(new int[] {segmentChecksumResponse.segmentChecksum, segmentChecksumResponse.indexChecksum});
+                    break;
+
+                case AdminMessageType.SEGMENT_READ_RESPONSE:
+                    future.complete(((SegmentReadResponse) msg).data);
+                    break;
+
                 default:
                     throw new IllegalArgumentException("message not handled: messageType=" + msg.type());
             }
@@ -0,0 +1,128 @@
+package com.wepay.waltz.storage.common;
+
+import com.wepay.riff.network.MessageAttributeReader;
+import com.wepay.riff.network.MessageAttributeWriter;
+import com.wepay.waltz.common.message.Record;
+import com.wepay.waltz.common.message.ReqId;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+/**
+ * Records in the segment file format, as read from segment files without parsing.
+ * Each chunk holds consecutive records of one segment, and the records start at the requested transaction id.
+ *
+ * RECORD: transactionId (8 bytes) + ReqId (16 bytes) + transaction header (4 bytes) + data length (4 bytes)
+ *         + data checksum (4 bytes) + data + record checksum (4 bytes)
+ * The record checksum covers the record header and the data.
+ */
+public class RawRecords {
+
+    public static final int RECORD_HEADER_SIZE = 8 + 16 + 4 + 4 + 4;
+    public static final int RECORD_FOOTER_SIZE = 4;
+    public static final int DATA_LEN_POSITION = 8 + 16 + 4;
+
+    private final long transactionId;
+    private final ArrayList<byte[]> chunks = new ArrayList<>();
+    private int numRecords = 0;
+
+    /**
+     * Class constructor.
+     * @param transactionId the transaction id of the first record
+     */
+    public RawRecords(long transactionId) {
+        this.transactionId = transactionId;
+    }
+
+    /**
+     * Adds a chunk of records.
+     * @param numRecords the number of records in the chunk
+     * @param chunk the records in the segment file format
+     */
+    public void add(int numRecords, byte[] chunk) {
+        this.chunks.add(chunk);
+        this.numRecords += numRecords;
+    }
+
+    public int numRecords() {
+        return numRecords;
+    }
+
+    /**
+     * Parses the records and verifies their record checksums and that their transaction ids are consecutive
+     * from the first transaction id.
+     * @return the list of records
+     */
+    public ArrayList<Record> toRecords() {
+        ArrayList<Record> records = new ArrayList<>(numRecords);
+        for (byte[] chunk : chunks) {
+            ByteBuffer buf = ByteBuffer.wrap(chunk);
+            while (buf.remaining() > 0) {
+                int start = buf.position();
+                Record record = readRecord(buf);
+
+                long expectedTransactionId = transactionId + records.size();
+                if (record.transactionId != expectedTransactionId) {
+                    throw new IllegalStateException(
+                        "transaction id mismatch: expected=" + expectedTransactionId + " actual=" + record.transactionId
+                    );
+                }
+
+                CRC32 crc32 = new CRC32();
+                crc32.update(chunk, start, RECORD_HEADER_SIZE + record.data.length);
+                if (buf.getInt(start + RECORD_HEADER_SIZE + record.data.length) != (int) crc32.getValue()) {
+                    throw new IllegalStateException("record checksum error: transactionId=" + record.transactionId);
+                }
+
+                records.add(record);
+            }
+        }
+
+        if (records.size() != numRecords) {
+            throw new IllegalStateException("wrong number of records: expected=" + numRecords + " actual=" + records.size());
+        }
+
+        return records;
+    }
+
+    public void writeTo(MessageAttributeWriter writer) {
+        writer.writeLong(transactionId);
+        writer.writeInt(numRecords);
+        writer.writeInt(chunks.size());
+        for (byte[] chunk : chunks) {
+            writer.writeByteArray(chunk);
+        }
+    }
+
+    public static RawRecords readFrom(MessageAttributeReader reader) {
+        RawRecords rawRecords = new RawRecords(reader.readLong());
+        rawRecords.numRecords = reader.readInt();
+        int numChunks = reader.readInt();
+        for (int i = 0; i < numChunks; i++) {
+            rawRecords.chunks.add(reader.readByteArray());
+        }
+        return rawRecords;
+    }
+
+    /**
+     * Reads a record at the buffer position and moves the position to the next record.
+     * The record checksum is not verified.
+     * @param buf the buffer containing the whole record
+     * @return the record
+     */
+    public static Record readRecord(ByteBuffer buf) {
+        long transactionId = buf.getLong();
+        ReqId reqId = new ReqId(buf.getLong(), buf.getLong());
+        int transactionHeader = buf.getInt();
+        int dataLen = buf.getInt();
+        int dataChecksum = buf.getInt();
+
+        byte[] dataBytes = new byte[dataLen];
+        buf.get(dataBytes);
+        buf.position(buf.position() + RECORD_FOOTER_SIZE);
+
+        return new Record(transactionId, reqId, transactionHeader, dataBytes, dataChecksum);
+    }
+
+}
@@ -0,0 +1,38 @@
+package com.wepay.waltz.storage.common;
+
+import com.wepay.riff.network.MessageAttributeReader;
+import com.wepay.riff.network.MessageAttributeWriter;
+
+public class SegmentInfo {
+    public final long firstTransactionId;
+    public final long maxTransactionId;
+    public final long segmentSize;
+    public final long indexSize;
+    public final boolean sealed;
+
+    public SegmentInfo(final long firstTransactionId, final long maxTransactionId, final long segmentSize, final long indexSize, final boolean sealed) {
+        this.firstTransactionId = firstTransactionId;
+        this.maxTransactionId = maxTransactionId;
+        this.segmentSize = segmentSize;
+        this.indexSize = indexSize;
+        this.sealed = sealed;
+    }
+
+    public void writeTo(MessageAttributeWriter writer) {
+        writer.writeLong(firstTransactionId);
+        writer.writeLong(maxTransactionId);
+        writer.writeLong(segmentSize);
+        writer.writeLong(indexSize);
+        writer.writeBoolean(sealed);
+    }
+
+    public static SegmentInfo readFrom(MessageAttributeReader reader) {
+        return new SegmentInfo(reader.readLong(), reader.readLong(), reader.readLong(), reader.readLong(), reader.readBoolean());
+    }
+
+    public String toString() {
+        return "firstTransactionId=" + firstTransactionId + " maxTransactionId=" + maxTransactionId
+            + " segmentSize=" + segmentSize + " indexSize=" + indexSize + " sealed=" + sealed;
+    }
+
+}
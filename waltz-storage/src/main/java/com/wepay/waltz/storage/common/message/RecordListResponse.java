@@ -1,17 +1,29 @@
 package com.wepay.waltz.storage.common.message;
 
 import com.wepay.waltz.common.message.Record;
+import com.wepay.waltz.storage.common.RawRecords;
 
 import java.util.ArrayList;
 
 public class RecordListResponse extends StorageMessage {
 
+    // Either records or rawRecords is set. A storage node responds with raw records read from segment files.
+    // A response decoded by a client always has records.
     public final ArrayList<Record> records;
+    public final RawRecords rawRecords;
 
     public RecordListResponse(long sessionId, long seqNum, int partitionId, ArrayList<Record> records) {
         super(sessionId, seqNum, partitionId);
 
         this.records = records;
+        this.rawRecords = null;
+    }
+
+    public RecordListResponse(long sessionId, long seqNum, int partitionId, RawRecords rawRecords) {
+        super(sessionId, seqNum, partitionId);
+
+        this.records = null;
+        this.rawRecords = rawRecords;
     }
 
     @Override
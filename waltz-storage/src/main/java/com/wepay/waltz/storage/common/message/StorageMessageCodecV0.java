@@ -240,7 +240,8 @@ public class StorageMessageCodecV0 implements MessageCodec {
 
             case StorageMessageType.RECORD_LIST_RESPONSE:
                 RecordListResponse recordListResponse = (RecordListResponse) msg;
-                ArrayList<Record> recordList = recordListResponse.records;
+                ArrayList<Record> recordList =
+                    recordListResponse.records != null ? recordListResponse.records : recordListResponse.rawRecords.toRecords();
                 int recordListSize = recordList.size();
                 writer.writeInt(recordListSize);
                 for (int i = 0; i < recordListSize; i++) {
@@ -5,6 +5,7 @@ import com.wepay.riff.network.MessageAttributeReader;
 import com.wepay.riff.network.MessageAttributeWriter;
 import com.wepay.riff.network.MessageCodec;
 import com.wepay.waltz.common.message.Record;
+import com.wepay.waltz.storage.common.SegmentInfo;
 import com.wepay.waltz.storage.common.SessionInfo;
 import com.wepay.waltz.storage.exception.StorageRpcException;
 
@@ -75,6 +76,36 @@ public class AdminMessageCodecV0 implements MessageCodec {
                 String metricsJson = reader.readString();
                 return new MetricsResponse(seqNum, metricsJson);
 
+            case AdminMessageType.SEGMENT_LIST_REQUEST:
+                return new SegmentListRequest(seqNum, reader.readInt());
+
+            case AdminMessageType.SEGMENT_LIST_RESPONSE:
+                ArrayList<SegmentInfo> segmentList = new ArrayList<>();
+                int segmentListPartitionId = reader.readInt();
+                int segmentListSize = reader.readInt();
+                for (int i = 0; i < segmentListSize; i++) {
+                    segmentList.add(SegmentInfo.readFrom(reader));
+                }
+                return new SegmentListResponse(seqNum, segmentListPartitionId, segmentList);
+
+            case AdminMessageType.SEGMENT_CHECKSUM_REQUEST:
+                return new SegmentChecksumRequest(seqNum, reader.readInt(), reader.readLong());
+
+            case AdminMessageType.SEGMENT_CHECKSUM_RESPONSE:
+                return new SegmentChecksumResponse(seqNum, reader.readInt(), reader.readInt(), reader.readInt());
+
+            case AdminMessageType.SEGMENT_READ_REQUEST:
+                return new SegmentReadRequest(seqNum, reader.readInt(), reader.readLong(), reader.readBoolean(), reader.readLong(), reader.readInt());
+
+            case AdminMessageType.SEGMENT_READ_RESPONSE:
+                return new SegmentReadResponse(seqNum, reader.readInt(), reader.readByteArray());
+
+            case AdminMessageType.SEGMENT_WRITE_REQUEST:
+                return new SegmentWriteRequest(seqNum, reader.readInt(), reader.readLong(), reader.readBoolean(), reader.readLong(), reader.readByteArray());
+
+            case AdminMessageType.SEGMENT_INSTALL_REQUEST:
+                return new SegmentInstallRequest(seqNum, reader.readInt(), reader.readLong(), reader.readInt(), reader.readInt());
+
             default:
                 throw new IllegalStateException("unknown message type: " + messageType);
         }
@@ -153,6 +184,65 @@ public class AdminMessageCodecV0 implements MessageCodec {
                 lastSessionInfoResponse.lastSessionInfo.writeTo(writer);
                 break;
 
+            case AdminMessageType.SEGMENT_LIST_REQUEST:
+                SegmentListRequest segmentListRequest = (SegmentListRequest) msg;
+                writer.writeInt(segmentListRequest.partitionId);
+                break;
+
+            case AdminMessageType.SEGMENT_LIST_RESPONSE:
+                SegmentListResponse segmentListResponse = (SegmentListResponse) msg;
+                writer.writeInt(segmentListResponse.partitionId);
+                writer.writeInt(segmentListResponse.segments.size());
+                for (SegmentInfo segmentInfo : segmentListResponse.segments) {
+                    segmentInfo.writeTo(writer);
+                }
+                break;
+
+            case AdminMessageType.SEGMENT_CHECKSUM_REQUEST:
+                SegmentChecksumRequest segmentChecksumRequest = (SegmentChecksumRequest) msg;
+                writer.writeInt(segmentChecksumRequest.partitionId);
+                writer.writeLong(segmentChecksumRequest.firstTransactionId);
+                break;
+
+            case AdminMessageType.SEGMENT_CHECKSUM_RESPONSE:
+                SegmentChecksumResponse segmentChecksumResponse = (SegmentChecksumResponse) msg;
+                writer.writeInt(segmentChecksumResponse.partitionId);
+                writer.writeInt(segmentChecksumResponse.segmentChecksum);
+                writer.writeInt(segmentChecksumResponse.indexChecksum);
+                break;
+
+            case AdminMessageType.SEGMENT_READ_REQUEST:
+                SegmentReadRequest segmentReadRequest = (SegmentReadRequest) msg;
+                writer.writeInt(segmentReadRequest.partitionId);
+                writer.writeLong(segmentReadRequest.firstTransactionId);
+                writer.writeBoolean(segmentReadRequest.index);
+                writer.writeLong(segmentReadRequest.position);
+                writer.writeInt(segmentReadRequest.maxLength);
+                break;
+
+            case AdminMessageType.SEGMENT_READ_RESPONSE:
+                SegmentReadResponse segmentReadResponse = (SegmentReadResponse) msg;
+                writer.writeInt(segmentReadResponse.partitionId);
+                writer.writeByteArray(segmentReadResponse.data);
+                break;
+
+            case AdminMessageType.SEGMENT_WRITE_REQUEST:
+                SegmentWriteRequest segmentWriteRequest = (SegmentWriteRequest) msg;
+                writer.writeInt(segmentWriteRequest.partitionId);
+                writer.writeLong(segmentWriteRequest.firstTransactionId);
+                writer.writeBoolean(segmentWriteRequest.index);
+                writer.writeLong(segmentWriteRequest.position);
+                writer.writeByteArray(segmentWriteRequest.data);
+                break;
+
+            case AdminMessageType.SEGMENT_INSTALL_REQUEST:
+                SegmentInstallRequest segmentInstallRequest = (SegmentInstallRequest) msg;
+                writer.writeInt(segmentInstallRequest.partitionId);
+                writer.writeLong(segmentInstallRequest.firstTransactionId);
+                writer.writeInt(segmentInstallRequest.segmentChecksum);
+                writer.writeInt(segmentInstallRequest.indexChecksum);
+                break;
+
             default:
                 throw new IllegalStateException("unknown message type: " + msg.type());
         }
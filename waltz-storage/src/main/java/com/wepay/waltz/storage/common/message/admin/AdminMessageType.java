@@ -17,4 +17,12 @@ public final class AdminMessageType {
     public static final int LAST_SESSION_INFO_RESPONSE = 10;
     public static final int METRICS_REQUEST = 11;
     public static final int METRICS_RESPONSE = 12;
+    public static final int SEGMENT_LIST_REQUEST = 13;
+    public static final int SEGMENT_LIST_RESPONSE = 14;
+    public static final int SEGMENT_CHECKSUM_REQUEST = 15;
+    public static final int SEGMENT_CHECKSUM_RESPONSE = 16;
+    public static final int SEGMENT_READ_REQUEST = 17;
+    public static final int SEGMENT_READ_RESPONSE = 18;
+    public static final int SEGMENT_WRITE_REQUEST = 19;
+    public static final int SEGMENT_INSTALL_REQUEST = 20;
 }
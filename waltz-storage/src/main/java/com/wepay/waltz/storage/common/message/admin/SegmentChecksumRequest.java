@@ -0,0 +1,19 @@
+package com.wepay.waltz.storage.common.message.admin;
+
+public class SegmentChecksumRequest extends AdminMessage {
+
+    public final int partitionId;
+    public final long firstTransactionId;
+
+    public SegmentChecksumRequest(long seqNum, int partitionId, long firstTransactionId) {
+        super(seqNum);
+
+        this.partitionId = partitionId;
+        this.firstTransactionId = firstTransactionId;
+    }
+
+    @Override
+    public byte type() {
+        return AdminMessageType.SEGMENT_CHECKSUM_REQUEST;
+    }
+}
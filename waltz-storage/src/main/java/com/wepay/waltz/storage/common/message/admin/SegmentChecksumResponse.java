@@ -0,0 +1,21 @@
+package com.wepay.waltz.storage.common.message.admin;
+
+public class SegmentChecksumResponse extends AdminMessage {
+
+    public final int partitionId;
+    public final int segmentChecksum;
+    public final int indexChecksum;
+
+    public SegmentChecksumResponse(long seqNum, int partitionId, int segmentChecksum, int indexChecksum) {
+        super(seqNum);
+
+        this.partitionId = partitionId;
+        this.segmentChecksum = segmentChecksum;
+        this.indexChecksum = indexChecksum;
+    }
+
+    @Override
+    public byte type() {
+        return AdminMessageType.SEGMENT_CHECKSUM_RESPONSE;
+    }
+}
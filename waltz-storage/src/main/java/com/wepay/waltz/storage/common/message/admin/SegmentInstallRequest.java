@@ -0,0 +1,23 @@
+package com.wepay.waltz.storage.common.message.admin;
+
+public class SegmentInstallRequest extends AdminMessage {
+
+    public final int partitionId;
+    public final long firstTransactionId;
+    public final int segmentChecksum;
+    public final int indexChecksum;
+
+    public SegmentInstallRequest(long seqNum, int partitionId, long firstTransactionId, int segmentChecksum, int indexChecksum) {
+        super(seqNum);
+
+        this.partitionId = partitionId;
+        this.firstTransactionId = firstTransactionId;
+        this.segmentChecksum = segmentChecksum;
+        this.indexChecksum = indexChecksum;
+    }
+
+    @Override
+    public byte type() {
+        return AdminMessageType.SEGMENT_INSTALL_REQUEST;
+    }
+}
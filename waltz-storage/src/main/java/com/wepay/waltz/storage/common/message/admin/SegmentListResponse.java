@@ -0,0 +1,23 @@
+package com.wepay.waltz.storage.common.message.admin;
+
+import com.wepay.waltz.storage.common.SegmentInfo;
+
+import java.util.ArrayList;
+
+public class SegmentListResponse extends AdminMessage {
+
+    public final int partitionId;
+    public final ArrayList<SegmentInfo> segments;
+
+    public SegmentListResponse(long seqNum, int partitionId, ArrayList<SegmentInfo> segments) {
+        super(seqNum);
+
+        this.partitionId = partitionId;
+        this.segments = segments;
+    }
+
+    @Override
+    public byte type() {
+        return AdminMessageType.SEGMENT_LIST_RESPONSE;
+    }
+}
@@ -0,0 +1,25 @@
+package com.wepay.waltz.storage.common.message.admin;
+
+public class SegmentReadRequest extends AdminMessage {
+
+    public final int partitionId;
+    public final long firstTransactionId;
+    public final boolean index;
+    public final long position;
+    public final int maxLength;
+
+    public SegmentReadRequest(long seqNum, int partitionId, long firstTransactionId, boolean index, long position, int maxLength) {
+        super(seqNum);
+
+        this.partitionId = partitionId;
+        this.firstTransactionId = firstTransactionId;
+        this.index = index;
+        this.position = position;
+        this.maxLength = maxLength;
+    }
+
+    @Override
+    public byte type() {
+        return AdminMessageType.SEGMENT_READ_REQUEST;
+    }
+}
@@ -0,0 +1,22 @@
+package com.wepay.waltz.storage.common.message.admin;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+public class SegmentReadResponse extends AdminMessage {
+
+    public final int partitionId;
+    public final byte[] data;
+
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "internal class")
+    public SegmentReadResponse(long seqNum, int partitionId, byte[] data) {
+        super(seqNum);
+
+        this.partitionId = partitionId;
+        this.data = data;
+    }
+
+    @Override
+    public byte type() {
+        return AdminMessageType.SEGMENT_READ_RESPONSE;
+    }
+}
@@ -0,0 +1,28 @@
+package com.wepay.waltz.storage.common.message.admin;
+
+import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+
+public class SegmentWriteRequest extends AdminMessage {
+
+    public final int partitionId;
+    public final long firstTransactionId;
+    public final boolean index;
+    public final long position;
+    public final byte[] data;
+
+    @SuppressFBWarnings(value = "EI_EXPOSE_REP2", justification = "internal class")
+    public SegmentWriteRequest(long seqNum, int partitionId, long firstTransactionId, boolean index, long position, byte[] data) {
+        super(seqNum);
+
+        this.partitionId = partitionId;
+        this.firstTransactionId = firstTransactionId;
+        this.index = index;
+        this.position = position;
+        this.data = data;
+    }
+
+    @Override
+    public byte type() {
+        return AdminMessageType.SEGMENT_WRITE_REQUEST;
+    }
+}
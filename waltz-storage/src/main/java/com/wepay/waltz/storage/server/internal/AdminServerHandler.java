@@ -22,6 +22,14 @@ import com.wepay.waltz.storage.common.message.admin.PartitionAssignmentRequest;
 import com.wepay.waltz.storage.common.message.admin.PartitionAvailableRequest;
 import com.wepay.waltz.storage.common.message.admin.RecordListRequest;
 import com.wepay.waltz.storage.common.message.admin.RecordListResponse;
+import com.wepay.waltz.storage.common.message.admin.SegmentChecksumRequest;
+import com.wepay.waltz.storage.common.message.admin.SegmentChecksumResponse;
+import com.wepay.waltz.storage.common.message.admin.SegmentInstallRequest;
+import com.wepay.waltz.storage.common.message.admin.SegmentListRequest;
+import com.wepay.waltz.storage.common.message.admin.SegmentListResponse;
+import com.wepay.waltz.storage.common.message.admin.SegmentReadRequest;
+import com.wepay.waltz.storage.common.message.admin.SegmentReadResponse;
+import com.wepay.waltz.storage.common.message.admin.SegmentWriteRequest;
 import com.wepay.waltz.storage.exception.ConcurrentUpdateException;
 import com.wepay.waltz.storage.exception.StorageException;
 import com.wepay.waltz.storage.exception.StorageRpcException;
@@ -128,6 +136,87 @@ public class AdminServerHandler extends MessageHandler {
                 sendMessage(new MetricsResponse(message.seqNum, metricsJson), true);
                 break;
 
+            case AdminMessageType.SEGMENT_LIST_REQUEST:
+                SegmentListRequest segmentListRequest = (SegmentListRequest) message;
+                Partition segmentListPartition = storageManager.getPartition(segmentListRequest.partitionId);
+                if (segmentListPartition != null) {
+                    sendMessage(new SegmentListResponse(message.seqNum, segmentListRequest.partitionId, segmentListPartition.getSegmentInfos()), true);
+                } else {
+                    failure(new Exception("Partition:" + segmentListRequest.partitionId + " is not assigned."), message);
+                }
+                break;
+
+            case AdminMessageType.SEGMENT_CHECKSUM_REQUEST:
+                try {
+                    SegmentChecksumRequest segmentChecksumRequest = (SegmentChecksumRequest) message;
+                    Partition partition = storageManager.getPartition(segmentChecksumRequest.partitionId);
+                    if (partition != null) {
+                        int segmentChecksum = partition.getSegmentChecksum(segmentChecksumRequest.firstTransactionId);
+                        int indexChecksum = partition.getIndexChecksum(segmentChecksumRequest.firstTransactionId);
+                        sendMessage(new SegmentChecksumResponse(message.seqNum, segmentChecksumRequest.partitionId, segmentChecksum, indexChecksum), true);
+                    } else {
+                        failure(new Exception("Partition:" + segmentChecksumRequest.partitionId + " is not assigned."), message);
+                    }
+
+                } catch (IOException | StorageException ex) {
+                    failure(ex, message);
+                }
+                break;
+
+            case AdminMessageType.SEGMENT_READ_REQUEST:
+                try {
+                    SegmentReadRequest segmentReadRequest = (SegmentReadRequest) message;
+                    Partition partition = storageManager.getPartition(segmentReadRequest.partitionId);
+                    if (partition != null) {
+                        byte[] data = partition.readSegmentFile(
+                            segmentReadRequest.firstTransactionId, segmentReadRequest.index, segmentReadRequest.position, segmentReadRequest.maxLength
+                        );
+                        sendMessage(new SegmentReadResponse(message.seqNum, segmentReadRequest.partitionId, data), true);
+                    } else {
+                        failure(new Exception("Partition:" + segmentReadRequest.partitionId + " is not assigned."), message);
+                    }
+
+                } catch (IOException | StorageException ex) {
+                    failure(ex, message);
+                }
+                break;
+
+            case AdminMessageType.SEGMENT_WRITE_REQUEST:
+                try {
+                    SegmentWriteRequest segmentWriteRequest = (SegmentWriteRequest) message;
+                    Partition partition = storageManager.getPartition(segmentWriteRequest.partitionId);
+                    if (partition != null) {
+                        partition.writeStagedSegmentFile(
+                            segmentWriteRequest.firstTransactionId, segmentWriteRequest.index, segmentWriteRequest.position, segmentWriteRequest.data
+                        );
+                        success(message);
+                    } else {
+                        failure(new Exception("Partition:" + segmentWriteRequest.partitionId + " is not assigned."), message);
+                    }
+
+                } catch (IOException | StorageException ex) {
+                    failure(ex, message);
+                }
+                break;
+
+            case AdminMessageType.SEGMENT_INSTALL_REQUEST:
+                try {
+                    SegmentInstallRequest segmentInstallRequest = (SegmentInstallRequest) message;
+                    Partition partition = storageManager.getPartition(segmentInstallRequest.partitionId);
+                    if (partition != null) {
+                        partition.installSegment(
+                            segmentInstallRequest.firstTransactionId, segmentInstallRequest.segmentChecksum, segmentInstallRequest.indexChecksum
+                        );
+                        success(message);
+                    } else {
+                        failure(new Exception("Partition:" + segmentInstallRequest.partitionId + " is not assigned."), message);
+                    }
+
+                } catch (IOException | StorageException ex) {
+                    failure(ex, message);
+                }
+                break;
+
             default:
                 throw new IllegalStateException("unknown message type: " + msg.type());
         }
@@ -0,0 +1,202 @@
+package com.wepay.waltz.storage.server.internal;
+
+import com.wepay.riff.metrics.core.Gauge;
+import com.wepay.riff.metrics.core.Meter;
+import com.wepay.riff.metrics.core.MetricGroup;
+import com.wepay.riff.metrics.core.MetricRegistry;
+import com.wepay.riff.util.Logging;
+import com.wepay.riff.util.RepeatingTask;
+import com.wepay.waltz.storage.exception.StorageException;
+import org.slf4j.Logger;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * Makes appends of all partitions in a storage directory durable together.
+ * Partitions write records without forcing them to disk and submit the segment to this scheduler.
+ * The scheduler collects submissions for a commit window, forces each dirty segment once,
+ * and then completes all waiting requests.
+ */
+public class GroupCommitScheduler {
+
+    private static final Logger logger = Logging.getLogger(GroupCommitScheduler.class);
+    private static final MetricRegistry REGISTRY = MetricRegistry.getInstance();
+    private static final String METRICS_GROUP = MetricGroup.WALTZ_STORAGE_METRIC_GROUP;
+
+    private final long commitWindow;
+    private final GroupCommitTask task;
+    private final Meter groupCommitMeter;
+    private final Meter fsyncMeter;
+
+    private ArrayList<PendingCommit> pendingCommits = new ArrayList<>();
+    private boolean running = true;
+
+    /**
+     * Class constructor.
+     * @param commitWindow The time in milliseconds to wait for more appends after the first append of a commit window.
+     */
+    public GroupCommitScheduler(long commitWindow) {
+        this.commitWindow = commitWindow;
+        this.task = new GroupCommitTask();
+
+        this.groupCommitMeter = REGISTRY.meter(METRICS_GROUP, "group-commit");
+        this.fsyncMeter = REGISTRY.meter(METRICS_GROUP, "group-commit-fsync");
+        REGISTRY.gauge(METRICS_GROUP, "group-commit-pending", (Gauge<Integer>) () -> numPendingCommits());
+
+        this.task.start();
+    }
+
+    /**
+     * Closes the scheduler. Appends still waiting for a commit are failed.
+     */
+    public void close() {
+        ArrayList<PendingCommit> commits;
+
+        synchronized (this) {
+            if (!running) {
+                return;
+            }
+            running = false;
+            commits = pendingCommits;
+            pendingCommits = new ArrayList<>();
+            notifyAll();
+        }
+
+        CompletableFuture<Boolean> future = task.stop();
+
+        StorageException exception = new StorageException("group commit scheduler closed");
+        for (PendingCommit commit : commits) {
+            commit.onFailure.accept(exception);
+        }
+
+        try {
+            future.get();
+        } catch (Exception ex) {
+            logger.warn("failed to stop the group commit task", ex);
+        }
+
+        REGISTRY.remove(METRICS_GROUP, "group-commit");
+        REGISTRY.remove(METRICS_GROUP, "group-commit-fsync");
+        REGISTRY.remove(METRICS_GROUP, "group-commit-pending");
+    }
+
+    /**
+     * Submits a segment with records written but not forced to disk.
+     * @param segment The segment to force.
+     * @param onCommit Called after the segment is forced to disk.
+     * @param onFailure Called if the segment could not be forced to disk.
+     */
+    public void submit(Segment segment, Runnable onCommit, Consumer<Exception> onFailure) {
+        synchronized (this) {
+            if (running) {
+                pendingCommits.add(new PendingCommit(segment, onCommit, onFailure));
+                notifyAll();
+                return;
+            }
+        }
+        onFailure.accept(new StorageException("group commit scheduler closed"));
+    }
+
+    int numPendingCommits() {
+        synchronized (this) {
+            return pendingCommits.size();
+        }
+    }
+
+    private void commit() {
+        boolean batching;
+        synchronized (this) {
+            while (running && pendingCommits.isEmpty()) {
+                try {
+                    wait();
+                } catch (InterruptedException ex) {
+                    Thread.interrupted();
+                }
+            }
+            if (!running) {
+                return;
+            }
+            batching = pendingCommits.size() > 1;
+        }
+
+        // Let the commit window fill up when appends are arriving concurrently. A lone append is forced
+        // right away. Appends arriving while we are forcing segments are batched naturally into the next window.
+        if (batching && commitWindow > 0) {
+            try {
+                Thread.sleep(commitWindow);
+            } catch (InterruptedException ex) {
+                Thread.interrupted();
+            }
+        }
+
+        ArrayList<PendingCommit> commits;
+        synchronized (this) {
+            commits = pendingCommits;
+            pendingCommits = new ArrayList<>();
+        }
+
+        if (commits.isEmpty()) {
+            return;
+        }
+
+        // Force each dirty segment once
+        IdentityHashMap<Segment, Exception> results = new IdentityHashMap<>();
+        for (PendingCommit commit : commits) {
+            if (!results.containsKey(commit.segment)) {
+                try {
+                    commit.segment.sync();
+                    results.put(commit.segment, null);
+                } catch (Exception ex) {
+                    results.put(commit.segment, ex);
+                }
+                fsyncMeter.mark();
+            }
+        }
+        groupCommitMeter.mark();
+
+        for (PendingCommit commit : commits) {
+            Exception exception = results.get(commit.segment);
+            if (exception == null) {
+                commit.onCommit.run();
+            } else {
+                commit.onFailure.accept(exception);
+            }
+        }
+    }
+
+    private static class PendingCommit {
+
+        final Segment segment;
+        final Runnable onCommit;
+        final Consumer<Exception> onFailure;
+
+        PendingCommit(Segment segment, Runnable onCommit, Consumer<Exception> onFailure) {
+            this.segment = segment;
+            this.onCommit = onCommit;
+            this.onFailure = onFailure;
+        }
+
+    }
+
+    private class GroupCommitTask extends RepeatingTask {
+
+        GroupCommitTask() {
+            super("Storage-GroupCommit");
+        }
+
+        @Override
+        protected void task() {
+            commit();
+        }
+
+        @Override
+        protected void exceptionCaught(Throwable ex) {
+            logger.error("exception caught", ex);
+        }
+
+    }
+
+}
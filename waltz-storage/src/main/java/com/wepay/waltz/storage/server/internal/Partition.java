@@ -12,7 +12,10 @@ import com.wepay.riff.util.RequestQueue;
 import com.wepay.waltz.common.message.Record;
 import com.wepay.waltz.common.message.RecordHeader;
 import com.wepay.waltz.common.util.LRUCache;
+import com.wepay.waltz.common.util.MemoryBudget;
 import com.wepay.waltz.common.util.QueueConsumerTask;
+import com.wepay.waltz.storage.common.RawRecords;
+import com.wepay.waltz.storage.common.SegmentInfo;
 import com.wepay.waltz.storage.common.SessionInfo;
 import com.wepay.waltz.storage.common.message.AppendRequest;
 import com.wepay.waltz.storage.common.message.FailureResponse;
@@ -38,9 +41,14 @@ import com.wepay.zktools.util.Uninterruptibly;
 import org.slf4j.Logger;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ClosedChannelException;
 import java.nio.file.DirectoryStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.UUID;
@@ -52,6 +60,8 @@ public class Partition {
 
     private static final Logger logger = Logging.getLogger(Partition.class);
     private static final String FILE_NAME_FORMAT = "%019d.%s";
+    private static final String STAGED_FILE_SUFFIX = ".staged";
+    private static final String REPLACED_FILE_SUFFIX = ".replaced";
     private static final MetricRegistry REGISTRY = MetricRegistry.getInstance();
 
     private final UUID key;
@@ -62,6 +72,8 @@ public class Partition {
     private final RequestProcessingTask task;
     private final String metricsGroup;
     private final LRUCache<Segment, Object> segmentLRUCache;
+    private final GroupCommitScheduler groupCommitScheduler;
+    private final MemoryBudget requestBudget;
 
     private Meter appendMeter;
     private Timer appendLatencyTimer;
@@ -78,6 +90,29 @@ public class Partition {
     private volatile long sessionId;
 
     Partition(UUID key, Path directory, PartitionInfo partitionInfo, long segmentSizeThreshold, int segmentCacheCapacity) {
+        this(key, directory, partitionInfo, segmentSizeThreshold, segmentCacheCapacity, null);
+    }
+
+    Partition(
+        UUID key,
+        Path directory,
+        PartitionInfo partitionInfo,
+        long segmentSizeThreshold,
+        int segmentCacheCapacity,
+        GroupCommitScheduler groupCommitScheduler
+    ) {
+        this(key, directory, partitionInfo, segmentSizeThreshold, segmentCacheCapacity, groupCommitScheduler, new MemoryBudget(0L));
+    }
+
+    Partition(
+        UUID key,
+        Path directory,
+        PartitionInfo partitionInfo,
+        long segmentSizeThreshold,
+        int segmentCacheCapacity,
+        GroupCommitScheduler groupCommitScheduler,
+        MemoryBudget requestBudget
+    ) {
         this.key = key;
         this.directory = directory;
         this.partitionInfo = partitionInfo;
@@ -86,6 +121,8 @@ public class Partition {
         this.task = new RequestProcessingTask();
         this.sessionId = partitionInfo.sessionId();
         this.segmentLRUCache = new LRUCache<>(segmentCacheCapacity, entry -> cleanupFunc(entry));
+        this.groupCommitScheduler = groupCommitScheduler;
+        this.requestBudget = requestBudget;
         this.metricsGroup = String.format("%s.partition-%d", MetricGroup.WALTZ_STORAGE_METRIC_GROUP, partitionInfo.partitionId);
 
         // Register metrics
@@ -103,6 +140,7 @@ public class Partition {
 
     void open() throws StorageException, IOException {
         synchronized (segments) {
+            recoverSegmentInstall();
 
             try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.seg")) {
                 for (Path segPath : stream) {
@@ -136,6 +174,7 @@ public class Partition {
 
             // Add all segments except the writable segment to LRU Cache.
             for (int i = 0; i < size - 1; i++) {
+                segments.get(i).setReadOnly();
                 segmentLRUCache.put(segments.get(i), null);
             }
         }
@@ -152,6 +191,9 @@ public class Partition {
         }
         Uninterruptibly.run(future::get);
 
+        // Return bytes held by unprocessed requests to the parent budget, and wake up waiting threads
+        requestBudget.close();
+
         // Un-register metrics
         unregisterMetrics();
     }
@@ -183,7 +225,13 @@ public class Partition {
             this.sessionId = message.sessionId;
         }
 
-        task.enqueue(new RequestContext(message, client));
+        RequestContext requestContext = new RequestContext(message, client);
+
+        // Record data is held until the request is processed. Wait if the memory budget is used up.
+        requestBudget.acquire(requestContext.numBytes);
+        if (!task.enqueue(requestContext)) {
+            requestBudget.release(requestContext.numBytes);
+        }
     }
 
     PartitionInfoSnapshot getPartitionInfoSnapshot() {
@@ -233,7 +281,9 @@ public class Partition {
         }
     }
 
-    private void append(ArrayList<Record> records) throws StorageException, IOException {
+    // Returns the segment the last record was written to. When sync is false, the caller must sync it.
+    // Segments filled up during the append are flushed when a new segment is added.
+    private Segment append(ArrayList<Record> records, boolean sync) throws StorageException, IOException {
         synchronized (segments) {
             int off = 0;
             while (off < records.size()) {
@@ -241,8 +291,9 @@ public class Partition {
                     segmentLRUCache.putIfAbsent(currentSegment, null);
                     addSegment();
                 }
-                off = currentSegment.append(records, off);
+                off = currentSegment.append(records, off, sync);
             }
+            return currentSegment;
         }
     }
 
@@ -268,52 +319,391 @@ public class Partition {
     }
 
     private RecordHeader getRecordHeader(long transactionId) throws StorageException, IOException {
-        synchronized (segments) {
-            Segment segment = SegmentFinder.findSegment(segments, transactionId);
+        while (true) {
+            Segment segment = findSegment(transactionId);
             if (segment == null) {
                 return null;
-            } else {
-                if (!segment.isWritable()) {
-                    segment.ensureChannelOpened();
-                    segmentLRUCache.putIfAbsent(segment, null);
-                }
+            }
+            try {
                 return segment.getRecordHeader(transactionId);
+            } catch (ClosedChannelException ex) {
+                retryIfEvicted(segment, ex);
             }
         }
     }
 
     private Record getRecord(long transactionId) throws StorageException, IOException {
-        Segment segment = SegmentFinder.findSegment(segments, transactionId);
-        if (segment == null) {
-            return null;
-        } else {
-            synchronized (segments) {
+        while (true) {
+            Segment segment = findSegment(transactionId);
+            if (segment == null) {
+                return null;
+            }
+            try {
+                return segment.getRecord(transactionId);
+            } catch (ClosedChannelException ex) {
+                retryIfEvicted(segment, ex);
+            }
+        }
+    }
+
+    // Finds the segment of the transaction and opens its channel if needed. Reads are done without the lock.
+    private Segment findSegment(long transactionId) throws StorageException {
+        synchronized (segments) {
+            Segment segment = SegmentFinder.findSegment(segments, transactionId);
+            if (segment != null) {
+                segment.ensureChannelOpened();
                 if (!segment.isWritable()) {
-                    segment.ensureChannelOpened();
                     segmentLRUCache.putIfAbsent(segment, null);
                 }
-                return segment.getRecord(transactionId);
             }
+            return segment;
+        }
+    }
+
+    // The segment cache may close the channel of a read-only segment while it is being read. Such a read is retried.
+    private void retryIfEvicted(Segment segment, ClosedChannelException ex) throws StorageException {
+        if (segment.isClosed()) {
+            throw new StorageException("segment closed", ex);
         }
     }
 
     public ArrayList<Record> getRecords(long transactionId, int maxNumRecords) throws StorageException, IOException {
-        ArrayList<Record> recordList = new ArrayList<>();
-        for (int i = 0; i < maxNumRecords; i++) {
-            Record r = getRecord(transactionId + i);
-            if (r == null) {
+        return getRange(transactionId, maxNumRecords, Segment::getRecords);
+    }
+
+    private ArrayList<RecordHeader> getRecordHeaders(long transactionId, int maxNumRecords) throws StorageException, IOException {
+        return getRange(transactionId, maxNumRecords, Segment::getRecordHeaders);
+    }
+
+    // Reads a range of records without parsing them. A range may span multiple segments.
+    private RawRecords getRawRecords(long transactionId, int maxNumRecords) throws StorageException, IOException {
+        RawRecords rawRecords = new RawRecords(transactionId);
+        while (rawRecords.numRecords() < maxNumRecords) {
+            long currentTransactionId = transactionId + rawRecords.numRecords();
+            Segment segment = findSegment(currentTransactionId);
+            if (segment == null) {
                 break;
+            }
+            try {
+                if (segment.getRawRecords(currentTransactionId, maxNumRecords - rawRecords.numRecords(), rawRecords) == 0) {
+                    break;
+                }
+            } catch (ClosedChannelException ex) {
+                retryIfEvicted(segment, ex);
+            }
+        }
+        return rawRecords;
+    }
+
+    // Reads a range of records segment by segment. A range may span multiple segments.
+    private <T> ArrayList<T> getRange(long transactionId, int maxNumRecords, RangeReader<T> reader) throws StorageException, IOException {
+        ArrayList<T> list = new ArrayList<>();
+        while (list.size() < maxNumRecords) {
+            long currentTransactionId = transactionId + list.size();
+            Segment segment = findSegment(currentTransactionId);
+            if (segment == null) {
+                break;
+            }
+            try {
+                ArrayList<T> items = reader.read(segment, currentTransactionId, maxNumRecords - list.size());
+                if (items.isEmpty()) {
+                    break;
+                }
+                list.addAll(items);
+            } catch (ClosedChannelException ex) {
+                retryIfEvicted(segment, ex);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Returns the info of the segments of this partition. A segment is sealed when it is read-only and all its records
+     * are at or below the local low-water mark. A sealed segment does not change, so it can be copied as whole files.
+     *
+     * @return the list of segment info ordered by the first transaction id
+     */
+    public ArrayList<SegmentInfo> getSegmentInfos() {
+        long localLowWaterMark = partitionInfo.getLocalLowWaterMark();
+
+        synchronized (segments) {
+            ArrayList<SegmentInfo> list = new ArrayList<>(segments.size());
+            for (Segment segment : segments) {
+                long maxTransactionId = segment.maxTransactionId();
+                list.add(new SegmentInfo(
+                    segment.firstTransactionId(),
+                    maxTransactionId,
+                    segment.size(),
+                    segment.indexSize(),
+                    !segment.isWritable() && maxTransactionId <= localLowWaterMark
+                ));
+            }
+            return list;
+        }
+    }
+
+    /**
+     * Computes the checksum of the segment file of a sealed segment using {@link Segment#checksum(CRC32)}.
+     *
+     * @param firstTransactionId the first transaction id of the segment
+     * @return the checksum
+     * @throws StorageException
+     * @throws IOException
+     */
+    public int getSegmentChecksum(long firstTransactionId) throws StorageException, IOException {
+        return checksum(firstTransactionId, Segment::checksum);
+    }
+
+    /**
+     * Computes the checksum of the index file of a sealed segment using {@link Segment.Index#checksum(CRC32)}.
+     *
+     * @param firstTransactionId the first transaction id of the segment
+     * @return the checksum
+     * @throws StorageException
+     * @throws IOException
+     */
+    public int getIndexChecksum(long firstTransactionId) throws StorageException, IOException {
+        return checksum(firstTransactionId, (segment, crc32) -> segment.index.checksum(crc32));
+    }
+
+    private int checksum(long firstTransactionId, ChecksumFunction function) throws StorageException, IOException {
+        while (true) {
+            Segment segment = findSealedSegment(firstTransactionId);
+            try {
+                CRC32 crc32 = new CRC32();
+                function.update(segment, crc32);
+                return (int) crc32.getValue();
+            } catch (ClosedChannelException ex) {
+                retryIfEvicted(segment, ex);
+            }
+        }
+    }
+
+    /**
+     * Reads a chunk of the segment file or the index file of a sealed segment as is.
+     *
+     * @param firstTransactionId the first transaction id of the segment
+     * @param fromIndex whether to read the index file instead of the segment file
+     * @param position the position in the file
+     * @param maxLength the maximum number of bytes to read
+     * @return the bytes read
+     * @throws StorageException
+     * @throws IOException
+     */
+    public byte[] readSegmentFile(long firstTransactionId, boolean fromIndex, long position, int maxLength) throws StorageException, IOException {
+        return findSealedSegment(firstTransactionId).readFile(fromIndex, position, maxLength);
+    }
+
+    // Finds the sealed segment starting at the given transaction id. Only sealed segments are copied to other storage nodes.
+    private Segment findSealedSegment(long firstTransactionId) throws StorageException {
+        long localLowWaterMark = partitionInfo.getLocalLowWaterMark();
+
+        synchronized (segments) {
+            for (Segment segment : segments) {
+                if (segment.firstTransactionId() == firstTransactionId) {
+                    if (segment.isWritable() || segment.maxTransactionId() > localLowWaterMark) {
+                        throw new StorageException("segment not sealed: firstTransactionId=" + firstTransactionId);
+                    }
+                    segment.ensureChannelOpened();
+                    segmentLRUCache.putIfAbsent(segment, null);
+                    return segment;
+                }
+            }
+        }
+        throw new StorageException("segment not found: firstTransactionId=" + firstTransactionId);
+    }
+
+    /**
+     * Writes a chunk of a segment file or an index file copied from another storage node to a staged file.
+     * Chunks must be written in order. A chunk at position zero starts the staged file over.
+     *
+     * @param firstTransactionId the first transaction id of the segment
+     * @param toIndex whether the chunk belongs to the index file instead of the segment file
+     * @param position the position of the chunk in the file
+     * @param data the chunk
+     * @throws StorageException
+     * @throws IOException
+     */
+    public void writeStagedSegmentFile(long firstTransactionId, boolean toIndex, long position, byte[] data) throws StorageException, IOException {
+        Path path = stagedFile(firstTransactionId, toIndex);
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            if (position == 0L) {
+                channel.truncate(0L);
+            } else if (channel.size() != position) {
+                throw new StorageException("staged file out of order: file=" + path + " size=" + channel.size() + " position=" + position);
+            }
+
+            ByteBuffer buf = ByteBuffer.wrap(data);
+            while (buf.remaining() > 0) {
+                channel.write(buf, position + buf.position());
+            }
+        }
+    }
+
+    /**
+     * Installs a segment copied from another storage node. The staged files are verified against the checksums computed
+     * by the source node before the partition is touched. The segment must continue the partition. Either it replaces
+     * the last segment when both start at the same transaction id, or it starts right after the last transaction.
+     * The installed segment becomes the writable segment.
+     *
+     * @param firstTransactionId the first transaction id of the segment
+     * @param segmentChecksum the checksum of the segment file
+     * @param indexChecksum the checksum of the index file
+     * @throws StorageException
+     * @throws IOException
+     */
+    public void installSegment(long firstTransactionId, int segmentChecksum, int indexChecksum) throws StorageException, IOException {
+        Path stagedSegPath = stagedFile(firstTransactionId, false);
+        Path stagedIdxPath = stagedFile(firstTransactionId, true);
+        long stagedMaxTransactionId;
+
+        try {
+            if (Segment.checksum(stagedSegPath) != segmentChecksum) {
+                throw new StorageException("segment file checksum mismatch: file=" + stagedSegPath);
+            }
+            if (Segment.checksum(stagedIdxPath) != indexChecksum) {
+                throw new StorageException("index file checksum mismatch: file=" + stagedIdxPath);
+            }
+
+            // Opening the staged files validates the headers and forces the files to disk
+            Segment staged = new Segment(key, stagedSegPath, stagedIdxPath, partitionInfo, segmentSizeThreshold);
+            stagedMaxTransactionId = staged.maxTransactionId();
+            staged.close();
+
+            if (staged.firstTransactionId() != firstTransactionId) {
+                throw new StorageException("staged segment has a wrong first transaction id: file=" + stagedSegPath);
+            }
+
+            synchronized (segments) {
+                install(firstTransactionId, stagedMaxTransactionId, stagedSegPath, stagedIdxPath);
+            }
+
+        } catch (StorageException | IOException | RuntimeException ex) {
+            // A failed copy starts over from scratch
+            Files.deleteIfExists(stagedSegPath);
+            Files.deleteIfExists(stagedIdxPath);
+            throw ex;
+        }
+
+        logger.info("segment installed: firstTransactionId={} maxTransactionId={} partitionInfo[{}]", firstTransactionId, stagedMaxTransactionId, partitionInfo);
+    }
+
+    private void install(long firstTransactionId, long stagedMaxTransactionId, Path stagedSegPath, Path stagedIdxPath) throws StorageException, IOException {
+        Path segPath = directory.resolve(String.format(FILE_NAME_FORMAT, firstTransactionId, "seg"));
+        Path idxPath = directory.resolve(String.format(FILE_NAME_FORMAT, firstTransactionId, "idx"));
+        Segment previous = currentSegment;
+        boolean replace;
+
+        if (previous.firstTransactionId() == firstTransactionId) {
+            if (previous.maxTransactionId() > stagedMaxTransactionId) {
+                throw new StorageException("the last segment has more transactions than the copied segment");
+            }
+            // The last segment holds a prefix of the copied segment. Its files are renamed aside and deleted only
+            // after the copied segment is open. The segment file goes aside first, see recoverSegmentInstall().
+            previous.close();
+            segmentLRUCache.remove(previous);
+            segments.remove(segments.size() - 1);
+            Files.move(segPath, replacedFile(segPath), StandardCopyOption.ATOMIC_MOVE);
+            Files.move(idxPath, replacedFile(idxPath), StandardCopyOption.ATOMIC_MOVE);
+            replace = true;
+
+        } else if (previous.nextTransactionId() == firstTransactionId) {
+            previous.flush();
+            previous.setReadOnly();
+            segmentLRUCache.putIfAbsent(previous, null);
+            replace = false;
+
+        } else {
+            throw new StorageException(
+                "segment not contiguous: firstTransactionId=" + firstTransactionId + " maxTransactionId=" + previous.maxTransactionId()
+            );
+        }
+
+        try {
+            // The segment file is moved last. It marks a completed install.
+            Files.move(stagedIdxPath, idxPath, StandardCopyOption.ATOMIC_MOVE);
+            Files.move(stagedSegPath, segPath, StandardCopyOption.ATOMIC_MOVE);
+
+            Segment segment = new Segment(key, segPath, idxPath, partitionInfo, segmentSizeThreshold);
+            segment.setWritable();
+            segments.add(segment);
+            currentSegment = segment;
+
+        } catch (StorageException | IOException | RuntimeException ex) {
+            // Put the previous last segment back
+            if (replace) {
+                Files.move(replacedFile(idxPath), idxPath, StandardCopyOption.ATOMIC_MOVE);
+                Files.move(replacedFile(segPath), segPath, StandardCopyOption.ATOMIC_MOVE);
+                previous = new Segment(key, segPath, idxPath, partitionInfo, segmentSizeThreshold);
+                segments.add(previous);
             } else {
-                recordList.add(r);
+                segmentLRUCache.remove(previous);
+                previous.ensureChannelOpened();
+            }
+            previous.setWritable();
+            currentSegment = previous;
+            throw ex;
+        }
+
+        if (replace) {
+            Files.deleteIfExists(replacedFile(segPath));
+            Files.deleteIfExists(replacedFile(idxPath));
+        }
+    }
+
+    /**
+     * Completes or rolls back a segment install interrupted by a crash, and deletes staged files of unfinished copies.
+     * A replaced segment file is put aside before its index file, and the copied segment file is moved in after its
+     * index file. So the install is complete if the segment file is in place.
+     */
+    private void recoverSegmentInstall() throws IOException {
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + STAGED_FILE_SUFFIX)) {
+            for (Path stagedPath : stream) {
+                Files.deleteIfExists(stagedPath);
+            }
+        }
+
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.seg" + REPLACED_FILE_SUFFIX)) {
+            for (Path replacedSegPath : stream) {
+                Path replacedSegFileName = replacedSegPath.getFileName();
+
+                if (replacedSegFileName == null) {
+                    throw new IllegalStateException("found no segment file name: " + replacedSegPath.toString());
+                }
+
+                String segName = replacedSegFileName.toString().replace(REPLACED_FILE_SUFFIX, "");
+                Path segPath = directory.resolve(segName);
+                Path idxPath = directory.resolve(segName.replace(".seg", ".idx"));
+                Path replacedIdxPath = replacedFile(idxPath);
+
+                if (Files.exists(segPath)) {
+                    Files.deleteIfExists(replacedSegPath);
+                    Files.deleteIfExists(replacedIdxPath);
+                    logger.info("completed interrupted segment install: file={}", segPath);
+                } else {
+                    if (Files.exists(replacedIdxPath)) {
+                        Files.move(replacedIdxPath, idxPath, StandardCopyOption.ATOMIC_MOVE);
+                    }
+                    Files.move(replacedSegPath, segPath, StandardCopyOption.ATOMIC_MOVE);
+                    logger.info("rolled back interrupted segment install: file={}", segPath);
+                }
             }
         }
-        return recordList;
+    }
+
+    private static Path replacedFile(Path path) {
+        return path.resolveSibling(path.getFileName() + REPLACED_FILE_SUFFIX);
+    }
+
+    private Path stagedFile(long firstTransactionId, boolean index) {
+        return directory.resolve(String.format(FILE_NAME_FORMAT, firstTransactionId, index ? "idx" : "seg") + STAGED_FILE_SUFFIX);
     }
 
     private void deleteOrphanedStorageFiles() throws IOException {
         if (!PartitionInfo.Flags.isFlagSet(partitionInfo.getFlags(), PartitionInfo.Flags.PARTITION_IS_ASSIGNED)) {
             synchronized (segments) {
-                try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.{seg,idx}")) {
+                try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.{seg,idx,staged,replaced}")) {
                     for (Path segOrIdxPath : stream) {
                         try {
                             Files.deleteIfExists(segOrIdxPath);
@@ -332,6 +722,7 @@ public class Partition {
 
         REGISTRY.gauge(metricsGroup, "session-id", (Gauge<Long>) () -> partitionInfo.sessionId());
         REGISTRY.gauge(metricsGroup, "process-queue-size", (Gauge<Integer>) () -> task.queueSize());
+        REGISTRY.gauge(metricsGroup, "request-bytes-in-flight", (Gauge<Long>) () -> requestBudget.bytesInFlight());
         REGISTRY.gauge(metricsGroup, "low-water-mark", (Gauge<Long>) () -> partitionInfo.getLowWaterMark());
         REGISTRY.gauge(metricsGroup, "local-low-water-mark", (Gauge<Long>) () -> partitionInfo.getLocalLowWaterMark());
         REGISTRY.gauge(metricsGroup, "flags", (Gauge<Integer>) () -> partitionInfo.getFlags());
@@ -353,6 +744,7 @@ public class Partition {
         REGISTRY.remove(metricsGroup, "append-latency");
         REGISTRY.remove(metricsGroup, "session-id");
         REGISTRY.remove(metricsGroup, "process-queue-size");
+        REGISTRY.remove(metricsGroup, "request-bytes-in-flight");
         REGISTRY.remove(metricsGroup, "low-water-mark");
         REGISTRY.remove(metricsGroup, "local-low-water-mark");
         REGISTRY.remove(metricsGroup, "flags");
@@ -368,14 +760,39 @@ public class Partition {
         REGISTRY.remove(metricsGroup, "record-list-request");
     }
 
+    private interface RangeReader<T> {
+
+        ArrayList<T> read(Segment segment, long transactionId, int maxNumRecords) throws StorageException, IOException;
+
+    }
+
+    private interface ChecksumFunction {
+
+        void update(Segment segment, CRC32 crc32) throws IOException;
+
+    }
+
     private static class RequestContext {
 
         final StorageMessage message;
         final PartitionClient client;
+        final long numBytes;
 
         RequestContext(StorageMessage message, PartitionClient client) {
             this.message = message;
             this.client = client;
+            this.numBytes = numBytes(message);
+        }
+
+        // Returns the size of record data carried by the message
+        private static long numBytes(StorageMessage message) {
+            long numBytes = 0L;
+            if (message.type() == StorageMessageType.APPEND_REQUEST) {
+                for (Record record : ((AppendRequest) message).records) {
+                    numBytes += record.data.length;
+                }
+            }
+            return numBytes;
         }
 
     }
@@ -390,6 +807,14 @@ public class Partition {
         public void process(RequestContext requestContext) throws Exception {
             StorageMessage msg = requestContext.message;
 
+            try {
+                processRequest(requestContext, msg);
+            } finally {
+                requestBudget.release(requestContext.numBytes);
+            }
+        }
+
+        private void processRequest(RequestContext requestContext, StorageMessage msg) throws Exception {
             try {
                 checkPermissions(requestContext.message);
 
@@ -440,11 +865,29 @@ public class Partition {
 
                     case StorageMessageType.APPEND_REQUEST:
                         appendMeter.mark();
-                        appendLatencyTimer.time((Timer.CheckedRunnable<Exception>) () -> {
-                            AppendRequest appendRequest = (AppendRequest) msg;
-                            append(appendRequest.records);
-                            success(requestContext);
-                        });
+                        AppendRequest appendRequest = (AppendRequest) msg;
+                        if (groupCommitScheduler != null) {
+                            // The response is sent after the group commit forces the segment to disk,
+                            // so the latency is measured up to the commit.
+                            Timer.Context timerContext = appendLatencyTimer.time();
+                            Segment segment = append(appendRequest.records, false);
+                            groupCommitScheduler.submit(
+                                segment,
+                                () -> {
+                                    timerContext.stop();
+                                    success(requestContext);
+                                },
+                                ex -> {
+                                    timerContext.stop();
+                                    failure(requestContext, ex);
+                                }
+                            );
+                        } else {
+                            appendLatencyTimer.time((Timer.CheckedRunnable<Exception>) () -> {
+                                append(appendRequest.records, true);
+                                success(requestContext);
+                            });
+                        }
                         break;
 
                     case StorageMessageType.RECORD_HEADER_REQUEST:
@@ -482,15 +925,8 @@ public class Partition {
                         recordHeaderListRequestCounter.inc();
 
                         RecordHeaderListRequest recordHeaderListRequest = (RecordHeaderListRequest) msg;
-                        ArrayList<RecordHeader> recordHeaderList = new ArrayList<>();
-                        for (int i = 0; i < recordHeaderListRequest.maxNumRecords; i++) {
-                            RecordHeader r = getRecordHeader(recordHeaderListRequest.transactionId + i);
-                            if (r == null) {
-                                break;
-                            } else {
-                                recordHeaderList.add(r);
-                            }
-                        }
+                        ArrayList<RecordHeader> recordHeaderList =
+                            getRecordHeaders(recordHeaderListRequest.transactionId, recordHeaderListRequest.maxNumRecords);
                         requestContext.client.sendMessage(
                             new RecordHeaderListResponse(msg.sessionId, msg.seqNum, partitionInfo.partitionId, recordHeaderList),
                             true
@@ -501,9 +937,10 @@ public class Partition {
                         recordListRequestCounter.inc();
 
                         RecordListRequest recordListRequest = (RecordListRequest) msg;
-                        ArrayList<Record> recordList = getRecords(recordListRequest.transactionId, recordListRequest.maxNumRecords);
+                        // Records are sent in the segment file format. The receiver parses them.
+                        RawRecords rawRecords = getRawRecords(recordListRequest.transactionId, recordListRequest.maxNumRecords);
                         requestContext.client.sendMessage(
-                            new RecordListResponse(msg.sessionId, msg.seqNum, partitionInfo.partitionId, recordList),
+                            new RecordListResponse(msg.sessionId, msg.seqNum, partitionInfo.partitionId, rawRecords),
                             true
                         );
                         break;
@@ -4,11 +4,13 @@ import com.wepay.riff.util.Logging;
 import com.wepay.waltz.common.message.Record;
 import com.wepay.waltz.common.message.RecordHeader;
 import com.wepay.waltz.common.message.ReqId;
+import com.wepay.waltz.storage.common.RawRecords;
 import com.wepay.waltz.storage.exception.StorageException;
 import org.slf4j.Logger;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.FileChannel;
 import java.nio.channels.FileLock;
@@ -16,8 +18,10 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 import java.util.zip.CRC32;
 
 public class Segment {
@@ -50,6 +54,9 @@ public class Segment {
 
     private static final int LARGE_BUFFER_SIZE = 1000000;
 
+    // The size of a single read of a record range. A record larger than this is read by itself.
+    static final int RANGE_READ_SIZE = 4 * 1024 * 1024;
+
     private final Path file;
     private final Path indexFile;
     private final SegmentFileHeader header;
@@ -59,11 +66,14 @@ public class Segment {
     private final byte[] ioBytes = new byte[IO_BUF_SIZE];
     private final ByteBuffer ioBuf = ByteBuffer.wrap(ioBytes);
 
-    private FileChannel channel;
-    private long nextTransactionId;
+    // Readers hold the read lock. Truncation holds the write lock, so it never shrinks the files under a reader.
+    private final ReentrantReadWriteLock truncationLock = new ReentrantReadWriteLock();
+
+    private volatile FileChannel channel;
+    private volatile long nextTransactionId;
     private volatile long nextOffset;
     private boolean writable = false;
-    private boolean closed = false;
+    private volatile boolean closed = false;
 
     public Segment(UUID key, Path file, Path indexFile, PartitionInfo partitionInfo, long segmentSizeThreshold) throws StorageException {
         this.file = file;
@@ -119,12 +129,14 @@ public class Segment {
     public void setReadOnly() {
         synchronized (this) {
             writable = false;
+            index.setSealed(true);
         }
     }
 
     public void setWritable() {
         synchronized (this) {
             writable = true;
+            index.setSealed(false);
         }
     }
 
@@ -147,6 +159,11 @@ public class Segment {
     }
 
     void ensureChannelOpened() throws StorageException {
+        // Avoid the segment lock when the channels are open, so readers do not wait for appends
+        if (channel.isOpen() && !index.isChannelClosed()) {
+            return;
+        }
+
         synchronized (this) {
             index.ensureChannelOpened();
 
@@ -286,6 +303,12 @@ public class Segment {
         }
     }
 
+    public long indexSize() {
+        synchronized (this) {
+            return FILE_HEADER_SIZE + Index.OFFSET_SIZE * (nextTransactionId - header.firstTransactionId);
+        }
+    }
+
     public void flush() throws IOException {
         synchronized (this) {
             index.flush();
@@ -293,6 +316,35 @@ public class Segment {
         }
     }
 
+    /**
+     * Forces the record data to disk. The index is flushed every {@code CHECKPOINT_INTERVAL} and recovered on restart.
+     * This does not hold the segment lock during the force, so appends can continue while the data is being synced.
+     * A segment that is no longer writable was forced to disk when it was sealed or closed, and its channel may
+     * already be closed by the segment cache, so there is nothing to do.
+     *
+     * @throws IOException
+     */
+    public void sync() throws IOException {
+        FileChannel channel;
+        synchronized (this) {
+            if (!writable) {
+                return;
+            }
+            channel = this.channel;
+        }
+
+        try {
+            channel.force(false);
+        } catch (ClosedChannelException ex) {
+            // The segment was sealed and its channel closed while we were forcing it.
+            synchronized (this) {
+                if (writable) {
+                    throw ex;
+                }
+            }
+        }
+    }
+
     public void checksum(CRC32 crc32) throws IOException {
         ByteBuffer byteBuffer = ByteBuffer.allocate(LARGE_BUFFER_SIZE);
 
@@ -310,6 +362,57 @@ public class Segment {
         logger.debug("checksum computed: checksum=" + ((int) crc32.getValue()) + " {}", this);
     }
 
+    /**
+     * Computes the checksum of a segment file or an index file that is not open, in the same way as
+     * {@link #checksum(CRC32)} and {@link Index#checksum(CRC32)}. The file header is excluded.
+     *
+     * @param file the segment file or the index file
+     * @return the checksum
+     * @throws IOException
+     */
+    static int checksum(Path file) throws IOException {
+        CRC32 crc32 = new CRC32();
+        ByteBuffer byteBuffer = ByteBuffer.allocate(LARGE_BUFFER_SIZE);
+
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = FILE_HEADER_SIZE;
+            while (true) {
+                int n = fileChannel.read(byteBuffer, position);
+                if (n < 0) {
+                    break;
+                }
+                position += n;
+                byteBuffer.flip();
+                crc32.update(byteBuffer);
+                byteBuffer.clear();
+            }
+        }
+        return (int) crc32.getValue();
+    }
+
+    /**
+     * Reads the segment file or the index file as is, starting from the given position. This is used to copy a sealed
+     * segment to another storage node. The file is read through a channel of its own, so the segment cache
+     * closing the channels of this segment does not affect the read.
+     *
+     * @param fromIndex whether to read the index file instead of the segment file
+     * @param position the position in the file
+     * @param maxLength the maximum number of bytes to read
+     * @return the bytes read. It is empty if the position is at or beyond the end of the file.
+     * @throws IOException
+     */
+    public byte[] readFile(boolean fromIndex, long position, int maxLength) throws IOException {
+        try (FileChannel fileChannel = FileChannel.open(fromIndex ? indexFile : file, StandardOpenOption.READ)) {
+            ByteBuffer byteBuffer = ByteBuffer.allocate((int) Math.max(0L, Math.min(maxLength, fileChannel.size() - position)));
+            while (byteBuffer.remaining() > 0) {
+                if (fileChannel.read(byteBuffer, position + byteBuffer.position()) < 0) {
+                    return Arrays.copyOf(byteBuffer.array(), byteBuffer.position());
+                }
+            }
+            return byteBuffer.array();
+        }
+    }
+
     public void close() {
         synchronized (this) {
             closed = true;
@@ -352,6 +455,22 @@ public class Segment {
     }
 
     public int append(ArrayList<Record> records, int off) throws StorageException, IOException {
+        return append(records, off, true);
+    }
+
+    /**
+     * Appends records starting at the given offset in the list until the segment size exceeds the threshold.
+     * If {@code sync} is false, the data is not forced to disk. The caller must call {@link #sync()} before
+     * acknowledging the append.
+     *
+     * @param records records to append
+     * @param off index of the first record to append
+     * @param sync whether to force the data to disk
+     * @return the index of the first record not appended
+     * @throws StorageException
+     * @throws IOException
+     */
+    public int append(ArrayList<Record> records, int off, boolean sync) throws StorageException, IOException {
         synchronized (this) {
             if (closed) {
                 throw new StorageException("segment closed");
@@ -383,7 +502,9 @@ public class Segment {
                     break;
                 }
             }
-            channel.force(false);
+            if (sync) {
+                channel.force(false);
+            }
 
             return cumulativeCount;
         }
@@ -428,128 +549,312 @@ public class Segment {
         return amount;
     }
 
+    /**
+     * Reads the header of a record. Reads use positional I/O and do not take the segment lock,
+     * so they run concurrently with each other and with appends. Only records that are completely written are visible.
+     */
     public RecordHeader getRecordHeader(long transactionId) throws StorageException, IOException {
-        synchronized (this) {
-            if (closed) {
-                throw new StorageException("segment closed");
-            }
-
-            long offset = index.get(transactionId);
+        truncationLock.readLock().lock();
+        try {
+            long offset = offsetOf(transactionId);
             if (offset < 0) {
                 return null;
             }
 
-            channel.position(offset);
-            ioBuf.clear();
-            ioBuf.limit(RECORD_HEADER_SIZE - 8); // exclude data length and data checksum
-            while (ioBuf.remaining() > 0) {
-                if (channel.read(ioBuf) < 0) {
-                    throw new StorageException("end of file");
-                }
+            ByteBuffer buf = ByteBuffer.allocate(RECORD_HEADER_SIZE - 8); // exclude data length and data checksum
+            if (!readFully(buf, offset)) {
+                throw new StorageException("end of file");
             }
-            ioBuf.flip();
+            buf.flip();
 
-            if (ioBuf.getLong() != transactionId) {
+            if (buf.getLong() != transactionId) {
                 throw new StorageException("transaction id mismatch");
             }
 
-            ReqId reqId = new ReqId(ioBuf.getLong(), ioBuf.getLong());
-            int transactionHeader = ioBuf.getInt();
+            ReqId reqId = new ReqId(buf.getLong(), buf.getLong());
+            int transactionHeader = buf.getInt();
 
             return new RecordHeader(transactionId, reqId, transactionHeader);
+
+        } finally {
+            truncationLock.readLock().unlock();
         }
     }
 
+    /**
+     * Reads a record. Like {@link #getRecordHeader(long)}, this does not take the segment lock.
+     */
     public Record getRecord(long transactionId) throws StorageException, IOException {
-        synchronized (this) {
+        truncationLock.readLock().lock();
+        try {
+            long offset = offsetOf(transactionId);
+            if (offset < 0) {
+                return null; // not found
+            }
+
+            ByteBuffer buf = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            if (!readFully(buf, offset)) {
+                throw new StorageException("end of file");
+            }
+            buf.flip();
+
+            if (buf.getLong() != transactionId) {
+                throw new StorageException("transaction id mismatch");
+            }
+
+            ReqId reqId = new ReqId(buf.getLong(), buf.getLong());
+            int transactionHeader = buf.getInt();
+            int dataLen = buf.getInt();
+            int dataChecksum = buf.getInt();
+
+            byte[] dataBytes = new byte[dataLen];
+            if (!readFully(ByteBuffer.wrap(dataBytes), offset + RECORD_HEADER_SIZE)) {
+                throw new StorageException("end of file");
+            }
+
+            return new Record(transactionId, reqId, transactionHeader, dataBytes, dataChecksum);
+
+        } finally {
+            truncationLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Reads up to {@code maxNumRecords} records starting at the given transaction id.
+     * The start offset is resolved once and the contiguous byte range is read with large positional reads.
+     * Only records in this segment are returned. The caller continues with the next segment if needed.
+     */
+    public ArrayList<Record> getRecords(long transactionId, int maxNumRecords) throws StorageException, IOException {
+        return getRange(transactionId, maxNumRecords, Segment::parseRecord);
+    }
+
+    /**
+     * Reads up to {@code maxNumRecords} record headers starting at the given transaction id.
+     * See {@link #getRecords(long, int)}.
+     */
+    public ArrayList<RecordHeader> getRecordHeaders(long transactionId, int maxNumRecords) throws StorageException, IOException {
+        return getRange(transactionId, maxNumRecords, Segment::parseRecordHeader);
+    }
+
+    /**
+     * Reads up to {@code maxNumRecords} records starting at the given transaction id without parsing them.
+     * The bytes of the records are read with a single positional read and added to {@code rawRecords} as a chunk.
+     * Only records in this segment are read.
+     *
+     * @return the number of records read
+     */
+    public int getRawRecords(long transactionId, int maxNumRecords, RawRecords rawRecords) throws StorageException, IOException {
+        truncationLock.readLock().lock();
+        try {
             if (closed) {
                 throw new StorageException("segment closed");
             }
 
+            // Read nextTransactionId before nextOffset. All records before nextTransactionId end at or before nextOffset.
+            long next = nextTransactionId;
+            long end = nextOffset;
+
+            long endTransactionId = Math.min(transactionId + maxNumRecords, next);
+            if (transactionId >= endTransactionId) {
+                return 0;
+            }
+
             long offset = index.get(transactionId);
-            if (offset < 0) {
-                return null; // not found
+            if (endTransactionId < next) {
+                end = index.get(endTransactionId);
+            }
+            if (offset < 0 || end < offset || end - offset > Integer.MAX_VALUE) {
+                throw new StorageException("segment corrupted: index corrupted");
             }
 
-            ioBuf.clear();
-            ioBuf.limit(RECORD_HEADER_SIZE);
-            channel.position(offset);
-            while (ioBuf.remaining() > 0) {
-                if (channel.read(ioBuf) < 0) {
-                    throw new StorageException("end of file");
-                }
+            byte[] bytes = new byte[(int) (end - offset)];
+            if (!readFully(ByteBuffer.wrap(bytes), offset)) {
+                throw new StorageException("end of file");
             }
-            ioBuf.flip();
 
-            if (ioBuf.getLong() != transactionId) {
+            if (ByteBuffer.wrap(bytes).getLong() != transactionId) {
                 throw new StorageException("transaction id mismatch");
             }
 
-            ReqId reqId = new ReqId(ioBuf.getLong(), ioBuf.getLong());
-            int transactionHeader = ioBuf.getInt();
-            int dataLen = ioBuf.getInt();
-            int dataChecksum = ioBuf.getInt();
+            int numRecords = (int) (endTransactionId - transactionId);
+            rawRecords.add(numRecords, bytes);
+            return numRecords;
 
-            byte[] dataBytes = new byte[dataLen];
-            ByteBuffer dataBuf = ByteBuffer.wrap(dataBytes);
-            while (dataBuf.remaining() > 0) {
-                if (channel.read(dataBuf) < 0) {
+        } finally {
+            truncationLock.readLock().unlock();
+        }
+    }
+
+    private <T> ArrayList<T> getRange(long transactionId, int maxNumRecords, RecordParser<T> parser) throws StorageException, IOException {
+        ArrayList<T> list = new ArrayList<>();
+
+        truncationLock.readLock().lock();
+        try {
+            if (closed) {
+                throw new StorageException("segment closed");
+            }
+
+            // Read nextTransactionId before nextOffset. All records before nextTransactionId end at or before nextOffset.
+            long next = nextTransactionId;
+            long end = nextOffset;
+
+            long endTransactionId = Math.min(transactionId + maxNumRecords, next);
+            if (transactionId >= endTransactionId) {
+                return list;
+            }
+
+            long offset = index.get(transactionId);
+            if (endTransactionId < next) {
+                end = index.get(endTransactionId);
+            }
+            if (offset < 0 || end < offset) {
+                throw new StorageException("segment corrupted: index corrupted");
+            }
+
+            long currentTransactionId = transactionId;
+            int readSize = RANGE_READ_SIZE;
+
+            while (currentTransactionId < endTransactionId) {
+                if (end - offset < RECORD_HEADER_SIZE) {
+                    throw new StorageException("segment corrupted: record corrupted");
+                }
+
+                ByteBuffer buf = ByteBuffer.allocate((int) Math.min(end - offset, readSize));
+                if (!readFully(buf, offset)) {
                     throw new StorageException("end of file");
                 }
+                buf.flip();
+
+                readSize = RANGE_READ_SIZE;
+
+                // Parse the complete records in the buffer
+                while (currentTransactionId < endTransactionId && buf.remaining() >= RECORD_HEADER_SIZE) {
+                    int recordStart = buf.position();
+                    int recordSize = RECORD_HEADER_SIZE + buf.getInt(recordStart + DATA_LEN_POSITION) + RECORD_FOOTER_SIZE;
+                    if (recordSize < RECORD_HEADER_SIZE + RECORD_FOOTER_SIZE || recordSize > end - offset) {
+                        throw new StorageException("segment corrupted: record corrupted");
+                    }
+                    if (buf.remaining() < recordSize) {
+                        // Make sure the next read holds at least this record
+                        readSize = Math.max(recordSize, RANGE_READ_SIZE);
+                        break;
+                    }
+
+                    list.add(parser.parse(buf, currentTransactionId));
+                    buf.position(recordStart + recordSize);
+
+                    offset += recordSize;
+                    currentTransactionId++;
+                }
             }
 
-            return new Record(transactionId, reqId, transactionHeader, dataBytes, dataChecksum);
+            return list;
+
+        } finally {
+            truncationLock.readLock().unlock();
+        }
+    }
+
+    // Parses a record at the buffer position. The buffer must contain the whole record.
+    private static Record parseRecord(ByteBuffer buf, long transactionId) throws StorageException {
+        Record record = RawRecords.readRecord(buf);
+        if (record.transactionId != transactionId) {
+            throw new StorageException("transaction id mismatch");
+        }
+
+        return record;
+    }
+
+    // Parses a record header at the buffer position.
+    private static RecordHeader parseRecordHeader(ByteBuffer buf, long transactionId) throws StorageException {
+        if (buf.getLong() != transactionId) {
+            throw new StorageException("transaction id mismatch");
         }
+
+        ReqId reqId = new ReqId(buf.getLong(), buf.getLong());
+        int transactionHeader = buf.getInt();
+
+        return new RecordHeader(transactionId, reqId, transactionHeader);
     }
 
     // check the record at the offset. If valid, it returns the size, otherwise it returns -1.
     public int checkRecord(long offset, long transactionId) throws IOException {
-        synchronized (this) {
+        truncationLock.readLock().lock();
+        try {
             // Read the header
-            ioBuf.clear();
-            ioBuf.limit(RECORD_HEADER_SIZE);
-            channel.position(offset);
-            while (ioBuf.remaining() > 0) {
-                if (channel.read(ioBuf) < 0) {
-                    return -1;
-                }
+            ByteBuffer headerBuf = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            if (!readFully(headerBuf, offset)) {
+                return -1;
             }
-            ioBuf.flip();
+            headerBuf.flip();
 
             CRC32 crc32 = new CRC32();
-            crc32.update(ioBuf);
+            crc32.update(headerBuf);
 
-            if (ioBuf.getLong(TRANSACTION_ID_POSITION) != transactionId) {
+            if (headerBuf.getLong(TRANSACTION_ID_POSITION) != transactionId) {
                 return -1;
             }
 
-            // Read the data
-            int dataLen = ioBuf.getInt(DATA_LEN_POSITION);
-            ByteBuffer dataBuf = ByteBuffer.allocate(dataLen);
-            while (dataBuf.remaining() > 0) {
-                if (channel.read(dataBuf) < 0) {
-                    return -1;
-                }
+            // Read the data and the checksum
+            int dataLen = headerBuf.getInt(DATA_LEN_POSITION);
+            if (dataLen < 0) {
+                return -1;
+            }
+            ByteBuffer dataBuf = ByteBuffer.allocate(dataLen + RECORD_CHECKSUM_SIZE);
+            if (!readFully(dataBuf, offset + RECORD_HEADER_SIZE)) {
+                return -1;
             }
             dataBuf.flip();
-            crc32.update(dataBuf);
+            int checksum = dataBuf.getInt(dataLen);
 
-            ioBuf.clear();
-            ioBuf.limit(4);
-            while (ioBuf.remaining() > 0) {
-                if (channel.read(ioBuf) < 0) {
-                    return -1;
-                }
-            }
-            ioBuf.flip();
-            int checksum = ioBuf.getInt();
+            dataBuf.limit(dataLen);
+            crc32.update(dataBuf);
 
             return checksum == (int) crc32.getValue() ? RECORD_HEADER_SIZE + dataLen + RECORD_FOOTER_SIZE : -1;
+
+        } finally {
+            truncationLock.readLock().unlock();
+        }
+    }
+
+    // Returns the offset of a completely written record, or -1 if the segment does not have it yet.
+    private long offsetOf(long transactionId) throws StorageException, IOException {
+        if (closed) {
+            throw new StorageException("segment closed");
+        }
+
+        if (transactionId >= nextTransactionId) {
+            return -1L;
+        }
+
+        return index.get(transactionId);
+    }
+
+    // Reads bytes at the position until the buffer is full. Returns false if the end of file is reached.
+    private boolean readFully(ByteBuffer buf, long position) throws IOException {
+        FileChannel channel = this.channel;
+        long pos = position;
+        while (buf.remaining() > 0) {
+            int n = channel.read(buf, pos);
+            if (n < 0) {
+                return false;
+            }
+            pos += n;
         }
+        return true;
     }
 
     // Truncates transactions after the given transaction id
     public void truncate(long transactionId) throws StorageException, IOException {
+        truncationLock.writeLock().lock();
+        try {
+            truncateLocked(transactionId);
+        } finally {
+            truncationLock.writeLock().unlock();
+        }
+    }
+
+    private void truncateLocked(long transactionId) throws StorageException, IOException {
         synchronized (this) {
             if (closed) {
                 throw new StorageException("segment closed");
@@ -634,15 +939,31 @@ public class Segment {
         }
     }
 
+    private interface RecordParser<T> {
+
+        T parse(ByteBuffer buf, long transactionId) throws StorageException;
+
+    }
+
+    /**
+     * The index of record offsets. An entry is located at {@code FILE_HEADER_SIZE + OFFSET_SIZE * (transactionId - firstTransactionId)}.
+     * Entries are written through the file channel, so the file size always reflects the number of entries.
+     * Lookups are served from a read-only memory mapping of the file without taking the monitor.
+     * The mapping is extended in chunks as the file grows. Lookups beyond the mapping fall back to a read from the channel.
+     * Once the segment is sealed, the whole file is mapped once.
+     */
     public static class Index {
 
         private static final int OFFSET_SIZE = 8;
+        static final long REMAP_CHUNK_SIZE = 1024 * 1024;
 
         private final Path file;
         private final SegmentFileHeader header;
         private final ByteBuffer offsetBuf = ByteBuffer.allocate(8);
 
         private FileChannel channel;
+        private boolean sealed = false;
+        private volatile MappedByteBuffer mappedBuf = null;
 
         Index(UUID key, Path file, PartitionInfo partitionInfo) throws StorageException {
             this.file = file;
@@ -685,17 +1006,32 @@ public class Segment {
         }
 
         public long get(long transactionId) throws StorageException, IOException {
+            long position = FILE_HEADER_SIZE + OFFSET_SIZE * (transactionId - header.firstTransactionId);
+
+            if (position < FILE_HEADER_SIZE) {
+                throw new StorageException("illegal record position:" + position);
+            }
+
+            // Fast path: a plain memory load from the mapping
+            MappedByteBuffer buf = mappedBuf;
+            if (buf != null && position + OFFSET_SIZE <= buf.capacity()) {
+                return buf.getLong((int) position);
+            }
+
             synchronized (this) {
-                long position = FILE_HEADER_SIZE + OFFSET_SIZE * (transactionId - header.firstTransactionId);
+                long size = channel.size();
+                if (position + OFFSET_SIZE > size) {
+                    return -1L;
+                }
 
-                if (position < FILE_HEADER_SIZE) {
-                    throw new StorageException("illegal record position:" + position);
+                buf = remapIfNeeded(size);
+                if (buf != null && position + OFFSET_SIZE <= buf.capacity()) {
+                    return buf.getLong((int) position);
                 }
 
-                channel.position(FILE_HEADER_SIZE + OFFSET_SIZE * (transactionId - header.firstTransactionId));
                 offsetBuf.clear();
                 while (offsetBuf.remaining() > 0) {
-                    if (channel.read(offsetBuf) < 0) {
+                    if (channel.read(offsetBuf, position + offsetBuf.position()) < 0) {
                         return -1L;
                     }
                 }
@@ -721,6 +1057,8 @@ public class Segment {
             synchronized (this) {
                 long size = FILE_HEADER_SIZE + OFFSET_SIZE * (transactionId + 1 - header.firstTransactionId);
                 if (channel.size() > size) {
+                    // The mapping must not cover the truncated region
+                    unmap();
                     channel.truncate(size);
                     channel.force(true);
                 }
@@ -741,8 +1079,29 @@ public class Segment {
             }
         }
 
+        public void checksum(CRC32 crc32) throws IOException {
+            ByteBuffer byteBuffer = ByteBuffer.allocate(LARGE_BUFFER_SIZE);
+
+            synchronized (this) {
+                long size = channel.size();
+                long position = FILE_HEADER_SIZE;
+
+                while (position < size) {
+                    int n = channel.read(byteBuffer, position);
+                    if (n < 0) {
+                        break;
+                    }
+                    position += n;
+                    byteBuffer.flip();
+                    crc32.update(byteBuffer);
+                    byteBuffer.clear();
+                }
+            }
+        }
+
         void close() throws IOException {
             synchronized (this) {
+                unmap();
                 try {
                     channel.force(true);
                 } catch (IOException ex) {
@@ -764,6 +1123,15 @@ public class Segment {
             }
         }
 
+        /**
+         * Marks the index as sealed. No more entries are added to a sealed index, so the next lookup maps the whole file.
+         */
+        void setSealed(boolean sealed) {
+            synchronized (this) {
+                this.sealed = sealed;
+            }
+        }
+
         public boolean isChannelClosed() {
             synchronized (this) {
                 return !channel.isOpen();
@@ -773,6 +1141,31 @@ public class Segment {
         public SegmentFileHeader getHeader() {
             return header;
         }
+
+        // Returns the number of bytes currently mapped. Visible for testing.
+        long mappedSize() {
+            MappedByteBuffer buf = mappedBuf;
+            return buf != null ? buf.capacity() : 0L;
+        }
+
+        private MappedByteBuffer remapIfNeeded(long size) throws IOException {
+            MappedByteBuffer buf = mappedBuf;
+            long mappedSize = buf != null ? buf.capacity() : 0L;
+
+            // Map only whole entries. A mapping is limited to Integer.MAX_VALUE bytes.
+            long newSize = Math.min(size - (size - FILE_HEADER_SIZE) % OFFSET_SIZE, Integer.MAX_VALUE - (Integer.MAX_VALUE - FILE_HEADER_SIZE) % OFFSET_SIZE);
+
+            if (newSize > mappedSize && (sealed || newSize - mappedSize >= REMAP_CHUNK_SIZE)) {
+                buf = channel.map(FileChannel.MapMode.READ_ONLY, 0L, newSize);
+                mappedBuf = buf;
+            }
+            return buf;
+        }
+
+        private void unmap() {
+            // The mapping is released when the buffer is garbage collected
+            mappedBuf = null;
+        }
     }
 
 }
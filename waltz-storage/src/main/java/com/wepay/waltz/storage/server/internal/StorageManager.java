@@ -1,6 +1,7 @@
 package com.wepay.waltz.storage.server.internal;
 
 import com.wepay.riff.util.Logging;
+import com.wepay.waltz.common.util.MemoryBudget;
 import com.wepay.waltz.storage.exception.ConcurrentUpdateException;
 import com.wepay.waltz.storage.exception.StorageException;
 import org.slf4j.Logger;
@@ -26,6 +27,9 @@ public class StorageManager {
     private final HashMap<Integer, Partition> partitions;
     private final long segmentSizeThreshold;
     private final int segmentCacheCapacity;
+    private final GroupCommitScheduler groupCommitScheduler;
+    private final MemoryBudget requestBudget;
+    private final long partitionRequestBytesLimit;
 
     private ControlFile controlFile = null;
     private boolean running = true;
@@ -37,15 +41,73 @@ public class StorageManager {
      * @param segmentSizeThreshold The maximum size of each Segment.
      * @param numPartitions The total number of partitions in the cluster.
      * @param key The cluster key.
+     * @param segmentCacheCapacity The maximum number of read-only segments kept open.
      * @throws StorageException
      * @throws IOException
      */
     public StorageManager(String directory, long segmentSizeThreshold, int numPartitions, UUID key, int segmentCacheCapacity) throws IOException, StorageException {
+        this(directory, segmentSizeThreshold, numPartitions, key, segmentCacheCapacity, false, 0L);
+    }
+
+    /**
+     * This method initializes private data members of this class and also creates the Control File.
+     *
+     * @param directory The root directory of Storage where the transaction data is stored.
+     * @param segmentSizeThreshold The maximum size of each Segment.
+     * @param numPartitions The total number of partitions in the cluster.
+     * @param key The cluster key.
+     * @param segmentCacheCapacity The maximum number of read-only segments kept open.
+     * @param groupCommitEnabled Whether appends of all partitions are forced to disk together by a {@link GroupCommitScheduler}.
+     * @param groupCommitWindow The commit window of the {@link GroupCommitScheduler} in milliseconds.
+     * @throws StorageException
+     * @throws IOException
+     */
+    public StorageManager(
+        String directory,
+        long segmentSizeThreshold,
+        int numPartitions,
+        UUID key,
+        int segmentCacheCapacity,
+        boolean groupCommitEnabled,
+        long groupCommitWindow
+    ) throws IOException, StorageException {
+        this(directory, segmentSizeThreshold, numPartitions, key, segmentCacheCapacity, groupCommitEnabled, groupCommitWindow, 0L, 0L);
+    }
+
+    /**
+     * This method initializes private data members of this class and also creates the Control File.
+     *
+     * @param directory The root directory of Storage where the transaction data is stored.
+     * @param segmentSizeThreshold The maximum size of each Segment.
+     * @param numPartitions The total number of partitions in the cluster.
+     * @param key The cluster key.
+     * @param segmentCacheCapacity The maximum number of read-only segments kept open.
+     * @param groupCommitEnabled Whether appends of all partitions are forced to disk together by a {@link GroupCommitScheduler}.
+     * @param groupCommitWindow The commit window of the {@link GroupCommitScheduler} in milliseconds.
+     * @param requestBytesLimit The maximum bytes of record data held by queued requests of all partitions. Zero means unlimited.
+     * @param partitionRequestBytesLimit The maximum bytes of record data held by queued requests of each partition. Zero means unlimited.
+     * @throws StorageException
+     * @throws IOException
+     */
+    public StorageManager(
+        String directory,
+        long segmentSizeThreshold,
+        int numPartitions,
+        UUID key,
+        int segmentCacheCapacity,
+        boolean groupCommitEnabled,
+        long groupCommitWindow,
+        long requestBytesLimit,
+        long partitionRequestBytesLimit
+    ) throws IOException, StorageException {
         logger.debug("StorageManager constructor is called");
         this.directory = FileSystems.getDefault().getPath(directory);
         this.partitions = new HashMap<>();
         this.segmentSizeThreshold = segmentSizeThreshold;
         this.segmentCacheCapacity = segmentCacheCapacity;
+        this.groupCommitScheduler = groupCommitEnabled ? new GroupCommitScheduler(groupCommitWindow) : null;
+        this.requestBudget = new MemoryBudget(requestBytesLimit);
+        this.partitionRequestBytesLimit = partitionRequestBytesLimit;
 
         this.controlFile = new ControlFile(key, this.directory.resolve(ControlFile.FILE_NAME), numPartitions, true);
         logger.debug("storage opened: directory={}", directory);
@@ -115,7 +177,15 @@ public class StorageManager {
                         Files.createDirectory(partitionDir);
                     }
 
-                    Partition partition = new Partition(controlFile.key, partitionDir, partitionInfo, segmentSizeThreshold, segmentCacheCapacity);
+                    Partition partition = new Partition(
+                        controlFile.key,
+                        partitionDir,
+                        partitionInfo,
+                        segmentSizeThreshold,
+                        segmentCacheCapacity,
+                        groupCommitScheduler,
+                        new MemoryBudget(partitionRequestBytesLimit, requestBudget)
+                    );
                     partition.open();
                     partitions.put(partitionId, partition);
                 } else {
@@ -172,12 +242,25 @@ public class StorageManager {
             }
             partitions.clear();
 
+            if (groupCommitScheduler != null) {
+                groupCommitScheduler.close();
+            }
+
             if (controlFile != null) {
                 controlFile.close();
             }
         }
     }
 
+    /**
+     * Returns the bytes of record data held by queued requests of all partitions.
+     *
+     * @return the bytes of record data held by queued requests.
+     */
+    public long requestBytesInFlight() {
+        return requestBudget.bytesInFlight();
+    }
+
     public int checksum(int partitionId) throws StorageException, IOException {
         Partition partition = getPartition(partitionId);
         return (partition != null) ? partition.checksum() : -1;
@@ -8,6 +8,7 @@ import com.wepay.waltz.storage.common.message.FailureResponse;
 import com.wepay.waltz.storage.common.message.OpenRequest;
 import com.wepay.waltz.storage.common.message.StorageMessage;
 import com.wepay.waltz.storage.common.message.StorageMessageCodecV0;
+import com.wepay.waltz.storage.common.message.StorageMessageCodecV1;
 import com.wepay.waltz.storage.common.message.StorageMessageType;
 import com.wepay.waltz.storage.common.message.SuccessResponse;
 import com.wepay.waltz.storage.exception.StorageException;
@@ -27,6 +28,7 @@ public class StorageServerHandler extends MessageHandler implements PartitionCli
     private static final HashMap<Short, MessageCodec> CODECS = new HashMap<>();
     static {
         CODECS.put((short) 0, StorageMessageCodecV0.INSTANCE);
+        CODECS.put(StorageMessageCodecV1.VERSION, StorageMessageCodecV1.INSTANCE);
     }
 
     private static final String HELLO_MESSAGE = "Waltz Storage Server";
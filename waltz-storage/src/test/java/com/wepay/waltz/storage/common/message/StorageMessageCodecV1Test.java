@@ -0,0 +1,163 @@
+package com.wepay.waltz.storage.common.message;
+
+import com.wepay.riff.message.ByteArrayMessageAttributeReader;
+import com.wepay.riff.message.ByteArrayMessageAttributeWriter;
+import com.wepay.riff.network.Message;
+import com.wepay.waltz.common.message.Record;
+import com.wepay.waltz.common.message.ReqId;
+import com.wepay.waltz.common.util.Utils;
+import com.wepay.waltz.storage.common.RawRecords;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class StorageMessageCodecV1Test {
+    private final StorageMessageCodecV1 codec = new StorageMessageCodecV1();
+    private final Random rand = new Random();
+
+    @Test
+    public void testCodecVersion() {
+        assertEquals(1, codec.version());
+    }
+
+    @Test
+    public void testRecordListResponse() {
+        ArrayList<Record> records = makeRecords(rand.nextLong(), 10);
+        RecordListResponse recordListResponse1 = new RecordListResponse(rand.nextLong(), rand.nextLong(), rand.nextInt(), records);
+        RecordListResponse recordListResponse2 = encodeThenDecode(recordListResponse1);
+        assertEquals(StorageMessageType.RECORD_LIST_RESPONSE, recordListResponse2.type());
+        assertEquals(recordListResponse1.sessionId, recordListResponse2.sessionId);
+        assertEquals(recordListResponse1.seqNum, recordListResponse2.seqNum);
+        assertEquals(recordListResponse1.partitionId, recordListResponse2.partitionId);
+        assertEquals(records, recordListResponse2.records);
+    }
+
+    @Test
+    public void testRawRecordListResponse() {
+        long transactionId = rand.nextLong();
+        ArrayList<Record> records1 = makeRecords(transactionId, 10);
+        ArrayList<Record> records2 = makeRecords(transactionId + 10, 5);
+
+        RawRecords rawRecords = new RawRecords(transactionId);
+        rawRecords.add(records1.size(), toSegmentFormat(records1));
+        rawRecords.add(records2.size(), toSegmentFormat(records2));
+
+        RecordListResponse recordListResponse1 = new RecordListResponse(rand.nextLong(), rand.nextLong(), rand.nextInt(), rawRecords);
+        RecordListResponse recordListResponse2 = encodeThenDecode(recordListResponse1);
+        assertEquals(StorageMessageType.RECORD_LIST_RESPONSE, recordListResponse2.type());
+        assertEquals(recordListResponse1.sessionId, recordListResponse2.sessionId);
+        assertEquals(recordListResponse1.seqNum, recordListResponse2.seqNum);
+        assertEquals(recordListResponse1.partitionId, recordListResponse2.partitionId);
+
+        ArrayList<Record> expected = new ArrayList<>(records1);
+        expected.addAll(records2);
+        assertEquals(expected, recordListResponse2.records);
+
+        // A V0 peer receives the parsed records
+        StorageMessageCodecV0 codecV0 = StorageMessageCodecV0.INSTANCE;
+        ByteArrayMessageAttributeWriter writer = new ByteArrayMessageAttributeWriter();
+        codecV0.encode(recordListResponse1, writer);
+        RecordListResponse recordListResponse3 =
+            (RecordListResponse) codecV0.decode(new ByteArrayMessageAttributeReader(writer.toByteArray()));
+        assertEquals(expected, recordListResponse3.records);
+    }
+
+    @Test
+    public void testRawRecordChecksumError() {
+        long transactionId = rand.nextLong();
+        ArrayList<Record> records = makeRecords(transactionId, 3);
+        byte[] bytes = toSegmentFormat(records);
+        // Corrupt the last data byte of the first record
+        int pos = RawRecords.RECORD_HEADER_SIZE + records.get(0).data.length - 1;
+        bytes[pos] = (byte) ~bytes[pos];
+
+        RawRecords rawRecords = new RawRecords(transactionId);
+        rawRecords.add(records.size(), bytes);
+
+        try {
+            encodeThenDecode(new RecordListResponse(rand.nextLong(), rand.nextLong(), rand.nextInt(), rawRecords));
+            fail();
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRawRecordTransactionIdMismatch() {
+        long transactionId = rand.nextLong();
+        ArrayList<Record> records = makeRecords(transactionId, 3);
+
+        // Records that do not start at the requested transaction id
+        RawRecords rawRecords = new RawRecords(transactionId - 1);
+        rawRecords.add(records.size(), toSegmentFormat(records));
+
+        try {
+            encodeThenDecode(new RecordListResponse(rand.nextLong(), rand.nextLong(), rand.nextInt(), rawRecords));
+            fail();
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+
+        // Records with a gap in transaction ids
+        ArrayList<Record> gapped = makeRecords(transactionId, 2);
+        gapped.addAll(makeRecords(transactionId + 3, 2));
+        rawRecords = new RawRecords(transactionId);
+        rawRecords.add(gapped.size(), toSegmentFormat(gapped));
+
+        try {
+            encodeThenDecode(new RecordListResponse(rand.nextLong(), rand.nextLong(), rand.nextInt(), rawRecords));
+            fail();
+        } catch (IllegalStateException ex) {
+            // expected
+        }
+    }
+
+    private ArrayList<Record> makeRecords(long transactionId, int numRecords) {
+        ArrayList<Record> records = new ArrayList<>();
+        for (int i = 0; i < numRecords; i++) {
+            byte[] data = new byte[1 + rand.nextInt(100)];
+            rand.nextBytes(data);
+            ReqId reqId = new ReqId(rand.nextLong(), rand.nextLong());
+            records.add(new Record(transactionId + i, reqId, rand.nextInt(), data, Utils.checksum(data)));
+        }
+        return records;
+    }
+
+    private byte[] toSegmentFormat(ArrayList<Record> records) {
+        int size = 0;
+        for (Record record : records) {
+            size += RawRecords.RECORD_HEADER_SIZE + record.data.length + RawRecords.RECORD_FOOTER_SIZE;
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        for (Record record : records) {
+            int start = buf.position();
+            buf.putLong(record.transactionId);
+            buf.putLong(record.reqId.mostSigBits);
+            buf.putLong(record.reqId.leastSigBits);
+            buf.putInt(record.header);
+            buf.putInt(record.data.length);
+            buf.putInt(record.checksum);
+            buf.put(record.data);
+
+            CRC32 crc32 = new CRC32();
+            crc32.update(buf.array(), start, buf.position() - start);
+            buf.putInt((int) crc32.getValue());
+        }
+        return buf.array();
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends Message> T encodeThenDecode(T message) {
+        ByteArrayMessageAttributeWriter writer = new ByteArrayMessageAttributeWriter();
+        codec.encode(message, writer);
+        ByteArrayMessageAttributeReader reader = new ByteArrayMessageAttributeReader(writer.toByteArray());
+        return (T) codec.decode(reader);
+    }
+}
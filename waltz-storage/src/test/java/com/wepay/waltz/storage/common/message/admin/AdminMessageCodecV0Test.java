@@ -6,6 +6,7 @@ import com.wepay.riff.network.Message;
 import com.wepay.waltz.common.message.Record;
 import com.wepay.waltz.common.message.ReqId;
 import com.wepay.waltz.common.util.Utils;
+import com.wepay.waltz.storage.common.SegmentInfo;
 import com.wepay.waltz.storage.common.SessionInfo;
 import org.junit.Test;
 
@@ -14,6 +15,7 @@ import java.util.Arrays;
 import java.util.Random;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
 public class AdminMessageCodecV0Test {
     private final AdminMessageCodecV0 codec = new AdminMessageCodecV0();
@@ -102,6 +104,101 @@ public class AdminMessageCodecV0Test {
         assertEquals(sessionInfo.sessionId, lastSessionInfoResponse2.lastSessionInfo.sessionId);
     }
 
+    @Test
+    public void testSegmentListRequestAndResponse() {
+        SegmentListRequest segmentListRequest1 = new SegmentListRequest(rand.nextLong(), rand.nextInt());
+        SegmentListRequest segmentListRequest2 = encodeThenDecode(segmentListRequest1);
+        assertEquals(AdminMessageType.SEGMENT_LIST_REQUEST, segmentListRequest1.type());
+        assertEquals(segmentListRequest1.partitionId, segmentListRequest2.partitionId);
+        assertEquals(segmentListRequest1.seqNum, segmentListRequest2.seqNum);
+
+        SegmentInfo segmentInfo1 = new SegmentInfo(rand.nextLong(), rand.nextLong(), rand.nextLong(), rand.nextLong(), true);
+        SegmentInfo segmentInfo2 = new SegmentInfo(rand.nextLong(), rand.nextLong(), rand.nextLong(), rand.nextLong(), false);
+        SegmentListResponse segmentListResponse1 = new SegmentListResponse(
+                rand.nextLong(), rand.nextInt(), new ArrayList<>(Arrays.asList(segmentInfo1, segmentInfo2)));
+        SegmentListResponse segmentListResponse2 = encodeThenDecode(segmentListResponse1);
+        assertEquals(AdminMessageType.SEGMENT_LIST_RESPONSE, segmentListResponse1.type());
+        assertEquals(segmentListResponse1.partitionId, segmentListResponse2.partitionId);
+        assertEquals(segmentListResponse1.seqNum, segmentListResponse2.seqNum);
+        assertEquals(2, segmentListResponse2.segments.size());
+        for (int i = 0; i < 2; i++) {
+            SegmentInfo expected = segmentListResponse1.segments.get(i);
+            SegmentInfo actual = segmentListResponse2.segments.get(i);
+            assertEquals(expected.firstTransactionId, actual.firstTransactionId);
+            assertEquals(expected.maxTransactionId, actual.maxTransactionId);
+            assertEquals(expected.segmentSize, actual.segmentSize);
+            assertEquals(expected.indexSize, actual.indexSize);
+            assertEquals(expected.sealed, actual.sealed);
+        }
+    }
+
+    @Test
+    public void testSegmentChecksumRequestAndResponse() {
+        SegmentChecksumRequest segmentChecksumRequest1 = new SegmentChecksumRequest(rand.nextLong(), rand.nextInt(), rand.nextLong());
+        SegmentChecksumRequest segmentChecksumRequest2 = encodeThenDecode(segmentChecksumRequest1);
+        assertEquals(AdminMessageType.SEGMENT_CHECKSUM_REQUEST, segmentChecksumRequest1.type());
+        assertEquals(segmentChecksumRequest1.partitionId, segmentChecksumRequest2.partitionId);
+        assertEquals(segmentChecksumRequest1.seqNum, segmentChecksumRequest2.seqNum);
+        assertEquals(segmentChecksumRequest1.firstTransactionId, segmentChecksumRequest2.firstTransactionId);
+
+        SegmentChecksumResponse segmentChecksumResponse1 = new SegmentChecksumResponse(rand.nextLong(), rand.nextInt(), rand.nextInt(), rand.nextInt());
+        SegmentChecksumResponse segmentChecksumResponse2 = encodeThenDecode(segmentChecksumResponse1);
+        assertEquals(AdminMessageType.SEGMENT_CHECKSUM_RESPONSE, segmentChecksumResponse1.type());
+        assertEquals(segmentChecksumResponse1.partitionId, segmentChecksumResponse2.partitionId);
+        assertEquals(segmentChecksumResponse1.seqNum, segmentChecksumResponse2.seqNum);
+        assertEquals(segmentChecksumResponse1.segmentChecksum, segmentChecksumResponse2.segmentChecksum);
+        assertEquals(segmentChecksumResponse1.indexChecksum, segmentChecksumResponse2.indexChecksum);
+    }
+
+    @Test
+    public void testSegmentReadRequestAndResponse() {
+        SegmentReadRequest segmentReadRequest1 = new SegmentReadRequest(
+                rand.nextLong(), rand.nextInt(), rand.nextLong(), rand.nextBoolean(), rand.nextLong(), rand.nextInt());
+        SegmentReadRequest segmentReadRequest2 = encodeThenDecode(segmentReadRequest1);
+        assertEquals(AdminMessageType.SEGMENT_READ_REQUEST, segmentReadRequest1.type());
+        assertEquals(segmentReadRequest1.partitionId, segmentReadRequest2.partitionId);
+        assertEquals(segmentReadRequest1.seqNum, segmentReadRequest2.seqNum);
+        assertEquals(segmentReadRequest1.firstTransactionId, segmentReadRequest2.firstTransactionId);
+        assertEquals(segmentReadRequest1.index, segmentReadRequest2.index);
+        assertEquals(segmentReadRequest1.position, segmentReadRequest2.position);
+        assertEquals(segmentReadRequest1.maxLength, segmentReadRequest2.maxLength);
+
+        byte[] data = new byte[100];
+        rand.nextBytes(data);
+        SegmentReadResponse segmentReadResponse1 = new SegmentReadResponse(rand.nextLong(), rand.nextInt(), data);
+        SegmentReadResponse segmentReadResponse2 = encodeThenDecode(segmentReadResponse1);
+        assertEquals(AdminMessageType.SEGMENT_READ_RESPONSE, segmentReadResponse1.type());
+        assertEquals(segmentReadResponse1.partitionId, segmentReadResponse2.partitionId);
+        assertEquals(segmentReadResponse1.seqNum, segmentReadResponse2.seqNum);
+        assertTrue(Arrays.equals(data, segmentReadResponse2.data));
+    }
+
+    @Test
+    public void testSegmentWriteAndInstallRequest() {
+        byte[] data = new byte[100];
+        rand.nextBytes(data);
+        SegmentWriteRequest segmentWriteRequest1 = new SegmentWriteRequest(
+                rand.nextLong(), rand.nextInt(), rand.nextLong(), rand.nextBoolean(), rand.nextLong(), data);
+        SegmentWriteRequest segmentWriteRequest2 = encodeThenDecode(segmentWriteRequest1);
+        assertEquals(AdminMessageType.SEGMENT_WRITE_REQUEST, segmentWriteRequest1.type());
+        assertEquals(segmentWriteRequest1.partitionId, segmentWriteRequest2.partitionId);
+        assertEquals(segmentWriteRequest1.seqNum, segmentWriteRequest2.seqNum);
+        assertEquals(segmentWriteRequest1.firstTransactionId, segmentWriteRequest2.firstTransactionId);
+        assertEquals(segmentWriteRequest1.index, segmentWriteRequest2.index);
+        assertEquals(segmentWriteRequest1.position, segmentWriteRequest2.position);
+        assertTrue(Arrays.equals(data, segmentWriteRequest2.data));
+
+        SegmentInstallRequest segmentInstallRequest1 = new SegmentInstallRequest(
+                rand.nextLong(), rand.nextInt(), rand.nextLong(), rand.nextInt(), rand.nextInt());
+        SegmentInstallRequest segmentInstallRequest2 = encodeThenDecode(segmentInstallRequest1);
+        assertEquals(AdminMessageType.SEGMENT_INSTALL_REQUEST, segmentInstallRequest1.type());
+        assertEquals(segmentInstallRequest1.partitionId, segmentInstallRequest2.partitionId);
+        assertEquals(segmentInstallRequest1.seqNum, segmentInstallRequest2.seqNum);
+        assertEquals(segmentInstallRequest1.firstTransactionId, segmentInstallRequest2.firstTransactionId);
+        assertEquals(segmentInstallRequest1.segmentChecksum, segmentInstallRequest2.segmentChecksum);
+        assertEquals(segmentInstallRequest1.indexChecksum, segmentInstallRequest2.indexChecksum);
+    }
+
     @SuppressWarnings("unchecked")
     private <T extends Message> T encodeThenDecode(T message) {
         ByteArrayMessageAttributeWriter writer = new ByteArrayMessageAttributeWriter();
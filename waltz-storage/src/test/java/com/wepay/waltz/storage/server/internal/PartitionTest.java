@@ -3,8 +3,11 @@ package com.wepay.waltz.storage.server.internal;
 import com.wepay.riff.network.Message;
 import com.wepay.waltz.common.message.Record;
 import com.wepay.waltz.common.util.Utils;
+import com.wepay.waltz.storage.WaltzStorageConfig;
+import com.wepay.waltz.storage.common.SegmentInfo;
 import com.wepay.waltz.storage.common.message.AppendRequest;
 import com.wepay.waltz.storage.common.message.SuccessResponse;
+import com.wepay.waltz.storage.exception.StorageException;
 import com.wepay.waltz.test.util.ClientUtil;
 import com.wepay.zktools.util.Uninterruptibly;
 import org.junit.After;
@@ -13,6 +16,7 @@ import org.junit.Test;
 
 import java.io.File;
 import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
@@ -28,6 +32,7 @@ import java.util.concurrent.atomic.AtomicLong;
 import java.util.zip.CRC32;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
@@ -140,6 +145,269 @@ public class PartitionTest {
         assertTrue(partition.evictedEntrylist.size() > 1);
     }
 
+    @Test
+    public void testGroupCommit() throws Exception {
+        int numPartitions = 3;
+        GroupCommitScheduler groupCommitScheduler = new GroupCommitScheduler(WaltzStorageConfig.DEFAULT_GROUP_COMMIT_WINDOW);
+        try {
+            Partition[] partitions = new Partition[numPartitions];
+            for (int i = 0; i < numPartitions; i++) {
+                Path dirPath = FileSystems.getDefault().getPath(dir.getPath()).resolve("group-commit-" + i);
+                Files.createDirectory(dirPath);
+
+                PartitionInfo partitionInfo = new PartitionInfo(ByteBuffer.allocate(1000), 0, null, i, true);
+                partitionInfo.setFlags(PartitionInfo.Flags.PARTITION_IS_ASSIGNED | PartitionInfo.Flags.PARTITION_IS_AVAILABLE);
+
+                partitions[i] = new Partition(UUID.randomUUID(), dirPath, partitionInfo, 1000L, 10, groupCommitScheduler);
+                partitions[i].open();
+            }
+
+            try {
+                for (long transactionId = 0; transactionId < 100; transactionId += 10) {
+                    List<CompletableFuture<Message>> futures = new ArrayList<>();
+
+                    for (int i = 0; i < numPartitions; i++) {
+                        ArrayList<Record> records = ClientUtil.makeRecords(transactionId, transactionId + 10);
+                        CompletableFuture<Message> future = new CompletableFuture<>();
+                        partitions[i].receiveMessage(new AppendRequest(-1, 0, i, records), (msg, flush) -> {
+                            future.complete(msg);
+                            return true;
+                        });
+                        futures.add(future);
+                    }
+
+                    for (CompletableFuture<Message> future : futures) {
+                        assertTrue(future.get() instanceof SuccessResponse);
+                    }
+                }
+
+                for (Partition partition : partitions) {
+                    ArrayList<Record> records = partition.getRecords(0L, 100);
+                    assertEquals(100, records.size());
+                    for (int i = 0; i < records.size(); i++) {
+                        assertEquals(i, records.get(i).transactionId);
+                    }
+                }
+            } finally {
+                for (Partition partition : partitions) {
+                    partition.close();
+                }
+            }
+        } finally {
+            groupCommitScheduler.close();
+        }
+    }
+
+    /**
+     * Small segments and a segment cache of one make appends seal and evict segments while their commits are pending.
+     * Sealed segments are already on disk, so all appends must succeed.
+     */
+    @Test
+    public void testGroupCommitWithSegmentRollover() throws Exception {
+        // A long commit window lets many appends roll segments over before the first commit.
+        GroupCommitScheduler groupCommitScheduler = new GroupCommitScheduler(100L);
+        try {
+            PartitionInfo partitionInfo = new PartitionInfo(ByteBuffer.allocate(1000), 0, null, PARTITION_ID, true);
+            partitionInfo.setFlags(PartitionInfo.Flags.PARTITION_IS_ASSIGNED | PartitionInfo.Flags.PARTITION_IS_AVAILABLE);
+
+            Partition partition = new Partition(UUID.randomUUID(), partitionDir, partitionInfo, 200L, 1, groupCommitScheduler);
+            partition.open();
+
+            try {
+                List<CompletableFuture<Message>> futures = new ArrayList<>();
+                for (long transactionId = 0; transactionId < 100; transactionId += 2) {
+                    ArrayList<Record> records = ClientUtil.makeRecords(transactionId, transactionId + 2);
+                    CompletableFuture<Message> future = new CompletableFuture<>();
+                    partition.receiveMessage(new AppendRequest(-1, 0, PARTITION_ID, records), (msg, flush) -> {
+                        future.complete(msg);
+                        return true;
+                    });
+                    futures.add(future);
+                }
+
+                for (CompletableFuture<Message> future : futures) {
+                    assertTrue(future.get() instanceof SuccessResponse);
+                }
+
+                ArrayList<Record> records = partition.getRecords(0L, 100);
+                assertEquals(100, records.size());
+            } finally {
+                partition.close();
+            }
+        } finally {
+            groupCommitScheduler.close();
+        }
+    }
+
+    @Test
+    public void testSegmentCopy() throws Exception {
+        UUID key = UUID.randomUUID();
+        long segmentSizeThreshold = 400L;
+
+        Path sourceDir = FileSystems.getDefault().getPath(dir.getPath()).resolve("source");
+        Path destinationDir = FileSystems.getDefault().getPath(dir.getPath()).resolve("destination");
+        Files.createDirectory(sourceDir);
+        Files.createDirectory(destinationDir);
+
+        PartitionInfo sourceInfo = new PartitionInfo(ByteBuffer.allocate(1000), 0, null, PARTITION_ID, true);
+        sourceInfo.setFlags(PartitionInfo.Flags.PARTITION_IS_ASSIGNED | PartitionInfo.Flags.PARTITION_IS_AVAILABLE);
+        PartitionInfo destinationInfo = new PartitionInfo(ByteBuffer.allocate(1000), 0, null, PARTITION_ID, true);
+        destinationInfo.setFlags(PartitionInfo.Flags.PARTITION_IS_ASSIGNED | PartitionInfo.Flags.PARTITION_IS_AVAILABLE);
+
+        Partition source = new Partition(key, sourceDir, sourceInfo, segmentSizeThreshold, 10);
+        Partition destination = new Partition(key, destinationDir, destinationInfo, segmentSizeThreshold, 10);
+        source.open();
+        destination.open();
+
+        try {
+            CompletableFuture<Message> future = new CompletableFuture<>();
+            source.receiveMessage(new AppendRequest(-1, 0, PARTITION_ID, ClientUtil.makeRecords(0, 30)), (msg, flush) -> {
+                future.complete(msg);
+                return true;
+            });
+            assertTrue(future.get() instanceof SuccessResponse);
+
+            // Only read-only segments at or below the local low-water mark are sealed
+            List<SegmentInfo> segments = source.getSegmentInfos();
+            assertTrue(segments.size() > 2);
+            for (SegmentInfo segment : segments) {
+                assertFalse(segment.sealed);
+            }
+            sourceInfo.setLowWaterMark(0, 29, 29);
+            segments = source.getSegmentInfos();
+            for (int i = 0; i < segments.size(); i++) {
+                assertEquals(i < segments.size() - 1, segments.get(i).sealed);
+            }
+
+            // A segment which does not continue the destination is rejected
+            SegmentInfo second = segments.get(1);
+            copySegmentFiles(source, destination, second);
+            try {
+                destination.installSegment(second.firstTransactionId, source.getSegmentChecksum(second.firstTransactionId), source.getIndexChecksum(second.firstTransactionId));
+                fail();
+            } catch (StorageException ex) {
+                // OK
+            }
+            assertEquals(0, countFiles(destinationDir, "*.staged"));
+
+            // A corrupted copy is rejected
+            SegmentInfo first = segments.get(0);
+            copySegmentFiles(source, destination, first);
+            destination.writeStagedSegmentFile(first.firstTransactionId, false, first.segmentSize, new byte[1]);
+            try {
+                destination.installSegment(first.firstTransactionId, source.getSegmentChecksum(first.firstTransactionId), source.getIndexChecksum(first.firstTransactionId));
+                fail();
+            } catch (StorageException ex) {
+                // OK
+            }
+            assertEquals(0, destination.getRecords(0L, 100).size());
+            assertEquals(0, countFiles(destinationDir, "*.staged"));
+
+            // Copy all sealed segments
+            long maxTransactionId = -1L;
+            for (SegmentInfo segment : segments) {
+                if (!segment.sealed) {
+                    break;
+                }
+                copySegmentFiles(source, destination, segment);
+                destination.installSegment(segment.firstTransactionId, source.getSegmentChecksum(segment.firstTransactionId), source.getIndexChecksum(segment.firstTransactionId));
+                maxTransactionId = segment.maxTransactionId;
+            }
+
+            ArrayList<Record> expected = source.getRecords(0L, (int) maxTransactionId + 1);
+            ArrayList<Record> actual = destination.getRecords(0L, 100);
+            assertEquals(maxTransactionId + 1, actual.size());
+            assertEquals(expected, actual);
+
+            List<SegmentInfo> destinationSegments = destination.getSegmentInfos();
+            assertEquals(segments.size() - 1, destinationSegments.size());
+            assertEquals(maxTransactionId, destinationSegments.get(destinationSegments.size() - 1).maxTransactionId);
+            assertEquals(0, countFiles(destinationDir, "*.{staged,replaced}"));
+
+        } finally {
+            source.close();
+            destination.close();
+        }
+    }
+
+    @Test
+    public void testSegmentInstallRecovery() throws Exception {
+        UUID key = UUID.randomUUID();
+        PartitionInfo partitionInfo = new PartitionInfo(ByteBuffer.allocate(1000), 0, null, PARTITION_ID, true);
+        partitionInfo.setFlags(PartitionInfo.Flags.PARTITION_IS_ASSIGNED | PartitionInfo.Flags.PARTITION_IS_AVAILABLE);
+
+        Partition partition = new Partition(key, partitionDir, partitionInfo, 100000L, 10);
+        partition.open();
+        try {
+            CompletableFuture<Message> future = new CompletableFuture<>();
+            partition.receiveMessage(new AppendRequest(-1, 0, PARTITION_ID, ClientUtil.makeRecords(0, 10)), (msg, flush) -> {
+                future.complete(msg);
+                return true;
+            });
+            assertTrue(future.get() instanceof SuccessResponse);
+        } finally {
+            partition.close();
+        }
+
+        Path segPath = partitionDir.resolve(String.format("%019d.seg", 0L));
+        Path idxPath = partitionDir.resolve(String.format("%019d.idx", 0L));
+        Path replacedSegPath = partitionDir.resolve(segPath.getFileName() + ".replaced");
+        Path replacedIdxPath = partitionDir.resolve(idxPath.getFileName() + ".replaced");
+
+        // Crashed after the copied index file was moved in. The install is rolled back.
+        Files.move(segPath, replacedSegPath);
+        Files.copy(idxPath, replacedIdxPath);
+        Files.write(idxPath, new byte[10]);
+        Files.write(partitionDir.resolve(segPath.getFileName() + ".staged"), new byte[10]);
+
+        partition = new Partition(key, partitionDir, partitionInfo, 100000L, 10);
+        partition.open();
+        try {
+            assertEquals(10, partition.getRecords(0L, 100).size());
+            assertEquals(0, countFiles(partitionDir, "*.{staged,replaced}"));
+        } finally {
+            partition.close();
+        }
+
+        // Crashed after the copied segment file was moved in. The install is completed.
+        Files.write(replacedSegPath, new byte[10]);
+        Files.write(replacedIdxPath, new byte[10]);
+
+        partition = new Partition(key, partitionDir, partitionInfo, 100000L, 10);
+        partition.open();
+        try {
+            assertEquals(10, partition.getRecords(0L, 100).size());
+            assertEquals(0, countFiles(partitionDir, "*.{staged,replaced}"));
+        } finally {
+            partition.close();
+        }
+    }
+
+    private static int countFiles(Path directory, String glob) throws Exception {
+        int count = 0;
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, glob)) {
+            for (Path ignored : stream) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void copySegmentFiles(Partition source, Partition destination, SegmentInfo segment) throws Exception {
+        copySegmentFile(source, destination, segment.firstTransactionId, false, segment.segmentSize);
+        copySegmentFile(source, destination, segment.firstTransactionId, true, segment.indexSize);
+    }
+
+    private static void copySegmentFile(Partition source, Partition destination, long firstTransactionId, boolean index, long size) throws Exception {
+        long position = 0L;
+        while (position < size) {
+            byte[] data = source.readSegmentFile(firstTransactionId, index, position, 100);
+            destination.writeStagedSegmentFile(firstTransactionId, index, position, data);
+            position += data.length;
+        }
+        assertEquals(0, source.readSegmentFile(firstTransactionId, index, position, 100).length);
+    }
+
     public static class TestPartitionClass extends Partition {
 
         public final List<Segment> evictedEntrylist;
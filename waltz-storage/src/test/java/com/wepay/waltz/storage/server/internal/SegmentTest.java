@@ -1,8 +1,10 @@
 package com.wepay.waltz.storage.server.internal;
 
 import com.wepay.waltz.common.message.Record;
+import com.wepay.waltz.common.message.RecordHeader;
 import com.wepay.waltz.common.message.ReqId;
 import com.wepay.waltz.common.util.Utils;
+import com.wepay.waltz.storage.common.RawRecords;
 import com.wepay.waltz.storage.exception.StorageException;
 import org.junit.After;
 import org.junit.Before;
@@ -16,8 +18,11 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Random;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
@@ -413,6 +418,180 @@ public class SegmentTest {
         }
     }
 
+    @Test
+    public void testMappedIndex() throws Exception {
+        long startTransactionId = rand.nextInt(1000);
+        long segmentSizeThreshold = 100000000;
+        // enough entries to cross the remap chunk twice
+        int numTransactions = (int) (Segment.Index.REMAP_CHUNK_SIZE / 8) * 2 + rand.nextInt(1000);
+
+        Segment.create(key, segmentPath, indexPath, 0, startTransactionId);
+        Segment segment = new Segment(key, segmentPath, indexPath, controlFile.getPartitionInfo(0), segmentSizeThreshold);
+        segment.setWritable();
+
+        ArrayList<Record> records = new ArrayList<>();
+        byte[] data = new byte[0];
+        for (int i = 0; i < numTransactions; i++) {
+            records.add(new Record(startTransactionId + i, reqId(), 0, data, Utils.checksum(data)));
+        }
+        segment.append(records, 0);
+
+        // The index grew by more than a chunk, so a lookup maps it
+        assertEquals(0L, segment.index.mappedSize());
+        assertNotNull(segment.getRecordHeader(startTransactionId + numTransactions - 1));
+        assertEquals(Segment.FILE_HEADER_SIZE + 8L * numTransactions, segment.index.mappedSize());
+
+        // Entries added after the mapping are read from the channel until the index grows by another chunk
+        records.clear();
+        for (int i = 0; i < 10; i++) {
+            records.add(new Record(startTransactionId + numTransactions + i, reqId(), 0, data, Utils.checksum(data)));
+        }
+        segment.append(records, 0);
+        numTransactions += records.size();
+        assertNotNull(segment.getRecordHeader(startTransactionId + numTransactions - 1));
+        assertEquals(Segment.FILE_HEADER_SIZE + 8L * (numTransactions - records.size()), segment.index.mappedSize());
+
+        long prevOffset = 0;
+        for (int i = 0; i < numTransactions; i++) {
+            long offset = segment.index.get(startTransactionId + i);
+            assertTrue(offset > prevOffset);
+            prevOffset = offset;
+        }
+        assertEquals(-1L, segment.index.get(startTransactionId + numTransactions));
+
+        // A sealed index is mapped entirely
+        segment.setReadOnly();
+        assertNotNull(segment.getRecordHeader(startTransactionId + numTransactions - 1));
+        assertEquals(Segment.FILE_HEADER_SIZE + 8L * numTransactions, segment.index.mappedSize());
+
+        // Truncation drops the mapping
+        segment.setWritable();
+        segment.truncate(startTransactionId + numTransactions / 2);
+        assertEquals(0L, segment.index.mappedSize());
+        assertEquals(startTransactionId + numTransactions / 2, segment.maxTransactionId());
+        assertNotNull(segment.getRecordHeader(startTransactionId + numTransactions / 2));
+        assertEquals(-1L, segment.index.get(startTransactionId + numTransactions / 2 + 1));
+
+        segment.close();
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        long startTransactionId = rand.nextInt(1000);
+        long segmentSizeThreshold = 100000000;
+        int numTransactions = 5000;
+        int numReaders = 4;
+
+        Segment.create(key, segmentPath, indexPath, 0, startTransactionId);
+        Segment segment = new Segment(key, segmentPath, indexPath, controlFile.getPartitionInfo(0), segmentSizeThreshold);
+        segment.setWritable();
+
+        AtomicBoolean done = new AtomicBoolean(false);
+        AtomicReference<Throwable> error = new AtomicReference<>();
+        ArrayList<Thread> readers = new ArrayList<>();
+
+        // Readers run against the segment while it is being appended. They must only see complete records.
+        for (int r = 0; r < numReaders; r++) {
+            Thread reader = new Thread(() -> {
+                try {
+                    Random random = new Random();
+                    while (!done.get()) {
+                        long max = segment.maxTransactionId();
+                        long transactionId = startTransactionId + random.nextInt(numTransactions + 10);
+
+                        Record record = segment.getRecord(transactionId);
+                        if (transactionId <= max) {
+                            assertNotNull(record);
+                        }
+                        if (record != null) {
+                            assertEquals(transactionId, record.transactionId);
+                            assertEquals(record.checksum, Utils.checksum(record.data));
+                            assertEquals(transactionId, segment.getRecordHeader(transactionId).transactionId);
+                        }
+                    }
+                } catch (Throwable ex) {
+                    error.compareAndSet(null, ex);
+                }
+            });
+            reader.start();
+            readers.add(reader);
+        }
+
+        for (int i = 0; i < numTransactions; i++) {
+            byte[] data = new byte[rand.nextInt(200)];
+            rand.nextBytes(data);
+            ArrayList<Record> records = new ArrayList<>();
+            records.add(new Record(startTransactionId + i, reqId(), 0, data, Utils.checksum(data)));
+            segment.append(records, 0, false);
+        }
+
+        done.set(true);
+        for (Thread reader : readers) {
+            reader.join();
+        }
+
+        if (error.get() != null) {
+            throw new AssertionError(error.get());
+        }
+
+        segment.close();
+    }
+
+    @Test
+    public void testGetRecords() throws Exception {
+        long startTransactionId = rand.nextInt(1000);
+        long segmentSizeThreshold = 100000000;
+        int numTransactions = 1000;
+
+        Segment.create(key, segmentPath, indexPath, 0, startTransactionId);
+        Segment segment = new Segment(key, segmentPath, indexPath, controlFile.getPartitionInfo(0), segmentSizeThreshold);
+        segment.setWritable();
+
+        ArrayList<Record> records = new ArrayList<>();
+        for (int i = 0; i < numTransactions; i++) {
+            // Include records larger than a single range read
+            byte[] data = new byte[i % 300 == 0 ? Segment.RANGE_READ_SIZE + rand.nextInt(1000) : rand.nextInt(10000)];
+            rand.nextBytes(data);
+            records.add(new Record(startTransactionId + i, reqId(), rand.nextInt(), data, Utils.checksum(data)));
+        }
+        segment.append(records, 0);
+
+        for (int n = 0; n < 50; n++) {
+            int start = rand.nextInt(numTransactions + 1);
+            int maxNumRecords = rand.nextInt(numTransactions);
+
+            ArrayList<Record> recordList = segment.getRecords(startTransactionId + start, maxNumRecords);
+            ArrayList<RecordHeader> recordHeaderList = segment.getRecordHeaders(startTransactionId + start, maxNumRecords);
+
+            int expectedSize = Math.min(maxNumRecords, numTransactions - start);
+            assertEquals(expectedSize, recordList.size());
+            assertEquals(expectedSize, recordHeaderList.size());
+
+            for (int i = 0; i < expectedSize; i++) {
+                Record expected = records.get(start + i);
+                Record record = recordList.get(i);
+                RecordHeader recordHeader = recordHeaderList.get(i);
+
+                assertEquals(expected.transactionId, record.transactionId);
+                assertEquals(expected.reqId, record.reqId);
+                assertEquals(expected.header, record.header);
+                assertEquals(expected.checksum, record.checksum);
+                assertTrue(Arrays.equals(expected.data, record.data));
+
+                assertEquals(expected.transactionId, recordHeader.transactionId);
+                assertEquals(expected.reqId, recordHeader.reqId);
+                assertEquals(expected.header, recordHeader.header);
+            }
+
+            // Raw records are the same records in the segment file format
+            RawRecords rawRecords = new RawRecords(startTransactionId + start);
+            assertEquals(expectedSize, segment.getRawRecords(startTransactionId + start, maxNumRecords, rawRecords));
+            assertEquals(recordList, rawRecords.toRecords());
+        }
+
+        segment.close();
+    }
+
     private ReqId reqId() {
         return new ReqId(rand.nextLong(), rand.nextLong());
     }
@@ -91,6 +91,23 @@ public class MockStorePartition implements StorePartition {
         return get(transactionId);
     }
 
+    @Override
+    public ArrayList<Record> getRecordList(long transactionId, int maxNumRecords) {
+        ArrayList<Record> list = new ArrayList<>();
+
+        for (int i = 0; i < maxNumRecords; i++) {
+            Record record = get(transactionId + i);
+
+            if (record == null) {
+                break;
+            } else {
+                list.add(record);
+            }
+        }
+
+        return list;
+    }
+
     @Override
     public long highWaterMark() {
         synchronized (this) {
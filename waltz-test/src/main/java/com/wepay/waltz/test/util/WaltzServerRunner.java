@@ -1,9 +1,11 @@
 package com.wepay.waltz.test.util;
 
+import com.wepay.riff.network.MessageCodec;
 import com.wepay.riff.util.Logging;
 import com.wepay.waltz.server.WaltzServer;
 import com.wepay.waltz.server.WaltzServerConfig;
 import com.wepay.waltz.server.internal.Partition;
+import com.wepay.waltz.server.internal.WaltzServerHandler;
 import com.wepay.waltz.store.Store;
 import com.wepay.waltz.store.exception.StoreException;
 import com.wepay.waltz.store.internal.StoreImpl;
@@ -22,6 +24,7 @@ import com.wepay.zktools.zookeeper.internal.ZooKeeperClientImpl;
 import io.netty.handler.ssl.SslContext;
 import org.slf4j.Logger;
 
+import java.util.Map;
 import java.util.Set;
 
 public class WaltzServerRunner extends Runner<WaltzServer> {
@@ -49,6 +52,7 @@ public class WaltzServerRunner extends Runner<WaltzServer> {
         zkClient = getZkClient();
         Store store = getStore();
         clusterManager = getClusterManager();
+        Map<Short, MessageCodec> codecs = getMessageCodecs();
 
         if (messageBuffering) {
             return new WaltzServer(port, sslCtx, store, clusterManager, config) {
@@ -60,9 +64,17 @@ public class WaltzServerRunner extends Runner<WaltzServer> {
                         transactionFetcher,
                         config);
                 }
+
+                protected Map<Short, MessageCodec> messageCodecs() {
+                    return codecs;
+                }
             };
         } else {
-            WaltzServer server = new WaltzServer(port, sslCtx, store, clusterManager, config);
+            WaltzServer server = new WaltzServer(port, sslCtx, store, clusterManager, config) {
+                protected Map<Short, MessageCodec> messageCodecs() {
+                    return codecs;
+                }
+            };
             server.setJettyServer(zkClient);
             return server;
         }
@@ -111,6 +123,10 @@ public class WaltzServerRunner extends Runner<WaltzServer> {
         return new ClusterManagerImpl(zkClient, root, partitionAssignmentPolicy);
     }
 
+    protected Map<Short, MessageCodec> getMessageCodecs() {
+        return WaltzServerHandler.CODECS;
+    }
+
     protected Store getStore() throws StoreException {
         ZNode root = new ZNode((String) config.get(WaltzServerConfig.CLUSTER_ROOT));
         ZNode storeRoot = new ZNode(root, "store");
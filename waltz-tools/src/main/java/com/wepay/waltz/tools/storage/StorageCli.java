@@ -603,6 +603,11 @@ public final class StorageCli extends SubcommandCli {
                     .desc("Specify the SSL config file path required for the destination storage node")
                     .hasArg()
                     .build();
+            Option segmentBootstrapOption = Option.builder("sb")
+                    .longOpt("segment-bootstrap")
+                    .desc("Copy sealed segments as whole files before copying the remaining records")
+                    .hasArg(false)
+                    .build();
 
             sourceStorageOption.setRequired(true);
             destinationStorageOption.setRequired(true);
@@ -612,6 +617,7 @@ public final class StorageCli extends SubcommandCli {
             cliCfgOption.setRequired(true);
             sourceSslOption.setRequired(false);
             destinationSslOption.setRequired(false);
+            segmentBootstrapOption.setRequired(false);
 
             options.addOption(sourceStorageOption);
             options.addOption(destinationStorageOption);
@@ -621,6 +627,7 @@ public final class StorageCli extends SubcommandCli {
             options.addOption(cliCfgOption);
             options.addOption(sourceSslOption);
             options.addOption(destinationSslOption);
+            options.addOption(segmentBootstrapOption);
         }
 
         @Override
@@ -633,6 +640,7 @@ public final class StorageCli extends SubcommandCli {
             String cliConfigPath = cmd.getOptionValue("cli-config-path");
             String sourceSslConfigPath = cmd.getOptionValue("source-ssl-config-path");
             String destinationSslConfigPath = cmd.getOptionValue("destination-ssl-config-path");
+            boolean segmentBootstrap = cmd.hasOption("segment-bootstrap");
 
             try {
                 String[] sourceHostAndAdminPortArray = sourceHostAndAdminPort.split(":");
@@ -655,7 +663,7 @@ public final class StorageCli extends SubcommandCli {
 
                 recoverPartition(sourceStorageHost, Integer.parseInt(sourceStorageAdminPort), destinationStorageHost, Integer.parseInt(destinationStorageAdminPort),
                                  Integer.parseInt(destinationStoragePort), Integer.parseInt(partitionId), Integer.parseInt(batchSize), cliConfigPath,
-                                 sourceSslConfigPath, destinationSslConfigPath);
+                                 sourceSslConfigPath, destinationSslConfigPath, segmentBootstrap);
            } catch (Exception e) {
                 throw new SubCommandFailedException(String.format("Partition %s failed to recover. %n%s", partitionId, e.getMessage()));
             }
@@ -675,11 +683,12 @@ public final class StorageCli extends SubcommandCli {
          * @param cliConfigPath                 the cli config file path required for ZooKeeper connection string, ZooKeeper root path
          * @param sourceSslConfigPath           the SSL config file path required for the source storage node
          * @param destinationSslConfigPath      the SSL config file path required for the destination storage node
+         * @param segmentBootstrap              whether to copy sealed segments as whole files
          * @throws Exception
          */
         private void recoverPartition(String sourceStorageHost, int sourceStorageAdminPort, String destinationStorageHost, int destinationStorageAdminPort,
                                       int destinationStoragePort, int partitionId, int batchSize, String cliConfigPath, String sourceSslConfigPath,
-                                      String destinationSslConfigPath) throws Exception {
+                                      String destinationSslConfigPath, boolean segmentBootstrap) throws Exception {
             ZooKeeperClient zkClient = null;
             StorageAdminClient sourceStorageAdminClient = null;
             StorageClient destinationStorageClient = null;
@@ -699,7 +708,8 @@ public final class StorageCli extends SubcommandCli {
                 destinationStorageClient = openStorageClient(destinationStorageHost, destinationStoragePort, destinationSslContext, zkClient, zkRoot, true);
                 destinationStorageAdminClient = openStorageAdminClient(destinationStorageHost, destinationStorageAdminPort, destinationSslContext, zkClient, zkRoot);
 
-                StorageRecoveryRunnable storageRecoveryRunnable = new StorageRecoveryRunnable(sourceStorageAdminClient, destinationStorageAdminClient, destinationStorageClient, partitionId, batchSize);
+                StorageRecoveryRunnable storageRecoveryRunnable = new StorageRecoveryRunnable(sourceStorageAdminClient, destinationStorageAdminClient, destinationStorageClient, partitionId, batchSize,
+                    segmentBootstrap);
 
                 storageRecoveryRunnable.run();
             } finally {
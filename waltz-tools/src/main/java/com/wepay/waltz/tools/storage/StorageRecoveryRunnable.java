@@ -4,13 +4,16 @@ import com.wepay.riff.util.Logging;
 import com.wepay.waltz.common.message.Record;
 import com.wepay.waltz.storage.client.StorageAdminClient;
 import com.wepay.waltz.storage.client.StorageClient;
+import com.wepay.waltz.storage.common.SegmentInfo;
 import com.wepay.waltz.storage.common.SessionInfo;
 import com.wepay.waltz.storage.exception.StorageRpcException;
 import com.wepay.waltz.store.internal.ReplicaConnection;
 import com.wepay.waltz.store.internal.ReplicaConnectionImpl;
 import org.slf4j.Logger;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
 /**
@@ -19,6 +22,10 @@ import java.util.concurrent.ExecutionException;
  * recovery does not refresh the source storage node's low watermark once it starts running, so if the recovery takes
  * a long period of time, there might still be a substantial gap between the source node's current low watermark, and
  * the destination's.
+ *
+ * <p>When segment bootstrap is enabled, sealed segments of the source node are first copied as whole segment and index
+ * files, and verified with checksums before the destination installs them. Records are copied one batch at a time
+ * only where segment boundaries of the two nodes differ, and for the tail after the last sealed segment.</p>
  */
 public class StorageRecoveryRunnable implements Runnable {
 
@@ -26,12 +33,15 @@ public class StorageRecoveryRunnable implements Runnable {
 
     private static final int MAX_BATCH_SIZE = 20;
     private static final int LOG_SIZE = 10000;
+    private static final int SEGMENT_CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final int MAX_PENDING_CHUNKS = 4;
 
     private final StorageAdminClient sourceStorageAdminClient;
     private final StorageAdminClient destinationStorageAdminClient;
     private final StorageClient destinationStorageClient;
     private final int partitionId;
     private final int maxBatchSize;
+    private final boolean segmentBootstrap;
 
     /**
      * @param sourceStorageAdminClient The admin client to read records from source storage
@@ -51,11 +61,25 @@ public class StorageRecoveryRunnable implements Runnable {
      * @param maxBatchSize The largest number of records to fetch from the source node in one request
      */
     public StorageRecoveryRunnable(StorageAdminClient sourceStorageAdminClient, StorageAdminClient destinationStorageAdminClient, StorageClient destinationStorageClient, int partitionId, int maxBatchSize) {
+        this(sourceStorageAdminClient, destinationStorageAdminClient, destinationStorageClient, partitionId, maxBatchSize, false);
+    }
+
+    /**
+     * @param sourceStorageAdminClient The admin client to read records from source storage
+     * @param destinationStorageAdminClient The admin client to read {@code SessionInfo} from destination storage
+     * @param destinationStorageClient The storage client used to build {@code destinationReplicaConnection}
+     * @param destinationStorageAdminClient The storage node to write records to
+     * @param maxBatchSize The largest number of records to fetch from the source node in one request
+     * @param segmentBootstrap Whether to copy sealed segments of the source node as whole files
+     */
+    public StorageRecoveryRunnable(StorageAdminClient sourceStorageAdminClient, StorageAdminClient destinationStorageAdminClient, StorageClient destinationStorageClient, int partitionId, int maxBatchSize,
+                                   boolean segmentBootstrap) {
         this.sourceStorageAdminClient = sourceStorageAdminClient;
         this.destinationStorageAdminClient = destinationStorageAdminClient;
         this.destinationStorageClient = destinationStorageClient;
         this.partitionId = partitionId;
         this.maxBatchSize = maxBatchSize;
+        this.segmentBootstrap = segmentBootstrap;
     }
 
     /**
@@ -89,21 +113,11 @@ public class StorageRecoveryRunnable implements Runnable {
             long targetLowWaterMark = sourceSessionInfo.localLowWaterMark;
             logger.info("source target low watermark = " + targetLowWaterMark);
 
-            while (currentHighWaterMark < targetLowWaterMark) {
-                int batchSize = (int) Math.min((targetLowWaterMark - currentHighWaterMark), (long) maxBatchSize);
-                ArrayList<Record> records = (ArrayList<Record>) sourceStorageAdminClient
-                        .getRecordList(destinationReplicaConnection.getPartitionId(), currentHighWaterMark + 1, batchSize)
-                        .get();
-                destinationReplicaConnection.appendRecords(records);
-                currentHighWaterMark += records.size();
-                destinationReplicaConnection.setLowWaterMark(currentHighWaterMark);
-                logger.debug("destination high watermark = " + currentHighWaterMark);
-
-                if (currentHighWaterMark % LOG_SIZE == 0) {
-                    float percentProgress = currentHighWaterMark / (float) targetLowWaterMark;
-                    logger.info(String.format("destination high watermark = %d (%.2f%%)", currentHighWaterMark, percentProgress));
-                }
+            if (segmentBootstrap) {
+                currentHighWaterMark = bootstrapSegments(destinationReplicaConnection, currentHighWaterMark, targetLowWaterMark);
             }
+
+            copyRecords(destinationReplicaConnection, currentHighWaterMark, targetLowWaterMark, targetLowWaterMark);
         } catch (StorageRpcException | InterruptedException | ExecutionException e) {
             throw new RuntimeException(e);
         } finally {
@@ -112,4 +126,111 @@ public class StorageRecoveryRunnable implements Runnable {
             }
         }
     }
+
+    /**
+     * Copies records in batches of {@code maxBatchSize} until the destination has all records up to the given
+     * transaction id. The destination low watermark is advanced after each batch.
+     *
+     * @return the new high watermark of the destination
+     */
+    @SuppressWarnings("unchecked")
+    private long copyRecords(ReplicaConnection destinationReplicaConnection, long currentHighWaterMark, long transactionId, long targetLowWaterMark)
+        throws StorageRpcException, InterruptedException, ExecutionException {
+        while (currentHighWaterMark < transactionId) {
+            int batchSize = (int) Math.min((transactionId - currentHighWaterMark), (long) maxBatchSize);
+            ArrayList<Record> records = (ArrayList<Record>) sourceStorageAdminClient
+                    .getRecordList(destinationReplicaConnection.getPartitionId(), currentHighWaterMark + 1, batchSize)
+                    .get();
+            destinationReplicaConnection.appendRecords(records);
+            currentHighWaterMark += records.size();
+            destinationReplicaConnection.setLowWaterMark(currentHighWaterMark);
+            logger.debug("destination high watermark = " + currentHighWaterMark);
+
+            if (currentHighWaterMark % LOG_SIZE == 0) {
+                float percentProgress = currentHighWaterMark / (float) targetLowWaterMark;
+                logger.info(String.format("destination high watermark = %d (%.2f%%)", currentHighWaterMark, percentProgress));
+            }
+        }
+        return currentHighWaterMark;
+    }
+
+    /**
+     * Copies sealed segments of the source node in order, up to the target low watermark. A segment is installed when
+     * the destination ends right before it, or when the last segment of the destination starts at the same transaction
+     * id. Segment boundaries may differ between nodes. In that case records are copied up to the end of the source
+     * segment, and the following segments line up. The destination low watermark is advanced after each installed
+     * segment, so an interrupted recovery resumes from the last installed segment.
+     *
+     * @return the new high watermark of the destination
+     */
+    @SuppressWarnings("unchecked")
+    private long bootstrapSegments(ReplicaConnection destinationReplicaConnection, long currentHighWaterMark, long targetLowWaterMark)
+        throws StorageRpcException, InterruptedException, ExecutionException {
+        ArrayList<SegmentInfo> sourceSegments = (ArrayList<SegmentInfo>) sourceStorageAdminClient.getSegmentList(partitionId).get();
+
+        for (SegmentInfo segment : sourceSegments) {
+            if (!segment.sealed || segment.maxTransactionId > targetLowWaterMark) {
+                break;
+            }
+            if (segment.maxTransactionId <= currentHighWaterMark) {
+                continue;
+            }
+
+            ArrayList<SegmentInfo> destinationSegments = (ArrayList<SegmentInfo>) destinationStorageAdminClient.getSegmentList(partitionId).get();
+            SegmentInfo lastSegment = destinationSegments.get(destinationSegments.size() - 1);
+
+            if (lastSegment.firstTransactionId == segment.firstTransactionId || currentHighWaterMark + 1 == segment.firstTransactionId) {
+                copySegment(segment);
+                currentHighWaterMark = segment.maxTransactionId;
+                destinationReplicaConnection.setLowWaterMark(currentHighWaterMark);
+
+                float percentProgress = currentHighWaterMark / (float) targetLowWaterMark;
+                logger.info(String.format("segment installed: destination high watermark = %d (%.2f%%)", currentHighWaterMark, percentProgress));
+            } else {
+                currentHighWaterMark = copyRecords(destinationReplicaConnection, currentHighWaterMark, segment.maxTransactionId, targetLowWaterMark);
+            }
+        }
+        return currentHighWaterMark;
+    }
+
+    private void copySegment(SegmentInfo segment) throws InterruptedException, ExecutionException {
+        int[] checksums = (int[]) sourceStorageAdminClient.getSegmentChecksum(partitionId, segment.firstTransactionId).get();
+
+        copySegmentFile(segment.firstTransactionId, false, segment.segmentSize);
+        copySegmentFile(segment.firstTransactionId, true, segment.indexSize);
+
+        destinationStorageAdminClient.installSegment(partitionId, segment.firstTransactionId, checksums[0], checksums[1]).get();
+    }
+
+    // Streams a file in chunks. Reads and writes are pipelined up to MAX_PENDING_CHUNKS chunks each.
+    // The destination processes admin requests in order, so the chunks are written in order.
+    private void copySegmentFile(long firstTransactionId, boolean index, long size) throws InterruptedException, ExecutionException {
+        ArrayDeque<CompletableFuture<Object>> reads = new ArrayDeque<>();
+        ArrayDeque<CompletableFuture<Object>> writes = new ArrayDeque<>();
+        long readPosition = 0L;
+        long writePosition = 0L;
+
+        while (writePosition < size) {
+            while (readPosition < size && reads.size() < MAX_PENDING_CHUNKS) {
+                int length = (int) Math.min(SEGMENT_CHUNK_SIZE, size - readPosition);
+                reads.add(sourceStorageAdminClient.readSegmentFile(partitionId, firstTransactionId, index, readPosition, length));
+                readPosition += length;
+            }
+
+            byte[] data = (byte[]) reads.remove().get();
+            if (data.length != Math.min(SEGMENT_CHUNK_SIZE, size - writePosition)) {
+                throw new IllegalStateException("unexpected end of file: firstTransactionId=" + firstTransactionId + " position=" + writePosition);
+            }
+            writes.add(destinationStorageAdminClient.writeSegmentFile(partitionId, firstTransactionId, index, writePosition, data));
+            writePosition += data.length;
+
+            if (writes.size() >= MAX_PENDING_CHUNKS) {
+                writes.remove().get();
+            }
+        }
+
+        for (CompletableFuture<Object> write : writes) {
+            write.get();
+        }
+    }
 }
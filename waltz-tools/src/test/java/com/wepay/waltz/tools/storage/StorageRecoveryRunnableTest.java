@@ -3,15 +3,18 @@ package com.wepay.waltz.tools.storage;
 import com.wepay.waltz.common.message.Record;
 import com.wepay.waltz.storage.client.StorageAdminClient;
 import com.wepay.waltz.storage.client.StorageClient;
+import com.wepay.waltz.storage.common.SegmentInfo;
 import com.wepay.waltz.storage.common.SessionInfo;
 import com.wepay.waltz.test.util.ClientUtil;
 import org.junit.Test;
 import org.mockito.InOrder;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.concurrent.CompletableFuture;
 
 import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.anyBoolean;
 import static org.mockito.Mockito.anyInt;
 import static org.mockito.Mockito.anyLong;
 import static org.mockito.Mockito.eq;
@@ -118,4 +121,67 @@ public class StorageRecoveryRunnableTest {
         inOrder.verify(mockDestinationStorageClient, times(1)).appendRecords(eq(sessionId), eq(partitionId), eq(oneRecordList));
         inOrder.verify(mockDestinationStorageClient, times(1)).setLowWaterMark(eq(sessionId), eq(partitionId), eq(31L));
     }
+
+    @Test
+    public void testRecoveryWithSegmentBootstrap() throws Exception {
+        int partitionId = 0;
+        long destinationLowWaterMark = -1L;
+        long sourceLowWaterMark = 26L;
+        long sourceLocalLowWaterMark = 25L;
+        long sessionId = 123L;
+        SessionInfo sourceSessionInfo = new SessionInfo(sessionId, sourceLowWaterMark, sourceLocalLowWaterMark);
+        SessionInfo destinationSessionInfo = new SessionInfo(sessionId, destinationLowWaterMark, destinationLowWaterMark);
+
+        // Two sealed segments and the writable segment on the source. The destination is empty.
+        ArrayList<SegmentInfo> sourceSegments = new ArrayList<>(Arrays.asList(
+            new SegmentInfo(0L, 9L, 1000L, 208L, true),
+            new SegmentInfo(10L, 19L, 1000L, 208L, true),
+            new SegmentInfo(20L, 25L, 600L, 176L, false)
+        ));
+        ArrayList<SegmentInfo> destinationSegments = new ArrayList<>(Arrays.asList(
+            new SegmentInfo(0L, -1L, 128L, 128L, false)
+        ));
+        ArrayList<Record> tailRecordList = ClientUtil.makeRecords(20L, 26L);
+
+        StorageAdminClient mockSourceStorageAdminClient = mock(StorageAdminClient.class);
+        StorageAdminClient mockDestinationStorageAdminClient = mock(StorageAdminClient.class);
+        StorageClient mockDestinationStorageClient = mock(StorageClient.class);
+        InOrder inOrder = inOrder(mockDestinationStorageAdminClient, mockDestinationStorageClient);
+
+        when(mockDestinationStorageAdminClient.lastSessionInfo(partitionId)).thenReturn(CompletableFuture.completedFuture(destinationSessionInfo));
+        when(mockSourceStorageAdminClient.lastSessionInfo(partitionId)).thenReturn(CompletableFuture.completedFuture(sourceSessionInfo));
+        when(mockDestinationStorageClient.lastSessionInfo(sessionId, partitionId)).thenReturn(CompletableFuture.completedFuture(destinationSessionInfo));
+        when(mockDestinationStorageClient.getMaxTransactionId(sessionId, partitionId)).thenReturn(CompletableFuture.completedFuture(destinationLowWaterMark));
+        when(mockDestinationStorageClient.truncate(sessionId, partitionId, destinationLowWaterMark)).thenReturn(CompletableFuture.completedFuture(destinationLowWaterMark));
+        when(mockDestinationStorageClient.appendRecords(anyLong(), anyInt(), any())).thenReturn(CompletableFuture.completedFuture(Boolean.TRUE));
+        when(mockDestinationStorageClient.setLowWaterMark(anyLong(), anyInt(), anyLong())).thenReturn(CompletableFuture.completedFuture(Boolean.TRUE));
+
+        when(mockSourceStorageAdminClient.getSegmentList(partitionId)).thenReturn(CompletableFuture.completedFuture(sourceSegments));
+        when(mockDestinationStorageAdminClient.getSegmentList(partitionId)).thenReturn(CompletableFuture.completedFuture(destinationSegments));
+        when(mockSourceStorageAdminClient.getSegmentChecksum(eq(partitionId), anyLong())).thenReturn(CompletableFuture.completedFuture(new int[] {1, 2}));
+        when(mockSourceStorageAdminClient.readSegmentFile(eq(partitionId), anyLong(), eq(false), eq(0L), eq(1000)))
+                .thenReturn(CompletableFuture.completedFuture(new byte[1000]));
+        when(mockSourceStorageAdminClient.readSegmentFile(eq(partitionId), anyLong(), eq(true), eq(0L), eq(208)))
+                .thenReturn(CompletableFuture.completedFuture(new byte[208]));
+        when(mockDestinationStorageAdminClient.writeSegmentFile(eq(partitionId), anyLong(), anyBoolean(), anyLong(), any()))
+                .thenReturn(CompletableFuture.completedFuture(Boolean.TRUE));
+        when(mockDestinationStorageAdminClient.installSegment(eq(partitionId), anyLong(), anyInt(), anyInt()))
+                .thenReturn(CompletableFuture.completedFuture(Boolean.TRUE));
+
+        when(mockSourceStorageAdminClient.getRecordList(partitionId, 20L, 6)).thenReturn(CompletableFuture.completedFuture(tailRecordList));
+
+        StorageRecoveryRunnable storageRecoveryRunnable = new StorageRecoveryRunnable(mockSourceStorageAdminClient, mockDestinationStorageAdminClient,
+                mockDestinationStorageClient, partitionId, 20, true);
+        storageRecoveryRunnable.run();
+
+        // The sealed segments are copied as files, and only the tail is copied as records
+        inOrder.verify(mockDestinationStorageAdminClient, times(1)).installSegment(eq(partitionId), eq(0L), eq(1), eq(2));
+        inOrder.verify(mockDestinationStorageClient, times(1)).setLowWaterMark(eq(sessionId), eq(partitionId), eq(9L));
+        inOrder.verify(mockDestinationStorageAdminClient, times(1)).installSegment(eq(partitionId), eq(10L), eq(1), eq(2));
+        inOrder.verify(mockDestinationStorageClient, times(1)).setLowWaterMark(eq(sessionId), eq(partitionId), eq(19L));
+        inOrder.verify(mockDestinationStorageClient, times(1)).appendRecords(eq(sessionId), eq(partitionId), eq(tailRecordList));
+        inOrder.verify(mockDestinationStorageClient, times(1)).setLowWaterMark(eq(sessionId), eq(partitionId), eq(25L));
+        verify(mockDestinationStorageAdminClient, times(4)).writeSegmentFile(eq(partitionId), anyLong(), anyBoolean(), eq(0L), any());
+        verify(mockSourceStorageAdminClient, times(1)).getRecordList(anyInt(), anyLong(), anyInt());
+    }
 }